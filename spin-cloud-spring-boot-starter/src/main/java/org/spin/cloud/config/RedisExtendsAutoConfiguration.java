@@ -2,7 +2,11 @@ package org.spin.cloud.config;
 
 import org.spin.cloud.config.properties.SpinRedisProperties;
 import org.spin.core.concurrent.DistributedLock;
+import org.spin.data.delayqueue.DelayMessageCodec;
 import org.spin.data.delayqueue.DelayMessageHandler;
+import org.spin.data.delayqueue.BinaryDelayMessageCodec;
+import org.spin.data.delayqueue.DelayQueueProperties;
+import org.spin.data.delayqueue.JsonDelayMessageCodec;
 import org.spin.data.delayqueue.RedisDelayQueue;
 import org.spin.data.lock.RedisDistributedLock;
 import org.spin.data.redis.RedisClientWrapper;
@@ -49,13 +53,30 @@ public class RedisExtendsAutoConfiguration {
     @ConditionalOnProperty(name = "spin.redis.delay-queue.name")
     public RedisDelayQueue redisDelayQueue(SpinRedisProperties spinRedisProperties,
                                            RedisClientWrapper redisClientWrapper,
-                                           @Nullable List<DelayMessageHandler> messageHandlers) {
-        return new RedisDelayQueue(spinRedisProperties.getDelayQueue().getName(),
-            spinRedisProperties.getDelayQueue().getScheduleGroupId(),
-            redisClientWrapper, messageHandlers,
-            spinRedisProperties.getDelayQueue().getCorePoolSize(),
-            spinRedisProperties.getDelayQueue().getMaxPoolSize(),
-            spinRedisProperties.getDelayQueue().getKeepAliveTime().toMillis(),
-            spinRedisProperties.getDelayQueue().getWorkQueueSize());
+                                           @Nullable List<DelayMessageHandler> messageHandlers,
+                                           @Nullable DelayMessageCodec messageCodec) {
+        SpinRedisProperties.DelayQueue delayQueue = spinRedisProperties.getDelayQueue();
+        DelayQueueProperties properties = new DelayQueueProperties(delayQueue.getName(), delayQueue.getScheduleGroupId());
+        properties.setCorePoolSize(delayQueue.getCorePoolSize());
+        properties.setMaxPoolSize(delayQueue.getMaxPoolSize());
+        properties.setKeepAliveTimeInMs(delayQueue.getKeepAliveTime().toMillis());
+        properties.setWorkQueueSize(delayQueue.getWorkQueueSize());
+        properties.setTransferBatchSize(delayQueue.getTransferBatchSize());
+        properties.setPublishBatchSize(delayQueue.getPublishBatchSize());
+        properties.setReliable(Boolean.TRUE.equals(delayQueue.getReliable()));
+        properties.setVisibilityTimeoutInMs(delayQueue.getVisibilityTimeout().toMillis());
+        properties.setMaxDeliveryAttempts(delayQueue.getMaxDeliveryAttempts());
+        properties.setDeadLetterTopic(delayQueue.getDeadLetterTopic());
+        properties.setDeadLetterRetentionInMs(delayQueue.getDeadLetterRetention().toMillis());
+        properties.setShards(delayQueue.getShards());
+        properties.setTransferLeaseTimeInMs(delayQueue.getTransferLeaseTime().toMillis());
+        if (null != messageCodec) {
+            properties.setCodec(messageCodec);
+        } else {
+            String[] trustedPackages = null == delayQueue.getTrustedPackages() ? new String[0] : delayQueue.getTrustedPackages().toArray(new String[0]);
+            properties.setCodec(SpinRedisProperties.CodecType.JSON == delayQueue.getCodec() ? new JsonDelayMessageCodec(trustedPackages)
+                : new BinaryDelayMessageCodec(trustedPackages));
+        }
+        return new RedisDelayQueue(properties, redisClientWrapper, messageHandlers);
     }
 }
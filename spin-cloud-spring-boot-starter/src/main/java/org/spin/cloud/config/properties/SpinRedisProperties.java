@@ -4,6 +4,8 @@ import org.spin.data.redis.LettuceRedisProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * TITLE
@@ -32,6 +34,17 @@ public class SpinRedisProperties extends LettuceRedisProperties {
         private Integer maxPoolSize = 10;
         private Duration keepAliveTime = Duration.ofMinutes(3);
         private Integer workQueueSize = 20;
+        private Integer transferBatchSize = 500;
+        private Integer publishBatchSize = 1000;
+        private Boolean reliable = false;
+        private Duration visibilityTimeout = Duration.ofMinutes(1);
+        private Integer maxDeliveryAttempts = 3;
+        private String deadLetterTopic = "DeadLetter";
+        private Duration deadLetterRetention = Duration.ofDays(7);
+        private Integer shards = 1;
+        private Duration transferLeaseTime = Duration.ofSeconds(10);
+        private CodecType codec = CodecType.BINARY;
+        private List<String> trustedPackages = new ArrayList<>();
 
         public String getName() {
             return name;
@@ -80,5 +93,108 @@ public class SpinRedisProperties extends LettuceRedisProperties {
         public void setWorkQueueSize(Integer workQueueSize) {
             this.workQueueSize = workQueueSize;
         }
+
+        public Integer getTransferBatchSize() {
+            return transferBatchSize;
+        }
+
+        public void setTransferBatchSize(Integer transferBatchSize) {
+            this.transferBatchSize = transferBatchSize;
+        }
+
+        public Integer getPublishBatchSize() {
+            return publishBatchSize;
+        }
+
+        public void setPublishBatchSize(Integer publishBatchSize) {
+            this.publishBatchSize = publishBatchSize;
+        }
+
+        public Boolean getReliable() {
+            return reliable;
+        }
+
+        public void setReliable(Boolean reliable) {
+            this.reliable = reliable;
+        }
+
+        public Duration getVisibilityTimeout() {
+            return visibilityTimeout;
+        }
+
+        public void setVisibilityTimeout(Duration visibilityTimeout) {
+            this.visibilityTimeout = visibilityTimeout;
+        }
+
+        public Integer getMaxDeliveryAttempts() {
+            return maxDeliveryAttempts;
+        }
+
+        public void setMaxDeliveryAttempts(Integer maxDeliveryAttempts) {
+            this.maxDeliveryAttempts = maxDeliveryAttempts;
+        }
+
+        public String getDeadLetterTopic() {
+            return deadLetterTopic;
+        }
+
+        public void setDeadLetterTopic(String deadLetterTopic) {
+            this.deadLetterTopic = deadLetterTopic;
+        }
+
+        public Duration getDeadLetterRetention() {
+            return deadLetterRetention;
+        }
+
+        public void setDeadLetterRetention(Duration deadLetterRetention) {
+            this.deadLetterRetention = deadLetterRetention;
+        }
+
+        public Integer getShards() {
+            return shards;
+        }
+
+        public void setShards(Integer shards) {
+            this.shards = shards;
+        }
+
+        public Duration getTransferLeaseTime() {
+            return transferLeaseTime;
+        }
+
+        public void setTransferLeaseTime(Duration transferLeaseTime) {
+            this.transferLeaseTime = transferLeaseTime;
+        }
+
+        public CodecType getCodec() {
+            return codec;
+        }
+
+        public void setCodec(CodecType codec) {
+            this.codec = codec;
+        }
+
+        public List<String> getTrustedPackages() {
+            return trustedPackages;
+        }
+
+        public void setTrustedPackages(List<String> trustedPackages) {
+            this.trustedPackages = trustedPackages;
+        }
+    }
+
+    /**
+     * 延迟消息的存储格式
+     */
+    public enum CodecType {
+        /**
+         * 紧凑的二进制格式
+         */
+        BINARY,
+
+        /**
+         * 与早期版本兼容的JSON格式
+         */
+        JSON
     }
 }
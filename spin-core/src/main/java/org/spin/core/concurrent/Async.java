@@ -5,19 +5,24 @@ import org.slf4j.LoggerFactory;
 import org.spin.core.Assert;
 import org.spin.core.function.ExceptionalHandler;
 import org.spin.core.function.FinalConsumer;
+import org.spin.core.retry.Retries;
 import org.spin.core.throwable.SpinException;
 import org.spin.core.trait.Order;
 import org.spin.core.util.Util;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -41,7 +46,35 @@ public final class Async extends Util {
 
     private static long poolTimeout = 1000L;
 
+    /**
+     * 按线程工厂创建每任务一个线程的执行器(JDK 21+), 不支持时为null
+     */
+    private static final Method VIRTUAL_THREAD_EXECUTOR;
+    private static final Method VIRTUAL_THREAD_BUILDER;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
     static {
+        Method executor = null;
+        Method builder = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            builder = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            // 预览版JDK在未开启预览特性时调用会抛出异常
+            builder.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ignore) {
+            executor = null;
+        }
+        VIRTUAL_THREAD_EXECUTOR = executor;
+        VIRTUAL_THREAD_BUILDER = builder;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+
         POOL_EXECUTOR_MAP.put(COMMON_POOL_NAME, new ThreadPoolWrapper(COMMON_POOL_NAME, 10, 200, 30L,
             TimeUnit.SECONDS,
             5,
@@ -66,6 +99,14 @@ public final class Async extends Util {
         INTERCEPTORS.put(poolName, list);
     }
 
+    static void unregisterInterceptor(AsyncInterceptor interceptor) {
+        INTERCEPTORS.computeIfPresent(interceptor.getPoolName(), (k, v) -> {
+            List<AsyncInterceptor> list = new ArrayList<>(v);
+            list.remove(interceptor);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
     /**
      * 初始化一个指定名称的线程池
      *
@@ -114,6 +155,41 @@ public final class Async extends Util {
         POOL_EXECUTOR_MAP.get(name).init();
     }
 
+    /**
+     * 初始化一个指定名称与类型的线程池
+     * <p>{@link PoolType#FORK_JOIN}适合CPU密集的任务拆分, {@link PoolType#VIRTUAL}为每个任务创建一个虚拟线程, 适合大量阻塞IO的任务,
+     * 只在支持虚拟线程的JDK上可用. 拦截器、上下文与任务统计对所有类型的线程池同样生效</p>
+     *
+     * @param name        线程池名称
+     * @param type        线程池类型
+     * @param parallelism 并行度, 对普通线程池为固定线程数, 对虚拟线程无意义
+     */
+    public static void initThreadPool(String name, PoolType type, int parallelism) {
+        Assert.notEmpty(name, "线程池名称不能为空");
+        Assert.notTrue(COMMON_POOL_NAME.equals(name), "公共线程池不允许用户创建");
+        Assert.notNull(type, "线程池类型不能为空");
+        if (PoolType.VIRTUAL == type) {
+            Assert.isTrue(isVirtualThreadSupported(), "当前JDK不支持虚拟线程");
+        } else {
+            Assert.gt(parallelism, 0, "并行度必须大于0");
+        }
+        ThreadPoolWrapper poolWrapper = PoolType.THREAD_POOL == type
+            ? new ThreadPoolWrapper(name, parallelism, parallelism, 10000L, TimeUnit.MILLISECONDS, -1, new ThreadPoolExecutor.AbortPolicy())
+            : new ThreadPoolWrapper(name, type, Math.max(parallelism, 0), Math.max(parallelism, 0), 0L, TimeUnit.MILLISECONDS, -1, null);
+
+        Assert.isTrue(null == POOL_EXECUTOR_MAP.putIfAbsent(name, poolWrapper), "线程池已经存在: " + name);
+        POOL_EXECUTOR_MAP.get(name).init();
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    public static boolean isVirtualThreadSupported() {
+        return null != VIRTUAL_THREAD_EXECUTOR;
+    }
+
     /**
      * 提交任务到公用线程池
      *
@@ -181,37 +257,54 @@ public final class Async extends Util {
     public static <V> Future<V> submit(String name, Callable<V> callable, FinalConsumer<Exception> exceptionHandler) {
         ThreadPoolWrapper poolWrapper = Assert.notNull(POOL_EXECUTOR_MAP.get(name), "指定的线程池不存在: " + name);
         checkReady(poolWrapper);
-        final long task = poolWrapper.info.submitTask();
+        final TrackingLevel level = poolWrapper.trackingLevel;
+        final ThreadPoolInfo info = poolWrapper.info;
+        final List<AsyncInterceptor> globalInterceptors = INTERCEPTORS.get(GLOBAL_INTERCEPTOR);
+        final List<AsyncInterceptor> poolInterceptors = INTERCEPTORS.get(name);
+        final long task = TrackingLevel.FULL == level ? ThreadPoolInfo.taskIdGenerator.getAndIncrement() : -1L;
+        final long submitted = TrackingLevel.OFF == level ? 0L : info.submitTask(task);
         // beforeAsync
-        AsyncContext context = new AsyncContext();
-        intercept(GLOBAL_INTERCEPTOR, context, 1);
-        intercept(name, context, 1);
-        Future<V> result = poolWrapper.executor.submit(() -> {
-            logger.info("Task Scheduled from : {}", context.getScheduleThreadName());
-            // beforeExecute
-            intercept(GLOBAL_INTERCEPTOR, context, 2);
-            intercept(name, context, 2);
-            poolWrapper.info.runTask(task);
-            try {
-                V res = callable.call();
-                poolWrapper.info.completeTask(task, true);
-                return res;
-            } catch (Exception e) {
-                poolWrapper.info.completeTask(task, false);
-                if (null != exceptionHandler) {
-                    exceptionHandler.accept(e);
+        final AsyncContext context = null == globalInterceptors && null == poolInterceptors && TrackingLevel.FULL != level ? null : new AsyncContext();
+        intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 1);
+        intercept(poolInterceptors, name, context, 1);
+        Future<V> result;
+        try {
+            result = poolWrapper.executor.submit(() -> {
+                if (TrackingLevel.FULL == level) {
+                    logger.info("Task Scheduled from : {}", context.getScheduleThreadName());
                 }
-                return null;
-            } finally {
-                // afterExecute
-                intercept(GLOBAL_INTERCEPTOR, context, 3);
-                intercept(name, context, 3);
-            }
-        });
+                // beforeExecute
+                intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 2);
+                intercept(poolInterceptors, name, context, 2);
+                long started = TrackingLevel.OFF == level ? 0L : info.runTask(task, submitted);
+                try {
+                    V res = callable.call();
+                    if (TrackingLevel.OFF != level) {
+                        info.completeTask(task, started, true);
+                    }
+                    return res;
+                } catch (Exception e) {
+                    if (TrackingLevel.OFF != level) {
+                        info.completeTask(task, started, false);
+                    }
+                    if (null != exceptionHandler) {
+                        exceptionHandler.accept(e);
+                    }
+                    return null;
+                } finally {
+                    // afterExecute
+                    intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 3);
+                    intercept(poolInterceptors, name, context, 3);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            info.rejectTask(task, TrackingLevel.OFF != level);
+            throw e;
+        }
 
         // afterAsync
-        intercept(GLOBAL_INTERCEPTOR, context, 4);
-        intercept(name, context, 4);
+        intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 4);
+        intercept(poolInterceptors, name, context, 4);
         return result;
     }
 
@@ -235,35 +328,186 @@ public final class Async extends Util {
     public static void execute(String name, ExceptionalHandler<Exception> callable, FinalConsumer<Exception> exceptionHandler) {
         ThreadPoolWrapper poolWrapper = Assert.notNull(POOL_EXECUTOR_MAP.get(name), "指定的线程池不存在: " + name);
         checkReady(poolWrapper);
-        final long task = poolWrapper.info.submitTask();
+        final TrackingLevel level = poolWrapper.trackingLevel;
+        final ThreadPoolInfo info = poolWrapper.info;
+        final List<AsyncInterceptor> globalInterceptors = INTERCEPTORS.get(GLOBAL_INTERCEPTOR);
+        final List<AsyncInterceptor> poolInterceptors = INTERCEPTORS.get(name);
+        final long task = TrackingLevel.FULL == level ? ThreadPoolInfo.taskIdGenerator.getAndIncrement() : -1L;
+        final long submitted = TrackingLevel.OFF == level ? 0L : info.submitTask(task);
         // beforeAsync
-        AsyncContext context = new AsyncContext();
-        intercept(GLOBAL_INTERCEPTOR, context, 1);
-        intercept(name, context, 1);
-        poolWrapper.executor.execute(() -> {
-            logger.info("Task Scheduled from : {}", context.getScheduleThreadName());
-            // beforeExecute
-            intercept(GLOBAL_INTERCEPTOR, context, 2);
-            intercept(name, context, 2);
-            poolWrapper.info.runTask(task);
-            try {
-                callable.handle();
-            } catch (Exception e) {
-                poolWrapper.info.completeTask(task, false);
-                if (null != exceptionHandler) {
-                    exceptionHandler.accept(e);
+        final AsyncContext context = null == globalInterceptors && null == poolInterceptors && TrackingLevel.FULL != level ? null : new AsyncContext();
+        intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 1);
+        intercept(poolInterceptors, name, context, 1);
+        try {
+            poolWrapper.executor.execute(() -> {
+                if (TrackingLevel.FULL == level) {
+                    logger.info("Task Scheduled from : {}", context.getScheduleThreadName());
                 }
-                return;
-            } finally {
-                // afterExecute
-                intercept(GLOBAL_INTERCEPTOR, context, 3);
-                intercept(name, context, 3);
-            }
-            poolWrapper.info.completeTask(task, true);
-        });
+                // beforeExecute
+                intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 2);
+                intercept(poolInterceptors, name, context, 2);
+                long started = TrackingLevel.OFF == level ? 0L : info.runTask(task, submitted);
+                try {
+                    callable.handle();
+                } catch (Exception e) {
+                    if (TrackingLevel.OFF != level) {
+                        info.completeTask(task, started, false);
+                    }
+                    if (null != exceptionHandler) {
+                        exceptionHandler.accept(e);
+                    }
+                    return;
+                } finally {
+                    // afterExecute
+                    intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 3);
+                    intercept(poolInterceptors, name, context, 3);
+                }
+                if (TrackingLevel.OFF != level) {
+                    info.completeTask(task, started, true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            info.rejectTask(task, TrackingLevel.OFF != level);
+            throw e;
+        }
         // afterAsync
-        intercept(GLOBAL_INTERCEPTOR, context, 4);
-        intercept(name, context, 4);
+        intercept(globalInterceptors, GLOBAL_INTERCEPTOR, context, 4);
+        intercept(poolInterceptors, name, context, 4);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 按提交顺序汇总全部结果
+     * <p>任一任务失败时立即以该异常结束, 并取消其余任务; 超过期限时以{@link TimeoutException}结束, 并取消所有未完成的任务.
+     * 已在执行的任务会被中断, 尚未开始的任务出队后直接跳过. 返回的Future被取消时同样会取消所有任务</p>
+     * <p>线程池饱和时, 任务不会按拒绝策略在调用线程上执行, 返回的Future以{@link RejectedExecutionException}结束</p>
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 全部任务的结果
+     */
+    public static <V> CompletableFuture<List<V>> invokeAll(String name, Collection<? extends Callable<V>> tasks, long timeout, TimeUnit unit) {
+        return invokeAll(name, tasks, null, timeout, unit);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 按提交顺序汇总全部结果, 每个任务按重试配置独立重试
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param retries 重试配置, 为null时不重试
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 全部任务的结果
+     * @see #invokeAll(String, Collection, long, TimeUnit)
+     */
+    public static <V> CompletableFuture<List<V>> invokeAll(String name, Collection<? extends Callable<V>> tasks, Retries retries, long timeout, TimeUnit unit) {
+        CompletableFuture<List<V>> result = new CompletableFuture<>();
+        List<ForkedTask<V>> forked = fork(tasks, retries, result);
+        AtomicInteger remaining = new AtomicInteger(forked.size());
+        for (ForkedTask<V> task : forked) {
+            task.whenComplete((r, e) -> {
+                if (null != e) {
+                    result.completeExceptionally(unwrap(e));
+                } else if (remaining.decrementAndGet() == 0) {
+                    result.complete(forked.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+                }
+            });
+        }
+        if (forked.isEmpty()) {
+            result.complete(new ArrayList<>(0));
+        }
+        return join(name, forked, result, timeout, unit);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 返回最先成功的结果, 并取消其余任务
+     * <p>所有任务均失败时以最后一个异常结束; 超过期限时以{@link TimeoutException}结束, 并取消所有未完成的任务</p>
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 最先成功的任务结果
+     */
+    public static <V> CompletableFuture<V> invokeAny(String name, Collection<? extends Callable<V>> tasks, long timeout, TimeUnit unit) {
+        return invokeAny(name, tasks, null, timeout, unit);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 返回最先成功的结果, 每个任务按重试配置独立重试
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param retries 重试配置, 为null时不重试
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 最先成功的任务结果
+     * @see #invokeAny(String, Collection, long, TimeUnit)
+     */
+    public static <V> CompletableFuture<V> invokeAny(String name, Collection<? extends Callable<V>> tasks, Retries retries, long timeout, TimeUnit unit) {
+        Assert.notEmpty(tasks, "任务列表不能为空");
+        CompletableFuture<V> result = new CompletableFuture<>();
+        List<ForkedTask<V>> forked = fork(tasks, retries, result);
+        AtomicInteger remaining = new AtomicInteger(forked.size());
+        for (ForkedTask<V> task : forked) {
+            task.whenComplete((r, e) -> {
+                if (null == e) {
+                    result.complete(r);
+                } else if (remaining.decrementAndGet() == 0) {
+                    result.completeExceptionally(unwrap(e));
+                }
+            });
+        }
+        return join(name, forked, result, timeout, unit);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 以最先结束的任务为准(无论成功或失败), 并取消其余任务
+     * <p>超过期限时以{@link TimeoutException}结束, 并取消所有未完成的任务</p>
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 最先结束的任务结果
+     */
+    public static <V> CompletableFuture<V> race(String name, Collection<? extends Callable<V>> tasks, long timeout, TimeUnit unit) {
+        return race(name, tasks, null, timeout, unit);
+    }
+
+    /**
+     * 在指定线程池中并行执行一组任务, 以最先结束的任务为准, 每个任务按重试配置独立重试
+     *
+     * @param name    线程池名称
+     * @param tasks   任务列表
+     * @param retries 重试配置, 为null时不重试
+     * @param timeout 整组任务共享的超时时间, 小于等于0表示不限制
+     * @param unit    时间单位
+     * @param <V>     返回结果类型
+     * @return 最先结束的任务结果
+     * @see #race(String, Collection, long, TimeUnit)
+     */
+    public static <V> CompletableFuture<V> race(String name, Collection<? extends Callable<V>> tasks, Retries retries, long timeout, TimeUnit unit) {
+        Assert.notEmpty(tasks, "任务列表不能为空");
+        CompletableFuture<V> result = new CompletableFuture<>();
+        List<ForkedTask<V>> forked = fork(tasks, retries, result);
+        for (ForkedTask<V> task : forked) {
+            task.whenComplete((r, e) -> {
+                if (null == e) {
+                    result.complete(r);
+                } else {
+                    result.completeExceptionally(unwrap(e));
+                }
+            });
+        }
+        return join(name, forked, result, timeout, unit);
     }
 
     /**
@@ -312,6 +556,16 @@ public final class Async extends Util {
         Async.poolTimeout = poolTimeout;
     }
 
+    /**
+     * 设置线程池的任务跟踪级别, 只影响之后提交的任务
+     *
+     * @param name  线程池名称
+     * @param level 跟踪级别
+     */
+    public static void setTrackingLevel(String name, TrackingLevel level) {
+        Assert.notNull(POOL_EXECUTOR_MAP.get(name), "指定的线程池不存在: " + name).trackingLevel = Assert.notNull(level, "跟踪级别不能为空");
+    }
+
     public static ThreadFactory buildFactory(String name, Boolean daemon, Integer priority, Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
         final AtomicLong count = new AtomicLong(0);
         final String namePattern = "ThreadPool-%s-%d";
@@ -331,6 +585,65 @@ public final class Async extends Util {
         };
     }
 
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            Object builder = BUILDER_NAME.invoke(VIRTUAL_THREAD_BUILDER.invoke(null), "VirtualThread-" + name + "-", 0L);
+            return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null, BUILDER_FACTORY.invoke(builder));
+        } catch (ReflectiveOperationException | NullPointerException e) {
+            throw new SpinException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static <V> List<ForkedTask<V>> fork(Collection<? extends Callable<V>> tasks, Retries retries, CompletableFuture<?> result) {
+        Assert.notNull(tasks, "任务列表不能为空");
+        List<ForkedTask<V>> forked = new ArrayList<>(tasks.size());
+        for (Callable<V> task : tasks) {
+            forked.add(new ForkedTask<>(Assert.notNull(task, "任务不能为空"), retries));
+        }
+        // 整组结束(完成、失败、超时或被调用方取消)后, 取消所有未完成的任务
+        result.whenComplete((r, e) -> forked.forEach(it -> it.cancel(true)));
+        return forked;
+    }
+
+    private static <R> CompletableFuture<R> join(String name, List<? extends ForkedTask<?>> forked, CompletableFuture<R> result, long timeout, TimeUnit unit) {
+        Assert.notNull(POOL_EXECUTOR_MAP.get(name), "指定的线程池不存在: " + name);
+        if (timeout > 0 && !result.isDone()) {
+            ScheduledFuture<?> deadline = DeadlineTimer.TIMER.schedule(() ->
+                result.completeExceptionally(new TimeoutException("任务组执行超时: " + timeout + " " + unit)), timeout, unit);
+            result.whenComplete((r, e) -> deadline.cancel(false));
+        }
+        // 拒绝策略为CallerRunsPolicy的线程池(如公共线程池)饱和时, 任务会在提交线程上同步执行, 提交线程被阻塞到任务结束,
+        // 期限无法生效. 此时不执行任务, 直接以RejectedExecutionException结束整组任务
+        Thread caller = Thread.currentThread();
+        boolean[] submitting = {true};
+        try {
+            for (ForkedTask<?> task : forked) {
+                if (result.isDone()) {
+                    break;
+                }
+                try {
+                    execute(name, () -> {
+                        if (Thread.currentThread() == caller && submitting[0]) {
+                            RejectedExecutionException e = new RejectedExecutionException("线程池已饱和, 任务组拒绝在提交线程上执行: " + name);
+                            result.completeExceptionally(e);
+                            throw e;
+                        }
+                        task.handle();
+                    });
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        } finally {
+            submitting[0] = false;
+        }
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && null != e.getCause() ? e.getCause() : e;
+    }
+
     private static void checkReady(ThreadPoolWrapper poolWrapper) {
         long wait = System.currentTimeMillis();
         while (poolWrapper.status != ThreadPoolState.READY) {
@@ -342,9 +655,8 @@ public final class Async extends Util {
         }
     }
 
-    private static void intercept(String poolName, AsyncContext context, int step) {
-        if (INTERCEPTORS.containsKey(poolName)) {
-            List<AsyncInterceptor> interceptors = INTERCEPTORS.get(poolName);
+    private static void intercept(List<AsyncInterceptor> interceptors, String poolName, AsyncContext context, int step) {
+        if (null != interceptors) {
             for (AsyncInterceptor interceptor : interceptors) {
                 try {
                     switch (step) {
@@ -369,7 +681,7 @@ public final class Async extends Util {
     }
 
     public static class ThreadPoolWrapper {
-        private ThreadPoolExecutor executor;
+        private ExecutorService executor;
         private ThreadPoolInfo info;
         private volatile ThreadPoolState status = ThreadPoolState.NEW;
 
@@ -380,8 +692,10 @@ public final class Async extends Util {
         private final TimeUnit timeUnit;
         private final int queueSize;
         private final RejectedExecutionHandler rejectedExecutionHandler;
+        private final PoolType type;
 
         private final Object lock = new Object();
+        private volatile TrackingLevel trackingLevel = TrackingLevel.FULL;
 
         /**
          * 线程池构造方法
@@ -395,6 +709,10 @@ public final class Async extends Util {
          * @param rejectedExecutionHandler 拒绝策略
          */
         public ThreadPoolWrapper(String name, int corePoolSize, int maxPoolSize, long keepAliveTimeInMs, TimeUnit timeUnit, int queueSize, RejectedExecutionHandler rejectedExecutionHandler) {
+            this(name, PoolType.THREAD_POOL, corePoolSize, maxPoolSize, keepAliveTimeInMs, timeUnit, queueSize, rejectedExecutionHandler);
+        }
+
+        private ThreadPoolWrapper(String name, PoolType type, int corePoolSize, int maxPoolSize, long keepAliveTimeInMs, TimeUnit timeUnit, int queueSize, RejectedExecutionHandler rejectedExecutionHandler) {
             int qs = queueSize >= 0 ? queueSize : Integer.MAX_VALUE;
 
             this.name = name;
@@ -404,30 +722,59 @@ public final class Async extends Util {
             this.timeUnit = timeUnit;
             this.queueSize = qs;
             this.rejectedExecutionHandler = rejectedExecutionHandler;
-
-
+            this.type = type;
         }
 
+        /**
+         * 获取底层的ThreadPoolExecutor
+         *
+         * @return 线程池类型不是{@link PoolType#THREAD_POOL}时返回null
+         */
         public ThreadPoolExecutor getExecutor() {
+            return executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+        }
+
+        public ExecutorService getExecutorService() {
             return executor;
         }
 
+        public PoolType getType() {
+            return type;
+        }
+
         public ThreadPoolInfo getInfo() {
             return info;
         }
 
+        public TrackingLevel getTrackingLevel() {
+            return trackingLevel;
+        }
+
         private void init() {
             if (ThreadPoolState.NEW == status) {
                 synchronized (lock) {
                     if (ThreadPoolState.NEW == status) {
                         status = ThreadPoolState.PREPARING;
-                        logger.info("Initiating Thread Pool[{}]: CoreSize - {}, MaxSize - {}, QueueSize - {}", name, corePoolSize, maxPoolSize, queueSize);
-                        this.executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTimeInMs,
-                            timeUnit,
-                            queueSize == 0 ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(queueSize),
-                            buildFactory(name, COMMON_POOL_NAME.equals(name) ? true : null, null, (thread, throwable) -> {
-                            }),
-                            rejectedExecutionHandler);
+                        logger.info("Initiating {} Pool[{}]: CoreSize - {}, MaxSize - {}, QueueSize - {}", type, name, corePoolSize, maxPoolSize, queueSize);
+                        switch (type) {
+                            case FORK_JOIN:
+                                this.executor = new ForkJoinPool(corePoolSize, pool -> {
+                                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                                    thread.setName(String.format(Locale.ROOT, "ForkJoinPool-%s-%d", name, thread.getPoolIndex()));
+                                    return thread;
+                                }, null, true);
+                                break;
+                            case VIRTUAL:
+                                this.executor = newVirtualThreadExecutor(name);
+                                break;
+                            default:
+                                this.executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTimeInMs,
+                                    timeUnit,
+                                    queueSize == 0 ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(queueSize),
+                                    buildFactory(name, COMMON_POOL_NAME.equals(name) ? true : null, null, (thread, throwable) -> {
+                                    }),
+                                    rejectedExecutionHandler);
+                        }
                         this.info = new ThreadPoolInfo(name, corePoolSize, maxPoolSize, queueSize);
                         status = ThreadPoolState.READY;
                     }
@@ -489,6 +836,46 @@ public final class Async extends Util {
         STOPPING
     }
 
+    /**
+     * 线程池类型
+     */
+    public enum PoolType {
+        /**
+         * 普通线程池(ThreadPoolExecutor)
+         */
+        THREAD_POOL,
+
+        /**
+         * 工作窃取线程池(ForkJoinPool), 适合CPU密集的任务拆分
+         */
+        FORK_JOIN,
+
+        /**
+         * 每个任务一个虚拟线程, 适合大量阻塞IO的任务, 需要JDK 21及以上
+         */
+        VIRTUAL
+    }
+
+    /**
+     * 任务跟踪级别
+     */
+    public enum TrackingLevel {
+        /**
+         * 不跟踪, 不做任何统计
+         */
+        OFF,
+
+        /**
+         * 只统计计数与耗时分布, 不记录单个任务, 不输出日志
+         */
+        COUNTERS,
+
+        /**
+         * 在计数的基础上记录每个未完成的任务, 并在任务开始时输出调度日志
+         */
+        FULL
+    }
+
     public static class ThreadPoolInfo {
         private static final AtomicLong taskIdGenerator = new AtomicLong(0L);
 
@@ -515,27 +902,32 @@ public final class Async extends Util {
         /**
          * 合计任务数
          */
-        private final AtomicLong taskCnt = new AtomicLong(0L);
+        private final LongAdder taskCnt = new LongAdder();
 
         /**
          * 正在运行的任务数
          */
-        private final AtomicLong runningTaskCnt = new AtomicLong(0L);
+        private final LongAdder runningTaskCnt = new LongAdder();
 
         /**
          * 阻塞的任务数
          */
-        private final AtomicLong blockedTaskCnt = new AtomicLong(0L);
+        private final LongAdder blockedTaskCnt = new LongAdder();
 
         /**
          * 合计已完成任务数
          */
-        private final AtomicLong completedTaskCnt = new AtomicLong(0L);
+        private final LongAdder completedTaskCnt = new LongAdder();
 
         /**
          * 合计正确完成的任务数
          */
-        private final AtomicLong correctCompletedCnt = new AtomicLong(0L);
+        private final LongAdder correctCompletedCnt = new LongAdder();
+
+        /**
+         * 合计被拒绝的任务数
+         */
+        private final LongAdder rejectedTaskCnt = new LongAdder();
 
         /**
          * 线程池所有任务累计执行时间
@@ -550,25 +942,35 @@ public final class Async extends Util {
         /**
          * 线程池单个任务最大执行时间
          */
-        private final AtomicLong maxExecTime = new AtomicLong(0L);
+        private final LongAccumulator maxExecTime = new LongAccumulator(Math::max, 0L);
 
         /**
          * 线程池单个任务最小执行时间
          */
-        private final AtomicLong minExecTime = new AtomicLong(Long.MAX_VALUE);
+        private final LongAccumulator minExecTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
 
         /**
          * 线程池单个任务最大等待时间
          */
-        private final AtomicLong maxWaitTime = new AtomicLong(0L);
+        private final LongAccumulator maxWaitTime = new LongAccumulator(Math::max, 0L);
 
         /**
          * 线程池单个任务最小等待时间
          */
-        private final AtomicLong minWaitTime = new AtomicLong(Long.MAX_VALUE);
+        private final LongAccumulator minWaitTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
 
         /**
-         * 未完成任务列表
+         * 任务排队等待时间分布
+         */
+        private final LatencyHistogram waitTimeHistogram = new LatencyHistogram();
+
+        /**
+         * 任务执行时间分布
+         */
+        private final LatencyHistogram execTimeHistogram = new LatencyHistogram();
+
+        /**
+         * 未完成任务列表, 只在{@link TrackingLevel#FULL}级别下记录
          */
         private final Map<Long, TaskInfo> tasks = new ConcurrentHashMap<>();
 
@@ -579,42 +981,74 @@ public final class Async extends Util {
             this.queueCapacity = queueCapacity;
         }
 
-        private long submitTask() {
-            long id = taskIdGenerator.getAndIncrement();
-            TaskInfo taskInfo = new TaskInfo();
-            taskInfo.submitTime = System.currentTimeMillis();
-            tasks.put(id, taskInfo);
-            taskCnt.incrementAndGet();
-            blockedTaskCnt.incrementAndGet();
-            return id;
-        }
-
-        private void runTask(long taskId) {
-            TaskInfo taskInfo = tasks.get(taskId);
-            if (null != taskInfo) {
-                taskInfo.runTime = System.currentTimeMillis();
-                blockedTaskCnt.decrementAndGet();
-                runningTaskCnt.incrementAndGet();
-                long waitTime = taskInfo.runTime - taskInfo.submitTime;
-                accrueWaitTime.accumulate(waitTime);
-                maxWaitTime.accumulateAndGet(waitTime, Math::max);
-                minWaitTime.accumulateAndGet(waitTime, Math::min);
+        /**
+         * 任务提交
+         *
+         * @param taskId 任务id, 小于0时不记录任务
+         * @return 提交时间(纳秒)
+         */
+        private long submitTask(long taskId) {
+            if (taskId >= 0) {
+                TaskInfo taskInfo = new TaskInfo();
+                taskInfo.submitTime = System.currentTimeMillis();
+                tasks.put(taskId, taskInfo);
+            }
+            taskCnt.increment();
+            blockedTaskCnt.increment();
+            return System.nanoTime();
+        }
+
+        private void rejectTask(long taskId, boolean tracked) {
+            rejectedTaskCnt.increment();
+            if (tracked) {
+                taskCnt.decrement();
+                blockedTaskCnt.decrement();
+            }
+            if (taskId >= 0) {
+                tasks.remove(taskId);
             }
         }
 
-        private void completeTask(long taskId, boolean success) {
-            TaskInfo taskInfo = tasks.remove(taskId);
-            if (null != taskInfo) {
-                taskInfo.finishTime = System.currentTimeMillis();
-                runningTaskCnt.decrementAndGet();
-                completedTaskCnt.incrementAndGet();
-                if (success) {
-                    correctCompletedCnt.incrementAndGet();
+        /**
+         * 任务开始执行
+         *
+         * @param taskId      任务id, 小于0时表示未记录任务
+         * @param submitNanos 提交时间(纳秒)
+         * @return 开始执行时间(纳秒)
+         */
+        private long runTask(long taskId, long submitNanos) {
+            long now = System.nanoTime();
+            blockedTaskCnt.decrement();
+            runningTaskCnt.increment();
+            long waitNanos = now - submitNanos;
+            long waitTime = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+            waitTimeHistogram.recordNanos(waitNanos);
+            accrueWaitTime.accumulate(waitTime);
+            maxWaitTime.accumulate(waitTime);
+            minWaitTime.accumulate(waitTime);
+            if (taskId >= 0) {
+                TaskInfo taskInfo = tasks.get(taskId);
+                if (null != taskInfo) {
+                    taskInfo.runTime = System.currentTimeMillis();
                 }
-                long execTime = taskInfo.finishTime - taskInfo.runTime;
-                accrueExecTime.accumulate(execTime);
-                maxExecTime.accumulateAndGet(execTime, Math::max);
-                minExecTime.accumulateAndGet(execTime, Math::min);
+            }
+            return now;
+        }
+
+        private void completeTask(long taskId, long runNanos, boolean success) {
+            long execNanos = System.nanoTime() - runNanos;
+            long execTime = TimeUnit.NANOSECONDS.toMillis(execNanos);
+            runningTaskCnt.decrement();
+            completedTaskCnt.increment();
+            if (success) {
+                correctCompletedCnt.increment();
+            }
+            execTimeHistogram.recordNanos(execNanos);
+            accrueExecTime.accumulate(execTime);
+            maxExecTime.accumulate(execTime);
+            minExecTime.accumulate(execTime);
+            if (taskId >= 0) {
+                tasks.remove(taskId);
             }
         }
 
@@ -635,23 +1069,43 @@ public final class Async extends Util {
         }
 
         public long getTaskCnt() {
-            return taskCnt.get();
+            return taskCnt.sum();
         }
 
         public long getRunningTaskCnt() {
-            return runningTaskCnt.get();
+            return runningTaskCnt.sum();
         }
 
         public long getBlockedTaskCnt() {
-            return blockedTaskCnt.get();
+            return blockedTaskCnt.sum();
         }
 
         public long getCompletedTaskCnt() {
-            return completedTaskCnt.get();
+            return completedTaskCnt.sum();
         }
 
         public long getCorrectCompletedCnt() {
-            return correctCompletedCnt.get();
+            return correctCompletedCnt.sum();
+        }
+
+        public long getRejectedTaskCnt() {
+            return rejectedTaskCnt.sum();
+        }
+
+        public long getFailedTaskCnt() {
+            return completedTaskCnt.sum() - correctCompletedCnt.sum();
+        }
+
+        public LatencyHistogram getWaitTimeHistogram() {
+            return waitTimeHistogram;
+        }
+
+        public LatencyHistogram getExecTimeHistogram() {
+            return execTimeHistogram;
+        }
+
+        public int getTrackedTaskCnt() {
+            return tasks.size();
         }
 
         public long getAccrueExecTime() {
@@ -690,12 +1144,15 @@ public final class Async extends Util {
                 ", blockedTaskCnt=" + blockedTaskCnt +
                 ", completedTaskCnt=" + completedTaskCnt +
                 ", correctCompletedCnt=" + correctCompletedCnt +
+                ", rejectedTaskCnt=" + rejectedTaskCnt +
                 ", accrueExecTime=" + accrueExecTime +
                 ", accrueWaitTime=" + accrueWaitTime +
                 ", maxExecTime=" + maxExecTime +
                 ", minExecTime=" + minExecTime +
                 ", maxWaitTime=" + maxWaitTime +
                 ", minWaitTime=" + minWaitTime +
+                ", waitTimeHistogram=" + waitTimeHistogram +
+                ", execTimeHistogram=" + execTimeHistogram +
                 '}';
         }
 
@@ -708,12 +1165,91 @@ public final class Async extends Util {
                 " 阻塞任务数=" + blockedTaskCnt +
                 " 合计已完成任务数=" + completedTaskCnt +
                 " 合计正确完成任务数=" + correctCompletedCnt +
+                " 合计拒绝任务数=" + rejectedTaskCnt +
                 " 累计执行时间=" + accrueExecTime +
                 " 累计等待时间=" + accrueWaitTime +
                 " 任务最长执行时间=" + maxExecTime +
                 " 任务最短执行时间=" + minExecTime +
                 " 任务最长等待时间=" + maxWaitTime +
-                " 任务最短等待时间=" + minWaitTime;
+                " 任务最短等待时间=" + minWaitTime +
+                " 等待时间分布=" + waitTimeHistogram +
+                " 执行时间分布=" + execTimeHistogram;
+        }
+    }
+
+    /**
+     * 可中断的分支任务
+     * <p>通过{@link #execute(String, ExceptionalHandler)}提交, 沿用线程池的拦截器与任务统计. 取消时中断正在执行的线程,
+     * 尚未开始执行的任务在出队后直接跳过</p>
+     */
+    private static final class ForkedTask<V> extends CompletableFuture<V> implements ExceptionalHandler<Exception> {
+        private final Callable<V> callable;
+        private final Retries retries;
+        private Thread runner;
+
+        private ForkedTask(Callable<V> callable, Retries retries) {
+            this.callable = callable;
+            this.retries = retries;
+        }
+
+        @Override
+        public void handle() throws Exception {
+            synchronized (this) {
+                if (isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                complete(null == retries ? callable.call() : retries.<V>onResult(null).execInterruptible(e -> {
+                    if (isDone()) {
+                        throw new CancellationException();
+                    }
+                    try {
+                        return callable.call();
+                    } catch (InterruptedException ie) {
+                        // 恢复中断标记, 使重试在退避等待时立即退出
+                        Thread.currentThread().interrupt();
+                        throw ie;
+                    }
+                }));
+            } catch (Exception e) {
+                completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                if (isCancelled()) {
+                    // 清除取消时发出的中断, 避免影响线程池中的下一个任务
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && mayInterruptIfRunning) {
+                synchronized (this) {
+                    if (null != runner) {
+                        runner.interrupt();
+                    }
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * 任务组超时计时器, 首次使用时才创建
+     */
+    private static final class DeadlineTimer {
+        private static final ScheduledThreadPoolExecutor TIMER;
+
+        static {
+            TIMER = new ScheduledThreadPoolExecutor(1, buildFactory("AsyncDeadline", true, null, null));
+            TIMER.setRemoveOnCancelPolicy(true);
         }
     }
 
@@ -16,6 +16,13 @@ public interface AsyncInterceptor extends Order {
         Async.registerInterceptor(this);
     }
 
+    /**
+     * 移除已注册的拦截器
+     */
+    default void unregister() {
+        Async.unregisterInterceptor(this);
+    }
+
     /**
      * 拦截器生效的线程池名称，ALL代表全局生效
      *
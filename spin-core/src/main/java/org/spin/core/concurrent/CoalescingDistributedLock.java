@@ -0,0 +1,90 @@
+package org.spin.core.concurrent;
+
+import org.spin.core.Assert;
+
+/**
+ * 本地合并的分布式锁装饰器
+ * <p>同一进程中同一个key的等待者先在本地排队, 只有队首访问远程锁. 持有者释放时如果本地还有等待者,
+ * 远程锁不释放而是直接移交给下一个本地等待者, 连续移交达到上限后才真正释放, 以免其他进程饥饿</p>
+ * <p>移交的远程锁沿用原有的超时时间, 超时时间较短时应配合看门狗续期使用. 排队与移交逻辑见{@link LocalLockCoalescer}</p>
+ * <p>Created by xuweinan on 2021/10/27</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class CoalescingDistributedLock extends DistributedLock {
+
+    /**
+     * 默认的最大连续移交次数
+     */
+    public static final int DEFAULT_MAX_HAND_OFFS = 16;
+
+    private final DistributedLock delegate;
+    private final LocalLockCoalescer coalescer;
+
+    public CoalescingDistributedLock(DistributedLock delegate) {
+        this(delegate, DEFAULT_MAX_HAND_OFFS);
+    }
+
+    /**
+     * 构造本地合并的分布式锁
+     *
+     * @param delegate    远程分布式锁
+     * @param maxHandOffs 最大连续移交次数, 0表示不移交, 只合并本地的等待
+     */
+    public CoalescingDistributedLock(DistributedLock delegate, int maxHandOffs) {
+        this.delegate = Assert.notNull(delegate, "被装饰的分布式锁不能为空");
+        this.coalescer = new LocalLockCoalescer(maxHandOffs, delegate::releaseLock);
+    }
+
+    /**
+     * 获取锁
+     *
+     * <p>
+     * 本地排队与远程加锁共享{@code retryTimes * sleepMillis}毫秒的等待时间
+     * </p>
+     *
+     * @param key         key
+     * @param expire      锁的超时时间
+     * @param retryTimes  重试次数
+     * @param sleepMillis 获取锁失败的重试间隔
+     * @return 锁凭据
+     */
+    @Override
+    public LockTicket lock(String key, long expire, int retryTimes, long sleepMillis) {
+        long maxWait = retryTimes > 0 && sleepMillis > 0 ? retryTimes * sleepMillis : 0L;
+        String ticket = coalescer.acquire(key, maxWait, remaining -> {
+            int retries = remaining > 0 && sleepMillis > 0 ? (int) (remaining / sleepMillis) : 0;
+            LockTicket remote = delegate.lock(key, expire, retries, sleepMillis);
+            return remote.isSuccess() ? remote.getTicket() : null;
+        });
+        return new LockTicket(null != ticket, ticket, key, this);
+    }
+
+    @Override
+    protected boolean releaseLock(String key, String ticket) {
+        return coalescer.release(key, ticket);
+    }
+
+    /**
+     * 访问远程锁成功的次数
+     *
+     * @return 次数
+     */
+    public long getRemoteAcquired() {
+        return coalescer.getRemoteAcquired();
+    }
+
+    /**
+     * 在本地直接移交的次数
+     *
+     * @return 次数
+     */
+    public long getHandedOff() {
+        return coalescer.getHandedOff();
+    }
+
+    public DistributedLock getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,110 @@
+package org.spin.core.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的耗时直方图
+ * <p>按HdrHistogram的思路分桶: 数值按2的幂分段, 每段再线性划分为32个子桶, 相对误差不超过约3%.
+ * 记录时只对一个桶计数, 不分配对象, 适合在任务执行的热路径上使用. 数值以微秒为单位记录</p>
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时(纳秒)
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        total.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * 平均耗时(微秒)
+     *
+     * @return 平均耗时
+     */
+    public long getMean() {
+        long cnt = total.sum();
+        return cnt == 0 ? 0L : sum.sum() / cnt;
+    }
+
+    /**
+     * 最大耗时(微秒)
+     *
+     * @return 最大耗时
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 百分位耗时(微秒), 返回所在桶的上界
+     *
+     * @param percentile 百分位, 取值(0, 100]
+     * @return 百分位耗时
+     */
+    public long getPercentile(double percentile) {
+        long cnt = 0L;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            cnt += snapshot[i];
+        }
+        if (cnt == 0) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(cnt * Math.min(percentile, 100D) / 100D));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value) {
+        int magnitude = Math.max(0, Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int sub = (int) (value >>> magnitude);
+        return magnitude * SUB_BUCKET_COUNT + sub;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int magnitude = (index - 2 * SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + 1;
+        long sub = (index - 2 * SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((sub + 1) << magnitude) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + getCount() + ", mean=" + getMean() + "us, p50=" + getPercentile(50) + "us, p99="
+            + getPercentile(99) + "us, max=" + getMax() + "us}";
+    }
+}
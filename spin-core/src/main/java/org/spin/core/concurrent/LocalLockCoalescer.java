@@ -0,0 +1,174 @@
+package org.spin.core.concurrent;
+
+import org.spin.core.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.LongFunction;
+
+/**
+ * 分布式锁的本地排队与移交
+ * <p>同一进程中同一个key的等待者先在本地排队, 只有拿到本地许可的线程访问远程锁. 持有者释放时如果本地还有等待者,
+ * 远程锁不释放而是直接移交给下一个拿到许可的等待者, 连续移交达到上限后才真正释放</p>
+ * <p>每个参与者从开始排队到释放锁(或放弃等待)期间都持有一个本地引用. 最后一个引用离开时如果仍有未被接手的远程锁,
+ * 说明移交的对象已经放弃等待, 此时由离开者释放远程锁, 避免远程锁在无人持有的情况下一直占用到超时</p>
+ * <p>Created by xuweinan on 2021/10/27</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class LocalLockCoalescer {
+    private final int maxHandOffs;
+    private final BiPredicate<String, String> remoteRelease;
+    private final ConcurrentHashMap<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+    private final LongAdder remoteAcquired = new LongAdder();
+    private final LongAdder handedOff = new LongAdder();
+
+    /**
+     * 构造本地排队与移交工具
+     *
+     * @param maxHandOffs   最大连续移交次数, 0表示不移交, 只合并本地的等待
+     * @param remoteRelease 释放远程锁的操作, 参数为key与锁凭据
+     */
+    public LocalLockCoalescer(int maxHandOffs, BiPredicate<String, String> remoteRelease) {
+        if (maxHandOffs < 0) {
+            throw new IllegalArgumentException("Max hand offs must not be negative");
+        }
+        this.maxHandOffs = maxHandOffs;
+        this.remoteRelease = Assert.notNull(remoteRelease, "远程锁的释放操作不能为空");
+    }
+
+    /**
+     * 获取锁, 优先接手本地移交的远程锁, 否则访问远程锁
+     *
+     * @param key           key
+     * @param maxWait       最长等待时间(毫秒), 本地排队与远程加锁共享
+     * @param remoteAcquire 获取远程锁的操作, 参数为剩余的等待时间(毫秒), 未获得锁时返回null
+     * @return 锁凭据, 未获得锁时返回null
+     */
+    public String acquire(String key, long maxWait, LongFunction<String> remoteAcquire) {
+        long deadline = System.currentTimeMillis() + maxWait;
+        LocalLock localLock = localLocks.compute(key, (k, v) -> {
+            LocalLock l = null == v ? new LocalLock() : v;
+            l.refs++;
+            return l;
+        });
+
+        String ticket = null;
+        boolean permitted = false;
+        try {
+            permitted = acquireLocal(localLock, maxWait);
+            if (permitted) {
+                if (null != localLock.ticket) {
+                    ticket = localLock.ticket;
+                    handedOff.increment();
+                } else {
+                    ticket = remoteAcquire.apply(Math.max(0L, deadline - System.currentTimeMillis()));
+                    if (null != ticket) {
+                        localLock.ticket = ticket;
+                        localLock.handOffs = 0;
+                        remoteAcquired.increment();
+                    }
+                }
+            }
+        } finally {
+            if (null == ticket) {
+                if (permitted) {
+                    localLock.permit.release();
+                }
+                releaseLocal(key);
+            }
+        }
+        return ticket;
+    }
+
+    /**
+     * 释放锁, 本地还有等待者且未达到移交上限时保留远程锁
+     *
+     * @param key    key
+     * @param ticket 锁凭据
+     * @return 是否释放成功
+     */
+    public boolean release(String key, String ticket) {
+        if (null == ticket) {
+            return true;
+        }
+        LocalLock localLock = localLocks.get(key);
+        if (null == localLock || !ticket.equals(localLock.ticket)) {
+            return remoteRelease.test(key, ticket);
+        }
+
+        boolean res = true;
+        try {
+            if (localLock.handOffs < maxHandOffs && localLock.permit.hasQueuedThreads()) {
+                // 等待者可能随后放弃, 由最后离开的引用兜底释放
+                ++localLock.handOffs;
+            } else {
+                localLock.ticket = null;
+                res = remoteRelease.test(key, ticket);
+            }
+        } finally {
+            localLock.permit.release();
+            releaseLocal(key);
+        }
+        return res;
+    }
+
+    /**
+     * 访问远程锁成功的次数
+     *
+     * @return 次数
+     */
+    public long getRemoteAcquired() {
+        return remoteAcquired.sum();
+    }
+
+    /**
+     * 在本地直接移交的次数
+     *
+     * @return 次数
+     */
+    public long getHandedOff() {
+        return handedOff.sum();
+    }
+
+    private boolean acquireLocal(LocalLock localLock, long maxWait) {
+        try {
+            if (localLock.permit.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 超时前持有者可能刚刚移交了锁, 再尝试一次
+        return localLock.permit.tryAcquire();
+    }
+
+    private void releaseLocal(String key) {
+        String[] orphan = new String[1];
+        localLocks.computeIfPresent(key, (k, v) -> {
+            if (--v.refs > 0) {
+                return v;
+            }
+            // 持有者在释放前一直持有引用, 引用归零时仍存在的凭据无人接手
+            orphan[0] = v.ticket;
+            return null;
+        });
+        if (null != orphan[0]) {
+            remoteRelease.test(key, orphan[0]);
+        }
+    }
+
+    /**
+     * 本地锁状态, 许可用于本地排队, 持有许可的线程使用或获取远程锁
+     */
+    private static class LocalLock {
+        private final Semaphore permit = new Semaphore(1, true);
+        private volatile String ticket;
+        private volatile int handOffs;
+        private int refs;
+    }
+}
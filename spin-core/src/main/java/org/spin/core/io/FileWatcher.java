@@ -13,8 +13,8 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
@@ -45,9 +45,10 @@ public class FileWatcher implements AutoCloseable {
         } catch (IOException e) {
             throw new SpinException(ErrorCode.IO_FAIL, "创建WatchService失败", e);
         }
-        this.keys = new HashMap<>();
+        this.keys = new ConcurrentHashMap<>();
         this.id = THREAD_NAME_PREFIX + COUNTER.getAndIncrement();
         workThread = new Thread(this::working, id);
+        workThread.setDaemon(true);
     }
 
     public void registerWatcher(File file, boolean recursion, Consumer<FileAction> fileActionCallback) {
@@ -0,0 +1,170 @@
+package org.spin.core.concurrent;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.spin.core.retry.Retries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 任务组并行执行、超时与取消测试
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class AsyncFanOutTest {
+    private static final String POOL = "fan-out-test";
+
+    @BeforeAll
+    static void setUp() {
+        Async.initThreadPool(POOL, 4, 4, -1);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Async.shutdown(POOL);
+    }
+
+    @Test
+    void testInvokeAll() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int n = i;
+            tasks.add(() -> {
+                Thread.sleep(20L);
+                return n;
+            });
+        }
+        long start = System.nanoTime();
+        List<Integer> res = Async.invokeAll(POOL, tasks, 1, TimeUnit.SECONDS).get();
+        System.out.println("invokeAll: " + res + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), res);
+    }
+
+    @Test
+    void testFailFastAndDeadline() throws InterruptedException {
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        Callable<Integer> slow = () -> {
+            started.incrementAndGet();
+            try {
+                Thread.sleep(5_000L);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return 0;
+        };
+        List<Callable<Integer>> tasks = new ArrayList<>(Arrays.asList(slow, slow, slow, () -> {
+            throw new IllegalStateException("boom");
+        }));
+        for (int i = 0; i < 10; i++) {
+            tasks.add(slow);
+        }
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> Async.invokeAll(POOL, tasks, 1, TimeUnit.SECONDS).get());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        // 失败的任务可能先于其他任务结束, 此时尚未开始的任务会直接跳过
+        Thread.sleep(50L);
+        waitFor(() -> interrupted.get() == started.get());
+        assertTrue(started.get() <= 3, "排队中的任务不应再执行");
+
+        interrupted.set(0);
+        started.set(0);
+        long start = System.nanoTime();
+        e = assertThrows(ExecutionException.class, () -> Async.invokeAll(POOL, Arrays.asList(slow, slow), 100, TimeUnit.MILLISECONDS).get());
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000L);
+        waitFor(() -> interrupted.get() == 2);
+    }
+
+    @Test
+    void testInvokeAnyAndRace() throws Exception {
+        Callable<String> fail = () -> {
+            throw new IllegalStateException("fail");
+        };
+        Callable<String> slow = () -> {
+            Thread.sleep(200L);
+            return "slow";
+        };
+        Callable<String> fast = () -> {
+            Thread.sleep(20L);
+            return "fast";
+        };
+        assertEquals("fast", Async.invokeAny(POOL, Arrays.asList(fail, slow, fast), 1, TimeUnit.SECONDS).get());
+        assertEquals("slow", Async.invokeAny(POOL, Arrays.asList(fail, slow), 1, TimeUnit.SECONDS).get());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> Async.race(POOL, Arrays.asList(fail, slow, fast), 1, TimeUnit.SECONDS).get());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("fast", Async.race(POOL, Arrays.asList(slow, fast), 1, TimeUnit.SECONDS).get());
+    }
+
+    @Test
+    void testRetries() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> flaky = () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("flaky");
+            }
+            return 1;
+        };
+        assertEquals(1, Async.invokeAny(POOL, Arrays.asList(flaky), Retries.attempts(5).delay(10L), 1, TimeUnit.SECONDS).get().intValue());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testSaturatedPool() throws Exception {
+        String pool = "fan-out-saturated";
+        Async.initThreadPool(pool, 1, 1, 10000L, 2, new ThreadPoolExecutor.CallerRunsPolicy());
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        Callable<Integer> slow = () -> {
+            started.incrementAndGet();
+            Thread.sleep(5_000L);
+            return 0;
+        };
+        try {
+            // 唯一的工作线程被占用, 任务只能排队, 期限照常生效
+            Async.execute(pool, gate::await);
+            long start = System.nanoTime();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> Async.invokeAll(pool, Arrays.asList(slow, slow), 200, TimeUnit.MILLISECONDS).get());
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000L);
+
+            // 超时取消的任务仍占着队列, 队列已满时不在调用线程上执行任务, 整组任务直接失败
+            start = System.nanoTime();
+            e = assertThrows(ExecutionException.class, () -> Async.race(pool, Arrays.asList(slow, slow), 200, TimeUnit.MILLISECONDS).get());
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000L);
+            assertEquals(0, started.get());
+        } finally {
+            gate.countDown();
+            Async.shutdown(pool);
+        }
+        assertEquals(0, started.get());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000L;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
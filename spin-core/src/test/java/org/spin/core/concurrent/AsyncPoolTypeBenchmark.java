@@ -0,0 +1,56 @@
+package org.spin.core.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同类型线程池的阻塞任务吞吐对比, 不参与单元测试, 手动运行, 虚拟线程需要JDK 21及以上
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class AsyncPoolTypeBenchmark {
+    private static final int TASKS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        bench("thread pool(200)", Async.PoolType.THREAD_POOL, 200);
+        bench("fork join(64)", Async.PoolType.FORK_JOIN, 64);
+        if (Async.isVirtualThreadSupported()) {
+            bench("virtual thread", Async.PoolType.VIRTUAL, 0);
+        } else {
+            System.out.println("当前JDK不支持虚拟线程, 跳过");
+        }
+    }
+
+    private static void bench(String title, Async.PoolType type, int parallelism) throws InterruptedException, ExecutionException {
+        String name = "pool-type-" + type;
+        Async.initThreadPool(name, type, parallelism);
+        Async.setTrackingLevel(name, Async.TrackingLevel.COUNTERS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>(TASKS);
+            long start = System.nanoTime();
+            for (int i = 0; i < TASKS; i++) {
+                final int n = i;
+                futures.add(Async.submit(name, () -> {
+                    Thread.sleep(5L);
+                    return n;
+                }));
+            }
+            long sum = 0;
+            for (Future<Integer> future : futures) {
+                sum += future.get();
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (sum != (long) TASKS * (TASKS - 1) / 2) {
+                throw new IllegalStateException("任务结果不正确: " + sum);
+            }
+            System.out.printf("%s: %d blocking tasks in %dms%n", title, TASKS, elapsed);
+        } finally {
+            Async.shutdown(name);
+        }
+    }
+}
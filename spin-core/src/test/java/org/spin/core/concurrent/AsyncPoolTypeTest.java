@@ -0,0 +1,121 @@
+package org.spin.core.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 不同类型线程池的拦截器与上下文传递测试, 虚拟线程需要JDK 21及以上
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class AsyncPoolTypeTest {
+    private static final int TASKS = 20;
+    private static final ThreadLocal<String> TRACE = new ThreadLocal<>();
+
+    @Test
+    void testForkJoin() throws Exception {
+        checkPool(Async.PoolType.FORK_JOIN, 4);
+    }
+
+    @Test
+    void testVirtual() throws Exception {
+        assumeTrue(Async.isVirtualThreadSupported(), "当前JDK不支持虚拟线程, 跳过测试");
+        checkPool(Async.PoolType.VIRTUAL, 0);
+    }
+
+    private static void checkPool(Async.PoolType type, int parallelism) throws Exception {
+        String name = "pool-type-" + type;
+        TraceInterceptor interceptor = new TraceInterceptor(name);
+        Async.initThreadPool(name, type, parallelism);
+        interceptor.register();
+        try {
+            List<Future<String>> futures = new ArrayList<>(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                TRACE.set("trace-" + i);
+                String caller = Thread.currentThread().getName();
+                futures.add(Async.submit(name, () -> {
+                    assertNotEquals(caller, Thread.currentThread().getName());
+                    Thread.sleep(1L);
+                    return TRACE.get();
+                }));
+            }
+            TRACE.remove();
+            for (int i = 0; i < TASKS; i++) {
+                // 发起线程上的上下文通过拦截器传递到工作线程
+                assertEquals("trace-" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(TASKS, interceptor.pre.get());
+            assertEquals(TASKS, interceptor.ready.get());
+            assertEquals(TASKS, interceptor.finish.get());
+            assertEquals(TASKS, interceptor.after.get());
+            // 工作线程复用时不会残留上一个任务的上下文
+            assertEquals(0, interceptor.leaked.get());
+        } finally {
+            interceptor.unregister();
+            Async.shutdown(name);
+        }
+    }
+
+    /**
+     * 在发起线程上捕获TRACE, 在工作线程上恢复并在任务结束后清理
+     */
+    private static class TraceInterceptor implements AsyncInterceptor {
+        private final String poolName;
+        private final AtomicInteger pre = new AtomicInteger();
+        private final AtomicInteger ready = new AtomicInteger();
+        private final AtomicInteger finish = new AtomicInteger();
+        private final AtomicInteger after = new AtomicInteger();
+        private final AtomicInteger leaked = new AtomicInteger();
+
+        private TraceInterceptor(String poolName) {
+            this.poolName = poolName;
+        }
+
+        @Override
+        public String getPoolName() {
+            return poolName;
+        }
+
+        @Override
+        public void preAsync(AsyncContext context) {
+            pre.incrementAndGet();
+            context.put("trace", TRACE.get());
+        }
+
+        @Override
+        public void onReady(AsyncContext context) {
+            ready.incrementAndGet();
+            if (null != TRACE.get()) {
+                leaked.incrementAndGet();
+            }
+            TRACE.set(context.getString("trace"));
+        }
+
+        @Override
+        public void onFinish(AsyncContext context) {
+            TRACE.remove();
+            finish.incrementAndGet();
+        }
+
+        @Override
+        public void afterAsync(AsyncContext context) {
+            after.incrementAndGet();
+        }
+
+        @Override
+        public int getOrder() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.spin.core.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 线程池任务跟踪级别测试
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class AsyncTrackingTest {
+    private static final int TASKS = 200;
+
+    @Test
+    void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.04, "p50: " + p50);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99: " + p99);
+        for (int i = 0; i < 1888; i++) {
+            assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(i)));
+        }
+    }
+
+    @Test
+    void testTrackingLevel() throws InterruptedException {
+        Async.initThreadPool("tracking-test", 4, 4, -1);
+        try {
+            Async.ThreadPoolInfo info = Async.statistic().stream().filter(it -> "tracking-test".equals(it.getName())).findFirst()
+                .orElseThrow(IllegalStateException::new);
+            for (Async.TrackingLevel level : Async.TrackingLevel.values()) {
+                Async.setTrackingLevel("tracking-test", level);
+                long taskCnt = info.getTaskCnt();
+                long completed = info.getCompletedTaskCnt();
+                long recorded = info.getExecTimeHistogram().getCount();
+                CountDownLatch gate = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(TASKS);
+                for (int i = 0; i < TASKS; i++) {
+                    Async.execute("tracking-test", () -> {
+                        try {
+                            gate.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    });
+                }
+
+                // 只有FULL级别记录未完成的任务
+                assertEquals(Async.TrackingLevel.FULL == level ? TASKS : 0, info.getTrackedTaskCnt(), level.name());
+                gate.countDown();
+                assertTrue(done.await(10, TimeUnit.SECONDS), level.name());
+
+                // 计数在任务返回后更新, 等待最后的任务完成统计
+                int expected = Async.TrackingLevel.OFF == level ? 0 : TASKS;
+                long deadline = System.currentTimeMillis() + 5_000L;
+                while (info.getCompletedTaskCnt() - completed < expected && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1L);
+                }
+                assertEquals(expected, info.getTaskCnt() - taskCnt, level.name());
+                assertEquals(expected, info.getCompletedTaskCnt() - completed, level.name());
+                assertEquals(expected, info.getExecTimeHistogram().getCount() - recorded, level.name());
+                assertEquals(0, info.getTrackedTaskCnt(), level.name());
+            }
+        } finally {
+            Async.shutdown("tracking-test");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.spin.core.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地合并分布式锁测试
+ * <p>Created by xuweinan on 2021/10/27</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class CoalescingDistributedLockTest {
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 100;
+
+    @Test
+    void testRemoteTraffic() throws InterruptedException {
+        MemoryLock remote = new MemoryLock();
+        long direct = contend(remote, remote);
+        long directCalls = remote.calls.get();
+
+        MemoryLock coalescedRemote = new MemoryLock();
+        CoalescingDistributedLock coalescing = new CoalescingDistributedLock(coalescedRemote);
+        long coalesced = contend(coalescing, coalescedRemote);
+        long coalescedCalls = coalescedRemote.calls.get();
+
+        System.out.printf("direct: %d remote calls in %dms, coalesced: %d remote calls in %dms (%d acquired, %d handed off)%n",
+            directCalls, direct, coalescedCalls, coalesced, coalescing.getRemoteAcquired(), coalescing.getHandedOff());
+        assertTrue(coalescedCalls * 10 <= directCalls);
+        assertTrue(remote.held.isEmpty() && coalescedRemote.held.isEmpty());
+    }
+
+    @Test
+    void testTimeout() {
+        MemoryLock remote = new MemoryLock();
+        CoalescingDistributedLock coalescing = new CoalescingDistributedLock(remote);
+        try (LockTicket ticket = coalescing.tryLock("order-1")) {
+            assertTrue(ticket.isSuccess());
+            long start = System.currentTimeMillis();
+            LockTicket waiter = coalescing.lock("order-1", 3, 20L);
+            assertTrue(!waiter.isSuccess() && System.currentTimeMillis() - start >= 60L);
+        }
+        assertTrue(remote.held.isEmpty());
+    }
+
+    @Test
+    void testAbandonedHandOff() throws InterruptedException {
+        MemoryLock remote = new MemoryLock();
+        CoalescingDistributedLock coalescing = new CoalescingDistributedLock(remote);
+        for (int i = 0; i < 500; i++) {
+            LockTicket holder = coalescing.tryLock("order-1");
+            assertTrue(holder.isSuccess());
+            // 等待者在持有者移交的同时放弃等待, 移交的远程锁不能残留
+            Thread waiter = new Thread(() -> coalescing.lock("order-1", 1, 1L).close());
+            waiter.start();
+            Uninterruptibles.sleepUninterruptibly(i % 3, TimeUnit.MILLISECONDS);
+            holder.close();
+            waiter.join();
+            assertTrue(remote.held.isEmpty(), "第" + i + "次移交后远程锁未释放");
+        }
+    }
+
+    private static long contend(DistributedLock lock, MemoryLock remote) throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < ROUNDS; i++) {
+                        try (LockTicket ticket = lock.lock("order-1", 5000L, 60_000, 1L)) {
+                            ticket.ensureSuccess(() -> {
+                                int v = counter.get();
+                                Uninterruptibles.sleepUninterruptibly(10L, TimeUnit.MICROSECONDS);
+                                counter.set(v + 1);
+                            }, null);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(THREADS * ROUNDS, counter.get());
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 模拟远程锁, 每次加锁尝试与释放都计为一次远程调用
+     */
+    private static class MemoryLock extends DistributedLock {
+        private final ConcurrentHashMap<String, String> held = new ConcurrentHashMap<>();
+        private final AtomicLong calls = new AtomicLong();
+
+        @Override
+        public LockTicket lock(String key, long expire, int retryTimes, long sleepMillis) {
+            String ticket = UUID.randomUUID().toString();
+            calls.incrementAndGet();
+            boolean result = null == held.putIfAbsent(key, ticket);
+            while (!result && retryTimes-- > 0) {
+                Uninterruptibles.sleepUninterruptibly(sleepMillis, TimeUnit.MILLISECONDS);
+                calls.incrementAndGet();
+                result = null == held.putIfAbsent(key, ticket);
+            }
+            return new LockTicket(result, ticket, key, this);
+        }
+
+        @Override
+        protected boolean releaseLock(String key, String ticket) {
+            calls.incrementAndGet();
+            return held.remove(key, ticket);
+        }
+    }
+}
@@ -2,6 +2,13 @@ package org.spin.data.core;
 
 import org.spin.data.sql.SqlSource;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 描述不同数据库之间的差异，如分页等
  * <p>Created by xuweinan on 2016/8/22.</p>
@@ -10,6 +17,26 @@ import org.spin.data.sql.SqlSource;
  */
 public interface DatabaseType {
 
+    /**
+     * 分页偏移量的命名参数
+     */
+    String PAGE_OFFSET = "_spinPageOffset";
+
+    /**
+     * 分页大小的命名参数
+     */
+    String PAGE_SIZE = "_spinPageSize";
+
+    /**
+     * 分页结束位置(偏移量+分页大小)的命名参数
+     */
+    String PAGE_END = "_spinPageEnd";
+
+    /**
+     * 游标分页中排序键取值的命名参数前缀, 后接排序键的序号
+     */
+    String KEYSET_KEY = "_spinKey";
+
     /**
      * 数据库产品名称
      *
@@ -19,10 +46,125 @@ public interface DatabaseType {
 
     /**
      * 获得分页的sql语句
+     * <p>偏移量与分页大小以命名参数{@link #PAGE_OFFSET}, {@link #PAGE_SIZE}, {@link #PAGE_END}的形式出现在sql中,
+     * 同一条sql的所有分页共用相同的sql文本, 参数值通过{@link #getPageParameters(PageRequest)}获取</p>
      *
      * @param sqlSource   sql
      * @param pageRequest 分页参数
      * @return 包含分页信息的sql
      */
     SqlSource getPagedSQL(SqlSource sqlSource, PageRequest pageRequest);
+
+    /**
+     * 获得分页sql中分页参数的取值
+     *
+     * @param pageRequest 分页参数
+     * @return 分页参数
+     */
+    default Map<String, Object> getPageParameters(PageRequest pageRequest) {
+        Map<String, Object> params = new HashMap<>(4);
+        params.put(PAGE_OFFSET, pageRequest.getOffset());
+        params.put(PAGE_SIZE, pageRequest.getSize());
+        params.put(PAGE_END, pageRequest.getOffset() + pageRequest.getSize());
+        return params;
+    }
+
+    /**
+     * 获得游标(keyset)分页的sql语句
+     * <p>在原始sql外层追加排序键大于(降序时为小于)游标取值的条件, 并按排序键排序取前{@link #PAGE_SIZE}行.
+     * 排序键取值以命名参数{@link #KEYSET_KEY}0, {@link #KEYSET_KEY}1...的形式出现在sql中</p>
+     *
+     * @param sqlSource   sql
+     * @param keys        排序键
+     * @param afterCursor 是否从游标之后开始查询
+     * @return 游标分页的sql
+     */
+    default SqlSource getKeysetSQL(SqlSource sqlSource, List<Order> keys, boolean afterCursor) {
+        String sql = sqlSource.getSql();
+        if (afterCursor) {
+            sql = String.format("SELECT * FROM (%s) key_alias WHERE %s", sql, getKeysetPredicate("key_alias", keys));
+        }
+        List<Order> sort = new ArrayList<>(keys.size());
+        for (Order key : keys) {
+            sort.add(new Order(key.getDirection(), key.getProperty()));
+        }
+        PageRequest pageRequest = new PageRequest(1, 1);
+        pageRequest.setSort(sort);
+        return getPagedSQL(new SqlSource(sqlSource.getId(), sql), pageRequest);
+    }
+
+    /**
+     * 游标分页中定位到游标之后的条件
+     * <p>所有排序键方向一致并且数据库支持行值比较时使用{@code (k1, k2) > (?, ?)}的形式, 否则展开为
+     * {@code k1 > ? OR (k1 = ? AND k2 > ?)}</p>
+     *
+     * @param tableAlias 子查询别名
+     * @param keys       排序键
+     * @return 条件语句
+     */
+    default String getKeysetPredicate(String tableAlias, List<Order> keys) {
+        boolean descending = KeysetRequest.isDescending(keys.get(0));
+        boolean sameDirection = keys.stream().allMatch(k -> KeysetRequest.isDescending(k) == descending);
+        StringBuilder sb = new StringBuilder();
+        if (sameDirection && supportsRowValueComparison()) {
+            StringBuilder values = new StringBuilder();
+            sb.append('(');
+            for (int i = 0; i < keys.size(); i++) {
+                sb.append(i == 0 ? "" : ", ").append(tableAlias).append('.').append(keys.get(i).getProperty());
+                values.append(i == 0 ? "" : ", ").append(':').append(KEYSET_KEY).append(i);
+            }
+            return sb.append(descending ? ") < (" : ") > (").append(values).append(')').toString();
+        }
+
+        sb.append('(');
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(i == 0 ? "(" : " OR (");
+            for (int j = 0; j < i; j++) {
+                sb.append(tableAlias).append('.').append(keys.get(j).getProperty()).append(" = :").append(KEYSET_KEY).append(j).append(" AND ");
+            }
+            sb.append(tableAlias).append('.').append(keys.get(i).getProperty())
+                .append(KeysetRequest.isDescending(keys.get(i)) ? " < :" : " > :").append(KEYSET_KEY).append(i).append(')');
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * 是否支持{@code (a, b) > (?, ?)}形式的行值比较
+     *
+     * @return 是否支持
+     */
+    default boolean supportsRowValueComparison() {
+        return false;
+    }
+
+    /**
+     * 游标查询时实际设置给Statement的fetchSize
+     * <p>部分驱动需要特殊的取值才能逐行读取, 而不是一次性加载全部结果, 取值可能与连接的配置有关</p>
+     *
+     * @param connection jdbc连接
+     * @param fetchSize  期望的每批读取行数
+     * @return 驱动实际使用的fetchSize
+     * @throws SQLException 读取连接信息失败时抛出
+     */
+    default int getCursorFetchSize(Connection connection, int fetchSize) throws SQLException {
+        return fetchSize;
+    }
+
+    /**
+     * 是否支持{@code INSERT ... VALUES (...), (...)}形式的多行插入
+     *
+     * @return 是否支持
+     */
+    default boolean supportsMultiRowInsert() {
+        return false;
+    }
+
+    /**
+     * 单条语句允许绑定的参数个数上限, 用于限制多行插入改写后每条语句的行数
+     *
+     * @return 参数个数上限
+     */
+    default int getMaxBindParameters() {
+        return 2000;
+    }
 }
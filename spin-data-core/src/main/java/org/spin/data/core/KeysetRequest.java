@@ -0,0 +1,143 @@
+package org.spin.data.core;
+
+import org.spin.core.util.CollectionUtils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 游标(keyset)分页参数
+ * <p>按排序键的取值定位下一页, 查询耗时与翻页深度无关. 排序键必须能唯一确定一行(通常以主键结尾),
+ * 并且不能为null</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class KeysetRequest implements Serializable {
+    private static final long serialVersionUID = -1984214003619624870L;
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern PROPERTY_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+
+    /**
+     * 排序键
+     */
+    private List<Order> keys;
+
+    /**
+     * 分页大小
+     */
+    private int size = 20;
+
+    /**
+     * 上一页返回的游标, 为空时查询第一页
+     */
+    private String after;
+
+    public KeysetRequest() {
+    }
+
+    /**
+     * 创建游标分页参数
+     *
+     * @param size 分页大小
+     * @param keys 排序键
+     */
+    public KeysetRequest(int size, Order... keys) {
+        setSize(size);
+        this.keys = Arrays.asList(keys);
+    }
+
+    /**
+     * 从指定游标之后开始查询
+     *
+     * @param after 上一页返回的游标
+     * @return 当前分页参数
+     */
+    public KeysetRequest after(String after) {
+        this.after = after;
+        return this;
+    }
+
+    /**
+     * 校验排序键, 排序键是查询结果的列名, 会直接出现在外层sql中, 只允许字母, 数字与下划线, 不能带表别名
+     *
+     * @return 排序键
+     */
+    public List<Order> checkedKeys() {
+        return checkKeys(COLUMN_PATTERN);
+    }
+
+    /**
+     * 校验排序键, 排序键是实体的属性路径, 允许使用点号引用关联属性
+     *
+     * @return 排序键
+     */
+    public List<Order> checkedProperties() {
+        return checkKeys(PROPERTY_PATTERN);
+    }
+
+    /**
+     * 排序键的签名, 用于校验游标与排序键是否匹配
+     *
+     * @return 签名
+     */
+    public String signature() {
+        StringBuilder sb = new StringBuilder();
+        for (Order key : checkedProperties()) {
+            sb.append(key.getProperty()).append(isDescending(key) ? " DESC" : " ASC").append(',');
+        }
+        return sb.substring(0, sb.length() - 1);
+    }
+
+    /**
+     * 排序键是否降序, 未指定方向时按升序处理
+     *
+     * @param key 排序键
+     * @return 是否降序
+     */
+    public static boolean isDescending(Order key) {
+        return Order.Direction.DESC == key.getDirection();
+    }
+
+    public List<Order> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(List<Order> keys) {
+        this.keys = keys;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one!");
+        }
+        this.size = size;
+    }
+
+    private List<Order> checkKeys(Pattern pattern) {
+        if (CollectionUtils.isEmpty(keys)) {
+            throw new IllegalArgumentException("Keyset pagination requires at least one sort key");
+        }
+        for (Order key : keys) {
+            if (null == key || null == key.getProperty() || !pattern.matcher(key.getProperty()).matches()) {
+                throw new IllegalArgumentException("Illegal keyset sort key: " + (null == key ? null : key.getProperty()));
+            }
+        }
+        return keys;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+}
@@ -0,0 +1,201 @@
+package org.spin.data.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 游标分页的游标编解码
+ * <p>游标中保存排序键签名与上一页最后一行的排序键取值, 编码为URL安全的Base64字符串, 对调用方不透明.
+ * 取值按原始类型编码, 解码后与实体属性的类型一致, 可以直接作为查询参数绑定</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public final class KeysetToken {
+    private static final byte LONG = 1;
+    private static final byte DECIMAL = 2;
+    private static final byte STRING = 3;
+    private static final byte TIMESTAMP = 4;
+    private static final byte DATE = 5;
+    private static final byte LOCAL_DATE_TIME = 6;
+    private static final byte LOCAL_DATE = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte INTEGER = 9;
+    private static final byte SHORT = 10;
+    private static final byte BYTE = 11;
+    private static final byte DOUBLE = 12;
+    private static final byte FLOAT = 13;
+    private static final byte BIG_INTEGER = 14;
+    private static final byte CHARACTER = 15;
+    private static final byte SQL_DATE = 16;
+    private static final byte SQL_TIME = 17;
+
+    private KeysetToken() {
+    }
+
+    /**
+     * 编码游标
+     *
+     * @param request 分页参数
+     * @param values  最后一行的排序键取值
+     * @return 游标
+     */
+    public static String encode(KeysetRequest request, Object[] values) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeUTF(request.signature());
+            out.writeByte(values.length);
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Encode keyset token error", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bos.toByteArray());
+    }
+
+    /**
+     * 解码游标
+     *
+     * @param request 分页参数
+     * @return 排序键取值, 没有游标时返回null
+     */
+    public static Object[] decode(KeysetRequest request) {
+        String token = request.getAfter();
+        if (null == token || token.isEmpty()) {
+            return null;
+        }
+        String signature;
+        Object[] values;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            signature = in.readUTF();
+            values = new Object[in.readByte()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+        } catch (IOException | IllegalArgumentException | DateTimeException e) {
+            throw new IllegalArgumentException("Illegal keyset token: " + token, e);
+        }
+        if (!request.signature().equals(signature) || values.length != request.getKeys().size()) {
+            throw new IllegalArgumentException("Keyset token does not match the sort keys");
+        }
+        return values;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(((BigDecimal) value).toPlainString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof CharSequence) {
+            out.writeByte(STRING);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(SQL_TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeUTF(value.toString());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (null == value) {
+            throw new IllegalStateException("Keyset sort key must not be null");
+        } else {
+            throw new IllegalStateException("Unsupported keyset sort key type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case BIG_INTEGER:
+                return new BigInteger(in.readUTF());
+            case CHARACTER:
+                return in.readChar();
+            case STRING:
+                return in.readUTF();
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case SQL_TIME:
+                return new Time(in.readLong());
+            case DATE:
+                return new Date(in.readLong());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(in.readUTF());
+            case LOCAL_DATE:
+                return LocalDate.parse(in.readUTF());
+            case BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown keyset value type: " + type);
+        }
+    }
+}
@@ -36,6 +36,11 @@ public class Page<T> implements Serializable {
      */
     private int size = 0;
 
+    /**
+     * 游标分页时下一页的游标, 没有更多数据时为null
+     */
+    private String next;
+
     public Page() {
     }
 
@@ -59,7 +64,9 @@ public class Page<T> implements Serializable {
         for (T record : records) {
             rows.add(mapper.apply(record));
         }
-        return new Page<>(rows, current, total, size);
+        Page<R> page = new Page<>(rows, current, total, size);
+        page.setNext(next);
+        return page;
     }
 
     public List<T> getRecords() {
@@ -93,4 +100,12 @@ public class Page<T> implements Serializable {
     public void setSize(int size) {
         this.size = size;
     }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
 }
@@ -0,0 +1,236 @@
+package org.spin.data.delayqueue;
+
+import org.spin.core.Assert;
+import org.spin.core.throwable.SimplifiedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 紧凑的二进制延迟消息编解码器
+ * <p>字段按长度前缀(变长整数)依次写入, 消息体无需转义, UUID格式的消息ID压缩为16字节,
+ * 集群调度任务通过{@link GroupScheduledTaskSerializer}序列化, 不依赖JDK序列化</p>
+ * <p>解码时兼容{@link JsonDelayMessageCodec}写入的历史数据. 集群调度任务只允许加载受信任包中的类,
+ * 使用集群调度时需要通过构造参数指定任务所在的包</p>
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class BinaryDelayMessageCodec implements DelayMessageCodec {
+    private static final byte MAGIC = (byte) 0xD1;
+    private static final byte ID_STRING = 0;
+    private static final byte ID_UUID = 1;
+
+    private final String[] trustedPackages;
+
+    /**
+     * 构造二进制编解码器
+     *
+     * @param trustedPackages 集群调度任务允许加载的包名前缀
+     */
+    public BinaryDelayMessageCodec(String... trustedPackages) {
+        this.trustedPackages = new String[trustedPackages.length];
+        for (int i = 0; i < trustedPackages.length; i++) {
+            String pkg = Assert.notEmpty(trustedPackages[i], "受信任的包名不能为空");
+            this.trustedPackages[i] = pkg.endsWith(".") ? pkg : pkg + ".";
+        }
+    }
+
+    /**
+     * 数据是否是二进制格式
+     *
+     * @param data 编码后的数据
+     * @return 是否是二进制格式
+     */
+    static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(DelayMessage message) {
+        Writer writer = new Writer(64 + (null == message.getPayload() ? 0 : message.getPayload().length() * 3));
+        writer.writeByte(MAGIC);
+        UUID uuid = parseUuid(message.getMessageId());
+        if (null == uuid) {
+            writer.writeByte(ID_STRING);
+            writer.writeString(message.getMessageId());
+        } else {
+            writer.writeByte(ID_UUID);
+            writer.writeLong(uuid.getMostSignificantBits());
+            writer.writeLong(uuid.getLeastSignificantBits());
+        }
+        writer.writeString(message.getTopic());
+        writer.writeVarLong(message.getDelayTimeInMillis());
+        writer.writeVarLong(message.getTriggerTime());
+        writer.writeString(message.getPayload());
+        writer.writeBytes(null == message.getTask() ? null : GroupScheduledTaskSerializer.serialize(message.getTask()));
+        return writer.toByteArray();
+    }
+
+    @Override
+    public DelayMessage decode(byte[] data) {
+        if (!isBinary(data)) {
+            return JsonDelayMessageCodec.decodeJson(data, this::isTrusted);
+        }
+
+        Reader reader = new Reader(data, 1);
+        DelayMessage message = new DelayMessage();
+        if (reader.readByte() == ID_UUID) {
+            message.setMessageId(new UUID(reader.readLong(), reader.readLong()).toString());
+        } else {
+            message.setMessageId(reader.readString());
+        }
+        message.setTopic(reader.readString());
+        message.setDelayTimeInMillis(reader.readVarLong());
+        message.setTriggerTime(reader.readVarLong());
+        message.setPayload(reader.readString());
+        byte[] task = reader.readBytes();
+        if (null != task) {
+            message.setTask(GroupScheduledTaskSerializer.deserialize(task, this::isTrusted));
+        }
+        return message;
+    }
+
+    boolean isTrusted(String className) {
+        for (String pkg : trustedPackages) {
+            if (className.startsWith(pkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static UUID parseUuid(String messageId) {
+        if (null == messageId || messageId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(messageId);
+            return uuid.toString().equals(messageId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 长度前缀格式的写入器, 可空字段的长度以 长度+1 写入, 0表示null
+     */
+    static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) {
+            buf = new byte[Math.max(initialCapacity, 16)];
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeLong(long v) {
+            ensureCapacity(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buf[pos++] = (byte) (v >>> i);
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0L) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeString(String str) {
+            writeBytes(null == str ? null : str.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(byte[] bytes) {
+            if (null == bytes) {
+                writeVarLong(0L);
+                return;
+            }
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensureCapacity(int len) {
+            if (pos + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + len));
+            }
+        }
+    }
+
+    /**
+     * 长度前缀格式的读取器
+     */
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int offset) {
+            this.buf = buf;
+            this.pos = offset;
+        }
+
+        byte readByte() {
+            checkRemaining(1);
+            return buf[pos++];
+        }
+
+        long readLong() {
+            checkRemaining(8);
+            long v = 0L;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long v = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new SimplifiedException("Malformed delay message: varint too long");
+        }
+
+        String readString() {
+            byte[] bytes = readBytes();
+            return null == bytes ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        byte[] readBytes() {
+            long len = readVarLong();
+            if (len == 0L) {
+                return null;
+            }
+            int size = (int) (len - 1);
+            checkRemaining(size);
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + size);
+            pos += size;
+            return bytes;
+        }
+
+        private void checkRemaining(int len) {
+            if (len < 0 || pos + len > buf.length) {
+                throw new SimplifiedException("Malformed delay message: unexpected end of data");
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package org.spin.data.delayqueue;
 
 import org.spin.core.security.Base64;
-import org.spin.core.util.SerializeUtils;
+import org.spin.core.util.JsonUtils;
 
 /**
  * TITLE
@@ -19,6 +19,7 @@ public class DelayMessage {
     private long scheduleTime;
     private String payload;
     private String handler;
+    private transient GroupScheduledTask task;
 
     public DelayMessage() {
     }
@@ -87,20 +88,24 @@ public class DelayMessage {
         this.handler = handler;
     }
 
+    public GroupScheduledTask getTask() {
+        return task;
+    }
+
+    public void setTask(GroupScheduledTask task) {
+        this.task = task;
+    }
+
     public GroupScheduledTask parseHandler() {
-        return SerializeUtils.deserialize(Base64.decode(handler));
+        if (null == task && null != handler) {
+            // 编解码器已经按受信任的包解析了任务, 这里只允许JDK与延迟队列自身的类
+            task = GroupScheduledTaskSerializer.deserializeJdk(Base64.decode(handler), name -> false);
+        }
+        return task;
     }
 
     @Override
     public String toString() {
-        return "{" +
-            "\"messageId\":\"" + messageId + '\"' +
-            ",\"topic\":\"" + topic + '\"' +
-            ",\"delayTimeInMillis\":" + delayTimeInMillis +
-            ",\"triggerTime\":" + triggerTime +
-            ",\"scheduleTime\":" + scheduleTime +
-            ",\"payload\":\"" + payload + '\"' +
-            ",\"handler\":\"" + handler + '\"' +
-            '}';
+        return JsonUtils.toJson(this);
     }
 }
@@ -0,0 +1,28 @@
+package org.spin.data.delayqueue;
+
+/**
+ * 延迟消息编解码器
+ * <p>决定延迟消息在Redis中的存储格式, 同一个延迟队列的所有实例必须使用兼容的编解码器</p>
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public interface DelayMessageCodec {
+
+    /**
+     * 编码延迟消息
+     *
+     * @param message 延迟消息
+     * @return 编码后的数据
+     */
+    byte[] encode(DelayMessage message);
+
+    /**
+     * 解码延迟消息
+     *
+     * @param data 编码后的数据
+     * @return 延迟消息
+     */
+    DelayMessage decode(byte[] data);
+}
@@ -0,0 +1,60 @@
+package org.spin.data.delayqueue;
+
+import org.spin.core.Assert;
+import org.spin.core.throwable.SimplifiedException;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 批量发布的延迟消息
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class DelayMessageEntry {
+    private final String message;
+    private final long delayTimeInMillis;
+
+    private DelayMessageEntry(String message, long delayTimeInMillis) {
+        this.message = message;
+        this.delayTimeInMillis = delayTimeInMillis;
+    }
+
+    /**
+     * 延迟指定秒数后投递的消息
+     *
+     * @param message            消息
+     * @param delayTimeInSeconds 延迟时间(秒)
+     * @return 延迟消息
+     */
+    public static DelayMessageEntry of(String message, long delayTimeInSeconds) {
+        return new DelayMessageEntry(message, delayTimeInSeconds * 1000L);
+    }
+
+    /**
+     * 在指定时间投递的消息
+     *
+     * @param message    消息
+     * @param scheduleAt 投递时间
+     * @return 延迟消息
+     */
+    public static DelayMessageEntry of(String message, LocalDateTime scheduleAt) {
+        Assert.notNull(scheduleAt, "Delay Message's schedule time must not be null!!");
+        if (scheduleAt.isBefore(LocalDateTime.now())) {
+            throw new SimplifiedException("Delay Message's schedule time must not before now!!");
+        }
+        return new DelayMessageEntry(message,
+            scheduleAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - System.currentTimeMillis());
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getDelayTimeInMillis() {
+        return delayTimeInMillis;
+    }
+}
@@ -0,0 +1,46 @@
+package org.spin.data.delayqueue;
+
+import org.spin.core.throwable.SimplifiedException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量发布部分失败
+ * <p>各批次独立写入, 某一批失败时其他批次可能已经写入成功, 通过{@link #getPublishedIds()}获取已写入的消息ID,
+ * 调用方可以据此取消或只重试失败的消息</p>
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class DelayMessagePublishException extends SimplifiedException {
+    private static final long serialVersionUID = 4125703815264460128L;
+
+    private final List<String> publishedIds;
+    private final List<String> failedIds;
+
+    public DelayMessagePublishException(List<String> publishedIds, List<String> failedIds, Throwable cause) {
+        super("Delay message delivery failed, " + failedIds.size() + " messages failed and " + publishedIds.size() + " messages delivered", cause);
+        this.publishedIds = Collections.unmodifiableList(publishedIds);
+        this.failedIds = Collections.unmodifiableList(failedIds);
+    }
+
+    /**
+     * 已写入的消息ID, 与传入的消息顺序一致
+     *
+     * @return 消息ID
+     */
+    public List<String> getPublishedIds() {
+        return publishedIds;
+    }
+
+    /**
+     * 写入失败或结果未知的消息ID
+     *
+     * @return 消息ID
+     */
+    public List<String> getFailedIds() {
+        return failedIds;
+    }
+}
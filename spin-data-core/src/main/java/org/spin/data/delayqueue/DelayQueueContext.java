@@ -1,10 +1,15 @@
 package org.spin.data.delayqueue;
 
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 import org.spin.core.util.StringUtils;
 import org.spin.data.redis.RedisClientWrapper;
 import org.spin.data.redis.RedisConnectionWrapper;
 import org.spin.data.redis.RedisPubSubConnectionWrapper;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * TITLE
  * <p>DESCRIPTION</p>
@@ -21,23 +26,120 @@ public class DelayQueueContext {
     protected final String scheduleGroupId;
     protected final boolean groupScheduleEnabled;
     protected final String delayQueueKeyPrefix;
-    protected final String delayQueueTopicPrefix;
-    protected final String notifierChannel;
-    protected final RedisConnectionWrapper<String, String> connection;
+    protected final int shards;
+    protected final String[] shardKeyPrefixes;
+    protected final String[] shardTopicPrefixes;
+    protected final String[] notifierChannels;
+    protected final String[] readyChannels;
+    protected final long transferLeaseTimeInMs;
+    protected final int transferBatchSize;
+    protected final int publishBatchSize;
+    protected final boolean reliable;
+    protected final long visibilityTimeoutInMs;
+    protected final int maxDeliveryAttempts;
+    protected final String deadLetterTopic;
+    protected final long deadLetterRetentionInMs;
+    protected final DelayMessageCodec codec;
+    protected final RedisConnectionWrapper<String, byte[]> connection;
     protected final RedisPubSubConnectionWrapper<String, String> pubsubConnection;
 
     public DelayQueueContext(String delayQueueName, String scheduleGroupId, RedisClientWrapper redisClientWrapper) {
+        this(new DelayQueueProperties(delayQueueName, scheduleGroupId), redisClientWrapper);
+    }
+
+    public DelayQueueContext(DelayQueueProperties properties, RedisClientWrapper redisClientWrapper) {
         this.redisClientWrapper = redisClientWrapper;
-        if (delayQueueName.indexOf('{') != -1 || delayQueueName.indexOf(':') != -1) {
+        String delayQueueName = properties.getName();
+        String scheduleGroupId = properties.getScheduleGroupId();
+        if (StringUtils.isEmpty(delayQueueName)) {
+            throw new IllegalArgumentException("DelayQueue name must not be empty");
+        }
+        if (delayQueueName.indexOf('{') != -1 || delayQueueName.indexOf('}') != -1 || delayQueueName.indexOf(':') != -1) {
             throw new IllegalArgumentException("DelayQueue name must not contains '{', '}' or ':'");
         }
         this.delayQueueName = delayQueueName;
         this.scheduleGroupId = scheduleGroupId;
         groupScheduleEnabled = StringUtils.isNotEmpty(scheduleGroupId);
         delayQueueKeyPrefix = "{" + delayQueueName + "}:";
-        delayQueueTopicPrefix = delayQueueKeyPrefix + "Topic:";
-        notifierChannel = delayQueueKeyPrefix + "TransferNotifier";
-        connection = redisClientWrapper.connect();
+        if (properties.getShards() < 1) {
+            throw new IllegalArgumentException("DelayQueue shards must be positive");
+        }
+        shards = properties.getShards();
+        shardKeyPrefixes = new String[shards];
+        shardTopicPrefixes = new String[shards];
+        notifierChannels = new String[shards];
+        readyChannels = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            // 单分片时沿用原有的键空间; 队列名称中不允许出现':', 分片键不会与其他队列冲突
+            shardKeyPrefixes[i] = shards == 1 ? delayQueueKeyPrefix : "{" + delayQueueName + ":" + i + "}:";
+            shardTopicPrefixes[i] = shardKeyPrefixes[i] + "Topic:";
+            notifierChannels[i] = shardKeyPrefixes[i] + "TransferNotifier";
+            readyChannels[i] = shardKeyPrefixes[i] + "ReadyNotifier";
+        }
+        if (properties.getTransferLeaseTimeInMs() < 1000L) {
+            throw new IllegalArgumentException("DelayQueue transfer lease time must not less than 1s");
+        }
+        transferLeaseTimeInMs = properties.getTransferLeaseTimeInMs();
+        if (properties.getTransferBatchSize() < 1) {
+            throw new IllegalArgumentException("DelayQueue transfer batch size must be positive");
+        }
+        transferBatchSize = properties.getTransferBatchSize();
+        if (properties.getPublishBatchSize() < 1) {
+            throw new IllegalArgumentException("DelayQueue publish batch size must be positive");
+        }
+        publishBatchSize = properties.getPublishBatchSize();
+        reliable = properties.isReliable();
+        if (reliable) {
+            if (properties.getVisibilityTimeoutInMs() < 1000L) {
+                throw new IllegalArgumentException("DelayQueue visibility timeout must not less than 1s");
+            }
+            if (properties.getMaxDeliveryAttempts() < 1) {
+                throw new IllegalArgumentException("DelayQueue max delivery attempts must be positive");
+            }
+            if (StringUtils.isEmpty(properties.getDeadLetterTopic())) {
+                throw new IllegalArgumentException("DelayQueue dead letter topic must not be empty");
+            }
+            if (properties.getDeadLetterRetentionInMs() < 1000L) {
+                throw new IllegalArgumentException("DelayQueue dead letter retention must not less than 1s");
+            }
+        }
+        visibilityTimeoutInMs = properties.getVisibilityTimeoutInMs();
+        maxDeliveryAttempts = properties.getMaxDeliveryAttempts();
+        deadLetterTopic = properties.getDeadLetterTopic();
+        deadLetterRetentionInMs = properties.getDeadLetterRetentionInMs();
+        codec = null == properties.getCodec() ? new BinaryDelayMessageCodec() : properties.getCodec();
+        connection = connect();
         pubsubConnection = redisClientWrapper.connectPubSub();
     }
+
+    /**
+     * 创建延迟队列专用的连接, 键使用UTF-8字符串, 值使用原始字节以支持二进制消息
+     *
+     * @return 连接
+     */
+    protected RedisConnectionWrapper<String, byte[]> connect() {
+        return redisClientWrapper.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
+
+    /**
+     * 根据消息ID选择分片
+     *
+     * @param messageId 消息ID
+     * @return 分片序号
+     */
+    protected int shardOf(String messageId) {
+        return shards == 1 ? 0 : Math.floorMod(messageId.hashCode(), shards);
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] bytes(long value) {
+        return bytes(Long.toString(value));
+    }
+
+    static String str(Object value) {
+        return null == value ? null : new String((byte[]) value, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,233 @@
+package org.spin.data.delayqueue;
+
+/**
+ * 延迟队列配置
+ * <p>DESCRIPTION</p>
+ * <p>Created by xuweinan on 2021/10/18</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class DelayQueueProperties {
+
+    /**
+     * 延迟队列名称
+     */
+    private String name;
+
+    /**
+     * 集群调度组ID, 为空时不启用集群调度
+     */
+    private String scheduleGroupId;
+
+    /**
+     * 消费线程池核心线程数
+     */
+    private int corePoolSize = 2;
+
+    /**
+     * 消费线程池最大线程数
+     */
+    private int maxPoolSize = 10;
+
+    /**
+     * 消费线程池空闲线程存活时间(毫秒)
+     */
+    private long keepAliveTimeInMs = 180_000L;
+
+    /**
+     * 消费线程池任务队列长度
+     */
+    private int workQueueSize = 20;
+
+    /**
+     * 单次转移到主题队列的最大消息数量, 积压的到期消息将分批转移, 避免长时间阻塞Redis
+     */
+    private int transferBatchSize = 500;
+
+    /**
+     * 批量发布时, 单次脚本调用写入的最大消息数量
+     */
+    private int publishBatchSize = 1000;
+
+    /**
+     * 是否启用可靠投递(至少一次), 启用后消息在处理成功后才会被确认删除
+     * <p>同一个延迟队列的所有实例必须使用相同的投递模式</p>
+     */
+    private boolean reliable = false;
+
+    /**
+     * 可靠投递模式下, 消息被领取后的不可见时间(毫秒), 超时未确认的消息将被重新投递
+     */
+    private long visibilityTimeoutInMs = 60_000L;
+
+    /**
+     * 可靠投递模式下, 消息的最大投递次数, 超过后转入死信主题
+     */
+    private int maxDeliveryAttempts = 3;
+
+    /**
+     * 可靠投递模式下的死信主题
+     */
+    private String deadLetterTopic = "DeadLetter";
+
+    /**
+     * 可靠投递模式下, 死信消息的保留时长(毫秒), 超时未被死信主题的处理器消费的消息将被清理
+     */
+    private long deadLetterRetentionInMs = 7 * 24 * 3600_000L;
+
+    /**
+     * 分片数量, 每个分片使用独立的哈希标签, 在Redis集群中可以分布到不同的节点上
+     * <p>同一个延迟队列的所有实例必须使用相同的分片数量, 调整分片数量前需要清空队列</p>
+     */
+    private int shards = 1;
+
+    /**
+     * 转移租约时长(毫秒), 每个分片同一时刻只由一个持有租约的实例执行转移
+     */
+    private long transferLeaseTimeInMs = 10_000L;
+
+    /**
+     * 消息编解码器, 默认使用紧凑的二进制格式
+     * <p>两种内置编解码器都能解码对方写入的数据, 升级后队列中已有的JSON消息无需迁移, 会在投递时按原格式读取.
+     * 滚动升级期间仍在运行的旧版本实例无法识别二进制格式, 需要先将所有实例升级, 或者在升级期间显式使用{@link JsonDelayMessageCodec}.
+     * 集群调度任务只允许加载受信任包中的类, 使用集群调度时需要在编解码器中指定任务所在的包</p>
+     */
+    private DelayMessageCodec codec = new BinaryDelayMessageCodec();
+
+    public DelayQueueProperties() {
+    }
+
+    public DelayQueueProperties(String name, String scheduleGroupId) {
+        this.name = name;
+        this.scheduleGroupId = scheduleGroupId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getScheduleGroupId() {
+        return scheduleGroupId;
+    }
+
+    public void setScheduleGroupId(String scheduleGroupId) {
+        this.scheduleGroupId = scheduleGroupId;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public void setCorePoolSize(int corePoolSize) {
+        this.corePoolSize = corePoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getKeepAliveTimeInMs() {
+        return keepAliveTimeInMs;
+    }
+
+    public void setKeepAliveTimeInMs(long keepAliveTimeInMs) {
+        this.keepAliveTimeInMs = keepAliveTimeInMs;
+    }
+
+    public int getWorkQueueSize() {
+        return workQueueSize;
+    }
+
+    public void setWorkQueueSize(int workQueueSize) {
+        this.workQueueSize = workQueueSize;
+    }
+
+    public int getTransferBatchSize() {
+        return transferBatchSize;
+    }
+
+    public void setTransferBatchSize(int transferBatchSize) {
+        this.transferBatchSize = transferBatchSize;
+    }
+
+    public int getPublishBatchSize() {
+        return publishBatchSize;
+    }
+
+    public void setPublishBatchSize(int publishBatchSize) {
+        this.publishBatchSize = publishBatchSize;
+    }
+
+    public boolean isReliable() {
+        return reliable;
+    }
+
+    public void setReliable(boolean reliable) {
+        this.reliable = reliable;
+    }
+
+    public long getVisibilityTimeoutInMs() {
+        return visibilityTimeoutInMs;
+    }
+
+    public void setVisibilityTimeoutInMs(long visibilityTimeoutInMs) {
+        this.visibilityTimeoutInMs = visibilityTimeoutInMs;
+    }
+
+    public int getMaxDeliveryAttempts() {
+        return maxDeliveryAttempts;
+    }
+
+    public void setMaxDeliveryAttempts(int maxDeliveryAttempts) {
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
+    }
+
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    public void setDeadLetterTopic(String deadLetterTopic) {
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    public long getDeadLetterRetentionInMs() {
+        return deadLetterRetentionInMs;
+    }
+
+    public void setDeadLetterRetentionInMs(long deadLetterRetentionInMs) {
+        this.deadLetterRetentionInMs = deadLetterRetentionInMs;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public long getTransferLeaseTimeInMs() {
+        return transferLeaseTimeInMs;
+    }
+
+    public void setTransferLeaseTimeInMs(long transferLeaseTimeInMs) {
+        this.transferLeaseTimeInMs = transferLeaseTimeInMs;
+    }
+
+    public DelayMessageCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(DelayMessageCodec codec) {
+        this.codec = codec;
+    }
+}
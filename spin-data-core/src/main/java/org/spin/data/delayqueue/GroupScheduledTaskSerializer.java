@@ -0,0 +1,299 @@
+package org.spin.data.delayqueue;
+
+import org.spin.core.throwable.SimplifiedException;
+import org.spin.core.util.ClassUtils;
+import org.spin.core.util.ReflectionUtils;
+import org.spin.core.util.SerializeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 集群调度任务序列化工具
+ * <p>lambda形式的任务按{@link SerializedLambda}的结构直接写入, 捕获的基本类型与字符串参数同样直接写入,
+ * 其余捕获参数以及非lambda形式的任务才会回退到JDK序列化</p>
+ * <p>反序列化时只加载受信任的类: lambda的函数式接口必须是{@link GroupScheduledTask}, 声明lambda的类以及JDK序列化
+ * 数据中出现的类必须通过信任校验, 避免从Redis中读取的任意类名被加载或执行</p>
+ * <p>Created by xuweinan on 2021/10/24</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+final class GroupScheduledTaskSerializer {
+    private static final byte KIND_LAMBDA = 1;
+    private static final byte KIND_JDK = 2;
+
+    private static final byte ARG_NULL = 0;
+    private static final byte ARG_STRING = 1;
+    private static final byte ARG_INT = 2;
+    private static final byte ARG_LONG = 3;
+    private static final byte ARG_BOOLEAN = 4;
+    private static final byte ARG_DOUBLE = 5;
+    private static final byte ARG_FLOAT = 6;
+    private static final byte ARG_SHORT = 7;
+    private static final byte ARG_BYTE = 8;
+    private static final byte ARG_CHAR = 9;
+    private static final byte ARG_JDK = 10;
+
+    private static final String TASK_INTERFACE = GroupScheduledTask.class.getName().replace('.', '/');
+    private static final String[] JDK_PACKAGES = {"java.lang.", "java.util.", "java.time.", "java.math."};
+
+    private static final Map<Class<?>, Method> WRITE_REPLACE_CACHE = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Method> DESERIALIZE_CACHE = new ConcurrentHashMap<>();
+
+    private GroupScheduledTaskSerializer() {
+    }
+
+    static byte[] serialize(GroupScheduledTask task) {
+        BinaryDelayMessageCodec.Writer writer = new BinaryDelayMessageCodec.Writer(256);
+        SerializedLambda lambda = resolveLambda(task);
+        if (null == lambda) {
+            writer.writeByte(KIND_JDK);
+            writer.writeBytes(SerializeUtils.serialize(task));
+            return writer.toByteArray();
+        }
+
+        writer.writeByte(KIND_LAMBDA);
+        writer.writeString(lambda.getCapturingClass());
+        writer.writeString(lambda.getFunctionalInterfaceClass());
+        writer.writeString(lambda.getFunctionalInterfaceMethodName());
+        writer.writeString(lambda.getFunctionalInterfaceMethodSignature());
+        writer.writeVarLong(lambda.getImplMethodKind());
+        writer.writeString(lambda.getImplClass());
+        writer.writeString(lambda.getImplMethodName());
+        writer.writeString(lambda.getImplMethodSignature());
+        writer.writeString(lambda.getInstantiatedMethodType());
+        writer.writeVarLong(lambda.getCapturedArgCount());
+        for (int i = 0; i < lambda.getCapturedArgCount(); i++) {
+            writeArg(writer, lambda.getCapturedArg(i));
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 反序列化任务
+     *
+     * @param data    序列化数据
+     * @param trusted 类名(以点分隔)是否受信任
+     * @return 任务
+     */
+    static GroupScheduledTask deserialize(byte[] data, Predicate<String> trusted) {
+        BinaryDelayMessageCodec.Reader reader = new BinaryDelayMessageCodec.Reader(data, 0);
+        byte kind = reader.readByte();
+        if (kind == KIND_JDK) {
+            return readJdk(reader.readBytes(), trusted);
+        }
+        if (kind != KIND_LAMBDA) {
+            throw new SimplifiedException("Unsupported group scheduled task format");
+        }
+
+        String capturingClass = reader.readString();
+        String functionalInterfaceClass = reader.readString();
+        String functionalInterfaceMethodName = reader.readString();
+        String functionalInterfaceMethodSignature = reader.readString();
+        int implMethodKind = (int) reader.readVarLong();
+        String implClass = reader.readString();
+        String implMethodName = reader.readString();
+        String implMethodSignature = reader.readString();
+        String instantiatedMethodType = reader.readString();
+        if (!TASK_INTERFACE.equals(functionalInterfaceClass) || null == capturingClass
+            || !isTrusted(capturingClass.replace('/', '.'), trusted)) {
+            throw new SimplifiedException("Untrusted group scheduled task: " + capturingClass);
+        }
+        Object[] capturedArgs = new Object[(int) reader.readVarLong()];
+        for (int i = 0; i < capturedArgs.length; i++) {
+            capturedArgs[i] = readArg(reader, trusted);
+        }
+
+        try {
+            Class<?> clazz = ClassUtils.getClass(capturingClass.replace('/', '.'));
+            SerializedLambda lambda = new SerializedLambda(clazz, functionalInterfaceClass, functionalInterfaceMethodName,
+                functionalInterfaceMethodSignature, implMethodKind, implClass, implMethodName, implMethodSignature,
+                instantiatedMethodType, capturedArgs);
+            return (GroupScheduledTask) DESERIALIZE_CACHE.computeIfAbsent(clazz, GroupScheduledTaskSerializer::findDeserializer)
+                .invoke(null, lambda);
+        } catch (Exception e) {
+            throw new SimplifiedException("Group scheduled task can not be deserialized: " + capturingClass, e);
+        }
+    }
+
+    /**
+     * 反序列化JDK序列化的任务, 用于读取JSON格式中存储的历史数据
+     *
+     * @param bytes   JDK序列化数据
+     * @param trusted 类名(以点分隔)是否受信任
+     * @return 任务
+     */
+    static GroupScheduledTask deserializeJdk(byte[] bytes, Predicate<String> trusted) {
+        Object task = readJdk(bytes, trusted);
+        if (!(task instanceof GroupScheduledTask)) {
+            throw new SimplifiedException("Untrusted group scheduled task: " + (null == task ? null : task.getClass().getName()));
+        }
+        return (GroupScheduledTask) task;
+    }
+
+    private static SerializedLambda resolveLambda(GroupScheduledTask task) {
+        Class<?> clazz = task.getClass();
+        if (!clazz.isSynthetic()) {
+            return null;
+        }
+        try {
+            Object replacement = WRITE_REPLACE_CACHE.computeIfAbsent(clazz, GroupScheduledTaskSerializer::findWriteReplace)
+                .invoke(task);
+            return replacement instanceof SerializedLambda ? (SerializedLambda) replacement : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Method findWriteReplace(Class<?> lambdaClass) {
+        try {
+            Method method = lambdaClass.getDeclaredMethod("writeReplace");
+            ReflectionUtils.makeAccessible(method);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new SimplifiedException("Lambda class has no writeReplace method: " + lambdaClass.getName(), e);
+        }
+    }
+
+    private static Method findDeserializer(Class<?> capturingClass) {
+        try {
+            Method method = capturingClass.getDeclaredMethod("$deserializeLambda$", SerializedLambda.class);
+            ReflectionUtils.makeAccessible(method);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new SimplifiedException("Class has no serializable lambda: " + capturingClass.getName(), e);
+        }
+    }
+
+    private static void writeArg(BinaryDelayMessageCodec.Writer writer, Object arg) {
+        if (null == arg) {
+            writer.writeByte(ARG_NULL);
+        } else if (arg instanceof String) {
+            writer.writeByte(ARG_STRING);
+            writer.writeString((String) arg);
+        } else if (arg instanceof Integer) {
+            writer.writeByte(ARG_INT);
+            writer.writeLong((Integer) arg);
+        } else if (arg instanceof Long) {
+            writer.writeByte(ARG_LONG);
+            writer.writeLong((Long) arg);
+        } else if (arg instanceof Boolean) {
+            writer.writeByte(ARG_BOOLEAN);
+            writer.writeByte((Boolean) arg ? 1 : 0);
+        } else if (arg instanceof Double) {
+            writer.writeByte(ARG_DOUBLE);
+            writer.writeLong(Double.doubleToRawLongBits((Double) arg));
+        } else if (arg instanceof Float) {
+            writer.writeByte(ARG_FLOAT);
+            writer.writeLong(Float.floatToRawIntBits((Float) arg));
+        } else if (arg instanceof Short) {
+            writer.writeByte(ARG_SHORT);
+            writer.writeLong((Short) arg);
+        } else if (arg instanceof Byte) {
+            writer.writeByte(ARG_BYTE);
+            writer.writeByte((Byte) arg);
+        } else if (arg instanceof Character) {
+            writer.writeByte(ARG_CHAR);
+            writer.writeLong((Character) arg);
+        } else {
+            writer.writeByte(ARG_JDK);
+            writer.writeBytes(SerializeUtils.serialize(arg));
+        }
+    }
+
+    private static Object readArg(BinaryDelayMessageCodec.Reader reader, Predicate<String> trusted) {
+        byte type = reader.readByte();
+        switch (type) {
+            case ARG_NULL:
+                return null;
+            case ARG_STRING:
+                return reader.readString();
+            case ARG_INT:
+                return (int) reader.readLong();
+            case ARG_LONG:
+                return reader.readLong();
+            case ARG_BOOLEAN:
+                return reader.readByte() != 0;
+            case ARG_DOUBLE:
+                return Double.longBitsToDouble(reader.readLong());
+            case ARG_FLOAT:
+                return Float.intBitsToFloat((int) reader.readLong());
+            case ARG_SHORT:
+                return (short) reader.readLong();
+            case ARG_BYTE:
+                return reader.readByte();
+            case ARG_CHAR:
+                return (char) reader.readLong();
+            case ARG_JDK:
+                return readJdk(reader.readBytes(), trusted);
+            default:
+                throw new SimplifiedException("Unsupported captured argument type: " + type);
+        }
+    }
+
+    private static <T> T readJdk(byte[] bytes, Predicate<String> trusted) {
+        return SerializeUtils.deserialize(() -> {
+            try {
+                return new TrustedObjectInputStream(new ByteArrayInputStream(bytes), trusted);
+            } catch (IOException e) {
+                throw new SimplifiedException("Group scheduled task can not be deserialized", e);
+            }
+        });
+    }
+
+    private static boolean isTrusted(String className, Predicate<String> trusted) {
+        String name = className;
+        int dim = 0;
+        while (dim < name.length() && name.charAt(dim) == '[') {
+            ++dim;
+        }
+        if (dim > 0) {
+            // 基本类型数组直接放行, 对象数组校验元素类型
+            if (name.charAt(dim) != 'L') {
+                return true;
+            }
+            name = name.substring(dim + 1, name.length() - 1);
+        }
+        for (String pkg : JDK_PACKAGES) {
+            if (name.startsWith(pkg)) {
+                return true;
+            }
+        }
+        return name.startsWith(GroupScheduledTask.class.getPackage().getName() + ".") || trusted.test(name);
+    }
+
+    /**
+     * 只解析受信任类的对象输入流
+     */
+    private static final class TrustedObjectInputStream extends ObjectInputStream {
+        private final Predicate<String> trusted;
+
+        private TrustedObjectInputStream(InputStream in, Predicate<String> trusted) throws IOException {
+            super(in);
+            this.trusted = trusted;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isTrusted(desc.getName(), trusted)) {
+                throw new InvalidClassException(desc.getName(), "Untrusted class in group scheduled task");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed in group scheduled task");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.spin.data.delayqueue;
+
+import org.spin.core.security.Base64;
+import org.spin.core.util.JsonUtils;
+import org.spin.core.util.SerializeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * JSON格式的延迟消息编解码器
+ * <p>与早期版本的存储格式兼容, 集群调度任务使用JDK序列化后以Base64编码存储. 解码时同样只加载受信任包中的类</p>
+ * <p>解码时同样识别{@link BinaryDelayMessageCodec}写入的数据, 两种格式的实例可以滚动升级混合部署</p>
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class JsonDelayMessageCodec implements DelayMessageCodec {
+    private final BinaryDelayMessageCodec binaryCodec;
+
+    /**
+     * 构造JSON编解码器
+     *
+     * @param trustedPackages 集群调度任务允许加载的包名前缀
+     */
+    public JsonDelayMessageCodec(String... trustedPackages) {
+        binaryCodec = new BinaryDelayMessageCodec(trustedPackages);
+    }
+
+    @Override
+    public byte[] encode(DelayMessage message) {
+        DelayMessage encoded = message;
+        if (null != message.getTask() && null == message.getHandler()) {
+            // 不修改调用方的消息
+            encoded = new DelayMessage(message.getMessageId(), message.getTopic(), message.getDelayTimeInMillis(),
+                message.getTriggerTime(), message.getPayload());
+            encoded.setScheduleTime(message.getScheduleTime());
+            encoded.setHandler(Base64.encode(SerializeUtils.serialize(message.getTask())));
+        }
+        return JsonUtils.toJson(encoded).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public DelayMessage decode(byte[] data) {
+        return BinaryDelayMessageCodec.isBinary(data) ? binaryCodec.decode(data) : decodeJson(data, binaryCodec::isTrusted);
+    }
+
+    static DelayMessage decodeJson(byte[] data, Predicate<String> trusted) {
+        DelayMessage message = JsonUtils.fromJson(new String(data, StandardCharsets.UTF_8), DelayMessage.class);
+        if (null != message.getHandler()) {
+            message.setTask(GroupScheduledTaskSerializer.deserializeJdk(Base64.decode(message.getHandler()), trusted));
+        }
+        return message;
+    }
+}
@@ -5,62 +5,213 @@ import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spin.core.util.ArrayUtils;
+import org.spin.core.util.CollectionUtils;
+import org.spin.data.redis.RedisScript;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.locks.LockSupport;
 
 class QueueTransfer {
     private static final Logger logger = LoggerFactory.getLogger(QueueTransfer.class);
-    private static final String TRANSFER_SCRIPT
-        = "local t = redis.call(\"TIME\")\n" +
+
+    /**
+     * 分批转移到期消息, 每次最多转移ARGV[1]条
+     * <p>可靠投递模式(ARGV[2]为1)下, 主题队列中只存放消息引用(ID+主题), 消息体保留到确认为止</p>
+     * <p>返回 {本批转移数量, 本批最早消息的转移延迟, 下一条消息的等待时间}, 等待时间为-1表示仍有到期消息未转移</p>
+     */
+    private static final RedisScript TRANSFER_SCRIPT
+        = RedisScript.of("delayqueue.transfer", "local t = redis.call(\"TIME\")\n" +
         "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
-        "local elements = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"PriorityQueue\", \"(0\", now)\n" +
-        "if table.getn(elements) > 0 then\n" +
-        "    redis.call(\"ZREMRANGEBYSCORE\", KEYS[1] .. \"PriorityQueue\", \"(0\", now)\n" +
-        "    for _, idAndTopic in pairs(elements) do\n" +
+        "local limit = tonumber(ARGV[1])\n" +
+        "local elements = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"PriorityQueue\", \"(0\", now, \"withscores\", \"limit\", 0, limit)\n" +
+        "local cnt = table.getn(elements) / 2\n" +
+        "local lag = 0\n" +
+        "if cnt > 0 then\n" +
+        "    lag = now - tonumber(elements[2])\n" +
+        "    for i = 1, table.getn(elements), 2 do\n" +
+        "        local idAndTopic = elements[i]\n" +
         "        local id = string.sub(idAndTopic, 0, 36)\n" +
         "        local topic = string.sub(idAndTopic, 37)\n" +
         "        local data = redis.call(\"HGET\", KEYS[1] .. \"Data\", id)\n" +
-        "        redis.call(\"RPUSH\", KEYS[1] .. \"Topic:\" .. topic, data)\n" +
-        "        redis.call(\"HDEL\", KEYS[1] .. \"Data\", id)\n" +
+        "        redis.call(\"ZREM\", KEYS[1] .. \"PriorityQueue\", idAndTopic)\n" +
+        "        if data then\n" +
+        "            if ARGV[2] == \"1\" then\n" +
+        "                redis.call(\"RPUSH\", KEYS[1] .. \"Topic:\" .. topic, idAndTopic)\n" +
+        "            else\n" +
+        "                redis.call(\"RPUSH\", KEYS[1] .. \"Topic:\" .. topic, data)\n" +
+        "                redis.call(\"HDEL\", KEYS[1] .. \"Data\", id)\n" +
+        "            end\n" +
+        "        end\n" +
+        "    end\n" +
+        "    if ARGV[2] == \"1\" then\n" +
+        "        redis.call(\"PUBLISH\", KEYS[1] .. \"ReadyNotifier\", \"READY\")\n" +
         "    end\n" +
         "end\n" +
         "\n" +
+        "if cnt >= limit then\n" +
+        "    return {cnt, lag, -1}\n" +
+        "end\n" +
+        "\n" +
         "local next = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"PriorityQueue\", now, \"+inf\", \"withscores\", \"limit\", 0, 1)\n" +
         "if table.getn(next) > 0 then\n" +
         "    t = redis.call(\"TIME\")\n" +
         "    now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
-        "    return math.max(next[2] - now, 1)\n" +
+        "    return {cnt, lag, math.max(next[2] - now, 1)}\n" +
         "end\n" +
         "\n" +
-        "return 0";
+        "return {cnt, lag, 0}");
 
+    /**
+     * 可靠投递模式下, 将超时未确认的消息重新放回主题队列, 每次最多处理ARGV[1]条
+     * <p>返回 {重新投递数量, 下一条在途消息的超时等待时间}, 等待时间为-1表示仍有超时消息未处理</p>
+     */
+    private static final RedisScript REDELIVER_SCRIPT
+        = RedisScript.of("delayqueue.redeliver", "local t = redis.call(\"TIME\")\n" +
+        "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
+        "local limit = tonumber(ARGV[1])\n" +
+        "local expired = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"Processing\", \"-inf\", now, \"limit\", 0, limit)\n" +
+        "local cnt = table.getn(expired)\n" +
+        "for _, idAndTopic in pairs(expired) do\n" +
+        "    redis.call(\"ZREM\", KEYS[1] .. \"Processing\", idAndTopic)\n" +
+        "    redis.call(\"RPUSH\", KEYS[1] .. \"Topic:\" .. string.sub(idAndTopic, 37), idAndTopic)\n" +
+        "end\n" +
+        "if cnt > 0 then\n" +
+        "    redis.call(\"PUBLISH\", KEYS[1] .. \"ReadyNotifier\", \"READY\")\n" +
+        "end\n" +
+        "if cnt >= limit then\n" +
+        "    return {cnt, -1}\n" +
+        "end\n" +
+        "\n" +
+        "local next = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"Processing\", now, \"+inf\", \"withscores\", \"limit\", 0, 1)\n" +
+        "if table.getn(next) > 0 then\n" +
+        "    return {cnt, math.max(next[2] - now, 1)}\n" +
+        "end\n" +
+        "\n" +
+        "return {cnt, 0}");
+
+    /**
+     * 可靠投递模式下, 清理超过保留时长的死信消息, 每次最多处理ARGV[1]条, ARGV[2]为死信主题
+     * <p>没有注册死信处理器时, 死信消息不会被领取, 需要在此删除消息体与主题队列中的引用</p>
+     */
+    private static final RedisScript PURGE_DEAD_LETTER_SCRIPT
+        = RedisScript.of("delayqueue.purgeDeadLetter", "local t = redis.call(\"TIME\")\n" +
+        "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
+        "local expired = redis.call(\"ZRANGEBYSCORE\", KEYS[1] .. \"DeadLetters\", \"-inf\", now, \"limit\", 0, tonumber(ARGV[1]))\n" +
+        "for _, id in pairs(expired) do\n" +
+        "    local ref = id .. ARGV[2]\n" +
+        "    redis.call(\"ZREM\", KEYS[1] .. \"DeadLetters\", id)\n" +
+        "    redis.call(\"HDEL\", KEYS[1] .. \"Data\", id)\n" +
+        "    redis.call(\"HDEL\", KEYS[1] .. \"Attempts\", id)\n" +
+        "    redis.call(\"ZREM\", KEYS[1] .. \"Processing\", ref)\n" +
+        "    redis.call(\"LREM\", KEYS[1] .. \"Topic:\" .. ARGV[2], 1, ref)\n" +
+        "end\n" +
+        "return table.getn(expired)");
+
+    /**
+     * 获取或续期分片的转移租约, ARGV: 持有者, 租约时长
+     */
+    private static final RedisScript LEASE_SCRIPT = RedisScript.of("delayqueue.lease", "local owner = redis.call(\"GET\", KEYS[1] .. \"TransferLease\")\n" +
+        "if not owner then\n" +
+        "    redis.call(\"SET\", KEYS[1] .. \"TransferLease\", ARGV[1], \"PX\", ARGV[2])\n" +
+        "    return 1\n" +
+        "end\n" +
+        "if owner == ARGV[1] then\n" +
+        "    redis.call(\"PEXPIRE\", KEYS[1] .. \"TransferLease\", ARGV[2])\n" +
+        "    return 1\n" +
+        "end\n" +
+        "return 0");
+
+    private static final RedisScript RELEASE_SCRIPT = RedisScript.of("delayqueue.release", "if redis.call(\"GET\", KEYS[1] .. \"TransferLease\") == ARGV[1] then\n" +
+        "    return redis.call(\"DEL\", KEYS[1] .. \"TransferLease\")\n" +
+        "end\n" +
+        "return 0");
+
+    /**
+     * 登记转移实例的心跳, 清理过期实例, 返回存活的实例数量, ARGV: 实例ID, 租约时长
+     */
+    private static final RedisScript HEARTBEAT_SCRIPT = RedisScript.of("delayqueue.heartbeat", "local t = redis.call(\"TIME\")\n" +
+        "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
+        "redis.call(\"ZADD\", KEYS[1] .. \"TransferMembers\", now, ARGV[1])\n" +
+        "redis.call(\"ZREMRANGEBYSCORE\", KEYS[1] .. \"TransferMembers\", \"-inf\", now - tonumber(ARGV[2]))\n" +
+        "redis.call(\"PEXPIRE\", KEYS[1] .. \"TransferMembers\", ARGV[2])\n" +
+        "return redis.call(\"ZCARD\", KEYS[1] .. \"TransferMembers\")");
+
+    private static final RedisScript LEAVE_SCRIPT = RedisScript.of("delayqueue.leave", "return redis.call(\"ZREM\", KEYS[1] .. \"TransferMembers\", ARGV[1])");
+
+    private static final long MAX_WAIT_MILLIS = 3600_000L;
+
+    private final String owner = UUID.randomUUID().toString();
     private final Thread workThread;
     private final DelayQueueContext delayQueueContext;
+    private final TransferMetrics metrics = new TransferMetrics();
+    /**
+     * 持有租约的分片, 由订阅线程读取, 变化时整体替换而不修改原数组
+     */
+    private volatile boolean[] ownedShards;
+    private final long renewInterval;
+    private long lastRenewTime = 0L;
 
     QueueTransfer(DelayQueueContext delayQueueContext) {
         this.delayQueueContext = delayQueueContext;
+        this.ownedShards = new boolean[delayQueueContext.shards];
+        this.renewInterval = delayQueueContext.transferLeaseTimeInMs / 3;
         delayQueueContext.pubsubConnection.addListener(new RedisPubSubAdapter<String, String>() {
             @Override
             public void message(String channel, String message) {
-                unPark();
+                boolean[] owned = ownedShards;
+                for (int i = 0; i < owned.length; i++) {
+                    if (owned[i] && delayQueueContext.notifierChannels[i].equals(channel)) {
+                        unPark();
+                        return;
+                    }
+                }
             }
         });
-        delayQueueContext.pubsubConnection.subscribe(delayQueueContext.notifierChannel);
+        delayQueueContext.pubsubConnection.subscribe(delayQueueContext.notifierChannels);
         workThread = new Thread(this::run, "Thread-RedisDelayQueueTransfer");
         workThread.start();
     }
 
     private void run() {
         logger.info("RedisDelayQueue Transfer worker is begin");
+        byte[] batchSize = DelayQueueContext.bytes(delayQueueContext.transferBatchSize);
+        byte[] reliable = DelayQueueContext.bytes(delayQueueContext.reliable ? "1" : "0");
         while (delayQueueContext.isRunning) {
             try {
-                Long nextTime = delayQueueContext.connection.syncEval(TRANSFER_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(delayQueueContext.delayQueueKeyPrefix));
+                long now = System.currentTimeMillis();
+                if (now - lastRenewTime >= renewInterval) {
+                    rebalance();
+                    lastRenewTime = now;
+                }
+
+                // 可靠投递模式下, 新领取消息的确认期限不早于领取时刻加不可见时间, 等待不超过不可见时间即可按时检查超时;
+                // 提前重试(nack)设置的期限可能更早, 由nack发出的通知唤醒
+                long waitTime = delayQueueContext.reliable ? Math.min(delayQueueContext.visibilityTimeoutInMs, MAX_WAIT_MILLIS) : MAX_WAIT_MILLIS;
+                boolean backlog = false;
+                boolean[] owned = ownedShards;
+                for (int shard = 0; shard < owned.length; shard++) {
+                    if (!owned[shard]) {
+                        continue;
+                    }
+                    long nextTime = transfer(shard, batchSize, reliable);
+                    if (nextTime < 0L) {
+                        backlog = true;
+                    } else if (nextTime > 0L) {
+                        waitTime = Math.min(waitTime, nextTime);
+                    }
+                }
 
-                // 无数据时等待1小时
-                if (null == nextTime || 0L == nextTime) {
-                    nextTime = 3600_000L;
+                // 仍有积压的到期消息或超时消息, 立即处理下一批
+                if (backlog) {
+                    continue;
                 }
-                LockSupport.parkNanos(nextTime * 1_000_000L);
+                metrics.recordDrained();
+
+                // 租约需要定期续期, 非可靠投递模式下无数据时最长等待1小时
+                long untilRenew = Math.max(renewInterval - (System.currentTimeMillis() - lastRenewTime), 1L);
+                LockSupport.parkNanos(Math.min(waitTime, untilRenew) * 1_000_000L);
             } catch (Exception e) {
                 logger.error("RedisDelayQueue Transfer worker throws an exception", e);
                 LockSupport.parkNanos(10L * 1_000_000L);
@@ -70,7 +221,145 @@ class QueueTransfer {
         logger.info("RedisDelayQueue Transfer worker was stopped");
     }
 
+    /**
+     * 转移一个分片中的到期消息
+     *
+     * @return 下一条消息的等待时间, -1表示仍有积压, 0表示没有待转移的消息
+     */
+    private long transfer(int shard, byte[] batchSize, byte[] reliable) {
+        String keyPrefix = delayQueueContext.shardKeyPrefixes[shard];
+        long start = System.currentTimeMillis();
+        List<Object> res = delayQueueContext.connection.syncEval(TRANSFER_SCRIPT, ScriptOutputType.MULTI,
+            ArrayUtils.ofArray(keyPrefix), batchSize, reliable);
+        long cost = System.currentTimeMillis() - start;
+
+        long transferred = getLong(res, 0);
+        long lag = getLong(res, 1);
+        long nextTime = getLong(res, 2);
+        if (transferred > 0) {
+            metrics.recordBatch(transferred, cost, lag);
+            if (lag > 1000L) {
+                logger.warn("RedisDelayQueue transfer lag on shard {} is {}ms, {} messages transferred in {}ms", shard, lag, transferred, cost);
+            }
+        }
+
+        // 先转移到期消息, 重新投递的消息排在其后, 避免超时重试挤占按时到期的消息
+        long redeliverTime = 0L;
+        if (delayQueueContext.reliable) {
+            redeliverTime = redeliver(keyPrefix, batchSize);
+            purgeDeadLetters(keyPrefix, batchSize);
+        }
+
+        if (nextTime < 0L || redeliverTime < 0L) {
+            return -1L;
+        }
+        if (nextTime == 0L || redeliverTime == 0L) {
+            return Math.max(nextTime, redeliverTime);
+        }
+        return Math.min(nextTime, redeliverTime);
+    }
+
+    private long redeliver(String keyPrefix, byte[] batchSize) {
+        List<Object> res = delayQueueContext.connection.syncEval(REDELIVER_SCRIPT, ScriptOutputType.MULTI,
+            ArrayUtils.ofArray(keyPrefix), batchSize);
+        long redelivered = getLong(res, 0);
+        if (redelivered > 0) {
+            metrics.recordRedelivered(redelivered);
+            logger.warn("RedisDelayQueue {} unacknowledged messages exceeded visibility timeout and were redelivered", redelivered);
+        }
+        return getLong(res, 1);
+    }
+
+    private void purgeDeadLetters(String keyPrefix, byte[] batchSize) {
+        Long purged = delayQueueContext.connection.syncEval(PURGE_DEAD_LETTER_SCRIPT, ScriptOutputType.INTEGER,
+            ArrayUtils.ofArray(keyPrefix), batchSize, DelayQueueContext.bytes(delayQueueContext.deadLetterTopic));
+        if (null != purged && purged > 0) {
+            logger.warn("RedisDelayQueue {} dead letter messages exceeded retention and were purged", purged);
+        }
+    }
+
+    /**
+     * 登记心跳并按存活实例数量均衡分片租约, 每个实例最多持有 ceil(分片数/实例数) 个分片
+     */
+    private void rebalance() {
+        byte[] ownerBytes = DelayQueueContext.bytes(owner);
+        byte[] leaseTime = DelayQueueContext.bytes(delayQueueContext.transferLeaseTimeInMs);
+        Long members = delayQueueContext.connection.syncEval(HEARTBEAT_SCRIPT, ScriptOutputType.INTEGER,
+            ArrayUtils.ofArray(delayQueueContext.delayQueueKeyPrefix), ownerBytes, leaseTime);
+        boolean[] current = ownedShards.clone();
+        int shards = current.length;
+        long memberCnt = null == members ? 1L : Math.max(members, 1L);
+        int target = (int) ((shards + memberCnt - 1) / memberCnt);
+
+        // 从各自的起始位置开始竞争租约, 避免所有实例争抢同一个分片
+        int offset = Math.floorMod(owner.hashCode(), shards);
+        int owned = 0;
+        List<Integer> released = new ArrayList<>(0);
+        try {
+            for (int i = 0; i < shards; i++) {
+                int shard = (offset + i) % shards;
+                String keyPrefix = delayQueueContext.shardKeyPrefixes[shard];
+                if (current[shard] && owned >= target) {
+                    current[shard] = false;
+                    released.add(shard);
+                    delayQueueContext.connection.syncEval(RELEASE_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(keyPrefix), ownerBytes);
+                    continue;
+                }
+                if (owned >= target) {
+                    continue;
+                }
+                Long res = delayQueueContext.connection.syncEval(LEASE_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(keyPrefix),
+                    ownerBytes, leaseTime);
+                boolean acquired = Long.valueOf(1L).equals(res);
+                if (acquired && !current[shard]) {
+                    logger.info("RedisDelayQueue Transfer worker acquired shard {}", shard);
+                } else if (!acquired && current[shard]) {
+                    logger.warn("RedisDelayQueue Transfer worker lost lease of shard {}", shard);
+                }
+                current[shard] = acquired;
+                if (acquired) {
+                    ++owned;
+                }
+            }
+        } finally {
+            ownedShards = current;
+        }
+        if (!released.isEmpty()) {
+            logger.info("RedisDelayQueue Transfer worker released shards {}", released);
+        }
+    }
+
+    void close() {
+        unPark();
+        byte[] ownerBytes = DelayQueueContext.bytes(owner);
+        boolean[] owned = ownedShards;
+        ownedShards = new boolean[owned.length];
+        try {
+            for (int shard = 0; shard < owned.length; shard++) {
+                if (owned[shard]) {
+                    delayQueueContext.connection.syncEval(RELEASE_SCRIPT, ScriptOutputType.INTEGER,
+                        ArrayUtils.ofArray(delayQueueContext.shardKeyPrefixes[shard]), ownerBytes);
+                }
+            }
+            delayQueueContext.connection.syncEval(LEAVE_SCRIPT, ScriptOutputType.INTEGER,
+                ArrayUtils.ofArray(delayQueueContext.delayQueueKeyPrefix), ownerBytes);
+        } catch (Exception e) {
+            logger.warn("RedisDelayQueue Transfer worker failed to release leases, they will expire automatically", e);
+        }
+    }
+
     void unPark() {
         LockSupport.unpark(workThread);
     }
+
+    TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static long getLong(List<Object> res, int idx) {
+        if (CollectionUtils.isEmpty(res) || res.size() <= idx || null == res.get(idx)) {
+            return 0L;
+        }
+        return ((Number) res.get(idx)).longValue();
+    }
 }
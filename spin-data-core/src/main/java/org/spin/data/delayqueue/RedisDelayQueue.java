@@ -4,18 +4,24 @@ import io.lettuce.core.ScriptOutputType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spin.core.Assert;
-import org.spin.core.security.Base64;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.util.ArrayUtils;
-import org.spin.core.util.SerializeUtils;
-import org.spin.core.util.StringUtils;
+import org.spin.core.util.CollectionUtils;
 import org.spin.data.redis.RedisClientWrapper;
+import org.spin.data.redis.RedisScript;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * TITLE
@@ -28,16 +34,37 @@ import java.util.UUID;
 public class RedisDelayQueue implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(RedisDelayQueue.class);
 
-    private static final String PUSH_MSG_SCRIPT = "redis.call('HSET', KEYS[1] .. 'Data', ARGV[1], ARGV[3])\n" +
+    private static final RedisScript PUSH_MSG_SCRIPT = RedisScript.of("delayqueue.pushMsg", "redis.call('HSET', KEYS[1] .. 'Data', ARGV[1], ARGV[3])\n" +
         "local now = redis.call('TIME')\n" +
         "local millis = now[1] * 1000 + math.ceil(now[2] / 1000)\n" +
         "local cnt = redis.call('ZADD', KEYS[1] .. 'PriorityQueue', millis + ARGV[4], ARGV[1] .. ARGV[2])\n" +
         "redis.call('PUBLISH', KEYS[1] .. 'TransferNotifier', 'WAKE UP')\n" +
-        "return cnt";
+        "return cnt");
 
-    private static final String DELETE_MSG_SCRIPT = "local cnt = redis.call('ZREM', KEYS[1] .. 'PriorityQueue', ARGV[1] .. ARGV[2])\n" +
-        "redis.call('HDEL', KEYS[1] .. 'Data', ARGV[1])\n" +
-        "return cnt";
+    /**
+     * 批量发布消息, ARGV: 主题, (消息ID, 消息体, 延迟时间)...
+     */
+    private static final RedisScript PUSH_MSG_BATCH_SCRIPT = RedisScript.of("delayqueue.pushMsgBatch", "local now = redis.call('TIME')\n" +
+        "local millis = now[1] * 1000 + math.ceil(now[2] / 1000)\n" +
+        "local topic = ARGV[1]\n" +
+        "local cnt = 0\n" +
+        "for i = 2, table.getn(ARGV), 3 do\n" +
+        "    redis.call('HSET', KEYS[1] .. 'Data', ARGV[i], ARGV[i + 1])\n" +
+        "    cnt = cnt + redis.call('ZADD', KEYS[1] .. 'PriorityQueue', millis + ARGV[i + 2], ARGV[i] .. topic)\n" +
+        "end\n" +
+        "redis.call('PUBLISH', KEYS[1] .. 'TransferNotifier', 'WAKE UP')\n" +
+        "return cnt");
+
+    /**
+     * 取消消息, ARGV: 消息ID, 主题
+     * <p>可靠投递模式下消息体保留到确认为止, 已转移或已领取的消息删除消息体后同样视为取消成功, 不会再被投递</p>
+     */
+    private static final RedisScript DELETE_MSG_SCRIPT = RedisScript.of("delayqueue.deleteMsg", "local cnt = redis.call('ZREM', KEYS[1] .. 'PriorityQueue', ARGV[1] .. ARGV[2])\n" +
+        "cnt = cnt + redis.call('HDEL', KEYS[1] .. 'Data', ARGV[1])\n" +
+        "redis.call('HDEL', KEYS[1] .. 'Attempts', ARGV[1])\n" +
+        "redis.call('ZREM', KEYS[1] .. 'Processing', ARGV[1] .. ARGV[2])\n" +
+        "redis.call('ZREM', KEYS[1] .. 'DeadLetters', ARGV[1])\n" +
+        "return cnt");
 
     private final TopicListener topicListener;
     private final QueueTransfer transfer;
@@ -51,15 +78,23 @@ public class RedisDelayQueue implements AutoCloseable {
                            int maxPoolSize,
                            long keepAliveTimeInMs,
                            int queueSize) {
-        delayQueueContext = new DelayQueueContext(delayQueueName, scheduleGroupId, clientWrapper);
-        topicListener = new TopicListener(delayQueueContext, handlerList, corePoolSize, maxPoolSize, keepAliveTimeInMs, queueSize);
+        this(buildProperties(delayQueueName, scheduleGroupId, corePoolSize, maxPoolSize, keepAliveTimeInMs, queueSize),
+            clientWrapper, handlerList);
+    }
+
+    public RedisDelayQueue(DelayQueueProperties properties,
+                           RedisClientWrapper clientWrapper,
+                           List<DelayMessageHandler> handlerList) {
+        delayQueueContext = new DelayQueueContext(properties, clientWrapper);
+        topicListener = new TopicListener(delayQueueContext, handlerList, properties.getCorePoolSize(), properties.getMaxPoolSize(),
+            properties.getKeepAliveTimeInMs(), properties.getWorkQueueSize());
         transfer = new QueueTransfer(delayQueueContext);
     }
 
     @Override
     public void close() {
         delayQueueContext.isRunning = false;
-        transfer.unPark();
+        transfer.close();
         delayQueueContext.pubsubConnection.close();
         delayQueueContext.connection.close();
         topicListener.close();
@@ -93,34 +128,122 @@ public class RedisDelayQueue implements AutoCloseable {
         return publishInternal(topic, message, delayTimeInSeconds * 1000L, null);
     }
 
+    /**
+     * 批量发布延迟消息
+     * <p>消息按publishBatchSize分批通过一次脚本调用写入, 每批只发送一次转移通知. 所有消息在写入前统一校验,
+     * 校验失败时不写入任何消息</p>
+     * <p>各批次独立写入, 不保证整体原子性: 部分批次失败时抛出{@link DelayMessagePublishException}, 其中包含已写入与失败的消息ID</p>
+     *
+     * @param topic    主题
+     * @param messages 延迟消息
+     * @return 消息ID, 与传入的消息顺序一致
+     */
+    public List<String> publishAll(String topic, Collection<DelayMessageEntry> messages) {
+        Assert.notEmpty(topic, "Delay Message's topic must not be empty!!");
+        if (CollectionUtils.isEmpty(messages)) {
+            return new ArrayList<>(0);
+        }
+        for (DelayMessageEntry entry : messages) {
+            Assert.notNull(entry, "Delay Message must not be null!!");
+            if (entry.getDelayTimeInMillis() < 1000L) {
+                throw new SimplifiedException("Message Delay Time must grate than 1s");
+            }
+        }
+
+        List<String> messageIds = new ArrayList<>(messages.size());
+        int batchSize = delayQueueContext.publishBatchSize;
+        byte[] topicBytes = DelayQueueContext.bytes(topic);
+        List<List<byte[]>> shardArgs = new ArrayList<>(delayQueueContext.shards);
+        List<List<String>> shardIds = new ArrayList<>(delayQueueContext.shards);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        List<List<String>> pendingIds = new ArrayList<>();
+        for (int i = 0; i < delayQueueContext.shards; i++) {
+            shardArgs.add(new ArrayList<>());
+            shardIds.add(new ArrayList<>());
+        }
+        for (DelayMessageEntry entry : messages) {
+            long triggerTime = System.currentTimeMillis();
+            DelayMessage delayMessage = buildMessage(topic, entry.getMessage(), entry.getDelayTimeInMillis(), triggerTime, null);
+            int shard = delayQueueContext.shardOf(delayMessage.getMessageId());
+            List<byte[]> args = shardArgs.get(shard);
+            if (args.isEmpty()) {
+                args.add(topicBytes);
+            }
+            args.add(DelayQueueContext.bytes(delayMessage.getMessageId()));
+            args.add(delayQueueContext.codec.encode(delayMessage));
+            args.add(DelayQueueContext.bytes(remainingDelay(entry.getDelayTimeInMillis(), triggerTime)));
+            shardIds.get(shard).add(delayMessage.getMessageId());
+            messageIds.add(delayMessage.getMessageId());
+            if (args.size() > batchSize * 3) {
+                pending.add(pushBatch(shard, args));
+                pendingIds.add(new ArrayList<>(shardIds.get(shard)));
+                args.clear();
+                shardIds.get(shard).clear();
+            }
+        }
+        for (int i = 0; i < delayQueueContext.shards; i++) {
+            if (shardArgs.get(i).size() > 1) {
+                pending.add(pushBatch(i, shardArgs.get(i)));
+                pendingIds.add(shardIds.get(i));
+            }
+        }
+
+        // 各批次异步发出, 最后统一等待, 只付出一次往返的延迟
+        Throwable error = null;
+        Set<String> failed = new HashSet<>();
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                pending.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                if (null == error) {
+                    error = null == e.getCause() ? e : e.getCause();
+                }
+                failed.addAll(pendingIds.get(i));
+            }
+        }
+        if (null != error) {
+            List<String> published = new ArrayList<>(messageIds.size() - failed.size());
+            List<String> failedIds = new ArrayList<>(failed.size());
+            for (String id : messageIds) {
+                (failed.contains(id) ? failedIds : published).add(id);
+            }
+            throw new DelayMessagePublishException(published, failedIds, error);
+        }
+        return messageIds;
+    }
+
     public boolean cancelGroupMessage(String messageId) {
         return cancelMessage(delayQueueContext.scheduleGroupId, messageId);
     }
 
+    /**
+     * 取消延迟消息
+     * <p>正在处理的消息不会被中断, 可靠投递模式下取消后不会再被重新投递</p>
+     *
+     * @param topic     主题
+     * @param messageId 消息ID
+     * @return 是否删除了消息
+     */
     public boolean cancelMessage(String topic, String messageId) {
         Long cnt = delayQueueContext.connection.syncEval(DELETE_MSG_SCRIPT, ScriptOutputType.INTEGER,
-            ArrayUtils.ofArray(delayQueueContext.delayQueueKeyPrefix), messageId, topic);
-        return cnt != null && cnt == 1L;
+            ArrayUtils.ofArray(delayQueueContext.shardKeyPrefixes[delayQueueContext.shardOf(messageId)]), DelayQueueContext.bytes(messageId), DelayQueueContext.bytes(topic));
+        return cnt != null && cnt > 0L;
     }
 
     private String publishInternal(String topic, String message, long delayTimeInMillis, GroupScheduledTask task) {
         long triggerTime = System.currentTimeMillis();
-        String messageId = UUID.randomUUID().toString();
         if (delayTimeInMillis < 1000L) {
             throw new SimplifiedException("Message Delay Time must grate than 1s");
         }
 
-        DelayMessage delayMessage = new DelayMessage(messageId, topic, delayTimeInMillis, triggerTime, message);
-        if (null != task) {
-            String taskStr = Base64.encode(SerializeUtils.serialize(task));
-            delayMessage.setHandler(taskStr);
-        }
+        DelayMessage delayMessage = buildMessage(topic, message, delayTimeInMillis, triggerTime, task);
+        String messageId = delayMessage.getMessageId();
 
         Long cnt = delayQueueContext.connection.syncEval(PUSH_MSG_SCRIPT, ScriptOutputType.INTEGER,
-            ArrayUtils.ofArray(delayQueueContext.delayQueueKeyPrefix),
-            messageId, topic,
-            delayMessage.toString(),
-            StringUtils.toString(Math.max(delayTimeInMillis - System.currentTimeMillis() + triggerTime - topicListener.getOffset(), 0)));
+            ArrayUtils.ofArray(delayQueueContext.shardKeyPrefixes[delayQueueContext.shardOf(messageId)]),
+            DelayQueueContext.bytes(messageId), DelayQueueContext.bytes(topic),
+            delayQueueContext.codec.encode(delayMessage),
+            DelayQueueContext.bytes(remainingDelay(delayTimeInMillis, triggerTime)));
 
         if (!Objects.equals(1L, cnt)) {
             throw new SimplifiedException("Delay message delivery failed");
@@ -129,4 +252,57 @@ public class RedisDelayQueue implements AutoCloseable {
         return messageId;
     }
 
+    /**
+     * 计算写入时剩余的延迟时间, 扣除自触发时间起已经过去的时间与转移的提前量
+     */
+    private long remainingDelay(long delayTimeInMillis, long triggerTime) {
+        return Math.max(delayTimeInMillis - System.currentTimeMillis() + triggerTime - topicListener.getOffset(), 0);
+    }
+
+    private DelayMessage buildMessage(String topic, String message, long delayTimeInMillis, long triggerTime, GroupScheduledTask task) {
+        DelayMessage delayMessage = new DelayMessage(UUID.randomUUID().toString(), topic, delayTimeInMillis, triggerTime, message);
+        delayMessage.setTask(task);
+        return delayMessage;
+    }
+
+    private CompletableFuture<Void> pushBatch(int shard, List<byte[]> args) {
+        int size = (args.size() - 1) / 3;
+        CompletableFuture<Long> res;
+        try {
+            res = delayQueueContext.connection.<Long>asyncEval(PUSH_MSG_BATCH_SCRIPT, ScriptOutputType.INTEGER,
+                ArrayUtils.ofArray(delayQueueContext.shardKeyPrefixes[shard]), args.toArray(new byte[0][])).toCompletableFuture();
+        } catch (RuntimeException e) {
+            // 同步抛出的异常也按批次失败处理, 以便汇总已写入的消息
+            res = new CompletableFuture<>();
+            res.completeExceptionally(e);
+        }
+        return res.thenAccept(cnt -> {
+            if (!Objects.equals((long) size, cnt)) {
+                throw new SimplifiedException("Delay message delivery failed, " + size + " messages expected but " + cnt + " delivered");
+            }
+        });
+    }
+
+    /**
+     * 获取到期消息转移的统计信息
+     *
+     * @return 转移统计
+     */
+    public TransferMetrics getTransferMetrics() {
+        return transfer.getMetrics();
+    }
+
+    private static DelayQueueProperties buildProperties(String delayQueueName,
+                                                        String scheduleGroupId,
+                                                        int corePoolSize,
+                                                        int maxPoolSize,
+                                                        long keepAliveTimeInMs,
+                                                        int queueSize) {
+        DelayQueueProperties properties = new DelayQueueProperties(delayQueueName, scheduleGroupId);
+        properties.setCorePoolSize(corePoolSize);
+        properties.setMaxPoolSize(maxPoolSize);
+        properties.setKeepAliveTimeInMs(keepAliveTimeInMs);
+        properties.setWorkQueueSize(queueSize);
+        return properties;
+    }
 }
@@ -3,16 +3,20 @@ package org.spin.data.delayqueue;
 import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisCommandTimeoutException;
 import io.lettuce.core.RedisException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spin.core.concurrent.Async;
+import org.spin.core.util.ArrayUtils;
 import org.spin.core.util.CollectionUtils;
-import org.spin.core.util.JsonUtils;
 import org.spin.core.util.MapUtils;
 import org.spin.data.redis.RedisConnectionWrapper;
+import org.spin.data.redis.RedisScript;
 
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TITLE
@@ -25,16 +29,97 @@ import java.util.concurrent.ThreadPoolExecutor;
 class TopicListener implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(TopicListener.class);
 
+    /**
+     * 可靠投递模式下, 从主题队列中领取消息引用并放入在途集合(分值为确认期限)
+     * <p>ARGV: 不可见时间, 最大领取数量, 最大投递次数, 死信主题, 死信保留时长, 主题列表...</p>
+     * <p>返回 {丢弃数量, 引用, 消息体, 投递次数, ...}, 已被取消的消息将被跳过, 超过最大投递次数的消息转入死信主题,
+     * 并登记到DeadLetters中(分值为过期时间), 由转移线程清理过期的死信. 死信主题中的消息超过最大投递次数后丢弃</p>
+     */
+    private static final RedisScript CLAIM_SCRIPT = RedisScript.of("delayqueue.claim", "local t = redis.call(\"TIME\")\n" +
+        "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
+        "local deadline = now + tonumber(ARGV[1])\n" +
+        "local limit = tonumber(ARGV[2])\n" +
+        "local maxAttempts = tonumber(ARGV[3])\n" +
+        "local dlt = ARGV[4]\n" +
+        "local retention = tonumber(ARGV[5])\n" +
+        "local res = {0}\n" +
+        "local cnt = 0\n" +
+        "local dead = 0\n" +
+        "local dropped = 0\n" +
+        "for i = 6, table.getn(ARGV) do\n" +
+        "    local key = KEYS[1] .. \"Topic:\" .. ARGV[i]\n" +
+        "    while cnt < limit do\n" +
+        "        local idAndTopic = redis.call(\"LPOP\", key)\n" +
+        "        if not idAndTopic then\n" +
+        "            break\n" +
+        "        end\n" +
+        "        local id = string.sub(idAndTopic, 0, 36)\n" +
+        "        local topic = string.sub(idAndTopic, 37)\n" +
+        "        local data = redis.call(\"HGET\", KEYS[1] .. \"Data\", id)\n" +
+        "        if data then\n" +
+        "            local attempts = redis.call(\"HINCRBY\", KEYS[1] .. \"Attempts\", id, 1)\n" +
+        "            if attempts > maxAttempts and topic ~= dlt then\n" +
+        "                redis.call(\"HDEL\", KEYS[1] .. \"Attempts\", id)\n" +
+        "                redis.call(\"RPUSH\", KEYS[1] .. \"Topic:\" .. dlt, id .. dlt)\n" +
+        "                redis.call(\"ZADD\", KEYS[1] .. \"DeadLetters\", now + retention, id)\n" +
+        "                dead = dead + 1\n" +
+        "            elseif attempts > maxAttempts then\n" +
+        "                redis.call(\"HDEL\", KEYS[1] .. \"Attempts\", id)\n" +
+        "                redis.call(\"HDEL\", KEYS[1] .. \"Data\", id)\n" +
+        "                redis.call(\"ZREM\", KEYS[1] .. \"DeadLetters\", id)\n" +
+        "                dropped = dropped + 1\n" +
+        "            else\n" +
+        "                redis.call(\"ZADD\", KEYS[1] .. \"Processing\", deadline, idAndTopic)\n" +
+        "                table.insert(res, idAndTopic)\n" +
+        "                table.insert(res, data)\n" +
+        "                table.insert(res, attempts)\n" +
+        "                cnt = cnt + 1\n" +
+        "            end\n" +
+        "        end\n" +
+        "    end\n" +
+        "end\n" +
+        "if dead > 0 then\n" +
+        "    redis.call(\"PUBLISH\", KEYS[1] .. \"ReadyNotifier\", \"READY\")\n" +
+        "end\n" +
+        "res[1] = dropped\n" +
+        "return res");
+
+    private static final RedisScript ACK_SCRIPT = RedisScript.of("delayqueue.ack", "local cnt = redis.call(\"ZREM\", KEYS[1] .. \"Processing\", ARGV[1])\n" +
+        "local id = string.sub(ARGV[1], 0, 36)\n" +
+        "redis.call(\"HDEL\", KEYS[1] .. \"Data\", id)\n" +
+        "redis.call(\"HDEL\", KEYS[1] .. \"Attempts\", id)\n" +
+        "redis.call(\"ZREM\", KEYS[1] .. \"DeadLetters\", id)\n" +
+        "return cnt");
+
+    private static final RedisScript NACK_SCRIPT = RedisScript.of("delayqueue.nack", "local t = redis.call(\"TIME\")\n" +
+        "local now = t[1] * 1000 + math.ceil(t[2] / 1000)\n" +
+        "local cnt = redis.call(\"ZADD\", KEYS[1] .. \"Processing\", \"XX\", \"CH\", now + tonumber(ARGV[2]), ARGV[1])\n" +
+        "if cnt > 0 then\n" +
+        "    redis.call(\"PUBLISH\", KEYS[1] .. \"TransferNotifier\", \"NACK\")\n" +
+        "end\n" +
+        "return cnt");
+
+    /**
+     * 可靠投递模式下, 无消息时的最长等待时间, 防止丢失就绪通知
+     */
+    private static final long IDLE_WAIT_MILLIS = 1000L;
+
     private final String uuid = UUID.randomUUID().toString();
     private final DelayQueueContext delayQueueContext;
     private final String workPoolName;
     private final Map<String, DelayMessageHandler> topicHandlers = MapUtils.ofMap();
     private final GroupScheduledHandler groupScheduledHandler;
-    private final String[] topics;
-    private RedisConnectionWrapper<String, String> connection;
-    private final Thread watchThread;
+    private final String[] topicNames;
+    private final RedisConnectionWrapper<String, byte[]>[] connections;
+
+    /**
+     * 可靠投递模式下领取与确认共用的连接, 重连时由监听线程替换, 工作线程读取
+     */
+    private volatile RedisConnectionWrapper<String, byte[]> connection;
+    private final Thread[] watchThreads;
     private volatile boolean isListen = true;
     private final OffsetWindow offsetWindow = new OffsetWindow();
+    private final int claimBatchSize;
 
     TopicListener(DelayQueueContext delayQueueContext,
                   List<DelayMessageHandler> handlerList,
@@ -43,11 +128,12 @@ class TopicListener implements AutoCloseable {
                   long keepAliveTimeInMs,
                   int queueSize) {
         this.delayQueueContext = delayQueueContext;
-        Set<String> t = new HashSet<>();
+        this.claimBatchSize = Math.max(maxPoolSize, 1);
+        Set<String> n = new HashSet<>();
         workPoolName = "RedisDelayQueueWorkPool-" + delayQueueContext.delayQueueName;
         if (delayQueueContext.groupScheduleEnabled) {
             groupScheduledHandler = new GroupScheduledHandler(delayQueueContext.scheduleGroupId);
-            t.add(delayQueueContext.delayQueueTopicPrefix + groupScheduledHandler.getTopic());
+            n.add(groupScheduledHandler.getTopic());
         } else {
             groupScheduledHandler = null;
         }
@@ -55,34 +141,65 @@ class TopicListener implements AutoCloseable {
         if (CollectionUtils.isNotEmpty(handlerList)) {
             for (DelayMessageHandler handler : handlerList) {
                 topicHandlers.put(handler.getTopic(), handler);
-                t.add(delayQueueContext.delayQueueTopicPrefix + handler.getTopic());
+                n.add(handler.getTopic());
             }
         }
 
-        if (t.size() > 0) {
+        if (n.size() > 0) {
             Async.initThreadPool(workPoolName,
                 corePoolSize, maxPoolSize, keepAliveTimeInMs, queueSize,
                 new ThreadPoolExecutor.CallerRunsPolicy());
-            topics = t.toArray(new String[0]);
-            connection = delayQueueContext.redisClientWrapper.connect();
-            watchThread = new Thread(this::listen, "Thread-RedisDelayQueueListener");
-            watchThread.setDaemon(true);
-            watchThread.start();
+            topicNames = n.toArray(new String[0]);
+            if (delayQueueContext.reliable) {
+                // 可靠投递模式下由一个线程轮流从各分片领取消息
+                connections = null;
+                connection = delayQueueContext.connect();
+                Thread watchThread = new Thread(this::listenReliable, "Thread-RedisDelayQueueListener");
+                watchThreads = new Thread[]{watchThread};
+                Set<String> readyChannels = new HashSet<>(Arrays.asList(delayQueueContext.readyChannels));
+                delayQueueContext.pubsubConnection.addListener(new RedisPubSubAdapter<String, String>() {
+                    @Override
+                    public void message(String channel, String message) {
+                        if (readyChannels.contains(channel)) {
+                            LockSupport.unpark(watchThread);
+                        }
+                    }
+                });
+                delayQueueContext.pubsubConnection.subscribe(delayQueueContext.readyChannels);
+            } else {
+                // BLPOP只能监听同一个槽位中的key, 每个分片使用独立的连接与线程
+                connections = newConnections(delayQueueContext.shards);
+                watchThreads = new Thread[delayQueueContext.shards];
+                for (int i = 0; i < watchThreads.length; i++) {
+                    int shard = i;
+                    watchThreads[i] = new Thread(() -> listen(shard), "Thread-RedisDelayQueueListener-" + i);
+                }
+            }
+            for (Thread watchThread : watchThreads) {
+                watchThread.setDaemon(true);
+                watchThread.start();
+            }
         } else {
-            topics = null;
-            watchThread = null;
+            topicNames = null;
+            connections = null;
+            watchThreads = null;
             logger.info("There's no delay queue topic to watch, listener was canceled");
         }
     }
 
     @Override
     public void close() {
-        if (watchThread != null) {
+        if (watchThreads != null) {
             isListen = false;
-            try {
-                connection.close();
-            } catch (Exception ignore) {
+            for (Thread watchThread : watchThreads) {
+                LockSupport.unpark(watchThread);
+            }
+            if (null != connections) {
+                for (RedisConnectionWrapper<String, byte[]> c : connections) {
+                    closeQuietly(c);
+                }
             }
+            closeQuietly(connection);
             Async.shutdown(workPoolName);
         }
     }
@@ -91,14 +208,18 @@ class TopicListener implements AutoCloseable {
         return offsetWindow.getOffset();
     }
 
-    void listen() {
-        logger.info("Listener is started [{}]", uuid);
+    void listen(int shard) {
+        logger.info("Listener is started [{}], shard: {}", uuid, shard);
+        String[] topics = new String[topicNames.length];
+        for (int i = 0; i < topicNames.length; i++) {
+            topics[i] = delayQueueContext.shardTopicPrefixes[shard] + topicNames[i];
+        }
 
         while (delayQueueContext.isRunning && isListen) {
-            String message;
+            byte[] message;
             try {
-                KeyValue<String, String> value =
-                    connection.syncBlpop(delayQueueContext.redisClientWrapper.getLettuceRedisProperties().getTimeout().getSeconds(), topics);
+                KeyValue<String, byte[]> value =
+                    connections[shard].syncBlpop(delayQueueContext.redisClientWrapper.getLettuceRedisProperties().getTimeout().getSeconds(), topics);
                 if (!value.hasValue()) {
                     continue;
                 }
@@ -107,43 +228,180 @@ class TopicListener implements AutoCloseable {
                 continue;
             } catch (RedisException e) {
                 if (isListen && delayQueueContext.isRunning && e.getMessage().contains("close")) {
-                    connection = delayQueueContext.redisClientWrapper.connect();
+                    connections[shard] = delayQueueContext.connect();
                 }
                 continue;
             }
-            DelayMessage delayMessage = JsonUtils.fromJson(message, DelayMessage.class);
+            DelayMessage delayMessage;
+            try {
+                delayMessage = delayQueueContext.codec.decode(message);
+            } catch (Exception e) {
+                logger.error("RedisDelayQueue message can not be decoded, it will be discarded", e);
+                continue;
+            }
             long time = System.currentTimeMillis();
             logger.info("RedisDelayQueue listen on Topic [{}] message arrived", delayMessage.getTopic());
             delayMessage.setScheduleTime(time);
-            Async.execute(workPoolName, () -> {
-                long sTime = time - (delayMessage.getTriggerTime() + delayMessage.getDelayTimeInMillis());
-                offsetWindow.put(sTime, 500L);
-                if (sTime > 1000L) {
-                    logger.warn("RedisDelayQueue schedule offset on message [{}] is {}ms", delayMessage.getMessageId(), sTime);
+            Async.execute(workPoolName, () -> handleMessage(delayMessage.getTopic(), delayMessage, true));
+        }
+
+        logger.info("Listener stopped [{}], shard: {}", uuid, shard);
+    }
+
+    void listenReliable() {
+        logger.info("Reliable listener is started [{}]", uuid);
+
+        byte[][] args = new byte[5 + topicNames.length][];
+        args[0] = DelayQueueContext.bytes(delayQueueContext.visibilityTimeoutInMs);
+        args[1] = DelayQueueContext.bytes(claimBatchSize);
+        args[2] = DelayQueueContext.bytes(delayQueueContext.maxDeliveryAttempts);
+        args[3] = DelayQueueContext.bytes(delayQueueContext.deadLetterTopic);
+        args[4] = DelayQueueContext.bytes(delayQueueContext.deadLetterRetentionInMs);
+        for (int i = 0; i < topicNames.length; i++) {
+            args[5 + i] = DelayQueueContext.bytes(topicNames[i]);
+        }
+
+        int shard = 0;
+        int idleShards = 0;
+        while (delayQueueContext.isRunning && isListen) {
+            List<Object> claimed;
+            try {
+                claimed = connection.syncEval(CLAIM_SCRIPT, ScriptOutputType.MULTI,
+                    ArrayUtils.ofArray(delayQueueContext.shardKeyPrefixes[shard]), args);
+            } catch (RedisException e) {
+                if (isListen && delayQueueContext.isRunning && null != e.getMessage() && e.getMessage().contains("close")) {
+                    RedisConnectionWrapper<String, byte[]> old = connection;
+                    connection = delayQueueContext.connect();
+                    closeQuietly(old);
+                }
+                LockSupport.parkNanos(10L * 1_000_000L);
+                continue;
+            }
+            shard = (shard + 1) % delayQueueContext.shards;
+
+            long dropped = CollectionUtils.isEmpty(claimed) ? 0L : ((Number) claimed.get(0)).longValue();
+            if (dropped > 0) {
+                logger.warn("RedisDelayQueue {} dead letter messages exceeded max delivery attempts and were dropped", dropped);
+            }
+
+            // 所有分片都没有消息时等待就绪通知
+            if (null == claimed || claimed.size() <= 1) {
+                if (++idleShards >= delayQueueContext.shards) {
+                    idleShards = 0;
+                    LockSupport.parkNanos(IDLE_WAIT_MILLIS * 1_000_000L);
                 }
-                DelayMessageHandler handler = null;
+                continue;
+            }
+            idleShards = 0;
+
+            for (int i = 1; i + 2 < claimed.size(); i += 3) {
+                String ref = DelayQueueContext.str(claimed.get(i));
+                byte[] message = (byte[]) claimed.get(i + 1);
+                long attempts = ((Number) claimed.get(i + 2)).longValue();
+                String topic = ref.substring(36);
+                DelayMessage delayMessage;
                 try {
-                    if (delayQueueContext.groupScheduleEnabled
-                        && delayMessage.getTopic().equals(delayQueueContext.scheduleGroupId)) {
-                        handler = groupScheduledHandler;
-                        groupScheduledHandler.handle(delayMessage);
-                    } else {
-                        handler = topicHandlers.get(delayMessage.getTopic());
-                        if (null != handler) {
-                            handler.handle(delayMessage.getPayload());
-                        } else {
-                            logger.warn("RedisDelayQueue messageId [{}] has no handler, message: {}", delayMessage.getMessageId(), message);
-                        }
-                    }
+                    delayMessage = delayQueueContext.codec.decode(message);
                 } catch (Exception e) {
-                    logger.warn("RedisDelayQueue listen on Topic [{}] throws an exception {}", delayMessage.getTopic(), e.getMessage());
-                    if (null != handler) {
-                        handler.handleException(delayMessage.getPayload(), e);
+                    logger.error("RedisDelayQueue message [{}] can not be decoded, it will be discarded", ref.substring(0, 36), e);
+                    ack(ref);
+                    continue;
+                }
+                long time = System.currentTimeMillis();
+                logger.info("RedisDelayQueue listen on Topic [{}] message arrived, attempts: {}", topic, attempts);
+                delayMessage.setScheduleTime(time);
+                Async.execute(workPoolName, () -> {
+                    if (handleMessage(topic, delayMessage, attempts == 1L)) {
+                        ack(ref);
+                    } else {
+                        nack(ref, attempts);
                     }
+                });
+            }
+        }
+
+        logger.info("Reliable listener stopped [{}]", uuid);
+    }
+
+    /**
+     * 调用主题对应的处理器处理消息
+     *
+     * @param topic        主题
+     * @param delayMessage 消息
+     * @param firstArrival 是否首次投递(只有首次投递参与调度误差统计)
+     * @return 是否处理成功
+     */
+    private boolean handleMessage(String topic, DelayMessage delayMessage, boolean firstArrival) {
+        if (firstArrival) {
+            long sTime = delayMessage.getScheduleTime() - (delayMessage.getTriggerTime() + delayMessage.getDelayTimeInMillis());
+            offsetWindow.put(sTime, 500L);
+            if (sTime > 1000L) {
+                logger.warn("RedisDelayQueue schedule offset on message [{}] is {}ms", delayMessage.getMessageId(), sTime);
+            }
+        }
+        DelayMessageHandler handler = null;
+        try {
+            if (delayQueueContext.groupScheduleEnabled
+                && topic.equals(delayQueueContext.scheduleGroupId)) {
+                handler = groupScheduledHandler;
+                groupScheduledHandler.handle(delayMessage);
+            } else {
+                handler = topicHandlers.get(topic);
+                if (null != handler) {
+                    handler.handle(delayMessage.getPayload());
+                } else {
+                    logger.warn("RedisDelayQueue messageId [{}] has no handler, message: {}", delayMessage.getMessageId(), delayMessage);
                 }
-            });
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("RedisDelayQueue listen on Topic [{}] throws an exception {}", topic, e.getMessage());
+            if (null != handler) {
+                handler.handleException(delayMessage.getPayload(), e);
+            }
+            return false;
         }
+    }
+
+    private void ack(String ref) {
+        try {
+            connection.syncEval(ACK_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(shardKeyPrefix(ref)),
+                DelayQueueContext.bytes(ref));
+        } catch (Exception e) {
+            logger.warn("RedisDelayQueue message [{}] acknowledge failed, it will be redelivered after visibility timeout", ref, e);
+        }
+    }
 
-        logger.info("Listener stopped [{}]", uuid);
+    private void nack(String ref, long attempts) {
+        // 指数退避, 最长不超过不可见时间
+        long retryDelay = Math.min(delayQueueContext.visibilityTimeoutInMs, 1000L << Math.min(attempts - 1, 16));
+        try {
+            connection.syncEval(NACK_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(shardKeyPrefix(ref)),
+                DelayQueueContext.bytes(ref), DelayQueueContext.bytes(retryDelay));
+        } catch (Exception e) {
+            logger.warn("RedisDelayQueue message [{}] negative acknowledge failed, it will be redelivered after visibility timeout", ref, e);
+        }
+    }
+
+    private String shardKeyPrefix(String ref) {
+        return delayQueueContext.shardKeyPrefixes[delayQueueContext.shardOf(ref.substring(0, 36))];
+    }
+
+    private static void closeQuietly(RedisConnectionWrapper<String, byte[]> c) {
+        if (null != c) {
+            try {
+                c.close();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisConnectionWrapper<String, byte[]>[] newConnections(int size) {
+        RedisConnectionWrapper<String, byte[]>[] res = new RedisConnectionWrapper[size];
+        for (int i = 0; i < size; i++) {
+            res[i] = delayQueueContext.connect();
+        }
+        return res;
     }
 }
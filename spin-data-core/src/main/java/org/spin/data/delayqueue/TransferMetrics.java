@@ -0,0 +1,136 @@
+package org.spin.data.delayqueue;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟队列转移统计
+ * <p>记录到期消息从优先队列转移到主题队列的批次数量、耗时与转移延迟</p>
+ * <p>Created by xuweinan on 2021/10/18</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class TransferMetrics {
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder transferred = new LongAdder();
+    private final LongAdder batchCostMillis = new LongAdder();
+    private final LongAdder redelivered = new LongAdder();
+    private volatile long lastBatchSize;
+    private volatile long lastBatchCostMillis;
+    private volatile long maxBatchCostMillis;
+    private volatile long lastLagMillis;
+    private volatile long maxLagMillis;
+    private volatile long lastDrainedAt;
+
+    void recordBatch(long size, long costMillis, long lagMillis) {
+        batches.increment();
+        transferred.add(size);
+        batchCostMillis.add(costMillis);
+        lastBatchSize = size;
+        lastBatchCostMillis = costMillis;
+        lastLagMillis = lagMillis;
+        // 只有转移线程写入, 无需CAS
+        if (costMillis > maxBatchCostMillis) {
+            maxBatchCostMillis = costMillis;
+        }
+        if (lagMillis > maxLagMillis) {
+            maxLagMillis = lagMillis;
+        }
+    }
+
+    void recordRedelivered(long size) {
+        redelivered.add(size);
+    }
+
+    void recordDrained() {
+        lastLagMillis = 0L;
+        lastDrainedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 累计转移批次
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return 累计转移消息数量
+     */
+    public long getTransferred() {
+        return transferred.sum();
+    }
+
+    /**
+     * @return 可靠投递模式下, 因确认超时而重新投递的消息数量
+     */
+    public long getRedelivered() {
+        return redelivered.sum();
+    }
+
+    /**
+     * @return 批次平均耗时(毫秒)
+     */
+    public long getAvgBatchCostMillis() {
+        long cnt = batches.sum();
+        return cnt == 0L ? 0L : batchCostMillis.sum() / cnt;
+    }
+
+    /**
+     * @return 最近一个批次转移的消息数量
+     */
+    public long getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return 最近一个批次的耗时(毫秒)
+     */
+    public long getLastBatchCostMillis() {
+        return lastBatchCostMillis;
+    }
+
+    /**
+     * @return 单批次最大耗时(毫秒)
+     */
+    public long getMaxBatchCostMillis() {
+        return maxBatchCostMillis;
+    }
+
+    /**
+     * @return 最近一个批次中最早到期消息的转移延迟(毫秒), 积压清空后归零
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    /**
+     * @return 最大转移延迟(毫秒)
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * @return 最近一次清空到期积压的时间戳
+     */
+    public long getLastDrainedAt() {
+        return lastDrainedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferMetrics{" +
+            "batches=" + getBatches() +
+            ", transferred=" + getTransferred() +
+            ", redelivered=" + getRedelivered() +
+            ", avgBatchCostMillis=" + getAvgBatchCostMillis() +
+            ", lastBatchSize=" + lastBatchSize +
+            ", lastBatchCostMillis=" + lastBatchCostMillis +
+            ", maxBatchCostMillis=" + maxBatchCostMillis +
+            ", lastLagMillis=" + lastLagMillis +
+            ", maxLagMillis=" + maxLagMillis +
+            '}';
+    }
+}
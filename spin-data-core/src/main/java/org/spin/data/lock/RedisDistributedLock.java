@@ -1,22 +1,37 @@
 package org.spin.data.lock;
 
 import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.core.concurrent.Async;
 import org.spin.core.concurrent.DistributedLock;
 import org.spin.core.concurrent.LockTicket;
 import org.spin.core.concurrent.Uninterruptibles;
 import org.spin.core.util.ArrayUtils;
 import org.spin.data.redis.RedisClientWrapper;
 import org.spin.data.redis.RedisConnectionWrapper;
+import org.spin.data.redis.RedisPubSubConnectionWrapper;
+import org.spin.data.redis.RedisScript;
 import org.spin.data.throwable.DistributedLockException;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 基于Redis的分布式锁实现
- * <p>DESCRIPTION</p>
+ * <p>开启释放通知时, 等待者订阅锁所在分槽的释放频道, 锁释放后立即被唤醒重试, 重试间隔只作为丢失通知或锁过期时的兜底.
+ * 只有存在等待者的分槽才会被订阅, 订阅连接在第一次等待时才建立.
+ * 锁的超时时间小于等于0时, 由看门狗按租约时长的1/3周期续期, 直到锁被释放, 看门狗在第一次使用时才启动</p>
+ * <p>开启可重入时, 同一线程重复获取同一个key的锁只增加持有计数, 计数归零时才真正释放. 重入前会确认锁仍然被当前凭据持有,
+ * 锁已过期时重新加锁</p>
  * <p>Created by xuweinan on 2017/8/10</p>
  *
  * @author xuweinan
@@ -25,36 +40,126 @@ import java.util.concurrent.TimeUnit;
 public class RedisDistributedLock extends DistributedLock implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(RedisDistributedLock.class);
     private static final String SPIN_REDIS_LOCKS = "SPIN_REDIS_LOCKS:";
-    private static final String REDIS_UNLOCK_SCRIPT;
+    private static final String RELEASE_CHANNEL = "SPIN_REDIS_LOCKS_RELEASED:";
+    private static final int RELEASE_CHANNEL_SLOTS = 256;
+    private static final RedisScript REDIS_UNLOCK_SCRIPT;
+    private static final RedisScript REDIS_RENEW_SCRIPT;
 
+    /**
+     * 由看门狗续期的锁超时时间
+     */
+    public static final long WATCHDOG_EXPIRE = -1L;
+
+    /**
+     * 默认的看门狗租约时长
+     */
+    public static final long DEFAULT_WATCHDOG_LEASE_MILLIS = 30_000L;
+
+    private final RedisClientWrapper redisClientWrapper;
     private final RedisConnectionWrapper<String, String> connection;
+    private final boolean reentrant;
+    private final boolean releaseNotify;
+    private final long watchdogLeaseMillis;
+    private volatile RedisPubSubConnectionWrapper<String, String> pubsubConnection;
+    private volatile ScheduledExecutorService watchdog;
+    private volatile boolean closed;
+
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+    private final Map<String, Set<Thread>> waiters = new ConcurrentHashMap<>();
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
 
     static {
-        REDIS_UNLOCK_SCRIPT = "local val = redis.call(\"get\", KEYS[1])\n" +
+        REDIS_UNLOCK_SCRIPT = RedisScript.of("lock.unlock", "local val = redis.call(\"get\", KEYS[1])\n" +
             "if val then\n" +
             "    if val == ARGV[1] then\n" +
-            "        return redis.call(\"del\", KEYS[1])\n" +
+            "        local cnt = redis.call(\"del\", KEYS[1])\n" +
+            "        redis.call(\"publish\", ARGV[2], KEYS[1])\n" +
+            "        return cnt\n" +
             "    else\n" +
             "        return -1\n" +
             "    end\n" +
             "else\n" +
             "    return 0\n" +
-            "end";
+            "end");
+
+        REDIS_RENEW_SCRIPT = RedisScript.of("lock.renew", "if redis.call(\"get\", KEYS[1]) == ARGV[1] then\n" +
+            "    return redis.call(\"pexpire\", KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "return 0");
     }
 
     public RedisDistributedLock(RedisClientWrapper redisClientWrapper) {
+        this(redisClientWrapper, false, true, DEFAULT_WATCHDOG_LEASE_MILLIS);
+    }
+
+    /**
+     * 构造分布式锁
+     *
+     * @param redisClientWrapper  redis客户端
+     * @param reentrant           是否允许同一线程重入
+     * @param releaseNotify       是否通过订阅锁释放通知唤醒等待者, 否则按重试间隔轮询
+     * @param watchdogLeaseMillis 看门狗模式下的租约时长
+     */
+    public RedisDistributedLock(RedisClientWrapper redisClientWrapper, boolean reentrant, boolean releaseNotify, long watchdogLeaseMillis) {
+        if (watchdogLeaseMillis < 300L) {
+            throw new IllegalArgumentException("Watchdog lease time must not less than 300ms");
+        }
+        this.redisClientWrapper = redisClientWrapper;
+        this.reentrant = reentrant;
+        this.releaseNotify = releaseNotify;
+        this.watchdogLeaseMillis = watchdogLeaseMillis;
         connection = redisClientWrapper.connect();
     }
 
+    /**
+     * 获取锁
+     *
+     * <p>
+     * 锁超时时间{@code expire}毫秒(小于等于0时由看门狗续期), 最多重试{@code retryTimes}次, 重试等待{@code sleepMillis}毫秒.
+     * 开启释放通知时, 最长等待{@code retryTimes * sleepMillis}毫秒, 锁释放后立即重试
+     * </p>
+     *
+     * @param key         key
+     * @param expire      锁的超时时间
+     * @param retryTimes  重试次数
+     * @param sleepMillis 获取锁失败的重试间隔
+     * @return 锁凭据
+     */
     @Override
     public LockTicket lock(String key, long expire, int retryTimes, long sleepMillis) {
         String lockKey = SPIN_REDIS_LOCKS + key;
+        if (reentrant) {
+            Holder holder = holders.get(lockKey);
+            if (null != holder && holder.owner == Thread.currentThread()) {
+                if (stillHeld(lockKey, holder)) {
+                    holder.holdCount.incrementAndGet();
+                    return new LockTicket(true, holder.ticket, key, this);
+                }
+                holders.remove(lockKey, holder);
+                logger.warn("RedisDistributeLock [{}] expired before re-entry, acquiring again", key);
+            }
+        }
+
+        boolean useWatchdog = expire <= 0;
+        long leaseTime = useWatchdog ? watchdogLeaseMillis : expire;
+        if (useWatchdog) {
+            startWatchdog();
+        }
         String ticket = UUID.randomUUID().toString();
-        boolean result = setRedisLock(lockKey, ticket, expire);
-        while ((!result) && retryTimes-- > 0) {
-            logger.debug("Get RedisDistributeLock failed, retrying...{}", retryTimes);
-            Uninterruptibles.sleepUninterruptibly(sleepMillis, TimeUnit.MILLISECONDS);
-            result = setRedisLock(lockKey, ticket, expire);
+        boolean result;
+        if (releaseNotify && retryTimes > 0) {
+            result = waitForRelease(lockKey, ticket, leaseTime, retryTimes * Math.max(sleepMillis, 1L), Math.max(sleepMillis, 1L));
+        } else {
+            result = setRedisLock(lockKey, ticket, leaseTime);
+            while ((!result) && retryTimes-- > 0) {
+                logger.debug("Get RedisDistributeLock failed, retrying...{}", retryTimes);
+                Uninterruptibles.sleepUninterruptibly(sleepMillis, TimeUnit.MILLISECONDS);
+                result = setRedisLock(lockKey, ticket, leaseTime);
+            }
+        }
+
+        if (result) {
+            holders.put(lockKey, new Holder(ticket, Thread.currentThread(), useWatchdog));
         }
         return new LockTicket(result, ticket, key, this);
     }
@@ -62,13 +167,21 @@ public class RedisDistributedLock extends DistributedLock implements AutoCloseab
     @Override
     protected boolean releaseLock(String key, String ticket) {
         String lockKey = SPIN_REDIS_LOCKS + key;
+        Holder holder = holders.get(lockKey);
+        if (null != holder && holder.ticket.equals(ticket)) {
+            if (holder.holdCount.decrementAndGet() > 0) {
+                return true;
+            }
+            holders.remove(lockKey, holder);
+        }
+
         Long result;
         try {
             result = connection.syncEval(
                 REDIS_UNLOCK_SCRIPT,
                 ScriptOutputType.INTEGER,
                 ArrayUtils.ofArray(lockKey),
-                ticket);
+                ticket, releaseChannel(lockKey));
         } catch (Exception e) {
             logger.error("Release RedisDistributeLock [" + key + "] occurred an exception", e);
             return false;
@@ -84,6 +197,147 @@ public class RedisDistributedLock extends DistributedLock implements AutoCloseab
         return result > 0;
     }
 
+    /**
+     * 等待锁释放通知并重试, 先登记并订阅再尝试加锁, 避免错过两者之间发出的通知
+     */
+    private boolean waitForRelease(String lockKey, String ticket, long leaseTime, long maxWaitMillis, long sleepMillis) {
+        Thread current = Thread.currentThread();
+        Set<Thread> threads = waiters.computeIfAbsent(lockKey, k -> ConcurrentHashMap.newKeySet());
+        threads.add(current);
+        String channel = releaseChannel(lockKey);
+        boolean subscribed = subscribe(channel);
+        try {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            boolean result = setRedisLock(lockKey, ticket, leaseTime);
+            long remaining = maxWaitMillis;
+            while (!result && remaining > 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(sleepMillis, remaining)));
+                result = setRedisLock(lockKey, ticket, leaseTime);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return result;
+        } finally {
+            threads.remove(current);
+            if (threads.isEmpty()) {
+                waiters.remove(lockKey, threads);
+            }
+            if (subscribed) {
+                unsubscribe(channel);
+            }
+        }
+    }
+
+    /**
+     * 订阅释放频道, 同一频道按等待者计数, 订阅失败时退化为按重试间隔轮询
+     * <p>频道数量固定, 每个频道一个订阅状态对象, 订阅与退订只在该频道上互斥, 不同频道的等待者互不阻塞</p>
+     */
+    private boolean subscribe(String channel) {
+        Subscription subscription = subscriptions.computeIfAbsent(channel, k -> new Subscription());
+        synchronized (subscription) {
+            try {
+                if (subscription.refs == 0) {
+                    pubsub().subscribe(channel);
+                }
+                ++subscription.refs;
+                return true;
+            } catch (Exception e) {
+                logger.warn("Subscribe RedisDistributeLock release channel [{}] failed, fallback to polling", channel, e);
+                return false;
+            }
+        }
+    }
+
+    private void unsubscribe(String channel) {
+        Subscription subscription = subscriptions.get(channel);
+        synchronized (subscription) {
+            if (--subscription.refs > 0) {
+                return;
+            }
+            try {
+                if (!closed) {
+                    pubsubConnection.unsubscribe(channel);
+                }
+            } catch (Exception e) {
+                logger.warn("Unsubscribe RedisDistributeLock release channel [{}] failed", channel, e);
+            }
+        }
+    }
+
+    private RedisPubSubConnectionWrapper<String, String> pubsub() {
+        if (null == pubsubConnection) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("RedisDistributedLock is closed");
+                }
+                if (null == pubsubConnection) {
+                    RedisPubSubConnectionWrapper<String, String> conn = redisClientWrapper.connectPubSub();
+                    conn.addListener(new RedisPubSubAdapter<String, String>() {
+                        @Override
+                        public void message(String channel, String message) {
+                            if (channel.startsWith(RELEASE_CHANNEL)) {
+                                Set<Thread> threads = waiters.get(message);
+                                if (null != threads) {
+                                    threads.forEach(LockSupport::unpark);
+                                }
+                            }
+                        }
+                    });
+                    pubsubConnection = conn;
+                }
+            }
+        }
+        return pubsubConnection;
+    }
+
+    private void startWatchdog() {
+        if (null == watchdog) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("RedisDistributedLock is closed");
+                }
+                if (null == watchdog) {
+                    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(Async.buildFactory("RedisLockWatchdog", true, null, null));
+                    long renewInterval = watchdogLeaseMillis / 3;
+                    executor.scheduleWithFixedDelay(this::renewLeases, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+                    watchdog = executor;
+                }
+            }
+        }
+    }
+
+    /**
+     * 重入前确认锁仍由当前凭据持有, 固定超时的锁可能已经过期并被其他客户端获取
+     */
+    private boolean stillHeld(String lockKey, Holder holder) {
+        try {
+            return holder.ticket.equals(connection.syncGet(lockKey));
+        } catch (Exception e) {
+            logger.error("Check RedisDistributeLock [" + lockKey + "] occurred an exception", e);
+            return false;
+        }
+    }
+
+    private static String releaseChannel(String lockKey) {
+        return RELEASE_CHANNEL + (lockKey.hashCode() & (RELEASE_CHANNEL_SLOTS - 1));
+    }
+
+    private void renewLeases() {
+        holders.forEach((lockKey, holder) -> {
+            if (!holder.watchdog) {
+                return;
+            }
+            try {
+                Long result = connection.syncEval(REDIS_RENEW_SCRIPT, ScriptOutputType.INTEGER, ArrayUtils.ofArray(lockKey),
+                    holder.ticket, String.valueOf(watchdogLeaseMillis));
+                if (null != result && result == 0L && holders.remove(lockKey, holder)) {
+                    logger.warn("RedisDistributeLock [{}] was lost before renewal", lockKey);
+                }
+            } catch (Exception e) {
+                logger.error("Renew RedisDistributeLock [" + lockKey + "] occurred an exception", e);
+            }
+        });
+    }
+
     private boolean setRedisLock(final String key, final String ticket, final long expire) {
         try {
             return connection.syncSetNx(key, ticket, expire);
@@ -95,6 +349,32 @@ public class RedisDistributedLock extends DistributedLock implements AutoCloseab
 
     @Override
     public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (null != watchdog) {
+            watchdog.shutdownNow();
+        }
+        if (null != pubsubConnection) {
+            pubsubConnection.close();
+        }
         connection.close();
     }
+
+    private static class Subscription {
+        private int refs;
+    }
+
+    private static class Holder {
+        private final String ticket;
+        private final Thread owner;
+        private final boolean watchdog;
+        private final AtomicInteger holdCount = new AtomicInteger(1);
+
+        private Holder(String ticket, Thread owner, boolean watchdog) {
+            this.ticket = ticket;
+            this.owner = owner;
+            this.watchdog = watchdog;
+        }
+    }
 }
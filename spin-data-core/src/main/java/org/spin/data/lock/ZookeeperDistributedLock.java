@@ -7,12 +7,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spin.core.ErrorCode;
 import org.spin.core.concurrent.DistributedLock;
+import org.spin.core.concurrent.LatencyHistogram;
+import org.spin.core.concurrent.LocalLockCoalescer;
 import org.spin.core.concurrent.LockTicket;
 import org.spin.core.concurrent.Uninterruptibles;
 import org.spin.core.function.ExceptionalHandler;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.throwable.SpinException;
-import org.spin.data.throwable.DistributedLockException;
 import org.spin.data.throwable.ZookeeperException;
 
 import javax.security.auth.login.Configuration;
@@ -23,9 +24,9 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Consumer;
 
 /**
  * 基于Zookeeper的分布式锁实现
@@ -38,7 +39,6 @@ import java.util.function.Consumer;
 public class ZookeeperDistributedLock extends DistributedLock implements Watcher {
     private static final Logger logger = LoggerFactory.getLogger(ZookeeperDistributedLock.class);
     private static final int DEFAULT_SESSION_TIMEOUT = 30000;
-    private static final ConcurrentHashMap<String, Consumer<String>> DELETE_LISTENER_MAP = new ConcurrentHashMap<>();
     private static final String JAVA_LOGIN_CONFIG_PARAM = "java.security.auth.login.config";
     private static final String ZK_SASL_CLIENT = "zookeeper.sasl.client";
     private static final String ZK_LOGIN_CONTEXT_NAME_KEY = "zookeeper.sasl.clientconfig";
@@ -59,9 +59,21 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
     private final long operationRetryTimeoutInMillis;
     private final boolean zkSaslEnabled = isZkSaslEnabled();
 
-    private ZooKeeper zooKeeper;
+    private volatile ZooKeeper zooKeeper;
     private final ReentrantLock zookeeperLock = new ReentrantLock();
 
+    /**
+     * 等待删除的前序节点与对应的唤醒动作
+     */
+    private final ConcurrentHashMap<String, Runnable> deleteListeners = new ConcurrentHashMap<>();
+
+    /**
+     * 本地排队与锁节点移交, 同一进程中同一个key最多只持有一个锁节点
+     */
+    private final LocalLockCoalescer coalescer = new LocalLockCoalescer(Integer.MAX_VALUE, (key, node) -> deleteNode(node));
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LongAdder acquireFailed = new LongAdder();
+
     private Event.KeeperState currentState;
     private final ZkEventLock eventLock = new ZkEventLock();
 
@@ -92,8 +104,9 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
      * 获取锁
      *
      * <p>
-     * 锁超时时间(无效参数), 重试{@code retryTimes}次, 重试等待{@code sleepMillis}毫秒
+     * 锁超时时间(无效参数), 最长等待{@code (retryTimes + 1) * sleepMillis}毫秒
      * </p>
+     * <p>同一进程中同一个key的等待者先在本地排队, 只有队首与Zookeeper交互, 锁释放时如果本地还有等待者, 直接移交锁节点</p>
      *
      * @param key         key
      * @param expire      获取锁超时时间(无效参数)
@@ -103,20 +116,42 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
      */
     @Override
     public LockTicket lock(String key, long expire, int retryTimes, long sleepMillis) {
-        return attemptLock(key, retryTimes, sleepMillis);
+        long start = System.nanoTime();
+        long maxWait = sleepMillis > 0 ? sleepMillis * (Math.max(retryTimes, 0) + 1) : 0L;
+        String lockNode = null;
+        try {
+            lockNode = coalescer.acquire(key, maxWait, remaining -> attemptLock(key, System.currentTimeMillis() + remaining, sleepMillis));
+        } finally {
+            acquireLatency.recordNanos(System.nanoTime() - start);
+            if (null == lockNode) {
+                acquireFailed.increment();
+            }
+        }
+        return new LockTicket(null != lockNode, lockNode, key, this);
     }
 
     @Override
     protected boolean releaseLock(String key, String ticket) {
-        if (null != ticket) {
-            try {
-                retryUntilConnected(() -> zooKeeper.delete(ticket, -1));
-                return true;
-            } catch (NoSuchElementException e) {
-                return false;
-            }
-        }
-        return true;
+        // 本地还有等待者时, 保留锁节点直接移交
+        return coalescer.release(key, ticket);
+    }
+
+    /**
+     * 获取加锁耗时统计(包含本地排队时间)
+     *
+     * @return 耗时统计
+     */
+    public LatencyHistogram getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    /**
+     * 获取加锁失败次数
+     *
+     * @return 失败次数
+     */
+    public long getAcquireFailed() {
+        return acquireFailed.sum();
     }
 
     @Override
@@ -158,41 +193,28 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
     }
 
     /**
-     * 尝试获取锁
+     * 尝试在Zookeeper上获取锁
      *
      * @param key         锁的key
-     * @param retryTimes  重试次数
+     * @param deadline    等待截止时间
      * @param sleepMillis 重试等待时间
-     * @return 锁凭据
+     * @return 锁节点, 未获得锁时返回null
      */
-    private LockTicket attemptLock(String key, int retryTimes, long sleepMillis) {
-        final Long millisToWait = sleepMillis > 0 ? sleepMillis : null;
-
-        boolean hasTheLock;
-        boolean isDone = false;
+    private String attemptLock(String key, long deadline, long sleepMillis) {
         boolean retried = false;
-        LockTicket ticket = null;
-        long startMillis;
         //网络闪断需要重试一次
-        while (!isDone) {
-            isDone = true;
+        while (true) {
             try {
                 //createLockNode用于在locker（basePath持久节点）下创建客户端要获取锁的[临时]顺序节点
                 String lockNode = createLockNode(key);
-                startMillis = System.currentTimeMillis();
                 /*
                  * 该方法用于判断自己是否获取到了锁，即自己创建的顺序节点在locker的所有子节点中是否最小
-                 * 如果没有获取到锁，则等待其它客户端锁的释放，并且稍后重试直到获取到锁或者超时
+                 * 如果没有获取到锁，则等待前序节点删除, 直到获取到锁或者超时
                  */
-                hasTheLock = waitToLock(key, lockNode, startMillis, retryTimes, millisToWait);
-                ticket = new LockTicket(hasTheLock, lockNode, key, this);
-                if (hasTheLock) {
-                    return ticket;
-                }
+                return waitToLock(key, lockNode, deadline) ? lockNode : null;
             } catch (NoSuchElementException e) {
                 if (!retried) {
                     retried = true;
-                    isDone = false;
                     logger.debug("Get ZookeeperDistributeLock failed, retrying...{}", sleepMillis);
                     Uninterruptibles.sleepUninterruptibly(sleepMillis, TimeUnit.MILLISECONDS);
                 } else {
@@ -200,7 +222,6 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
                 }
             }
         }
-        return ticket;
     }
 
     /**
@@ -219,17 +240,18 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
 
     /**
      * 获取锁的核心方法
+     * <p>子节点列表只在创建锁节点后获取一次: 比自己小的节点都在自己之前创建, 之后只需要依次等待前序节点被删除,
+     * 每个等待者只监听自己的前序节点, 不会因为一次释放唤醒所有等待者</p>
      *
-     * @param key          锁的key
-     * @param lockNode     锁实例
-     * @param startMillis  获取所的开始时间
-     * @param millisToWait 等待时间
+     * @param key      锁的key
+     * @param lockNode 锁实例
+     * @param deadline 等待截止时间
      * @return 是否获得锁
      */
-    private boolean waitToLock(String key, String lockNode, long startMillis, long retryTimes, Long millisToWait) {
-        boolean needRelease = false;
-
-        String sequenceNodeName = lockNode.substring(ROOT_PATH.length() + key.length() + 2);
+    private boolean waitToLock(String key, String lockNode, long deadline) {
+        boolean hasTheLock = false;
+        String basePath = ROOT_PATH + DELIMITER + key + DELIMITER;
+        String sequenceNodeName = lockNode.substring(basePath.length());
         try {
             //该方法实现获取locker节点下的所有顺序节点，并且从小到大排序
             List<String> children = getSortedChildren(key);
@@ -238,61 +260,54 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
 
             /*如果在getSortedChildren中没有找到之前创建的[临时]顺序节点，这表示可能由于网络闪断而导致
              *Zookeeper认为连接断开而删除了我们创建的节点，此时需要抛出异常，让上一级去处理
-             *上一级的做法是捕获该异常，并且执行重试指定的次数 见后面的 attemptLock方法 */
+             *上一级的做法是捕获该异常，并且重试一次 见attemptLock方法 */
             if (lockIndex < 0) {
                 throw new NoSuchElementException("节点没有找到: " + sequenceNodeName);
             }
 
-            if (lockIndex == 0) {
-                return true;
-            }
-
-            // 不等待, 快速失败
-            if (null == millisToWait) {
-                return false;
-            }
-
-            //如果当前客户端创建的节点在locker子节点列表中位置大于0，表示其它客户端已经获取了锁
-            //此时当前客户端需要等待其它客户端释放锁，
-            //如何判断其它客户端是否已经释放了锁？从子节点列表中获取到比自己次小的哪个节点，并对其建立监听
-            String lockToWait = children.get(lockIndex - 1);
-
-            //如果次小的节点被删除了，则表示当前客户端的节点应该是最小的了，所以使用CountDownLatch来实现等待
-            final CountDownLatch latch = new CountDownLatch(1);
-
-            try {
-                //次小节点删除事件发生时，让countDownLatch结束等待
-                //此时还需要重新让程序回到while，重新判断一次
-                watchOnDelete(ROOT_PATH + DELIMITER + key + DELIMITER + lockToWait, path -> latch.countDown());
-
-                millisToWait = Math.max(10L, millisToWait - 5L);
-                long timeToWait = millisToWait - (System.currentTimeMillis() - startMillis);
-                timeToWait = timeToWait <= 0L ? 10L : timeToWait;
-                do {
-                    if (latch.await(timeToWait, TimeUnit.MILLISECONDS)) {
-                        return true;
+            while (lockIndex > 0) {
+                String lockToWait = basePath + children.get(lockIndex - 1);
+                final CountDownLatch latch = new CountDownLatch(1);
+                deleteListeners.put(lockToWait, latch::countDown);
+                try {
+                    Stat stat = retryUntilConnected(() -> zooKeeper.exists(lockToWait, true));
+                    if (null != stat) {
+                        long timeToWait = deadline - System.currentTimeMillis();
+                        // 不等待或等待超时, 快速失败
+                        if (timeToWait <= 0L || !latch.await(timeToWait, TimeUnit.MILLISECONDS)) {
+                            return false;
+                        }
                     }
-                    timeToWait = millisToWait;
-                } while (retryTimes-- > 0);
-
-                unwatchOnDelete(ROOT_PATH + DELIMITER + key + DELIMITER + lockToWait);
-                needRelease = true;
-            } catch (NoSuchElementException e) {
-                // ignore
+                } finally {
+                    deleteListeners.remove(lockToWait);
+                }
+                // 前序节点已删除(释放锁或放弃等待), 继续等待更前面的节点
+                children.remove(--lockIndex);
             }
+            hasTheLock = true;
+            return true;
         } catch (NoSuchElementException e) {
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
-            //发生异常需要删除节点
-            needRelease = true;
             throw new SimplifiedException("分布式锁获取失败", e);
         } finally {
-            //如果需要删除节点
-            if (needRelease) {
-                releaseLock(key, lockNode);
+            //未获得锁需要删除节点
+            if (!hasTheLock) {
+                deleteNode(lockNode);
             }
         }
-        return false;
+    }
+
+    private boolean deleteNode(String lockNode) {
+        try {
+            retryUntilConnected(() -> zooKeeper.delete(lockNode, -1));
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
     }
 
     /**
@@ -418,9 +433,10 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
 
     private void processNodeDeleted(WatchedEvent event) {
         String path = event.getPath();
-        logger.info("zookeeper node deleted ({})", path);
-        if (DELETE_LISTENER_MAP.containsKey(path)) {
-            DELETE_LISTENER_MAP.remove(path).accept(path);
+        logger.debug("zookeeper node deleted ({})", path);
+        Runnable listener = deleteListeners.remove(path);
+        if (null != listener) {
+            listener.run();
         }
     }
 
@@ -524,24 +540,6 @@ public class ZookeeperDistributedLock extends DistributedLock implements Watcher
         });
     }
 
-    private void watchOnDelete(String path, Consumer<String> handler) {
-        if (DELETE_LISTENER_MAP.containsKey(path)) {
-            throw new DistributedLockException("路径[" + path + "]已经被其他锁监听");
-        }
-        DELETE_LISTENER_MAP.put(path, handler);
-        Stat stat = retryUntilConnected(() -> zooKeeper.exists(path, true));
-
-        // 节点不存在, 则认为已经被删除, 自动触发动作
-        if (null == stat) {
-            DELETE_LISTENER_MAP.remove(path);
-        }
-        handler.accept(path);
-    }
-
-    private void unwatchOnDelete(String path) {
-        DELETE_LISTENER_MAP.remove(path);
-    }
-
     private static class ZkEventLock extends ReentrantLock {
 
         private static final long serialVersionUID = -311494924977994647L;
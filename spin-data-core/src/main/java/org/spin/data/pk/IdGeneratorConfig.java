@@ -1,6 +1,7 @@
 package org.spin.data.pk;
 
 import org.spin.data.pk.generator.provider.MachineIdProvider;
+import org.spin.data.pk.meta.ClockBackwardsPolicyE;
 import org.spin.data.pk.meta.IdGenMethodE;
 import org.spin.data.pk.meta.IdTypeE;
 
@@ -19,6 +20,8 @@ public class IdGeneratorConfig {
     private IdGenMethodE genMethod = IdGenMethodE.EMBED;
     private IdTypeE idType = IdTypeE.MAX_PEAK;
     private long version = 0;
+    private ClockBackwardsPolicyE clockBackwardsPolicy = ClockBackwardsPolicyE.FAIL;
+    private long maxClockBackwardsInMs = 5000L;
 
     public Class<? extends MachineIdProvider> getProviderType() {
         return providerType;
@@ -59,4 +62,20 @@ public class IdGeneratorConfig {
     public void setVersion(long version) {
         this.version = version;
     }
+
+    public ClockBackwardsPolicyE getClockBackwardsPolicy() {
+        return clockBackwardsPolicy;
+    }
+
+    public void setClockBackwardsPolicy(ClockBackwardsPolicyE clockBackwardsPolicy) {
+        this.clockBackwardsPolicy = clockBackwardsPolicy;
+    }
+
+    public long getMaxClockBackwardsInMs() {
+        return maxClockBackwardsInMs;
+    }
+
+    public void setMaxClockBackwardsInMs(long maxClockBackwardsInMs) {
+        this.maxClockBackwardsInMs = maxClockBackwardsInMs;
+    }
 }
@@ -2,6 +2,7 @@ package org.spin.data.pk.generator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.core.Assert;
 import org.spin.core.util.BeanUtils;
 import org.spin.core.util.EnumUtils;
 import org.spin.data.pk.DistributedId;
@@ -9,17 +10,19 @@ import org.spin.data.pk.IdGeneratorConfig;
 import org.spin.data.pk.converter.DistributedIdConverter;
 import org.spin.data.pk.converter.IdConverter;
 import org.spin.data.pk.generator.provider.MachineIdProvider;
+import org.spin.data.pk.meta.ClockBackwardsPolicyE;
 import org.spin.data.pk.meta.IdMeta;
 import org.spin.data.pk.meta.IdMetaFactory;
 import org.spin.data.pk.meta.IdTypeE;
 
 import java.util.Date;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 分布式ID生成器的默认实现
- * <p>DESCRIPTION</p>
+ * <p>时间与序列号打包在同一个{@link AtomicLong}中(时间 &lt;&lt; 序列号位数 | 序列号), 通过CAS分配序列号, 不需要加锁.
+ * 批量生成时一次CAS即可预留同一时间单位内的一段连续序列号. 设置了自定义的{@link IdConverter}时, 改为通过转换器组装ID</p>
  * <p>Created by xuweinan on 2017/5/5</p>
  *
  * @author xuweinan
@@ -29,20 +32,29 @@ public class DistributedIdGenerator implements IdGenerator<Long, DistributedId>
     private static final Logger logger = LoggerFactory.getLogger(DistributedIdGenerator.class);
     private static final long EPOCH = 1420041600000L;
 
-    private long sequence = 0;
-    private long lastTimestamp = -1;
-    private long genMethod = 0;
-    private long version = 0;
+    private volatile long genMethod = 0;
+    private volatile long version = 0;
 
     private long idType;
-    private IdMeta idMeta;
-    private final Lock lock = new ReentrantLock();
-
-    private IdConverter<Long, DistributedId> idConverter;
+    private volatile IdMeta idMeta;
+
+    /**
+     * 最后一次分配的时间与序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+    private final ClockBackwardsPolicyE clockBackwardsPolicy;
+    private final long maxClockBackwards;
+    private final long timeUnitInMs;
+
+    /**
+     * 版本、类型、生成方式等固定部分
+     */
+    private volatile long fixedBits;
+
+    private volatile IdConverter<Long, DistributedId> idConverter;
+    private volatile boolean customConverter;
     private MachineIdProvider machineIdProvider;
 
-    private final DistributedId id = new DistributedId();
-
     public DistributedIdGenerator(IdGeneratorConfig idGeneratorConfig) {
         machineIdProvider = BeanUtils.instantiateClass(idGeneratorConfig.getProviderType());
         machineIdProvider.init(idGeneratorConfig.getInitParams());
@@ -56,6 +68,7 @@ public class DistributedIdGenerator implements IdGenerator<Long, DistributedId>
             idGeneratorConfig.setIdType(IdTypeE.MAX_PEAK);
         }
         idType = idGeneratorConfig.getIdType().getValue();
+        timeUnitInMs = idType == IdTypeE.MAX_PEAK.getValue() ? 1000L : 1L;
 
         if (idGeneratorConfig.getGenMethod() != null) {
             genMethod = idGeneratorConfig.getGenMethod().getValue();
@@ -65,23 +78,63 @@ public class DistributedIdGenerator implements IdGenerator<Long, DistributedId>
             version = idGeneratorConfig.getVersion();
         }
 
+        clockBackwardsPolicy = null == idGeneratorConfig.getClockBackwardsPolicy() ? ClockBackwardsPolicyE.FAIL : idGeneratorConfig.getClockBackwardsPolicy();
+        if (idGeneratorConfig.getMaxClockBackwardsInMs() < 0) {
+            throw new IllegalArgumentException("The max clock backwards must not be negative");
+        }
+        maxClockBackwards = (idGeneratorConfig.getMaxClockBackwardsInMs() + timeUnitInMs - 1) / timeUnitInMs;
+
         setIdMeta(IdMetaFactory.getIdMeta(idGeneratorConfig.getIdType()));
         setIdConverter(new DistributedIdConverter(idGeneratorConfig.getIdType()));
-
-        id.setGenMethod(genMethod);
-        id.setType(idType);
-        id.setVersion(version);
     }
 
     @Override
     public Long genId() {
-        Long ret = populateId(id);
+        IdMeta meta = idMeta;
+        long reserved = reserve(meta, 1);
+        long ret = customConverter ? convert(reserved >>> meta.getSeqBits(), reserved & meta.getSeqBitsMask())
+            : assemble(meta, reserved >>> meta.getSeqBits(), reserved & meta.getSeqBitsMask());
         if (logger.isTraceEnabled()) {
-            logger.trace(String.format("DistributedId: %s => %d", id, ret));
+            logger.trace(String.format("DistributedId: %s => %d", expId(ret), ret));
         }
         return ret;
     }
 
+    /**
+     * 批量生成ID
+     * <p>每次CAS预留当前时间单位内尽可能多的序列号, 数量不超过单个时间单位的容量时通常只需要一次CAS</p>
+     *
+     * @param n 数量
+     * @return 递增的ID
+     */
+    public long[] genIds(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of ids must not be negative");
+        }
+        long[] ids = new long[n];
+        IdMeta meta = idMeta;
+        long seqMask = meta.getSeqBitsMask();
+        long seqStart = meta.getSeqBitsStartPos();
+        int filled = 0;
+        while (filled < n) {
+            long reserved = reserve(meta, n - filled);
+            long start = reserved & seqMask;
+            long end = Math.min(start + n - filled - 1, seqMask);
+            long time = reserved >>> meta.getSeqBits();
+            if (customConverter) {
+                for (long seq = start; seq <= end; seq++) {
+                    ids[filled++] = convert(time, seq);
+                }
+                continue;
+            }
+            long base = assemble(meta, time, 0L);
+            for (long seq = start; seq <= end; seq++) {
+                ids[filled++] = base | seq << seqStart;
+            }
+        }
+        return ids;
+    }
+
     @Override
     public DistributedId expId(Long id) {
         return idConverter.convert(id);
@@ -129,79 +182,155 @@ public class DistributedIdGenerator implements IdGenerator<Long, DistributedId>
 
     public void setGenMethod(long genMethod) {
         this.genMethod = genMethod;
+        refreshFixedBits();
     }
 
     public void setVersion(long version) {
         this.version = version;
+        refreshFixedBits();
     }
 
+    /**
+     * 设置ID转换器
+     * <p>使用默认的{@link DistributedIdConverter}时, 生成ID直接按ID结构组装; 自定义的转换器同时用于生成与解构ID</p>
+     *
+     * @param idConverter ID转换器
+     */
     public void setIdConverter(IdConverter<Long, DistributedId> idConverter) {
-        this.idConverter = idConverter;
+        this.idConverter = Assert.notNull(idConverter, "ID转换器不能为空");
+        this.customConverter = idConverter.getClass() != DistributedIdConverter.class;
     }
 
     public void setIdMeta(IdMeta idMeta) {
+        IdMeta old = this.idMeta;
+        long lastTime = null == old ? 0L : state.get() >>> old.getSeqBits();
         this.idMeta = idMeta;
+        refreshFixedBits();
+        // 序列号位数可能变化, 从下一个时间单位开始重新分配
+        state.set(lastTime << idMeta.getSeqBits() | idMeta.getSeqBitsMask());
     }
 
     public void setMachineIdProvider(MachineIdProvider machineIdProvider) {
         this.machineIdProvider = machineIdProvider;
     }
 
+    /**
+     * 当前时间, 默认为系统时间
+     *
+     * @return 当前时间戳(毫秒)
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
     private long genTime() {
-        return idType == IdTypeE.MIN_GRANULARITY.getValue() ?
-            (System.currentTimeMillis() - EPOCH) : ((System.currentTimeMillis() - EPOCH) / 1000);
+        return (currentTimeMillis() - EPOCH) / timeUnitInMs;
+    }
+
+    private void refreshFixedBits() {
+        IdMeta meta = idMeta;
+        if (null != meta) {
+            fixedBits = genMethod << meta.getGenMethodBitsStartPos()
+                | idType << meta.getTypeBitsStartPos()
+                | version << meta.getVersionBitsStartPos();
+        }
     }
 
-    private Long populateId(DistributedId id) {
-        lock.lock();
-        try {
-            long timestamp = this.genTime();
-            validateTimestamp(lastTimestamp, timestamp);
+    private long convert(long time, long seq) {
+        return idConverter.convert(new DistributedId(machineIdProvider.resolveMachineId(), seq, time, genMethod, idType, version));
+    }
 
-            if (timestamp == lastTimestamp) {
-                sequence++;
-                sequence &= idMeta.getSeqBitsMask();
-                if (sequence == 0) {
-                    timestamp = this.tillNextTimeUnit(lastTimestamp);
-                }
+    private long assemble(IdMeta meta, long time, long seq) {
+        return fixedBits
+            | time << meta.getTimeBitsStartPos()
+            | seq << meta.getSeqBitsStartPos()
+            | machineIdProvider.resolveMachineId();
+    }
+
+    /**
+     * 预留序列号
+     *
+     * @param meta ID结构
+     * @param n    期望的数量
+     * @return 时间 &lt;&lt; 序列号位数 | 预留的第一个序列号, 预留数量为 min(n, 序列号上限 - 第一个序列号 + 1)
+     */
+    private long reserve(IdMeta meta, int n) {
+        long seqMask = meta.getSeqBitsMask();
+        int seqBits = meta.getSeqBits();
+        while (true) {
+            // 先读状态再读时钟, 避免把其他线程刚推进的时间误判为时钟回拨
+            long current = state.get();
+            long now = genTime();
+            long lastTime = current >>> seqBits;
+            long time;
+            long start;
+            if (now > lastTime) {
+                time = now;
+                start = 0L;
             } else {
-                lastTimestamp = timestamp;
-                sequence = 0;
+                if (now < lastTime && !tolerateBackwards(lastTime, now)) {
+                    waitTill(lastTime);
+                    continue;
+                }
+                time = lastTime;
+                start = (current & seqMask) + 1;
+                if (start > seqMask) {
+                    if (clockBackwardsPolicy == ClockBackwardsPolicyE.BORROW && lastTime + 1 - now <= maxClockBackwards) {
+                        time = lastTime + 1;
+                        start = 0L;
+                    } else {
+                        exhausted(lastTime);
+                        waitTill(lastTime + 1);
+                        continue;
+                    }
+                }
             }
 
-            id.setMachine(machineIdProvider.resolveMachineId());
-            id.setSeq(sequence);
-            id.setTime(timestamp);
-            return idConverter.convert(id);
-        } finally {
-            lock.unlock();
+            long end = Math.min(start + n - 1, seqMask);
+            if (state.compareAndSet(current, time << seqBits | end)) {
+                return time << seqBits | start;
+            }
         }
     }
 
-    private void validateTimestamp(long lastTimestamp, long timestamp) {
-        if (timestamp < lastTimestamp) {
-            if (logger.isErrorEnabled()) {
-                logger.error(String.format("Clock moved backwards.  Refusing to generate id for %d %s.", lastTimestamp - timestamp,
-                    idType == IdTypeE.MAX_PEAK.getValue() ? "second" : "milisecond"));
-            }
-            throw new IllegalStateException(String.format("Clock moved backwards.  Refusing to generate id for %d %s.",
-                lastTimestamp - timestamp, idType == IdTypeE.MAX_PEAK.getValue() ? "second" : "milisecond"));
+    /**
+     * 处理时钟回拨
+     *
+     * @return 是否继续使用最后一次的时间生成ID, false表示需要等待时钟追上
+     */
+    private boolean tolerateBackwards(long lastTimestamp, long timestamp) {
+        if (clockBackwardsPolicy == ClockBackwardsPolicyE.FAIL || lastTimestamp - timestamp > maxClockBackwards) {
+            String msg = String.format("Clock moved backwards.  Refusing to generate id for %d %s.",
+                lastTimestamp - timestamp, timeUnitName());
+            logger.error(msg);
+            throw new IllegalStateException(msg);
         }
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Clock moved backwards %d %s, policy: %s", lastTimestamp - timestamp, timeUnitName(), clockBackwardsPolicy));
+        }
+        return clockBackwardsPolicy == ClockBackwardsPolicyE.BORROW;
     }
 
-    private long tillNextTimeUnit(final long lastTimestamp) {
-        if (logger.isInfoEnabled()) {
-            logger.info(String.format("Ids are used out during %d in machine %d. Waiting till next %s.",
-                lastTimestamp, machineIdProvider.resolveMachineId(), idType == IdTypeE.MAX_PEAK.getValue() ? "second" : "milisecond"));
-        }
-        long timestamp = this.genTime();
-        while (timestamp <= lastTimestamp) {
-            timestamp = this.genTime();
+    /**
+     * 等待到指定的时间单位, 不持有任何锁
+     */
+    private void waitTill(long timestamp) {
+        long waitMillis = timestamp * timeUnitInMs + EPOCH - currentTimeMillis();
+        if (waitMillis > 0) {
+            LockSupport.parkNanos(waitMillis * 1_000_000L);
+        } else {
+            Thread.yield();
         }
+    }
 
-        if (logger.isInfoEnabled()) {
-            logger.info(String.format("Next %s %d is up.", idType == IdTypeE.MAX_PEAK.getValue() ? "second" : "milisecond", timestamp));
+    private void exhausted(long lastTimestamp) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Ids are used out during %d in machine %d. Waiting till next %s.",
+                lastTimestamp, machineIdProvider.resolveMachineId(), timeUnitName()));
         }
-        return timestamp;
+    }
+
+    private String timeUnitName() {
+        return idType == IdTypeE.MAX_PEAK.getValue() ? "second" : "milisecond";
     }
 }
@@ -0,0 +1,27 @@
+package org.spin.data.pk.meta;
+
+/**
+ * 时钟回拨处理策略
+ * <p>回拨幅度超过允许的最大值时, 所有策略都将拒绝生成ID</p>
+ * <p>Created by xuweinan on 2021/10/25</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public enum ClockBackwardsPolicyE {
+
+    /**
+     * 拒绝生成ID
+     */
+    FAIL,
+
+    /**
+     * 等待时钟追上最后一次生成ID的时间
+     */
+    WAIT,
+
+    /**
+     * 借用未来的时间继续生成ID, 序列号用尽时同样借用下一时间单位
+     */
+    BORROW
+}
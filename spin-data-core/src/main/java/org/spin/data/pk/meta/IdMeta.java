@@ -50,7 +50,7 @@ public class IdMeta {
     }
 
     public long getMachineBitsMask() {
-        return ~(1L << machineBits);
+        return ~(-1L << machineBits);
     }
 
     public byte getSeqBits() {
@@ -0,0 +1,79 @@
+package org.spin.data.redis;
+
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.data.sql.QueryResultCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 通过Redis发布订阅在多个节点间同步查询结果缓存的失效
+ * <p>本地失效时向频道发布"节点标识|表名,表名"形式的消息, 收到其他节点的消息时只在本地失效, 不再转发</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RedisCacheInvalidator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RedisCacheInvalidator.class);
+
+    /**
+     * 默认的失效通知频道
+     */
+    public static final String DEFAULT_CHANNEL = "SPIN_QUERY_CACHE_INVALIDATED";
+
+    private final QueryResultCache cache;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RedisConnectionWrapper<String, String> connection;
+    private final RedisPubSubConnectionWrapper<String, String> pubsubConnection;
+    private final Consumer<Collection<String>> publisher = this::publish;
+
+    public RedisCacheInvalidator(RedisClientWrapper redisClientWrapper, QueryResultCache cache) {
+        this(redisClientWrapper, cache, DEFAULT_CHANNEL);
+    }
+
+    public RedisCacheInvalidator(RedisClientWrapper redisClientWrapper, QueryResultCache cache, String channel) {
+        this.cache = cache;
+        this.channel = channel;
+        connection = redisClientWrapper.connect();
+        pubsubConnection = redisClientWrapper.connectPubSub();
+        pubsubConnection.addListener(new RedisPubSubAdapter<String, String>() {
+            @Override
+            public void message(String ch, String message) {
+                if (channel.equals(ch)) {
+                    onMessage(message);
+                }
+            }
+        });
+        pubsubConnection.subscribe(channel);
+        cache.addInvalidationListener(publisher);
+    }
+
+    private void publish(Collection<String> tables) {
+        try {
+            connection.publish(channel, nodeId + '|' + String.join(",", tables));
+        } catch (Exception e) {
+            logger.error("Publish query cache invalidation " + tables + " occurred an exception", e);
+        }
+    }
+
+    private void onMessage(String message) {
+        int idx = message.indexOf('|');
+        if (idx < 0 || nodeId.equals(message.substring(0, idx))) {
+            return;
+        }
+        cache.invalidateLocal(Arrays.asList(message.substring(idx + 1).split(",")));
+    }
+
+    @Override
+    public void close() {
+        cache.removeInvalidationListener(publisher);
+        pubsubConnection.close();
+        connection.close();
+    }
+}
@@ -94,6 +94,19 @@ public class RedisClientWrapper implements AutoCloseable {
         return new RedisPubSubConnectionWrapper<>(this, codec);
     }
 
+    /**
+     * 创建用于阻塞命令的独占连接池
+     *
+     * @param codec   编解码器
+     * @param maxSize 最大连接数
+     * @param <K>     键类型
+     * @param <V>     值类型
+     * @return 连接池
+     */
+    public <K, V> RedisConnectionPool<K, V> connectionPool(RedisCodec<K, V> codec, int maxSize) {
+        return new RedisConnectionPool<>(this, codec, maxSize, lettuceRedisProperties.getTimeout().toMillis());
+    }
+
     public RedisClient getClient() {
         return client;
     }
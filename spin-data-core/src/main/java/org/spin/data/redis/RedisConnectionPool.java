@@ -0,0 +1,152 @@
+package org.spin.data.redis;
+
+import io.lettuce.core.codec.RedisCodec;
+import org.spin.core.throwable.SimplifiedException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 有界的Redis独占连接池
+ * <p>BLPOP等阻塞命令, 以及关闭自动刷新的流水线, 会占住整条连接, 不应在共享的多路复用连接上执行.
+ * 连接池按需创建连接, 总数不超过上限, 借出时连接为调用方独占, 归还时已关闭的连接会被丢弃.
+ * 每个借出的连接只能归还一次, 重复归还或归还不是从本连接池借出的连接会抛出异常</p>
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RedisConnectionPool<K, V> implements AutoCloseable {
+    private final RedisClientWrapper clientWrapper;
+    private final RedisCodec<K, V> codec;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<RedisConnectionWrapper<K, V>> idle = new ConcurrentLinkedDeque<>();
+    private final Set<RedisConnectionWrapper<K, V>> borrowed = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed;
+
+    /**
+     * 构造连接池
+     *
+     * @param clientWrapper       redis客户端
+     * @param codec               编解码器
+     * @param maxSize             最大连接数
+     * @param borrowTimeoutMillis 等待可用连接的最长时间(毫秒)
+     */
+    public RedisConnectionPool(RedisClientWrapper clientWrapper, RedisCodec<K, V> codec, int maxSize, long borrowTimeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max pool size must be positive");
+        }
+        this.clientWrapper = clientWrapper;
+        this.codec = codec;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * 借出一个连接执行操作, 结束后自动归还
+     *
+     * @param action 操作
+     * @param <T>    返回值类型
+     * @return 操作的返回值
+     */
+    public <T> T execute(Function<RedisConnectionWrapper<K, V>, T> action) {
+        RedisConnectionWrapper<K, V> connection = borrow();
+        try {
+            return action.apply(connection);
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * 借出一个连接, 使用完后必须通过{@link #release(RedisConnectionWrapper)}归还
+     *
+     * @return 独占的连接
+     */
+    public RedisConnectionWrapper<K, V> borrow() {
+        checkState();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SimplifiedException("Redis connection pool exhausted, no connection available in " + borrowTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimplifiedException("Interrupted while waiting for redis connection", e);
+        }
+
+        try {
+            RedisConnectionWrapper<K, V> connection;
+            while (null != (connection = idle.pollFirst())) {
+                if (connection.isOpen()) {
+                    return lend(connection);
+                }
+                connection.close();
+            }
+            return lend(clientWrapper.connect(codec));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还连接
+     *
+     * @param connection 借出的连接
+     */
+    public void release(RedisConnectionWrapper<K, V> connection) {
+        if (!borrowed.remove(connection)) {
+            throw new SimplifiedException("Redis connection was not borrowed from this pool or has already been released");
+        }
+        connection.setExclusive(false);
+        if (closed || !connection.isOpen()) {
+            connection.close();
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public int getActive() {
+        return maxSize - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        RedisConnectionWrapper<K, V> connection;
+        while (null != (connection = idle.pollFirst())) {
+            connection.close();
+        }
+    }
+
+    private RedisConnectionWrapper<K, V> lend(RedisConnectionWrapper<K, V> connection) {
+        connection.setExclusive(true);
+        borrowed.add(connection);
+        return connection;
+    }
+
+    private void checkState() {
+        if (closed) {
+            throw new SimplifiedException("Redis connection pool is closed");
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package org.spin.data.redis;
 
 import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisCommandExecutionException;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import io.lettuce.core.codec.RedisCodec;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
 /**
- * TITLE
- * <p>DESCRIPTION</p>
+ * Redis连接
+ * <p>同时提供同步与异步(返回{@link CompletionStage})的命令, 异步命令在共享的连接上天然以流水线方式发送,
+ * 多个命令可以先全部发出再统一等待结果</p>
  * <p>Created by xuweinan on 2021/10/22</p>
  *
  * @author xuweinan
@@ -23,6 +32,7 @@ public class RedisConnectionWrapper<K, V> implements AutoCloseable {
 
     private final StatefulRedisClusterConnection<K, V> clusterConnection;
 
+    private volatile boolean exclusive;
 
     RedisConnectionWrapper(RedisClientWrapper clientWrapper, RedisCodec<K, V> codec) {
         this.clientWrapper = clientWrapper;
@@ -74,12 +84,158 @@ public class RedisConnectionWrapper<K, V> implements AutoCloseable {
             connection.sync().eval(script, type, keys, values);
     }
 
+    /**
+     * 以EVALSHA执行脚本, 服务端不存在该脚本时改用EVAL执行
+     *
+     * @param script 脚本
+     * @param type   返回值类型
+     * @param keys   键
+     * @param values 参数
+     * @param <T>    返回值类型
+     * @return 执行结果
+     */
+    @SafeVarargs
+    public final <T> T syncEval(RedisScript script, ScriptOutputType type, K[] keys, V... values) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T res;
+            try {
+                res = clientWrapper.isCluster() ?
+                    clusterConnection.sync().evalsha(script.getSha(), type, keys, values) :
+                    connection.sync().evalsha(script.getSha(), type, keys, values);
+            } catch (RedisCommandExecutionException e) {
+                if (!RedisScript.isNoScript(e)) {
+                    throw e;
+                }
+                script.reloaded();
+                res = syncEval(script.getSource(), type, keys, values);
+            }
+            success = true;
+            return res;
+        } finally {
+            script.record(start, success);
+        }
+    }
+
     public final Long publish(K channel, V message) {
         return clientWrapper.isCluster() ?
             clusterConnection.sync().publish(channel, message) :
             connection.sync().publish(channel, message);
     }
 
+    /**
+     * 异步命令接口, 单机与集群模式通用
+     *
+     * @return 异步命令
+     */
+    public final RedisClusterAsyncCommands<K, V> async() {
+        return clientWrapper.isCluster() ? clusterConnection.async() : connection.async();
+    }
+
+    public final CompletionStage<V> asyncGet(K key) {
+        return async().get(key);
+    }
+
+    public final CompletionStage<String> asyncSet(K key, V value) {
+        return async().set(key, value);
+    }
+
+    public final CompletionStage<Boolean> asyncSetNx(K key, V value, long timeoutInMillis) {
+        return async().set(key, value, SetArgs.Builder.nx().px(timeoutInMillis)).thenApply("OK"::equals);
+    }
+
+    public final CompletionStage<Boolean> asyncSetNx(K key, V value) {
+        return async().setnx(key, value);
+    }
+
+    @SafeVarargs
+    public final <T> CompletionStage<T> asyncEval(String script, ScriptOutputType type, K[] keys, V... values) {
+        return async().eval(script, type, keys, values);
+    }
+
+    /**
+     * 以EVALSHA异步执行脚本, 服务端不存在该脚本时改用EVAL执行
+     *
+     * @param script 脚本
+     * @param type   返回值类型
+     * @param keys   键
+     * @param values 参数
+     * @param <T>    返回值类型
+     * @return 执行结果
+     */
+    @SafeVarargs
+    public final <T> CompletionStage<T> asyncEval(RedisScript script, ScriptOutputType type, K[] keys, V... values) {
+        long start = System.nanoTime();
+        CompletableFuture<T> res = new CompletableFuture<>();
+        RedisClusterAsyncCommands<K, V> commands = async();
+        commands.<T>evalsha(script.getSha(), type, keys, values).whenComplete((r, e) -> {
+            Throwable cause = e instanceof CompletionException && null != e.getCause() ? e.getCause() : e;
+            if (null == cause) {
+                script.record(start, true);
+                res.complete(r);
+            } else if (RedisScript.isNoScript(cause)) {
+                script.reloaded();
+                commands.<T>eval(script.getSource(), type, keys, values).whenComplete((r1, e1) -> {
+                    Throwable cause1 = e1 instanceof CompletionException && null != e1.getCause() ? e1.getCause() : e1;
+                    script.record(start, null == cause1);
+                    if (null == cause1) {
+                        res.complete(r1);
+                    } else {
+                        res.completeExceptionally(cause1);
+                    }
+                });
+            } else {
+                script.record(start, false);
+                res.completeExceptionally(cause);
+            }
+        });
+        return res;
+    }
+
+    public final CompletionStage<Long> asyncPublish(K channel, V message) {
+        return async().publish(channel, message);
+    }
+
+    /**
+     * 在关闭自动刷新的情况下执行一组异步命令, 结束后一次性写出
+     * <p>关闭自动刷新对使用同一连接的所有线程生效, 期间其他线程的命令也会延迟到刷新时才发送,
+     * 因此只能在从{@link RedisConnectionPool}中借出的独占连接上使用, 其他连接上调用会抛出异常.
+     * 同一连接上的流水线互斥执行</p>
+     *
+     * @param commands 发送命令的逻辑, 参数为异步命令接口, 返回值通常是命令的结果
+     * @param <T>      返回值类型
+     * @return commands的返回值
+     */
+    public final <T> T pipelined(Function<RedisClusterAsyncCommands<K, V>, T> commands) {
+        if (!exclusive) {
+            throw new IllegalStateException("Pipelined commands require an exclusive connection borrowed from RedisConnectionPool");
+        }
+        StatefulConnection<K, V> stateful = clientWrapper.isCluster() ? clusterConnection : connection;
+        synchronized (this) {
+            stateful.setAutoFlushCommands(false);
+            try {
+                return commands.apply(async());
+            } finally {
+                stateful.flushCommands();
+                stateful.setAutoFlushCommands(true);
+            }
+        }
+    }
+
+    /**
+     * 标记连接是否被独占, 由{@link RedisConnectionPool}在借出与归还时设置
+     *
+     * @param exclusive 是否独占
+     */
+    final void setExclusive(boolean exclusive) {
+        this.exclusive = exclusive;
+    }
+
+    public final boolean isOpen() {
+        return clientWrapper.isCluster() ? clusterConnection.isOpen() : connection.isOpen();
+    }
+
     @Override
     public void close() {
         if (clientWrapper.isCluster()) {
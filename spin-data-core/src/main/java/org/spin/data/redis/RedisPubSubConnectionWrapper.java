@@ -1,6 +1,7 @@
 package org.spin.data.redis;
 
 import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisCommandExecutionException;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.SetArgs;
 import io.lettuce.core.cluster.pubsub.StatefulRedisClusterPubSubConnection;
@@ -77,6 +78,40 @@ public class RedisPubSubConnectionWrapper<K, V> implements AutoCloseable {
             connection.sync().eval(script, type, keys, values);
     }
 
+    /**
+     * 以EVALSHA执行脚本, 服务端不存在该脚本时改用EVAL执行
+     *
+     * @param script 脚本
+     * @param type   返回值类型
+     * @param keys   键
+     * @param values 参数
+     * @param <T>    返回值类型
+     * @return 执行结果
+     */
+    @SafeVarargs
+    public final <T> T syncEval(RedisScript script, ScriptOutputType type, K[] keys, V... values) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T res;
+            try {
+                res = clientWrapper.isCluster() ?
+                    clusterConnection.sync().evalsha(script.getSha(), type, keys, values) :
+                    connection.sync().evalsha(script.getSha(), type, keys, values);
+            } catch (RedisCommandExecutionException e) {
+                if (!RedisScript.isNoScript(e)) {
+                    throw e;
+                }
+                script.reloaded();
+                res = syncEval(script.getSource(), type, keys, values);
+            }
+            success = true;
+            return res;
+        } finally {
+            script.record(start, success);
+        }
+    }
+
     @SafeVarargs
     public final void subscribe(K... channels) {
         if (clientWrapper.isCluster()) {
@@ -0,0 +1,139 @@
+package org.spin.data.redis;
+
+import org.spin.core.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lua脚本
+ * <p>脚本的SHA1摘要在创建时计算一次, 通过{@link RedisConnectionWrapper#syncEval(RedisScript, io.lettuce.core.ScriptOutputType, Object[], Object[])}
+ * 以EVALSHA执行, 服务端脚本缓存中不存在时(NOSCRIPT)自动改用EVAL执行并将脚本载入缓存</p>
+ * <p>相同源码的脚本只注册一次, 注册后的脚本会记录调用次数、耗时与重新载入次数</p>
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public final class RedisScript {
+    private static final Map<String, RedisScript> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String source;
+    private final String sha;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    private RedisScript(String name, String source, String sha) {
+        this.name = name;
+        this.source = source;
+        this.sha = sha;
+    }
+
+    /**
+     * 注册脚本, 相同源码的脚本返回同一个实例
+     *
+     * @param name   脚本名称, 用于统计
+     * @param source 脚本源码
+     * @return 脚本
+     */
+    public static RedisScript of(String name, String source) {
+        if (null == source || source.isEmpty()) {
+            throw new IllegalArgumentException("Lua script must not be empty");
+        }
+        String sha = DigestUtils.sha1HexL(source.getBytes(StandardCharsets.UTF_8));
+        return REGISTRY.computeIfAbsent(sha, k -> new RedisScript(name, source, k));
+    }
+
+    /**
+     * 所有已注册的脚本
+     *
+     * @return 脚本列表
+     */
+    public static Collection<RedisScript> registered() {
+        return Collections.unmodifiableCollection(new ArrayList<>(REGISTRY.values()));
+    }
+
+    void record(long startNanos, boolean success) {
+        long elapsed = System.nanoTime() - startNanos;
+        calls.increment();
+        totalNanos.add(elapsed);
+        maxNanos.accumulate(elapsed);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    static boolean isNoScript(Throwable e) {
+        return null != e.getMessage() && e.getMessage().startsWith("NOSCRIPT");
+    }
+
+    void reloaded() {
+        reloads.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * 因服务端脚本缓存中不存在而改用EVAL执行的次数
+     *
+     * @return 重新载入次数
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * 平均耗时(微秒)
+     *
+     * @return 平均耗时
+     */
+    public long getAvgMicros() {
+        long cnt = calls.sum();
+        return cnt == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / cnt);
+    }
+
+    /**
+     * 最大耗时(微秒)
+     *
+     * @return 最大耗时
+     */
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "RedisScript{name=" + name + ", sha=" + sha + ", calls=" + calls.sum() + ", errors=" + errors.sum()
+            + ", reloads=" + reloads.sum() + ", avgMicros=" + getAvgMicros() + ", maxMicros=" + getMaxMicros() + '}';
+    }
+}
@@ -7,21 +7,42 @@ import org.spin.core.Assert;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public class ColumnVisitor {
     private static final Logger logger = LoggerFactory.getLogger(ColumnVisitor.class);
     private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
     private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
 
+    private static final int READ_DETECT = 0;
+    private static final int READ_OBJECT = 1;
+    private static final int READ_STRING = 2;
+    private static final int READ_TIMESTAMP = 3;
+    private static final int READ_BYTES = 4;
+    private static final Set<String> PLAIN_OBJECT_CLASSES = new HashSet<>(Arrays.asList(
+        "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+        "java.lang.Float", "java.lang.Double", "java.math.BigDecimal", "java.math.BigInteger", "java.sql.Time",
+        "java.time.LocalDate", "java.time.LocalTime", "java.time.LocalDateTime", "java.time.OffsetDateTime"));
+
     private final ResultSet resultSet;
     private final int columnCount;
     private final String[] columnNames;
+    private final int[] readers;
 
     public ColumnVisitor(ResultSet resultSet) throws SQLException {
         this.resultSet = resultSet;
+        if (null == resultSet) {
+            columnCount = 0;
+            columnNames = new String[0];
+            readers = new int[0];
+            return;
+        }
         ResultSetMetaData rsmd = resultSet.getMetaData();
         columnCount = rsmd.getColumnCount();
         columnNames = lookupColumnNames(rsmd);
+        readers = lookupReaders(rsmd);
     }
 
     /**
@@ -43,6 +64,21 @@ public class ColumnVisitor {
      * @see java.sql.Timestamp
      */
     public Object getColumnValue(int columnIndex) throws SQLException {
+        switch (readers[columnIndex - 1]) {
+            case READ_OBJECT:
+                return resultSet.getObject(columnIndex);
+            case READ_STRING:
+                return resultSet.getString(columnIndex);
+            case READ_TIMESTAMP:
+                return resultSet.getTimestamp(columnIndex);
+            case READ_BYTES:
+                return resultSet.getBytes(columnIndex);
+            default:
+                return detectColumnValue(columnIndex);
+        }
+    }
+
+    private Object detectColumnValue(int columnIndex) throws SQLException {
         Object obj = resultSet.getObject(columnIndex);
         String className = null;
         if (obj != null) {
@@ -202,6 +238,36 @@ public class ColumnVisitor {
         return names;
     }
 
+    /**
+     * 根据列的Java类型预先确定每一列的读取方式, 类型明确的列直接使用对应的getter,
+     * 可能是LOB或厂商特有类型的列仍按值的实际类型处理
+     */
+    private int[] lookupReaders(ResultSetMetaData resultSetMetaData) {
+        int[] res = new int[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            String className;
+            try {
+                className = resultSetMetaData.getColumnClassName(i);
+            } catch (SQLException | RuntimeException e) {
+                className = null;
+            }
+            if (null == className) {
+                res[i - 1] = READ_DETECT;
+            } else if ("java.lang.String".equals(className)) {
+                res[i - 1] = READ_STRING;
+            } else if ("java.sql.Timestamp".equals(className)) {
+                res[i - 1] = READ_TIMESTAMP;
+            } else if ("[B".equals(className)) {
+                res[i - 1] = READ_BYTES;
+            } else if (PLAIN_OBJECT_CLASSES.contains(className)) {
+                res[i - 1] = READ_OBJECT;
+            } else {
+                res[i - 1] = READ_DETECT;
+            }
+        }
+        return res;
+    }
+
     private <T extends Number> T convertNumberToTargetClass(Number number, Class<T> targetClass)
         throws IllegalArgumentException {
 
@@ -1,18 +1,29 @@
 package org.spin.data.rs;
 
-import net.sf.cglib.beans.BeanMap;
+import org.spin.core.collection.ConcurrentLinkedHashMap;
 import org.spin.core.util.BeanUtils;
+import org.spin.core.util.ClassUtils;
 import org.spin.core.util.ConstructorUtils;
+import org.spin.core.util.ObjectUtils;
 import org.spin.data.throwable.SQLError;
 import org.spin.data.throwable.SQLException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * ResultSet到实体的转换器
- * <p>DESCRIPTION</p>
+ * <p>按实体类型与结果集的列布局预先编译映射计划: 列索引对应的setter、嵌套对象的构造与类型转换都在编译时确定,
+ * 逐行映射时不再解析列名, 也不经过反射. 同一布局的计划会被缓存, 列布局不同的查询各自编译</p>
  * <p>Created by xuweinan on 2019/10/6</p>
  *
  * @author xuweinan
@@ -21,55 +32,219 @@ import java.util.Map;
 public class EntityRowMapper<E> implements RowMapper<E> {
 
     private static final Class<?>[] CONSTRUCTOR_ARGS = new Class[0];
-    private final Constructor<E> accessibleConstructor;
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final int MAX_PLANS = 64;
+
+    private final Class<E> type;
+    private final MethodHandle factory;
+    private final ConcurrentLinkedHashMap<ColumnLayout, MappingPlan> plans = new ConcurrentLinkedHashMap.Builder<ColumnLayout, MappingPlan>()
+        .maximumWeightedCapacity(MAX_PLANS)
+        .build();
+    private volatile MappingPlan lastPlan;
 
     public EntityRowMapper(Class<E> type) {
-        Constructor<E> accessibleConstructor = ConstructorUtils.getAccessibleConstructor(type, CONSTRUCTOR_ARGS);
-        if (null == accessibleConstructor) {
-            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, "指定的实体类型没有默认构造方法");
-        }
-        this.accessibleConstructor = accessibleConstructor;
+        this.type = type;
+        this.factory = factory(type);
     }
 
     @Override
     public E apply(ColumnVisitor columnVisitor, int rowIdx) throws java.sql.SQLException {
-        E result;
+        MappingPlan plan = planFor(columnVisitor);
+        Object[] objects = new Object[plan.factories.length];
         try {
-            result = accessibleConstructor.newInstance();
-        } catch (Exception e) {
-            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR);
+            objects[0] = factory.invokeExact();
+        } catch (Throwable e) {
+            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, e);
         }
-        BeanMap rootBeanMap = BeanMap.create(result);
-
-        Map<String, BeanMap> beanMapMap = new HashMap<>();
-
-        for (int i = 0; i < columnVisitor.getColumnCount(); i++) {
-            String alias = columnVisitor.getColumnName(i);
-            if (alias != null) {
-                String[] ap = alias.split("\\.");
-                if (ap.length > 1) {
-                    BeanMap work = rootBeanMap;
-                    for (int j = 0; j < ap.length - 1; j++) {
-                        if (!beanMapMap.containsKey(ap[j])) {
-                            Class<?> propertyType = (j == 0 ? rootBeanMap : beanMapMap.get(ap[j - 1])).getPropertyType(ap[j]);
-                            Object o = BeanUtils.instantiateClass(propertyType);
-                            int t = 0;
-                            int idx = alias.indexOf('.');
-                            while (t++ <= j) {
-                                idx = alias.indexOf('.', idx);
-                            }
-                            String p = alias.substring(0, idx);
-                            work.put(p, o);
-                            beanMapMap.put(p, BeanMap.create(o));
-                        }
-                        work = beanMapMap.get(ap[j]);
-                    }
-                    work.put(ap[ap.length - 1], columnVisitor.getColumnValue(i + 1));
-                } else {
-                    rootBeanMap.put(alias, columnVisitor.getColumnValue(i + 1));
+        try {
+            for (int i = 1; i < objects.length; i++) {
+                objects[i] = plan.factories[i].invokeExact();
+                plan.objectSetters[i].invokeExact(objects[plan.parents[i]], objects[i]);
+            }
+            for (int i = 0; i < plan.columns.length; i++) {
+                Object value = plan.readers[i].read(columnVisitor, plan.columns[i]);
+                if (null != value || !plan.primitives[i]) {
+                    plan.setters[i].invokeExact(objects[plan.targets[i]], value);
                 }
             }
+        } catch (java.sql.SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, e);
         }
+        @SuppressWarnings("unchecked")
+        E result = (E) objects[0];
         return result;
     }
+
+    private MappingPlan planFor(ColumnVisitor columnVisitor) {
+        String[] columnNames = columnVisitor.getColumnNames();
+        MappingPlan plan = lastPlan;
+        if (null != plan && (plan.columnNames == columnNames || Arrays.equals(plan.columnNames, columnNames))) {
+            return plan;
+        }
+        ColumnLayout layout = new ColumnLayout(columnNames);
+        plan = plans.get(layout);
+        if (null == plan) {
+            plan = compile(columnNames);
+            MappingPlan exists = plans.putIfAbsent(layout, plan);
+            plan = null == exists ? plan : exists;
+        }
+        lastPlan = plan;
+        return plan;
+    }
+
+    private MappingPlan compile(String[] columnNames) {
+        List<Class<?>> objectTypes = new ArrayList<>();
+        List<MethodHandle> factories = new ArrayList<>();
+        List<MethodHandle> objectSetters = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Map<String, Integer> objectIdx = new HashMap<>();
+        objectTypes.add(type);
+        factories.add(factory);
+        objectSetters.add(null);
+        parents.add(-1);
+
+        List<int[]> columns = new ArrayList<>(columnNames.length);
+        List<BeanUtils.PropertyDescriptorWrapper> props = new ArrayList<>(columnNames.length);
+        for (int i = 0; i < columnNames.length; i++) {
+            String alias = columnNames[i];
+            if (null == alias) {
+                continue;
+            }
+            String[] ap = alias.split("\\.");
+            int target = 0;
+            StringBuilder path = new StringBuilder();
+            for (int j = 0; j < ap.length - 1 && target >= 0; j++) {
+                path.append(j == 0 ? "" : ".").append(ap[j]);
+                Integer idx = objectIdx.get(path.toString());
+                if (null == idx) {
+                    BeanUtils.PropertyDescriptorWrapper prop = BeanUtils.getBeanPropertyDes(objectTypes.get(target)).get(ap[j]);
+                    if (null == prop) {
+                        target = -1;
+                        break;
+                    }
+                    idx = objectTypes.size();
+                    objectTypes.add(prop.propertyType);
+                    factories.add(factory(prop.propertyType));
+                    objectSetters.add(setter(prop.writer));
+                    parents.add(target);
+                    objectIdx.put(path.toString(), idx);
+                }
+                target = idx;
+            }
+            BeanUtils.PropertyDescriptorWrapper prop = target < 0 ? null : BeanUtils.getBeanPropertyDes(objectTypes.get(target)).get(ap[ap.length - 1]);
+            if (null != prop) {
+                columns.add(new int[]{i + 1, target});
+                props.add(prop);
+            }
+        }
+
+        MappingPlan plan = new MappingPlan(columnNames, factories.size(), columns.size());
+        for (int i = 0; i < factories.size(); i++) {
+            plan.factories[i] = factories.get(i);
+            plan.objectSetters[i] = objectSetters.get(i);
+            plan.parents[i] = parents.get(i);
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            BeanUtils.PropertyDescriptorWrapper prop = props.get(i);
+            plan.columns[i] = columns.get(i)[0];
+            plan.targets[i] = columns.get(i)[1];
+            plan.setters[i] = setter(prop.writer);
+            plan.readers[i] = reader(prop.propertyType);
+            plan.primitives[i] = prop.propertyType.isPrimitive();
+        }
+        return plan;
+    }
+
+    private static ColumnReader reader(Class<?> propertyType) {
+        if (String.class == propertyType || BigDecimal.class == propertyType || byte[].class == propertyType
+            || java.sql.Date.class == propertyType || java.sql.Time.class == propertyType
+            || java.sql.Timestamp.class == propertyType || java.util.Date.class == propertyType
+            || (propertyType.isPrimitive() && char.class != propertyType)
+            || (Number.class.isAssignableFrom(propertyType) && null != ClassUtils.wrapperToPrimitive(propertyType))
+            || Boolean.class == propertyType) {
+            return (cv, idx) -> cv.getColumnValue(idx, propertyType);
+        }
+        Class<?> boxed = ClassUtils.primitiveToWrapper(propertyType);
+        return (cv, idx) -> {
+            Object value = cv.getColumnValue(idx);
+            return null == value || boxed.isInstance(value) ? value : ObjectUtils.convert(boxed, value);
+        };
+    }
+
+    private static MethodHandle factory(Class<?> type) {
+        Constructor<?> constructor = ConstructorUtils.getAccessibleConstructor(type, CONSTRUCTOR_ARGS);
+        if (null == constructor) {
+            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, "指定的实体类型没有默认构造方法: " + type.getName());
+        }
+        try {
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(FACTORY_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, "无法访问实体类型的构造方法: " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle setter(Method writer) {
+        try {
+            writer.setAccessible(true);
+            return MethodHandles.lookup().unreflect(writer).asType(SETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new SQLException(SQLError.OBJECT_INSTANCE_ERROR, "无法访问属性的setter方法: " + writer, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ColumnVisitor columnVisitor, int columnIndex) throws java.sql.SQLException;
+    }
+
+    /**
+     * 映射计划, 下标0的对象为实体本身, 其余为按路径创建的嵌套对象, 父对象总在子对象之前
+     */
+    private static class MappingPlan {
+        private final String[] columnNames;
+        private final MethodHandle[] factories;
+        private final MethodHandle[] objectSetters;
+        private final int[] parents;
+        private final int[] columns;
+        private final int[] targets;
+        private final MethodHandle[] setters;
+        private final ColumnReader[] readers;
+        private final boolean[] primitives;
+
+        private MappingPlan(String[] columnNames, int objectCount, int columnCount) {
+            this.columnNames = columnNames;
+            this.factories = new MethodHandle[objectCount];
+            this.objectSetters = new MethodHandle[objectCount];
+            this.parents = new int[objectCount];
+            this.columns = new int[columnCount];
+            this.targets = new int[columnCount];
+            this.setters = new MethodHandle[columnCount];
+            this.readers = new ColumnReader[columnCount];
+            this.primitives = new boolean[columnCount];
+        }
+    }
+
+    private static class ColumnLayout {
+        private final String[] columnNames;
+        private final int hash;
+
+        private ColumnLayout(String[] columnNames) {
+            this.columnNames = columnNames;
+            this.hash = Arrays.hashCode(columnNames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof ColumnLayout && Arrays.equals(columnNames, ((ColumnLayout) o).columnNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
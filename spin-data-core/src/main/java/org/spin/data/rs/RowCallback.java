@@ -0,0 +1,25 @@
+package org.spin.data.rs;
+
+import java.sql.SQLException;
+
+/**
+ * 逐行处理查询结果的回调
+ * <p>配合游标查询使用, 每读取一行立即回调, 不在内存中保留整个结果集</p>
+ * <p>Created by xuweinan on 2021/10/28</p>
+ *
+ * @param <T> 行数据类型
+ * @author xuweinan
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+
+    /**
+     * 处理一行数据
+     *
+     * @param row    转换后的行数据
+     * @param rowIdx 当前行的索引
+     * @throws SQLException SQLException
+     */
+    void processRow(T row, int rowIdx) throws SQLException;
+}
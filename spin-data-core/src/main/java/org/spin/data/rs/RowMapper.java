@@ -2,7 +2,7 @@ package org.spin.data.rs;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
@@ -17,6 +17,16 @@ import java.util.function.Function;
 @FunctionalInterface
 public interface RowMapper<R> {
 
+    /**
+     * 无法从fetchSize估计行数时结果列表的初始容量
+     */
+    int DEFAULT_SIZE_HINT = 16;
+
+    /**
+     * 结果列表预分配容量的上限
+     */
+    int MAX_SIZE_HINT = 4096;
+
     /**
      * 将ResultSet中的当前行转换为指定类型
      *
@@ -47,10 +57,29 @@ public interface RowMapper<R> {
      * @throws SQLException sql异常
      */
     default List<R> extractData(ResultSet rs, int rows) throws SQLException {
-        List<R> results = new LinkedList<>();
+        int sizeHint = rows;
+        if (rows == Integer.MAX_VALUE) {
+            int fetchSize = rs.getFetchSize();
+            sizeHint = fetchSize > 0 ? fetchSize : DEFAULT_SIZE_HINT;
+        }
+        return extractData(rs, rows, sizeHint);
+    }
+
+    /**
+     * 从ResultSet中抽取指定n行的数据到List中
+     *
+     * @param rs       ResultSet
+     * @param rows     行数
+     * @param sizeHint 预计的行数, 用于预分配结果列表的容量
+     * @return 结果列表
+     * @throws SQLException sql异常
+     */
+    default List<R> extractData(ResultSet rs, int rows, int sizeHint) throws SQLException {
+        List<R> results = new ArrayList<>(Math.max(Math.min(Math.min(sizeHint, rows), MAX_SIZE_HINT), 0));
         int rowNum = 0;
         ColumnVisitor columnVisitor = new ColumnVisitor(rs);
-        while (rs.next() && rowNum < rows) {
+        // 先检查行数再移动游标, 避免多读取一行
+        while (rowNum < rows && rs.next()) {
             results.add(apply(columnVisitor, rowNum++));
         }
         return results;
@@ -42,9 +42,8 @@ public class RowMappers {
                 if (Object.class == actType || Map.class == actType) {
                     return (RowMapper<T>) getMapRowMapper();
                 }
-                EntityRowMapper<?> erm = new EntityRowMapper<>((Class<?>) actType);
-                MAPPERS.put(typeToken, erm);
-                return (RowMapper<T>) erm;
+                // 实体转换器内部缓存了按列布局编译的映射计划, 每个类型只保留一个实例
+                return (RowMapper<T>) MAPPERS.computeIfAbsent(typeToken, k -> new EntityRowMapper<>((Class<?>) actType));
             } else {
                 throw new SQLException(SQLError.UNKNOW_MAPPER_SQL_TYPE, "未知映射类型: " + typeToken);
             }
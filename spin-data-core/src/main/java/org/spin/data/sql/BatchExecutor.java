@@ -0,0 +1,255 @@
+package org.spin.data.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.core.concurrent.Async;
+import org.spin.data.core.DatabaseType;
+import org.spin.data.sql.param.ParameterizedSql;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分段批量执行器
+ * <p>将参数按段切分, 每段执行一次JDBC批处理; 开启改写时, 简单的单行插入被改写为多行插入, 每条语句的行数受数据库参数个数上限约束.
+ * 并行执行时多个工作线程从同一个段序号上依次领取未执行的段</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class BatchExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BatchExecutor.class);
+    private static final Pattern INSERT_VALUES = Pattern.compile("^\\s*insert\\s+into\\s+.+?\\bvalues\\s*\\(", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    private final ParameterizedSql parsedSql;
+    private final BatchOptions options;
+    private final String insertPrefix;
+    private final String valuesTuple;
+    private final int rowsPerInsert;
+    private final int chunkSize;
+
+    BatchExecutor(ParameterizedSql parsedSql, DatabaseType dbType, BatchOptions options) {
+        this.parsedSql = parsedSql;
+        this.options = options;
+        String sql = parsedSql.getActualSql().getSql();
+        int paramCount = parsedSql.getNamedParameters().size();
+        int tupleStart = options.isRewriteInsert() && null != dbType && dbType.supportsMultiRowInsert() ? valuesTupleStart(sql, paramCount) : -1;
+        int rows = Math.min(MAX_ROWS_PER_INSERT, options.getChunkSize());
+        if (paramCount > 0 && null != dbType) {
+            rows = Math.min(rows, dbType.getMaxBindParameters() / paramCount);
+        }
+        if (tupleStart > 0 && rows > 1) {
+            insertPrefix = sql.substring(0, tupleStart);
+            valuesTuple = sql.substring(tupleStart, closingParenthesis(sql, tupleStart) + 1);
+            rowsPerInsert = rows;
+        } else {
+            insertPrefix = null;
+            valuesTuple = null;
+            rowsPerInsert = 1;
+        }
+        // 改写时每段取多行插入行数的整数倍, 避免每段末尾剩下零散的行
+        chunkSize = options.getChunkSize() > rowsPerInsert ? options.getChunkSize() / rowsPerInsert * rowsPerInsert : options.getChunkSize();
+    }
+
+    /**
+     * 批量执行
+     *
+     * @param connection 调用方的连接, 并行执行时不使用
+     * @param paramMaps  每一行的命名参数
+     * @return 每一行的影响行数
+     * @throws SQLException sql异常
+     */
+    int[] execute(Connection connection, List<Map<String, ?>> paramMaps) throws SQLException {
+        int total = paramMaps.size();
+        int[] rowsAffected = new int[total];
+        int chunks = (total + chunkSize - 1) / chunkSize;
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        int workers = Math.min(options.getParallelism(), chunks);
+        if (workers > 1 && null != options.getDataSource()) {
+            DataSource dataSource = options.getDataSource().get();
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(Async.run(() -> {
+                    try (Connection conn = dataSource.getConnection()) {
+                        boolean autoCommit = conn.getAutoCommit();
+                        conn.setAutoCommit(false);
+                        try {
+                            runChunks(conn, true, paramMaps, rowsAffected, nextChunk, finished, failed);
+                        } catch (SQLException | RuntimeException e) {
+                            failed.set(true);
+                            conn.rollback();
+                            throw e;
+                        } finally {
+                            conn.setAutoCommit(autoCommit);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        } else {
+            boolean commit = options.isCommitPerChunk() && !connection.getAutoCommit();
+            runChunks(connection, commit, paramMaps, rowsAffected, nextChunk, finished, new AtomicBoolean());
+        }
+        return rowsAffected;
+    }
+
+    private void runChunks(Connection connection, boolean commit, List<Map<String, ?>> paramMaps, int[] rowsAffected,
+                           AtomicInteger nextChunk, AtomicInteger finished, AtomicBoolean failed) throws SQLException {
+        int total = paramMaps.size();
+        boolean supportsBatch = JdbcUtils.supportsBatchUpdates(connection);
+        PreparedStatement plain = null;
+        PreparedStatement multiRow = null;
+        try {
+            int from;
+            while (!failed.get() && (from = nextChunk.getAndIncrement() * chunkSize) < total) {
+                int to = Math.min(from + chunkSize, total);
+                if (null != insertPrefix && to - from > 1) {
+                    for (int offset = from; offset < to; offset += rowsPerInsert) {
+                        int rows = Math.min(rowsPerInsert, to - offset);
+                        if (rows == rowsPerInsert) {
+                            multiRow = null == multiRow ? connection.prepareStatement(multiRowSql(rows)) : multiRow;
+                            executeMultiRow(multiRow, paramMaps, offset, rows, rowsAffected);
+                        } else {
+                            try (PreparedStatement ps = connection.prepareStatement(multiRowSql(rows))) {
+                                executeMultiRow(ps, paramMaps, offset, rows, rowsAffected);
+                            }
+                        }
+                    }
+                } else {
+                    plain = null == plain ? connection.prepareStatement(parsedSql.getActualSql().getSql()) : plain;
+                    if (supportsBatch) {
+                        for (int i = from; i < to; i++) {
+                            JdbcUtils.setParameterValues(plain, parsedSql.getNamedParameters(), paramMaps.get(i));
+                            plain.addBatch();
+                        }
+                        int[] res = plain.executeBatch();
+                        System.arraycopy(res, 0, rowsAffected, from, Math.min(res.length, to - from));
+                    } else {
+                        for (int i = from; i < to; i++) {
+                            JdbcUtils.setParameterValues(plain, parsedSql.getNamedParameters(), paramMaps.get(i));
+                            rowsAffected[i] = plain.executeUpdate();
+                        }
+                    }
+                }
+                if (commit) {
+                    connection.commit();
+                }
+                int done = finished.addAndGet(to - from);
+                if (null != options.getProgressListener()) {
+                    options.getProgressListener().onProgress(done, total);
+                }
+            }
+        } finally {
+            JdbcUtils.closeStatement(plain);
+            JdbcUtils.closeStatement(multiRow);
+        }
+    }
+
+    private void executeMultiRow(PreparedStatement ps, List<Map<String, ?>> paramMaps, int offset, int rows, int[] rowsAffected) throws SQLException {
+        int paramCount = parsedSql.getNamedParameters().size();
+        for (int r = 0; r < rows; r++) {
+            JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMaps.get(offset + r), r * paramCount);
+        }
+        int cnt = ps.executeUpdate();
+        Arrays.fill(rowsAffected, offset, offset + rows, cnt == rows ? 1 : Statement.SUCCESS_NO_INFO);
+    }
+
+    private String multiRowSql(int rows) {
+        StringBuilder sb = new StringBuilder(insertPrefix.length() + (valuesTuple.length() + 2) * rows).append(insertPrefix).append(valuesTuple);
+        for (int i = 1; i < rows; i++) {
+            sb.append(", ").append(valuesTuple);
+        }
+        return sb.toString();
+    }
+
+    private static void awaitAll(List<Future<Void>> futures) throws SQLException {
+        Throwable error = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = null == error ? e : error;
+            } catch (ExecutionException e) {
+                error = null == error ? e.getCause() : error;
+            }
+        }
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (null != error) {
+            throw new SQLException("批量执行失败", error);
+        }
+    }
+
+    /**
+     * 判断语句是否是可以改写的单行插入: VALUES后只有一组括号, 并且所有参数都在其中
+     *
+     * @return VALUES后左括号的位置, 不可改写时返回-1
+     */
+    static int valuesTupleStart(String sql, int paramCount) {
+        Matcher matcher = INSERT_VALUES.matcher(sql);
+        if (!matcher.lookingAt()) {
+            return -1;
+        }
+        int start = matcher.end() - 1;
+        int end = closingParenthesis(sql, start);
+        if (end < 0 || !sql.substring(end + 1).trim().replace(";", "").isEmpty()) {
+            return -1;
+        }
+        if (countPlaceholders(sql, start, end + 1) != paramCount || countPlaceholders(sql, 0, sql.length()) != paramCount) {
+            logger.debug("插入语句的参数不全在VALUES中, 不进行多行改写: {}", sql);
+            return -1;
+        }
+        return start;
+    }
+
+    private static int closingParenthesis(String sql, int start) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                ++depth;
+            } else if (!quoted && c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int countPlaceholders(String sql, int from, int to) {
+        int cnt = 0;
+        boolean quoted = false;
+        for (int i = from; i < to; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '?') {
+                ++cnt;
+            }
+        }
+        return cnt;
+    }
+}
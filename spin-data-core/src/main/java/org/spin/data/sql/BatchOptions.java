@@ -0,0 +1,132 @@
+package org.spin.data.sql;
+
+import javax.sql.DataSource;
+import java.util.function.Supplier;
+
+/**
+ * 批量执行参数
+ * <p>默认每1000行执行一次JDBC批处理, 不改写语句, 不分段提交, 在调用方的连接上串行执行</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class BatchOptions {
+
+    /**
+     * 默认的分段大小
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean rewriteInsert;
+    private boolean commitPerChunk;
+    private int parallelism = 1;
+    private Supplier<DataSource> dataSource;
+    private ProgressListener progressListener;
+
+    /**
+     * 每段的行数, 每段执行一次JDBC批处理(或一条改写后的多行插入语句)
+     *
+     * @param chunkSize 分段大小
+     * @return 当前对象
+     */
+    public BatchOptions chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 将{@code INSERT ... VALUES (...)}改写为多行插入, 只对数据库支持且语句形式简单的插入生效
+     * <p>改写后无法得到每一行的影响行数, 对应位置返回{@link java.sql.Statement#SUCCESS_NO_INFO}</p>
+     *
+     * @param rewriteInsert 是否改写
+     * @return 当前对象
+     */
+    public BatchOptions rewriteInsert(boolean rewriteInsert) {
+        this.rewriteInsert = rewriteInsert;
+        return this;
+    }
+
+    /**
+     * 每段执行完毕后提交事务
+     * <p>调用方的连接处于事务管理器控制下时不应开启, 否则会提前提交外部事务</p>
+     *
+     * @param commitPerChunk 是否分段提交
+     * @return 当前对象
+     */
+    public BatchOptions commitPerChunk(boolean commitPerChunk) {
+        this.commitPerChunk = commitPerChunk;
+        return this;
+    }
+
+    /**
+     * 在多个连接上并行执行各段, 只适用于相互独立的插入
+     * <p>每个连接上的各段执行完毕后各自提交, 失败时已提交的段不会回滚, 并且看不到调用方事务中未提交的修改</p>
+     *
+     * @param parallelism 并行度
+     * @param dataSource  获取连接的数据源
+     * @return 当前对象
+     */
+    public BatchOptions parallel(int parallelism, Supplier<DataSource> dataSource) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * 每段执行完毕后的回调, 并行执行时会在多个线程上调用
+     *
+     * @param progressListener 进度回调
+     * @return 当前对象
+     */
+    public BatchOptions onProgress(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isRewriteInsert() {
+        return rewriteInsert;
+    }
+
+    public boolean isCommitPerChunk() {
+        return commitPerChunk;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Supplier<DataSource> getDataSource() {
+        return dataSource;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * 批量执行进度回调
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * 一段执行完毕
+         *
+         * @param finished 已经执行完毕的行数
+         * @param total    总行数
+         */
+        void onProgress(int finished, int total);
+    }
+}
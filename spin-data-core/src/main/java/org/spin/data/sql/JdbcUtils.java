@@ -63,9 +63,67 @@ public abstract class JdbcUtils {
         return false;
     }
 
+    /**
+     * Close the given JDBC Statement and ignore any thrown exception.
+     *
+     * @param stmt the JDBC Statement to close (may be {@code null})
+     */
+    public static void closeStatement(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException | RuntimeException ex) {
+                logger.debug("Could not close JDBC Statement", ex);
+            }
+        }
+    }
+
+    /**
+     * Close the given JDBC Connection and ignore any thrown exception.
+     *
+     * @param con the JDBC Connection to close (may be {@code null})
+     */
+    public static void closeConnection(Connection con) {
+        if (con != null) {
+            try {
+                con.close();
+            } catch (SQLException | RuntimeException ex) {
+                logger.debug("Could not close JDBC Connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Close the given JDBC ResultSet and ignore any thrown exception.
+     *
+     * @param rs the JDBC ResultSet to close (may be {@code null})
+     */
+    public static void closeResultSet(ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException | RuntimeException ex) {
+                logger.debug("Could not close JDBC ResultSet", ex);
+            }
+        }
+    }
+
     public static void setParameterValues(PreparedStatement ps, List<SqlParameter> parameters, Map<String, ?> model) throws SQLException {
+        setParameterValues(ps, parameters, model, 0);
+    }
+
+    /**
+     * 按偏移后的位置设置参数, 用于同一条语句中重复出现的参数组(如多行插入)
+     *
+     * @param ps          PreparedStatement
+     * @param parameters  参数列表
+     * @param model       参数值
+     * @param indexOffset 参数位置的偏移量
+     * @throws SQLException sql异常
+     */
+    public static void setParameterValues(PreparedStatement ps, List<SqlParameter> parameters, Map<String, ?> model, int indexOffset) throws SQLException {
         for (SqlParameter parameter : parameters) {
-            setParameterValue(ps, parameter.getParamIndex(), model.get(parameter.getParameterName()));
+            setParameterValue(ps, parameter.getParamIndex() + indexOffset, model.get(parameter.getParameterName()));
         }
     }
 
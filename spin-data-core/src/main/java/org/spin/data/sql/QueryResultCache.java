@@ -0,0 +1,330 @@
+package org.spin.data.sql;
+
+import org.spin.core.collection.ConcurrentLinkedHashMap;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 查询结果缓存
+ * <p>只缓存在模板中通过块注释{@code /* @tables t1, t2 *&#47;}声明了所读表的查询. 不支持{@code --}形式的行注释:
+ * 模板末尾的行注释会在外层包装(分页, 计数)时注释掉右括号. 缓存键为sqlId、结果类型与规范化后的参数. 每张表维护一个版本号, 写入时递增; 缓存项记录查询开始前各表的版本,
+ * 读取时版本不一致即视为失效, 因此查询过程中发生的写入不会留下过期的缓存</p>
+ * <p>失效发生在写语句执行时而非事务提交时, 长事务期间其他线程仍可能缓存提交前的数据, 可以通过有效期兜底.
+ * 缓存的结果在调用方之间共享, 每次返回新的列表, 但列表中的对象不应被修改</p>
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class QueryResultCache {
+
+    /**
+     * 表示所有表的失效标记
+     */
+    public static final String ALL_TABLES = "*";
+
+    private static final Pattern DECLARED_TABLES = Pattern.compile("/\\*\\s*@tables\\s+([\\w.$,\\s`\"\\[\\]]+?)\\s*\\*/");
+    private static final Pattern WRITTEN_TABLE = Pattern.compile("^\\s*(?:insert\\s+into|replace\\s+into|merge\\s+into|update|delete\\s+from)\\s+([\\w.$`\"\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+    private static final String[] NO_TABLES = new String[0];
+
+    private final ConcurrentLinkedHashMap<List<Object>, Entry> cache;
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Declaration> declarations = new ConcurrentHashMap<>();
+    private final List<Consumer<Collection<String>>> invalidationListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 构造查询结果缓存
+     *
+     * @param maxRows 缓存的总行数上限, 每个缓存项按结果行数+1计算权重
+     * @param ttl     有效期(毫秒), 小于等于0时不过期
+     */
+    public QueryResultCache(long maxRows, long ttl) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Max cached rows must be positive");
+        }
+        this.ttl = ttl;
+        this.cache = new ConcurrentLinkedHashMap.Builder<List<Object>, Entry>()
+            .maximumWeightedCapacity(maxRows)
+            .weigher(entry -> entry.rows.size() + 1)
+            .build();
+    }
+
+    /**
+     * 查询模板声明的所读表, 没有声明时返回null, 表示该查询不缓存
+     *
+     * @param sqlId sqlId
+     * @param sql   渲染后的sql
+     * @return 表名
+     */
+    public String[] declaredTables(String sqlId, String sql) {
+        Declaration declaration = declarations.get(sqlId);
+        if (null == declaration || declaration.sql != sql) {
+            declaration = new Declaration(sql, parseDeclaredTables(sql));
+            declarations.put(sqlId, declaration);
+        }
+        return declaration.tables;
+    }
+
+    /**
+     * 构造缓存键
+     *
+     * @param sqlId      sqlId
+     * @param resultType 结果类型
+     * @param paramMap   命名参数
+     * @return 缓存键
+     */
+    public List<Object> key(String sqlId, Object resultType, Map<String, ?> paramMap) {
+        List<Object> key = new ArrayList<>(3);
+        key.add(sqlId);
+        key.add(resultType);
+        if (null == paramMap || paramMap.isEmpty()) {
+            key.add(Collections.emptyMap());
+        } else {
+            TreeMap<String, Object> normalized = new TreeMap<>();
+            paramMap.forEach((k, v) -> normalized.put(k, normalize(v)));
+            key.add(normalized);
+        }
+        return key;
+    }
+
+    /**
+     * 记录查询开始前各表的版本
+     *
+     * @param tables 表名
+     * @return 版本快照, 最后一位为全局版本
+     */
+    public long[] snapshot(String[] tables) {
+        long[] res = new long[tables.length + 1];
+        for (int i = 0; i < tables.length; i++) {
+            res[i] = version(tables[i]).get();
+        }
+        res[tables.length] = globalVersion.get();
+        return res;
+    }
+
+    /**
+     * 获取缓存的查询结果
+     *
+     * @param key 缓存键
+     * @param <T> 结果类型
+     * @return 查询结果的副本, 未命中时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(List<Object> key) {
+        Entry entry = cache.get(key);
+        if (null != entry && isValid(entry)) {
+            hits.increment();
+            return new ArrayList<>((List<T>) entry.rows);
+        }
+        if (null != entry) {
+            cache.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 缓存查询结果
+     *
+     * @param key      缓存键
+     * @param tables   所读表
+     * @param snapshot 查询开始前的版本快照
+     * @param rows     查询结果
+     */
+    public void put(List<Object> key, String[] tables, long[] snapshot, List<?> rows) {
+        Entry entry = new Entry(new ArrayList<>(rows), tables, snapshot, ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE);
+        if (isValid(entry)) {
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * 写语句执行后使相关的缓存失效, 并通知失效监听器
+     *
+     * @param sql 执行的sql
+     */
+    public void invalidateWritten(String sql) {
+        String[] tables = parseDeclaredTables(sql);
+        if (null == tables) {
+            Matcher matcher = WRITTEN_TABLE.matcher(sql);
+            tables = matcher.find() ? new String[]{normalizeTable(matcher.group(1))} : new String[]{ALL_TABLES};
+        }
+        invalidate(Arrays.asList(tables));
+    }
+
+    /**
+     * 使指定表相关的缓存失效, 并通知失效监听器
+     *
+     * @param tables 表名, 包含{@link #ALL_TABLES}时清空所有缓存
+     */
+    public void invalidate(Collection<String> tables) {
+        invalidateLocal(tables);
+        for (Consumer<Collection<String>> listener : invalidationListeners) {
+            listener.accept(tables);
+        }
+    }
+
+    /**
+     * 只在本地使指定表相关的缓存失效, 用于处理其他节点广播的失效通知
+     *
+     * @param tables 表名
+     */
+    public void invalidateLocal(Collection<String> tables) {
+        for (String table : tables) {
+            if (ALL_TABLES.equals(table)) {
+                globalVersion.incrementAndGet();
+                cache.clear();
+            } else {
+                version(normalizeTable(table)).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 添加失效监听器, 可用于向其他节点广播失效通知
+     *
+     * @param listener 监听器
+     */
+    public void addInvalidationListener(Consumer<Collection<String>> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public void removeInvalidationListener(Consumer<Collection<String>> listener) {
+        invalidationListeners.remove(listener);
+    }
+
+    public void clear() {
+        invalidateLocal(Collections.singletonList(ALL_TABLES));
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private boolean isValid(Entry entry) {
+        if (entry.expireAt < System.currentTimeMillis() || entry.versions[entry.tables.length] != globalVersion.get()) {
+            return false;
+        }
+        for (int i = 0; i < entry.tables.length; i++) {
+            if (entry.versions[i] != version(entry.tables[i]).get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AtomicLong version(String table) {
+        AtomicLong version = versions.get(table);
+        return null == version ? versions.computeIfAbsent(table, k -> new AtomicLong()) : version;
+    }
+
+    private static String[] parseDeclaredTables(String sql) {
+        Matcher matcher = DECLARED_TABLES.matcher(sql);
+        if (!matcher.find()) {
+            return null;
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        for (String table : matcher.group(1).split(",")) {
+            String normalized = normalizeTable(table);
+            if (!normalized.isEmpty()) {
+                tables.add(normalized);
+            }
+        }
+        return tables.isEmpty() ? null : tables.toArray(NO_TABLES);
+    }
+
+    /**
+     * 表名统一为去掉引号与schema的小写形式
+     */
+    private static String normalizeTable(String table) {
+        String name = table.trim();
+        if (ALL_TABLES.equals(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        return name.replace("`", "").replace("\"", "").replace("[", "").replace("]", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static Object normalize(Object value) {
+        if (null == value) {
+            return null;
+        }
+        if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            List<Object> list = new ArrayList<>(len);
+            for (int i = 0; i < len; i++) {
+                list.add(normalize(Array.get(value, i)));
+            }
+            return list;
+        }
+        if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+            for (Object o : (Collection<?>) value) {
+                list.add(normalize(o));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache{size=" + cache.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum() + '}';
+    }
+
+    private static class Entry {
+        private final List<?> rows;
+        private final String[] tables;
+        private final long[] versions;
+        private final long expireAt;
+
+        private Entry(List<?> rows, String[] tables, long[] versions, long expireAt) {
+            this.rows = rows;
+            this.tables = tables;
+            this.versions = versions;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Declaration {
+        private final String sql;
+        private final String[] tables;
+
+        private Declaration(String sql, String[] tables) {
+            this.sql = sql;
+            this.tables = tables;
+        }
+    }
+}
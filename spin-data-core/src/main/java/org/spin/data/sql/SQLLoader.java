@@ -26,6 +26,8 @@ public interface SQLLoader {
 
     /**
      * 加载分页的参数化SQL语句
+     * <p>返回的sql中偏移量与分页大小是命名参数{@link DatabaseType#PAGE_OFFSET}等, 执行前需要将
+     * {@link DatabaseType#getPageParameters(PageRequest)}的结果合并到查询参数中</p>
      *
      * @param dbType      数据库类型
      * @param id          sql的path
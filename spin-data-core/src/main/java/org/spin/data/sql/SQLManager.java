@@ -2,27 +2,48 @@ package org.spin.data.sql;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spin.core.Assert;
+import org.spin.core.collection.ConcurrentLinkedHashMap;
+import org.spin.core.concurrent.Async;
 import org.spin.core.gson.reflect.TypeToken;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.util.CollectionUtils;
 import org.spin.core.util.MapUtils;
 import org.spin.core.util.StringUtils;
+import org.spin.data.core.DatabaseType;
+import org.spin.data.core.KeysetRequest;
+import org.spin.data.core.KeysetToken;
+import org.spin.data.core.Order;
 import org.spin.data.core.Page;
 import org.spin.data.core.PageRequest;
+import org.spin.data.rs.ColumnVisitor;
 import org.spin.data.rs.MapRowMapper;
+import org.spin.data.rs.RowCallback;
 import org.spin.data.rs.RowMapper;
 import org.spin.data.rs.RowMappers;
+import org.spin.data.sql.dbtype.DbTypes;
 import org.spin.data.sql.param.ParameterizedSql;
+import org.spin.data.sql.param.SqlParameter;
 import org.spin.data.sql.resolver.TemplateResolver;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SQL支撑管理类
@@ -31,29 +52,53 @@ import java.util.Optional;
  * @author xuweinan
  * @version 1.5
  */
-public class SQLManager {
+public class SQLManager implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(SQLManager.class);
     private static final String COUNT_SQL = "SELECT COUNT(1) FROM (%s) OUT_ALIAS";
     private static final String QUERY_ERROR = "执行查询出错";
     private static final String SQL_LOG = "sqlId: %s\nsqlText: %s";
     private static final int DEFAULT_CACHE_LIMIT = 256;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int DEFAULT_COUNT_CACHE_LIMIT = 1024;
     private static final RowMapper<Map<String, Object>> DEFAULT_ROW_MAPPER = new MapRowMapper();
 
     /**
      * SQL缓存区容量
      */
     private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
-    private final Map<String, ParameterizedSql> parsedSqlCache =
-        new LinkedHashMap<String, ParameterizedSql>(DEFAULT_CACHE_LIMIT, 0.75f, true) {
-            private static final long serialVersionUID = 3202723764687686913L;
+    private final ConcurrentLinkedHashMap<String, ParameterizedSql> parsedSqlCache = new ConcurrentLinkedHashMap.Builder<String, ParameterizedSql>()
+        .initialCapacity(DEFAULT_CACHE_LIMIT).maximumWeightedCapacity(DEFAULT_CACHE_LIMIT)
+        .build();
 
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, ParameterizedSql> eldest) {
-                return size() > cacheLimit;
-            }
-        };
+    /**
+     * 静态SQL按sqlId预编译的结果
+     */
+    private final Map<String, ParameterizedSql> staticSqlCache = new ConcurrentHashMap<>();
     private final SQLLoader sqlLoader;
 
+    /**
+     * 游标查询的默认fetchSize
+     */
+    private volatile int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * 并行执行count查询时获取连接的数据源, 为null时在当前连接上串行执行
+     */
+    private volatile Supplier<DataSource> countDataSource;
+
+    /**
+     * 分页总数的缓存时间(毫秒), 小于等于0时不缓存
+     */
+    private volatile long countCacheTtl;
+
+    /**
+     * 查询结果缓存, 为null时不缓存
+     */
+    private volatile QueryResultCache resultCache;
+    private final ConcurrentLinkedHashMap<List<Object>, CachedTotal> countCache = new ConcurrentLinkedHashMap.Builder<List<Object>, CachedTotal>()
+        .maximumWeightedCapacity(DEFAULT_COUNT_CACHE_LIMIT)
+        .build();
+
     /**
      * 构造方法
      *
@@ -124,7 +169,7 @@ public class SQLManager {
      */
     public List<Map<String, Object>> listAsMap(Connection connection, String sqlId, Map<String, ?> paramMap) {
         ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
-        return executeQuery(connection, parsedSql, paramMap, DEFAULT_ROW_MAPPER);
+        return executeCachedQuery(connection, sqlId, parsedSql, paramMap, Map.class, DEFAULT_ROW_MAPPER);
     }
 
     /**
@@ -137,12 +182,7 @@ public class SQLManager {
      * @return 查询结果
      */
     public Page<Map<String, Object>> listAsPageMap(Connection connection, String sqlId, Map<String, ?> paramMap, PageRequest pageRequest) {
-        ParameterizedSql parsedPageSql = getParsedSql(sqlLoader.getPagedSQL(JdbcUtils.getDbType(connection), sqlId, paramMap, pageRequest));
-        ParameterizedSql countSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
-
-        List<Map<String, Object>> res = executeQuery(connection, parsedPageSql, paramMap, DEFAULT_ROW_MAPPER);
-        long total = total(connection, countSql, paramMap, false);
-        return new Page<>(res, pageRequest.getCurrent(), total, pageRequest.getSize());
+        return executePage(connection, sqlId, null, DEFAULT_ROW_MAPPER, paramMap, pageRequest);
     }
 
     /**
@@ -156,12 +196,7 @@ public class SQLManager {
      * @return 查询结果
      */
     public Page<Map<String, Object>> listAsPageMap(Connection connection, String sqlId, String countSqlId, Map<String, ?> paramMap, PageRequest pageRequest) {
-        ParameterizedSql parsedPageSql = getParsedSql(sqlLoader.getPagedSQL(JdbcUtils.getDbType(connection), sqlId, paramMap, pageRequest));
-        ParameterizedSql countSql = getParsedSql(sqlLoader.getSQL(countSqlId, paramMap));
-
-        List<Map<String, Object>> res = executeQuery(connection, parsedPageSql, paramMap, DEFAULT_ROW_MAPPER);
-        long total = total(connection, countSql, paramMap, true);
-        return new Page<>(res, pageRequest.getCurrent(), total, pageRequest.getSize());
+        return executePage(connection, sqlId, countSqlId, DEFAULT_ROW_MAPPER, paramMap, pageRequest);
     }
 
     /**
@@ -191,7 +226,7 @@ public class SQLManager {
     public <T> List<T> list(Connection connection, String sqlId, Class<T> entityClazz, Map<String, ?> paramMap) {
         ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
 
-        return executeQuery(connection, parsedSql, paramMap, RowMappers.getMapper(TypeToken.get(entityClazz)));
+        return executeCachedQuery(connection, sqlId, parsedSql, paramMap, entityClazz, RowMappers.getMapper(TypeToken.get(entityClazz)));
     }
 
     /**
@@ -206,12 +241,7 @@ public class SQLManager {
      * @return 查询结果
      */
     public <T> Page<T> listAsPage(Connection connection, String sqlId, Class<T> entityClazz, Map<String, ?> paramMap, PageRequest pageRequest) {
-        ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
-        ParameterizedSql parsedPageSql = getParsedSql(sqlLoader.getPagedSQL(JdbcUtils.getDbType(connection), sqlId, paramMap, pageRequest));
-
-        List<T> res = executeQuery(connection, parsedPageSql, paramMap, RowMappers.getMapper(TypeToken.get(entityClazz)));
-        long total = total(connection, parsedSql, paramMap, false);
-        return new Page<>(res, pageRequest.getCurrent(), total, pageRequest.getSize());
+        return executePage(connection, sqlId, null, RowMappers.getMapper(TypeToken.get(entityClazz)), paramMap, pageRequest);
     }
 
     /**
@@ -227,12 +257,136 @@ public class SQLManager {
      * @return 查询结果
      */
     public <T> Page<T> listAsPage(Connection connection, String sqlId, String countSqlId, Class<T> entityClazz, Map<String, ?> paramMap, PageRequest pageRequest) {
-        ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(countSqlId, paramMap));
-        ParameterizedSql parsedPageSql = getParsedSql(sqlLoader.getPagedSQL(JdbcUtils.getDbType(connection), sqlId, paramMap, pageRequest));
+        return executePage(connection, sqlId, countSqlId, RowMappers.getMapper(TypeToken.get(entityClazz)), paramMap, pageRequest);
+    }
 
-        List<T> res = executeQuery(connection, parsedPageSql, paramMap, RowMappers.getMapper(TypeToken.get(entityClazz)));
-        long total = total(connection, parsedSql, paramMap, true);
-        return new Page<>(res, pageRequest.getCurrent(), total, pageRequest.getSize());
+    /**
+     * 游标(keyset)分页查询
+     * <p>按排序键定位下一页, 翻页深度不影响查询耗时. 不查询总数, 返回结果的total为-1, 通过{@link Page#getNext()}获取下一页的游标</p>
+     *
+     * @param connection     jdbc连接
+     * @param sqlId          sqlId
+     * @param paramMap       命名参数
+     * @param keysetRequest 游标分页参数
+     * @return 查询结果
+     */
+    public Page<Map<String, Object>> listAsKeysetPageMap(Connection connection, String sqlId, Map<String, ?> paramMap, KeysetRequest keysetRequest) {
+        return keysetPage(connection, sqlId, DEFAULT_ROW_MAPPER, paramMap, keysetRequest);
+    }
+
+    /**
+     * 游标(keyset)分页查询
+     * <p>按排序键定位下一页, 翻页深度不影响查询耗时. 不查询总数, 返回结果的total为-1, 通过{@link Page#getNext()}获取下一页的游标</p>
+     *
+     * @param connection    jdbc连接
+     * @param sqlId         sqlId
+     * @param entityClazz   查询实体类型
+     * @param paramMap      命名参数
+     * @param keysetRequest 游标分页参数
+     * @param <T>           实体类型
+     * @return 查询结果
+     */
+    public <T> Page<T> listAsKeysetPage(Connection connection, String sqlId, Class<T> entityClazz, Map<String, ?> paramMap, KeysetRequest keysetRequest) {
+        return keysetPage(connection, sqlId, RowMappers.getMapper(TypeToken.get(entityClazz)), paramMap, keysetRequest);
+    }
+
+    /**
+     * 以游标方式查询, 返回的Stream按需逐行读取并转换
+     * <p>Stream关闭前会一直占用jdbc连接上的Statement, 必须在连接关闭前通过try-with-resources关闭</p>
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param paramMap   命名参数
+     * @return 查询结果
+     */
+    public Stream<Map<String, Object>> streamAsMap(Connection connection, String sqlId, Map<String, ?> paramMap) {
+        return stream(connection, sqlId, DEFAULT_ROW_MAPPER, paramMap, fetchSize);
+    }
+
+    /**
+     * 以游标方式查询, 返回的Stream按需逐行读取并转换
+     * <p>Stream关闭前会一直占用jdbc连接上的Statement, 必须在连接关闭前通过try-with-resources关闭</p>
+     *
+     * @param connection  jdbc连接
+     * @param sqlId       sqlId
+     * @param entityClazz 查询实体类型
+     * @param paramMap    命名参数
+     * @param <T>         实体类型
+     * @return 查询结果
+     */
+    public <T> Stream<T> stream(Connection connection, String sqlId, Class<T> entityClazz, Map<String, ?> paramMap) {
+        return stream(connection, sqlId, RowMappers.getMapper(TypeToken.get(entityClazz)), paramMap, fetchSize);
+    }
+
+    /**
+     * 以游标方式查询, 返回的Stream按需逐行读取并转换
+     * <p>Stream关闭前会一直占用jdbc连接上的Statement, 必须在连接关闭前通过try-with-resources关闭</p>
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param mapper     数据转换器
+     * @param paramMap   命名参数
+     * @param fetchSize  每批从数据库读取的行数, 小于等于0时使用驱动的默认值
+     * @param <T>        实体类型
+     * @return 查询结果
+     */
+    public <T> Stream<T> stream(Connection connection, String sqlId, RowMapper<T> mapper, Map<String, ?> paramMap, int fetchSize) {
+        ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
+        Cursor<T> cursor = openCursor(connection, parsedSql, paramMap, mapper, fetchSize);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /**
+     * 以游标方式查询, 逐行回调处理, 处理完成后释放Statement
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param paramMap   命名参数
+     * @param callback   行处理回调
+     * @return 处理的行数
+     */
+    public int forEachAsMap(Connection connection, String sqlId, Map<String, ?> paramMap, RowCallback<? super Map<String, Object>> callback) {
+        return forEach(connection, sqlId, DEFAULT_ROW_MAPPER, paramMap, fetchSize, callback);
+    }
+
+    /**
+     * 以游标方式查询, 逐行回调处理, 处理完成后释放Statement
+     *
+     * @param connection  jdbc连接
+     * @param sqlId       sqlId
+     * @param entityClazz 查询实体类型
+     * @param paramMap    命名参数
+     * @param callback    行处理回调
+     * @param <T>         实体类型
+     * @return 处理的行数
+     */
+    public <T> int forEach(Connection connection, String sqlId, Class<T> entityClazz, Map<String, ?> paramMap, RowCallback<? super T> callback) {
+        return forEach(connection, sqlId, RowMappers.getMapper(TypeToken.get(entityClazz)), paramMap, fetchSize, callback);
+    }
+
+    /**
+     * 以游标方式查询, 逐行回调处理, 处理完成后释放Statement
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param mapper     数据转换器
+     * @param paramMap   命名参数
+     * @param fetchSize  每批从数据库读取的行数, 小于等于0时使用驱动的默认值
+     * @param callback   行处理回调
+     * @param <T>        实体类型
+     * @return 处理的行数
+     */
+    public <T> int forEach(Connection connection, String sqlId, RowMapper<T> mapper, Map<String, ?> paramMap, int fetchSize, RowCallback<? super T> callback) {
+        Assert.notNull(callback, "行处理回调不能为空");
+        ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, paramMap));
+        try (Cursor<T> cursor = openCursor(connection, parsedSql, paramMap, mapper, fetchSize)) {
+            while (cursor.next()) {
+                callback.processRow(cursor.current, cursor.rowIdx - 1);
+            }
+            return cursor.rowIdx;
+        } catch (SQLException e) {
+            throw new SimplifiedException(QUERY_ERROR, e);
+        }
     }
 
     /**
@@ -263,7 +417,9 @@ public class SQLManager {
         }
         try (PreparedStatement ps = connection.prepareStatement(parsedSql.getActualSql().getSql())) {
             JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMap);
-            return ps.executeUpdate();
+            int affected = ps.executeUpdate();
+            invalidateResultCache(parsedSql);
+            return affected;
         } catch (SQLException e) {
             throw new SimplifiedException(QUERY_ERROR, e);
         }
@@ -278,37 +434,110 @@ public class SQLManager {
      * @return 受影响行数
      */
     public int[] executeBatch(Connection connection, String sqlId, List<Map<String, ?>> paramMaps) {
+        return executeBatch(connection, sqlId, paramMaps, new BatchOptions());
+    }
+
+    /**
+     * 分段批量更新
+     * <p>按{@link BatchOptions}分段执行, 可以改写为多行插入、分段提交或在多个连接上并行执行</p>
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param paramMaps  命名参数
+     * @param options    批量执行参数
+     * @return 受影响行数
+     */
+    public int[] executeBatch(Connection connection, String sqlId, List<Map<String, ?>> paramMaps, BatchOptions options) {
         ParameterizedSql parsedSql = getParsedSql(sqlLoader.getSQL(sqlId, null));
+        Assert.notNull(options, "批量执行参数不能为空");
 
         if (logger.isDebugEnabled()) {
             logger.debug(String.format(SQL_LOG, sqlId, parsedSql.getActualSql()));
         }
-        try (PreparedStatement ps = connection.prepareStatement(parsedSql.getActualSql().getSql())) {
-            if (JdbcUtils.supportsBatchUpdates(connection)) {
-                for (Map<String, ?> paramMap : paramMaps) {
-                    JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMap);
-                    ps.addBatch();
-                }
-                return ps.executeBatch();
-            } else {
-                int[] rowsAffected = new int[paramMaps.size()];
-                for (int i = 0; i < paramMaps.size(); i++) {
-                    JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMaps.get(i));
-                    rowsAffected[i] = ps.executeUpdate();
-                }
-                return rowsAffected;
-            }
+        try {
+            // 未注册的数据库类型不做多行插入改写, 按普通的jdbc批量执行
+            DatabaseType dbType = DbTypes.get(connection.getMetaData().getDatabaseProductName());
+            int[] affected = new BatchExecutor(parsedSql, dbType, options).execute(connection, paramMaps);
+            invalidateResultCache(parsedSql);
+            return affected;
         } catch (SQLException e) {
             throw new SimplifiedException(QUERY_ERROR, e);
         }
     }
 
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * 设置游标查询的默认fetchSize, 小于等于0时使用驱动的默认值
+     *
+     * @param fetchSize 每批从数据库读取的行数
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public Supplier<DataSource> getCountDataSource() {
+        return countDataSource;
+    }
+
+    /**
+     * 设置并行执行count查询的数据源
+     * <p>count查询在另一个连接上执行, 看不到当前事务中未提交的修改, 只应在可以接受这一点的场景下开启.
+     * 数据源在调用线程上获取, 可以根据线程上下文返回当前使用的数据源</p>
+     *
+     * @param countDataSource 数据源提供者, 为null时不并行执行
+     */
+    public void setCountDataSource(Supplier<DataSource> countDataSource) {
+        this.countDataSource = countDataSource;
+    }
+
+    public long getCountCacheTtl() {
+        return countCacheTtl;
+    }
+
+    /**
+     * 设置分页总数的缓存时间, 相同sql与参数的分页查询在缓存时间内复用总数
+     *
+     * @param countCacheTtl 缓存时间(毫秒), 小于等于0时不缓存
+     */
+    public void setCountCacheTtl(long countCacheTtl) {
+        this.countCacheTtl = countCacheTtl;
+        if (countCacheTtl <= 0) {
+            countCache.clear();
+        }
+    }
+
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * 设置查询结果缓存, 为null时不缓存
+     * <p>只有在模板中声明了所读表的list/listAsMap查询会被缓存, 通过当前SQLManager执行的写语句会使相关表的缓存失效</p>
+     *
+     * @param resultCache 查询结果缓存
+     */
+    public void setResultCache(QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public SQLLoader getSqlLoader() {
+        return sqlLoader;
+    }
+
     public int getCacheLimit() {
         return cacheLimit;
     }
 
     public void setCacheLimit(int cacheLimit) {
         this.cacheLimit = cacheLimit;
+        if (cacheLimit > 0) {
+            parsedSqlCache.setCapacity(cacheLimit);
+        } else {
+            parsedSqlCache.clear();
+        }
     }
 
     /**
@@ -321,19 +550,67 @@ public class SQLManager {
      * @return 数据列表
      */
     private <T> List<T> executeQuery(Connection connection, ParameterizedSql parsedSql, Map<String, ?> paramMap, RowMapper<T> mapper) {
+        return executeQuery(connection, parsedSql, paramMap, mapper, 0);
+    }
+
+    /**
+     * 通过sql执行查询
+     *
+     * @param connection jdbc连接
+     * @param parsedSql  解析后的SQL
+     * @param paramMap   命名参数
+     * @param mapper     数据转换器
+     * @param sizeHint   预计的行数, 小于等于0时根据fetchSize估计
+     * @return 数据列表
+     */
+    private <T> List<T> executeQuery(Connection connection, ParameterizedSql parsedSql, Map<String, ?> paramMap, RowMapper<T> mapper, int sizeHint) {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format(SQL_LOG, parsedSql.getId(), parsedSql.getActualSql()));
         }
         try (PreparedStatement ps = connection.prepareStatement(parsedSql.getActualSql().getSql())) {
             JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMap);
             try (ResultSet rs = ps.executeQuery()) {
-                return mapper.extractData(rs);
+                return sizeHint > 0 ? mapper.extractData(rs, Integer.MAX_VALUE, sizeHint) : mapper.extractData(rs);
             }
         } catch (SQLException e) {
             throw new SimplifiedException(QUERY_ERROR, e);
         }
     }
 
+    /**
+     * 通过sql执行查询, 开启结果缓存并且模板声明了所读表时使用缓存
+     *
+     * @param connection jdbc连接
+     * @param sqlId      sqlId
+     * @param parsedSql  解析后的SQL
+     * @param paramMap   命名参数
+     * @param resultType 结果类型, 作为缓存键的一部分
+     * @param mapper     数据转换器
+     * @return 数据列表
+     */
+    private <T> List<T> executeCachedQuery(Connection connection, String sqlId, ParameterizedSql parsedSql, Map<String, ?> paramMap, Class<?> resultType, RowMapper<T> mapper) {
+        QueryResultCache cache = resultCache;
+        String[] tables = null == cache ? null : cache.declaredTables(sqlId, parsedSql.getActualSql().getSql());
+        if (null == tables) {
+            return executeQuery(connection, parsedSql, paramMap, mapper);
+        }
+        List<Object> key = cache.key(sqlId, resultType, paramMap);
+        List<T> res = cache.get(key);
+        if (null == res) {
+            long[] snapshot = cache.snapshot(tables);
+            res = executeQuery(connection, parsedSql, paramMap, mapper);
+            cache.put(key, tables, snapshot, res);
+        }
+        return res;
+    }
+
+    private void invalidateResultCache(ParameterizedSql parsedSql) {
+        QueryResultCache cache = resultCache;
+        if (null != cache) {
+            cache.invalidateWritten(parsedSql.getActualSql().getSql());
+        }
+    }
+
     /**
      * 通过sql执行查询，返回查询结果的第一行
      *
@@ -349,6 +626,7 @@ public class SQLManager {
         }
         try (PreparedStatement ps = connection.prepareStatement(parsedSql.getActualSql().getSql())) {
             JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMap);
+            ps.setMaxRows(1);
             try (ResultSet rs = ps.executeQuery()) {
                 List<T> tList = mapper.extractData(rs, 1);
                 if (CollectionUtils.isEmpty(tList)) {
@@ -362,29 +640,219 @@ public class SQLManager {
         }
     }
 
+    /**
+     * 打开只读的前向游标
+     *
+     * @param connection jdbc连接
+     * @param parsedSql  解析后的SQL
+     * @param paramMap   命名参数
+     * @param mapper     数据转换器
+     * @param fetchSize  每批从数据库读取的行数
+     * @return 游标
+     */
+    private <T> Cursor<T> openCursor(Connection connection, ParameterizedSql parsedSql, Map<String, ?> paramMap, RowMapper<T> mapper, int fetchSize) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format(SQL_LOG, parsedSql.getId(), parsedSql.getActualSql()));
+        }
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(parsedSql.getActualSql().getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (fetchSize > 0) {
+                DatabaseType dbType = DbTypes.get(connection.getMetaData().getDatabaseProductName());
+                ps.setFetchSize(null == dbType ? fetchSize : dbType.getCursorFetchSize(connection, fetchSize));
+            }
+            JdbcUtils.setParameterValues(ps, parsedSql.getNamedParameters(), paramMap);
+            return new Cursor<>(ps, ps.executeQuery(), mapper);
+        } catch (SQLException e) {
+            JdbcUtils.closeStatement(ps);
+            throw new SimplifiedException(QUERY_ERROR, e);
+        }
+    }
+
     /**
      * 解析命名参数
+     * <p>静态SQL按sqlId缓存, 只比较引用; 动态SQL按SQL文本缓存在有界的并发LRU缓存中</p>
      *
      * @param originSql 原始SQL
      * @return 解析后的SQL
      */
     private ParameterizedSql getParsedSql(SqlSource originSql) {
+        if (originSql.isStaticSql()) {
+            ParameterizedSql parsedSql = staticSqlCache.get(originSql.getId());
+            if (null == parsedSql || parsedSql.getOriginalSql() != originSql) {
+                parsedSql = new ParameterizedSql(originSql);
+                staticSqlCache.put(originSql.getId(), parsedSql);
+            }
+            return parsedSql;
+        }
+
         if (getCacheLimit() <= 0) {
             return new ParameterizedSql(originSql);
         }
         ParameterizedSql parsedSql = parsedSqlCache.get(originSql.getSql());
         if (parsedSql == null) {
-            synchronized (parsedSqlCache) {
-                parsedSql = parsedSqlCache.get(originSql.getSql());
-                if (parsedSql == null) {
-                    parsedSql = new ParameterizedSql(originSql);
-                    parsedSqlCache.put(originSql.getSql(), parsedSql);
-                }
+            parsedSql = new ParameterizedSql(originSql);
+            ParameterizedSql exists = parsedSqlCache.putIfAbsent(originSql.getSql(), parsedSql);
+            if (null != exists) {
+                parsedSql = exists;
             }
         }
         return parsedSql;
     }
 
+    /**
+     * 分页查询
+     * <p>模板只渲染一次. 当前页不满一页时直接推算总数, 不再执行count查询; 开启总数缓存时, 相同sql与参数的总数在有效期内复用;
+     * 配置了count数据源时, count查询在另一个连接上与数据查询并行执行</p>
+     *
+     * @param connection  jdbc连接
+     * @param sqlId       sqlId
+     * @param countSqlId  总数查询sqlId, 为null时使用sqlId包装count查询
+     * @param mapper      数据转换器
+     * @param paramMap    命名参数
+     * @param pageRequest 分页参数
+     * @return 查询结果
+     */
+    private <T> Page<T> executePage(Connection connection, String sqlId, String countSqlId, RowMapper<T> mapper, Map<String, ?> paramMap, PageRequest pageRequest) {
+        Assert.notNull(pageRequest, "分页参数不能为空");
+        DatabaseType dbType = JdbcUtils.getDbType(connection);
+        SqlSource sqlSource = sqlLoader.getSQL(sqlId, paramMap);
+        ParameterizedSql parsedPageSql = getParsedSql(dbType.getPagedSQL(sqlSource, pageRequest));
+        boolean isCntSql = null != countSqlId;
+        ParameterizedSql countSql = isCntSql ? getParsedSql(sqlLoader.getSQL(countSqlId, paramMap)) : getParsedSql(sqlSource);
+
+        List<Object> cacheKey = null;
+        Long cachedTotal = null;
+        Future<Long> asyncTotal = null;
+        if (pageRequest.isSearchCount()) {
+            cacheKey = countCacheTtl > 0 ? countCacheKey(countSql, isCntSql, paramMap) : null;
+            cachedTotal = null == cacheKey ? null : cachedTotal(cacheKey);
+            DataSource countDs = null == cachedTotal && null != countDataSource ? countDataSource.get() : null;
+            if (null != countDs) {
+                asyncTotal = Async.run(() -> {
+                    try (Connection countConnection = countDs.getConnection()) {
+                        return total(countConnection, countSql, paramMap, isCntSql);
+                    }
+                });
+            }
+        }
+
+        List<T> res = executeQuery(connection, parsedPageSql, pageParams(dbType, paramMap, pageRequest), mapper, pageRequest.getSize());
+        long total;
+        if (!pageRequest.isSearchCount()) {
+            total = -1L;
+        } else if (res.size() < pageRequest.getSize() && (!res.isEmpty() || pageRequest.getOffset() == 0)) {
+            // 不满一页, 总数可以直接推算
+            total = (long) pageRequest.getOffset() + res.size();
+            if (null != asyncTotal) {
+                asyncTotal.cancel(true);
+            }
+        } else if (null != cachedTotal) {
+            total = cachedTotal;
+        } else if (null != asyncTotal) {
+            total = awaitTotal(asyncTotal);
+        } else {
+            total = total(connection, countSql, paramMap, isCntSql);
+        }
+        if (null != cacheKey && total >= 0) {
+            countCache.put(cacheKey, new CachedTotal(total, System.currentTimeMillis() + countCacheTtl));
+        }
+        return new Page<>(res, pageRequest.getCurrent(), total, pageRequest.getSize());
+    }
+
+    private List<Object> countCacheKey(ParameterizedSql countSql, boolean isCntSql, Map<String, ?> paramMap) {
+        List<SqlParameter> parameters = countSql.getNamedParameters();
+        List<Object> key = new ArrayList<>(parameters.size() + 2);
+        key.add(countSql.getActualSql().getSql());
+        key.add(isCntSql);
+        for (SqlParameter parameter : parameters) {
+            key.add(null == paramMap ? null : paramMap.get(parameter.getParameterName()));
+        }
+        return key;
+    }
+
+    private Long cachedTotal(List<Object> cacheKey) {
+        CachedTotal cached = countCache.get(cacheKey);
+        if (null == cached) {
+            return null;
+        }
+        if (cached.expireAt < System.currentTimeMillis()) {
+            countCache.remove(cacheKey, cached);
+            return null;
+        }
+        return cached.total;
+    }
+
+    private static long awaitTotal(Future<Long> asyncTotal) {
+        try {
+            return asyncTotal.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimplifiedException(QUERY_ERROR, e);
+        } catch (ExecutionException e) {
+            throw new SimplifiedException(QUERY_ERROR, e.getCause());
+        }
+    }
+
+    private <T> Page<T> keysetPage(Connection connection, String sqlId, RowMapper<T> mapper, Map<String, ?> paramMap, KeysetRequest keysetRequest) {
+        Assert.notNull(keysetRequest, "游标分页参数不能为空");
+        List<Order> keys = keysetRequest.checkedKeys();
+        Object[] after = KeysetToken.decode(keysetRequest);
+        int size = keysetRequest.getSize();
+
+        DatabaseType dbType = JdbcUtils.getDbType(connection);
+        ParameterizedSql parsedSql = getParsedSql(dbType.getKeysetSQL(sqlLoader.getSQL(sqlId, paramMap), keys, null != after));
+
+        // 多取一行判断是否还有下一页
+        Map<String, Object> params = pageParams(dbType, paramMap, new PageRequest(1, size + 1));
+        for (int i = 0; null != after && i < after.length; i++) {
+            params.put(DatabaseType.KEYSET_KEY + i, after[i]);
+        }
+
+        Object[] last = new Object[keys.size()];
+        List<T> res = executeQuery(connection, parsedSql, params, (columnVisitor, rowIdx) -> {
+            if (rowIdx == size - 1) {
+                for (int i = 0; i < last.length; i++) {
+                    last[i] = columnVisitor.getColumnValue(keyColumnIndex(columnVisitor, keys.get(i).getProperty()));
+                }
+            }
+            return mapper.apply(columnVisitor, rowIdx);
+        }, size + 1);
+
+        Page<T> page = new Page<>(res, 1L, -1L, size);
+        if (res.size() > size) {
+            res.remove(size);
+            page.setNext(KeysetToken.encode(keysetRequest, last));
+        }
+        return page;
+    }
+
+    private static int keyColumnIndex(ColumnVisitor columnVisitor, String key) {
+        String[] columnNames = columnVisitor.getColumnNames();
+        for (int i = 0; i < columnNames.length; i++) {
+            if (key.equalsIgnoreCase(columnNames[i])) {
+                return i + 1;
+            }
+        }
+        throw new SimplifiedException("查询结果中不存在游标分页的排序键: " + key);
+    }
+
+    /**
+     * 在命名参数中追加分页参数
+     *
+     * @param dbType      数据库类型
+     * @param paramMap    命名参数
+     * @param pageRequest 分页参数
+     * @return 包含分页参数的命名参数
+     */
+    private Map<String, Object> pageParams(DatabaseType dbType, Map<String, ?> paramMap, PageRequest pageRequest) {
+        Map<String, Object> params = dbType.getPageParameters(pageRequest);
+        if (null != paramMap) {
+            paramMap.forEach(params::putIfAbsent);
+        }
+        return params;
+    }
+
     private long total(Connection connection, ParameterizedSql parsedSql, Map<String, ?> paramMap, boolean isCntSql) {
         String totalSqlTxt = isCntSql ? parsedSql.getActualSql().getSql() : String.format(COUNT_SQL, parsedSql.getActualSql().getSql());
         try (PreparedStatement ps = connection.prepareStatement(totalSqlTxt)) {
@@ -400,4 +868,85 @@ public class SQLManager {
             throw new SimplifiedException(QUERY_ERROR, e);
         }
     }
+
+    /**
+     * 查询游标, 每次读取一行并转换, 读取完毕或关闭时释放ResultSet与Statement
+     */
+    private static class Cursor<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private final ColumnVisitor columnVisitor;
+        private T current;
+        private int rowIdx;
+        private boolean closed;
+
+        private Cursor(PreparedStatement ps, ResultSet rs, RowMapper<T> mapper) throws SQLException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.ps = ps;
+            this.rs = rs;
+            this.mapper = mapper;
+            this.columnVisitor = new ColumnVisitor(rs);
+        }
+
+        private boolean next() throws SQLException {
+            if (closed) {
+                return false;
+            }
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            current = mapper.apply(columnVisitor, rowIdx++);
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (!next()) {
+                    return false;
+                }
+            } catch (SQLException e) {
+                close();
+                throw new SimplifiedException(QUERY_ERROR, e);
+            }
+            action.accept(current);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                current = null;
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(ps);
+            }
+        }
+    }
+
+    /**
+     * 释放SQL装载器持有的资源(如模板文件监视器)
+     */
+    @Override
+    public void close() {
+        if (sqlLoader instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) sqlLoader).close();
+            } catch (Exception e) {
+                logger.warn("关闭SQL装载器失败", e);
+            }
+        }
+    }
+
+    private static class CachedTotal {
+        private final long total;
+        private final long expireAt;
+
+        private CachedTotal(long total, long expireAt) {
+            this.total = total;
+            this.expireAt = expireAt;
+        }
+    }
 }
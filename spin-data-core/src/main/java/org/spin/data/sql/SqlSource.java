@@ -13,10 +13,26 @@ public class SqlSource implements Serializable {
 
     private final String id;
     private final String sql;
+    private final long version;
+    private final boolean staticSql;
 
     public SqlSource(String id, String sql) {
+        this(id, sql, 0L, false);
+    }
+
+    /**
+     * 构造SQL语句
+     *
+     * @param id        sqlId
+     * @param sql       sql语句
+     * @param version   模板版本号
+     * @param staticSql 是否是不含模板指令的静态SQL, 静态SQL在版本号不变时总是同一个实例
+     */
+    public SqlSource(String id, String sql, long version, boolean staticSql) {
         this.id = id;
         this.sql = sql;
+        this.version = version;
+        this.staticSql = staticSql;
     }
 
     public String getSql() {
@@ -27,6 +43,14 @@ public class SqlSource implements Serializable {
         return id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isStaticSql() {
+        return staticSql;
+    }
+
     @Override
     public String toString() {
         return "[" + id + "]: " + sql;
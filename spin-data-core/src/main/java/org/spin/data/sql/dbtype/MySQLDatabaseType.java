@@ -6,12 +6,17 @@ import org.spin.data.core.DatabaseType;
 import org.spin.data.core.PageRequest;
 import org.spin.data.sql.SqlSource;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
 /**
  * <p>Created by xuweinan on 2016/9/12.</p>
  *
  * @author xuweinan
  */
 public class MySQLDatabaseType implements DatabaseType {
+    private static final Pattern CURSOR_FETCH = Pattern.compile("[?&]useCursorFetch=true(?:&|$)", Pattern.CASE_INSENSITIVE);
 
     @Override
     public String getProductName() {
@@ -22,11 +27,36 @@ public class MySQLDatabaseType implements DatabaseType {
     public SqlSource getPagedSQL(SqlSource sqlSource, PageRequest pageRequest) {
         Assert.notNull(pageRequest, "Page request must be a NON-NULL value");
         String order = pageRequest.parseOrder("out_alias");
-        String pagedSql = String.format("SELECT * FROM (%s) AS out_alias %s LIMIT %d, %d",
+        String pagedSql = String.format("SELECT * FROM (%s) AS out_alias %s LIMIT :%s, :%s",
             sqlSource.getSql(),
             StringUtils.isBlank(order) ? "" : order,
-            pageRequest.getOffset(),
-            pageRequest.getSize());
+            PAGE_OFFSET,
+            PAGE_SIZE);
         return new SqlSource(sqlSource.getId(), pagedSql);
     }
+
+    /**
+     * MySQL驱动默认会读取全部结果, 只有fetchSize为{@link Integer#MIN_VALUE}时才以流式逐行读取.
+     * 连接url中开启了useCursorFetch时使用服务端游标, 按配置的fetchSize分批读取
+     */
+    @Override
+    public int getCursorFetchSize(Connection connection, int fetchSize) throws SQLException {
+        String url = connection.getMetaData().getURL();
+        return null != url && CURSOR_FETCH.matcher(url).find() ? fetchSize : Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean supportsRowValueComparison() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
+    @Override
+    public int getMaxBindParameters() {
+        return 65535;
+    }
 }
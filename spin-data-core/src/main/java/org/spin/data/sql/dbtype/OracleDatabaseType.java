@@ -25,10 +25,10 @@ public class OracleDatabaseType implements DatabaseType {
         if (StringUtils.isNotEmpty(order))
             sql = String.format("SELECT * FROM (%s) D %s", sqlSource.getSql(), order);
         String pagedSql;
-        pagedSql = String.format("SELECT * FROM (SELECT O.*, ROWNUM RN FROM (%s) O WHERE ROWNUM > %d) WHERE RN <= %d",
+        pagedSql = String.format("SELECT * FROM (SELECT O.*, ROWNUM RN FROM (%s) O WHERE ROWNUM <= :%s) WHERE RN > :%s",
             sql,
-            pageRequest.getOffset(),
-            pageRequest.getOffset() + pageRequest.getSize());
+            PAGE_END,
+            PAGE_OFFSET);
         return new SqlSource(sqlSource.getId(), pagedSql);
     }
 }
@@ -20,22 +20,19 @@ public class SQLServerDatabaseType implements DatabaseType {
 
     @Override
     public SqlSource getPagedSQL(SqlSource sqlSource, PageRequest pageRequest) {
-        // TODO: 未完成
         Assert.notNull(pageRequest, "Page request must be a NON-NULL value");
-        String orderedSql = sqlSource.getSql();
-        String order = pageRequest.parseOrder("I_");
-//        String tmp = "SELECT D.* FROM (SELECT TOP 60 row_number() OVER ({order}) rwn, I.* FROM (sql) I) D WHERE D.rwn > {}";
-        if (StringUtils.isNotEmpty(order)) {
-            orderedSql = "SELECT D_.* FROM (SELECT TOP "
-                + pageRequest.getOffset()
-                + " row_number() OVER (" + order + ") rwn, I_.* FROM ("
-                + orderedSql + ") I_) D_ WHERE D_.rwn > "
-                + pageRequest.getOffset();
-        }
-        String pagedSql = orderedSql;
-        pagedSql = "SELECT * FROM (SELECT O.*, ROWNUM RN FROM (" + orderedSql + ") O WHERE ROWNUM > "
-            + pageRequest.getOffset() + ") WHERE RN <= "
-            + (pageRequest.getOffset() + pageRequest.getSize());
+        String order = pageRequest.parseOrder("out_alias");
+        // OFFSET FETCH必须跟在ORDER BY之后, 未指定排序时按任意顺序
+        String pagedSql = String.format("SELECT * FROM (%s) AS out_alias %s OFFSET :%s ROWS FETCH NEXT :%s ROWS ONLY",
+            sqlSource.getSql(),
+            StringUtils.isBlank(order) ? "ORDER BY (SELECT NULL)" : order,
+            PAGE_OFFSET,
+            PAGE_SIZE);
         return new SqlSource(sqlSource.getId(), pagedSql);
     }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
 }
@@ -22,11 +22,26 @@ public class SQLiteDatabaseType implements DatabaseType {
     public SqlSource getPagedSQL(SqlSource sqlSource, PageRequest pageRequest) {
         Assert.notNull(pageRequest, "Page request must be a NON-NULL value");
         String order = pageRequest.parseOrder("out_alias");
-        String pagedSql = String.format("SELECT * FROM (%s) AS out_alias %s LIMIT %d OFFSET %d",
+        String pagedSql = String.format("SELECT * FROM (%s) AS out_alias %s LIMIT :%s OFFSET :%s",
             sqlSource.getSql(),
             StringUtils.isBlank(order) ? "" : order,
-            pageRequest.getSize(),
-            pageRequest.getOffset());
+            PAGE_SIZE,
+            PAGE_OFFSET);
         return new SqlSource(sqlSource.getId(), pagedSql);
     }
+
+    @Override
+    public boolean supportsRowValueComparison() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
+    @Override
+    public int getMaxBindParameters() {
+        return 999;
+    }
 }
@@ -23,15 +23,17 @@ public class FileSystemMdLoader extends FileSystemSQLLoader {
 
     @Override
     public String getSqlTemplateSrc(String id) {
-        // 检查缓存
-        if (this.useCache && this.sqlSourceMap.containsKey(id) && (!this.autoCheck || !this.isModified(id)))
-            return this.sqlSourceMap.get(id);
+        // 检查缓存, 文件监视线程可能随时移除缓存, 只读取一次
+        String cached = this.useCache ? this.sqlSourceMap.get(id) : null;
+        if (null != cached && (!this.autoCheck || !this.isModified(id)))
+            return cached;
 
         // 物理读取
         String path = id.substring(0, id.lastIndexOf('.'));
         File sqlFile = getFile(id);
         Long version = sqlFile.lastModified();
         LinkedList<String> list = new LinkedList<>();
+        String found = null;
         try (BufferedReader bf = new BufferedReader(new InputStreamReader(new FileInputStream(sqlFile), charset))) {
             String temp;
             String tempNext;
@@ -54,8 +56,11 @@ public class FileSystemMdLoader extends FileSystemSQLLoader {
                                     throw new SQLException(SQLError.CANNOT_GET_SQL, "模板文件格式不正确:");
                                 list.add(lastLine);
                                 lastLine = tempNext;
-                                this.sqlSourceMap.put(path + "." + key, sql.replace(sql.length() - 1, sql.length(), "").substring(0, sql.lastIndexOf("\n")));
+                                String src = sql.replace(sql.length() - 1, sql.length(), "").substring(0, sql.lastIndexOf("\n"));
+                                this.sqlSourceMap.put(path + "." + key, src);
                                 this.sqlSourceVersion.put(path + "." + key, version);
+                                if (id.equals(path + "." + key))
+                                    found = src;
                                 sql = new StringBuilder();
                                 break;
                             } else if (!StringUtils.startsWithIgnoreBlank(tempNext, REMARK)) {
@@ -68,14 +73,17 @@ public class FileSystemMdLoader extends FileSystemSQLLoader {
                     list.add(temp);
                 }
             }
-            this.sqlSourceMap.put(path + "." + key, sql.substring(0, sql.lastIndexOf("\n")));
+            String src = sql.substring(0, sql.lastIndexOf("\n"));
+            this.sqlSourceMap.put(path + "." + key, src);
             this.sqlSourceVersion.put(path + "." + key, version);
+            if (id.equals(path + "." + key))
+                found = src;
         } catch (IOException e) {
             throw new SQLException(SQLError.CANNOT_GET_SQL, "读取模板文件异常:" + sqlFile.getName(), e);
         }
-        if (!this.sqlSourceMap.containsKey(id))
+        if (null == found)
             throw new SQLException(SQLError.CANNOT_GET_SQL, "模板[" + sqlFile.getName() + "]中未找到指定ID的SQL:" + id);
-        return this.sqlSourceMap.get(id);
+        return found;
     }
 
     @Override
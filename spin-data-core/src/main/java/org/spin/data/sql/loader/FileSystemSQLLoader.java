@@ -1,26 +1,49 @@
 package org.spin.data.sql.loader;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spin.core.io.FileWatcher;
 import org.spin.core.throwable.SimplifiedException;
 import org.spin.core.util.StringUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 文件系统SQL装载器
  * <p>实现了基于文件系统的SQL装载通用方法</p>
+ * <p>开启文件监视后, 模板文件所在目录在首次加载时注册到{@link FileWatcher}, 文件变化时只移除该文件中的模板缓存,
+ * 检查模板是否修改不再访问磁盘. 无法监视的文件(如jar包中的资源)仍按最后修改时间检查</p>
  * Created by xuweinan on 2016/8/14.
  *
  * @author xuweinan
  */
-public abstract class FileSystemSQLLoader extends GenericSqlLoader {
+public abstract class FileSystemSQLLoader extends GenericSqlLoader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemSQLLoader.class);
 
     private volatile boolean absolutePath = true;
     private final Object lock = new Object();
 
+    private volatile boolean watchChanges = false;
+    private volatile FileWatcher watcher;
+    private final Set<String> watchedDirs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已监视的模板文件(绝对路径)与其sqlId前缀
+     */
+    private final Map<String, String> watchedFiles = new ConcurrentHashMap<>();
+    private final Set<String> watchedPrefixes = ConcurrentHashMap.newKeySet();
+
     @Override
     public boolean isModified(String id) {
+        if (watchChanges && watchedPrefixes.contains(prefix(id))) {
+            // 文件变化时缓存已被移除, 仍在缓存中即未修改
+            return false;
+        }
         File file = this.getFile(id);
         if (file == null)
             return true;
@@ -36,6 +59,86 @@ public abstract class FileSystemSQLLoader extends GenericSqlLoader {
      * @return SQL文件
      */
     protected File getFile(String id) {
+        File file = resolveFile(id);
+        if (watchChanges && file.isFile()) {
+            watch(file, prefix(id));
+        }
+        return file;
+    }
+
+    public boolean isWatchChanges() {
+        return watchChanges;
+    }
+
+    /**
+     * 设置是否监视模板文件的变化
+     * <p>开启后模板文件在首次加载时注册监视, 文件变化时移除对应的缓存, 与是否开启自动检查无关.
+     * 开启自动检查时, 已监视的文件不再逐次比较最后修改时间</p>
+     *
+     * @param watchChanges 是否监视
+     */
+    public void setWatchChanges(boolean watchChanges) {
+        this.watchChanges = watchChanges;
+        if (!watchChanges) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        FileWatcher w;
+        synchronized (lock) {
+            w = watcher;
+            watcher = null;
+            watchedDirs.clear();
+            watchedFiles.clear();
+            watchedPrefixes.clear();
+        }
+        if (null != w) {
+            w.close();
+        }
+    }
+
+    private void watch(File file, String prefix) {
+        String path = file.getAbsolutePath();
+        if (prefix.equals(watchedFiles.get(path))) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        synchronized (lock) {
+            try {
+                if (!watchedDirs.contains(dir.getPath())) {
+                    if (null == watcher) {
+                        watcher = new FileWatcher().start();
+                    }
+                    watcher.registerWatcher(dir, false, this::onFileChanged);
+                    watchedDirs.add(dir.getPath());
+                }
+                watchedFiles.put(path, prefix);
+                watchedPrefixes.add(prefix);
+            } catch (Exception e) {
+                logger.warn("无法监视sql模板目录[{}], 按最后修改时间检查变化: {}", dir, e.getMessage());
+            }
+        }
+    }
+
+    private void onFileChanged(FileWatcher.FileAction action) {
+        String prefix = watchedFiles.get(action.getFile().getAbsolutePath());
+        if (null == prefix) {
+            return;
+        }
+        logger.info("sql模板文件[{}]发生变化, 重新加载", action.getFile().getName());
+        sqlSourceMap.keySet().removeIf(id -> prefix.equals(prefix(id)));
+        sqlSourceVersion.keySet().removeIf(id -> prefix.equals(prefix(id)));
+        evictTemplates(prefix);
+    }
+
+    private static String prefix(String id) {
+        int idx = id.lastIndexOf('.');
+        return idx < 0 ? id : id.substring(0, idx);
+    }
+
+    private File resolveFile(String id) {
         String cmdFileName = id.substring(0, id.lastIndexOf('.'));
         String pathDbSep = (StringUtils.isEmpty(this.getRootUri()) ? "" : (this.getRootUri() + fileDelimiter)) + cmdFileName + getExtension();
         String path = (StringUtils.isEmpty(this.getRootUri()) ? "" : (this.getRootUri() + fileDelimiter)) + cmdFileName + getExtension();
@@ -22,14 +22,16 @@ public class FileSystemXmlLoader extends FileSystemSQLLoader {
 
     @Override
     public String getSqlTemplateSrc(String id) {
-        // 检查缓存
-        if (this.useCache && this.sqlSourceMap.containsKey(id) && (!this.autoCheck || !this.isModified(id)))
-            return this.sqlSourceMap.get(id);
+        // 检查缓存, 文件监视线程可能随时移除缓存, 只读取一次
+        String cached = this.useCache ? this.sqlSourceMap.get(id) : null;
+        if (null != cached && (!this.autoCheck || !this.isModified(id)))
+            return cached;
 
         // 物理读取
         String cmdFileName = id.substring(0, id.lastIndexOf('.'));
         File sqlFile = this.getFile(id);
         Long version = sqlFile.lastModified();
+        String found = null;
         try {
             Document document = reader.read(sqlFile);
             Element root = document.getRootElement();
@@ -40,14 +42,16 @@ public class FileSystemXmlLoader extends FileSystemSQLLoader {
                 String sql = elm.getText();
                 this.sqlSourceMap.put(cmdFileName + "." + sqlName, sql);
                 this.sqlSourceVersion.put(cmdFileName + "." + sqlName, version);
+                if (id.equals(cmdFileName + "." + sqlName))
+                    found = sql;
             }
         } catch (DocumentException e) {
             throw new SQLException(SQLError.CANNOT_GET_SQL, "读取模板文件异常:" + sqlFile.getName());
         }
 
-        if (!this.sqlSourceMap.containsKey(id))
+        if (null == found)
             throw new SQLException(SQLError.CANNOT_GET_SQL, "模板[" + sqlFile.getName() + "]中未找到指定ID的SQL:" + id);
-        return this.sqlSourceMap.get(id);
+        return found;
     }
 
     @Override
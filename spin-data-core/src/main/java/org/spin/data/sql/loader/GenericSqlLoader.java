@@ -4,6 +4,7 @@ import org.spin.data.core.DatabaseType;
 import org.spin.data.core.PageRequest;
 import org.spin.data.sql.SQLLoader;
 import org.spin.data.sql.SqlSource;
+import org.spin.data.sql.resolver.CompiledTemplateCache;
 import org.spin.data.sql.resolver.SimpleResolver;
 import org.spin.data.sql.resolver.TemplateResolver;
 
@@ -14,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * 通用sql装载器基类
  * <p>实现了通用的装载器方法</p>
  * <p>当装载器未指明模板解析器时，默认使用{@link SimpleResolver}</p>
+ * <p>不含模板指令的静态模板在加载后只分类一次, 之后不再经过模板解析</p>
  * Created by xuweinan on 2016/8/14.
  *
  * @author xuweinan
@@ -27,6 +29,7 @@ public abstract class GenericSqlLoader implements SQLLoader {
     protected String fileDelimiter = "/";
     protected Map<String, String> sqlSourceMap = new ConcurrentHashMap<>();
     protected Map<String, Long> sqlSourceVersion = new ConcurrentHashMap<>();
+    private final Map<String, TemplateKind> templateKinds = new ConcurrentHashMap<>();
 
     private final Object mutex = new Object();
     private TemplateResolver resolver;
@@ -45,9 +48,26 @@ public abstract class GenericSqlLoader implements SQLLoader {
         if (null == resolver) {
             resolver = new SimpleResolver();
         }
+        // 先加载源码以便版本号随之更新
+        String src = getSqlTemplateSrc(id);
+        Long version = sqlSourceVersion.get(id);
+        if (null == version) {
+            return new SqlSource(id, resolver.resolve(id, CompiledTemplateCache.UNKNOWN_VERSION, src, model));
+        }
+
+        // 每个版本的模板只分类一次, 静态模板直接返回同一个SqlSource
+        TemplateKind kind = templateKinds.get(id);
+        if (null == kind || kind.version != version) {
+            kind = new TemplateKind(version, resolver.isStatic(src) ? new SqlSource(id, src, version, true) : null);
+            templateKinds.put(id, kind);
+        }
+        if (null != kind.staticSql) {
+            return kind.staticSql;
+        }
+
         // 模板解析
-        String sql = resolver.resolve(id, getSqlTemplateSrc(id), model);
-        return new SqlSource(id, sql);
+        String sql = resolver.resolve(id, version, src, model);
+        return new SqlSource(id, sql, version, false);
     }
 
     @Override
@@ -63,6 +83,7 @@ public abstract class GenericSqlLoader implements SQLLoader {
     @Override
     public void setTemplateResolver(TemplateResolver resolver) {
         this.resolver = resolver;
+        templateKinds.clear();
     }
 
     @Override
@@ -112,4 +133,34 @@ public abstract class GenericSqlLoader implements SQLLoader {
             }
         return this;
     }
+
+    /**
+     * 移除指定文件中模板的分类结果与解析器中的编译结果, 文件在同一时间戳内被修改时也能重新分类与编译
+     *
+     * @param prefix sqlId前缀(模板文件路径)
+     */
+    protected void evictTemplates(String prefix) {
+        templateKinds.keySet().removeIf(id -> {
+            if (id.startsWith(prefix) && id.lastIndexOf('.') == prefix.length()) {
+                if (null != resolver) {
+                    resolver.evict(id);
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 模板分类结果, staticSql为null时表示动态模板
+     */
+    private static class TemplateKind {
+        private final long version;
+        private final SqlSource staticSql;
+
+        private TemplateKind(long version, SqlSource staticSql) {
+            this.version = version;
+            this.staticSql = staticSql;
+        }
+    }
 }
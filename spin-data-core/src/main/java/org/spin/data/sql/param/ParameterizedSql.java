@@ -6,11 +6,13 @@ import org.spin.data.throwable.SQLError;
 import org.spin.data.throwable.SQLException;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 参数化SQL
+ * <p>解析完成后不可变, 可以在多个线程间共享</p>
  * <p>Created by xuweinan on 2018/4/3.</p>
  *
  * @author xuweinan
@@ -30,9 +32,11 @@ public class ParameterizedSql implements Serializable {
 
     private final SqlSource originalSql;
 
-    private SqlSource actualSql;
+    private final SqlSource actualSql;
 
-    private final List<SqlParameter> namedParameters = new LinkedList<>();
+    private final List<SqlParameter> namedParameters = new ArrayList<>();
+
+    private final List<SqlParameter> unmodifiableNamedParameters = Collections.unmodifiableList(namedParameters);
 
     private int namedParameterCount;
 
@@ -43,7 +47,7 @@ public class ParameterizedSql implements Serializable {
 
     public ParameterizedSql(SqlSource originalSql) {
         this.originalSql = originalSql;
-        parseSqlStatement();
+        this.actualSql = parseSqlStatement();
     }
 
     public String getId() {
@@ -59,7 +63,7 @@ public class ParameterizedSql implements Serializable {
     }
 
     public List<SqlParameter> getNamedParameters() {
-        return namedParameters;
+        return unmodifiableNamedParameters;
     }
 
     public int getNamedParameterCount() {
@@ -82,7 +86,7 @@ public class ParameterizedSql implements Serializable {
         return this.originalSql.getSql();
     }
 
-    private void parseSqlStatement() {
+    private SqlSource parseSqlStatement() {
         Assert.notNull(originalSql, "SQL must not be null");
 
         String sqlToUse = Assert.notEmpty(originalSql.getSql(), "SQL must not be empty");
@@ -179,7 +183,7 @@ public class ParameterizedSql implements Serializable {
             }
             i++;
         }
-        actualSql = new SqlSource(originalSql.getId(), actualSqlStr.toString());
+        return new SqlSource(originalSql.getId(), actualSqlStr.toString());
     }
 
     /**
@@ -26,9 +26,11 @@ import java.util.Map;
  */
 public class BeetlResolver implements TemplateResolver {
     private static final Logger logger = LoggerFactory.getLogger(BeetlResolver.class);
+    private static final String[] DIRECTIVE_MARKS = {"```js", "@", "${", "#{"};
     private String charset = "UTF-8";
     private final Configuration configuration;
     private final GroupTemplate groupTemplate;
+    private final CompiledTemplateCache<String> templateCache = new CompiledTemplateCache<>();
 
     public BeetlResolver() {
         StringTemplateResourceLoader resourceLoader = new StringTemplateResourceLoader();
@@ -132,7 +134,14 @@ public class BeetlResolver implements TemplateResolver {
 
     @Override
     public String resolve(String id, String templateSrc, Map<String, ?> model) {
-        Template template = groupTemplate.getTemplate(templateSrc);
+        return resolve(id, CompiledTemplateCache.UNKNOWN_VERSION, templateSrc, model);
+    }
+
+    @Override
+    public String resolve(String id, long version, String templateSrc, Map<String, ?> model) {
+        // Beetl以模板源码为key缓存编译结果, 这里按sqlId与版本号固定源码实例, 使查找只需比较引用, 并在模板修改后清除旧的编译结果
+        String key = templateCache.get(id, version, templateSrc, src -> src, (src, t) -> groupTemplate.removeTemplate(src));
+        Template template = groupTemplate.getTemplate(key);
 
         for (Map.Entry<String, ?> e : model.entrySet()) {
             template.binding(e.getKey(), e.getValue());
@@ -155,4 +164,29 @@ public class BeetlResolver implements TemplateResolver {
         this.charset = charset;
         configuration.setCharset(charset);
     }
+
+    @Override
+    public boolean isStatic(String template) {
+        // 定界符"@"在行首即为语句, 这里从严判断, 含有"@"的模板都按动态模板处理
+        for (String mark : DIRECTIVE_MARKS) {
+            if (template.contains(mark)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void evict(String id) {
+        templateCache.invalidate(id, (src, t) -> groupTemplate.removeTemplate(src));
+    }
+
+    /**
+     * 模板缓存, 可用于观察命中率
+     *
+     * @return 模板缓存
+     */
+    public CompiledTemplateCache<String> getTemplateCache() {
+        return templateCache;
+    }
 }
@@ -0,0 +1,121 @@
+package org.spin.data.sql.resolver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 编译后的SQL模板缓存
+ * <p>以sqlId为key, 模板版本号与源码都不变时直接复用编译结果, 否则重新编译并替换旧的结果.
+ * 版本号取自文件的最后修改时间, 时间精度较粗或检出时保留时间戳的情况下, 修改后的文件版本号可能不变, 因此总是比较源码.
+ * 装载器缓存的源码是同一个实例, 通常比较引用即可命中</p>
+ * <p>Created by xuweinan on 2021/10/28</p>
+ *
+ * @param <T> 编译后的模板类型
+ * @author xuweinan
+ * @version 1.0
+ */
+public class CompiledTemplateCache<T> {
+
+    /**
+     * 未知的模板版本号
+     */
+    public static final long UNKNOWN_VERSION = Long.MIN_VALUE;
+
+    private final Map<String, Entry<T>> templates = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 获取编译后的模板, 不存在或已过期时编译
+     *
+     * @param id       模板id
+     * @param version  模板版本号
+     * @param src      模板源码
+     * @param compiler 模板编译器
+     * @param evicted  旧模板被替换时的回调, 可以为null
+     * @return 编译后的模板
+     */
+    public T get(String id, long version, String src, Function<String, T> compiler, BiConsumer<String, T> evicted) {
+        Entry<T> entry = templates.get(id);
+        if (null != entry && entry.matches(version, src)) {
+            hits.increment();
+            return entry.template;
+        }
+
+        misses.increment();
+        Entry<T> compiled = new Entry<>(version, src, compiler.apply(src));
+        Entry<T> old = templates.put(id, compiled);
+        if (null != old && null != evicted && old.template != compiled.template) {
+            evicted.accept(old.src, old.template);
+        }
+        return compiled.template;
+    }
+
+    /**
+     * 移除指定模板的编译结果
+     *
+     * @param id 模板id
+     */
+    public void invalidate(String id) {
+        invalidate(id, null);
+    }
+
+    /**
+     * 移除指定模板的编译结果
+     *
+     * @param id      模板id
+     * @param evicted 模板被移除时的回调, 可以为null
+     */
+    public void invalidate(String id, BiConsumer<String, T> evicted) {
+        Entry<T> old = templates.remove(id);
+        if (null != old && null != evicted) {
+            evicted.accept(old.src, old.template);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return String.format("CompiledTemplateCache{size=%d, hits=%d, misses=%d, hitRate=%.2f%%}",
+            templates.size(), h, m, h + m == 0 ? 0D : h * 100D / (h + m));
+    }
+
+    private static class Entry<T> {
+        private final long version;
+        private final String src;
+        private final T template;
+
+        private Entry(long version, String src, T template) {
+            this.version = version;
+            this.src = src;
+            this.template = template;
+        }
+
+        private boolean matches(long version, String src) {
+            return this.version == version && (this.src == src || this.src.equals(src));
+        }
+    }
+}
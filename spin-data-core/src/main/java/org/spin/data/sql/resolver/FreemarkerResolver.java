@@ -11,12 +11,14 @@ import org.spin.data.sql.resolver.freemarker.EnumValueFunc;
 import org.spin.data.sql.resolver.freemarker.ValidValueFunc;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Locale;
 import java.util.Map;
 
 /**
  * 基于freemarker的解析器
+ * <p>编译后的模板按sqlId与模板版本号缓存, 模板未修改时不会重复解析</p>
  * Created by xuweinan on 2016/8/14.
  *
  * @author xuweinan
@@ -24,9 +26,11 @@ import java.util.Map;
  */
 public class FreemarkerResolver implements TemplateResolver {
     private static final Logger logger = LoggerFactory.getLogger(FreemarkerResolver.class);
+    private static final String[] DIRECTIVE_MARKS = {"<#", "</#", "<@", "</@", "[#", "[/#", "[@", "[/@", "${", "#{", "[="};
     private String charset = "UTF-8";
     private final Configuration configuration;
     private final ConcurrentStrTemplateLoader strTemplateLoader;
+    private final CompiledTemplateCache<Template> templateCache = new CompiledTemplateCache<>();
 
     public FreemarkerResolver() {
         this.configuration = new Configuration(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS);
@@ -40,13 +44,12 @@ public class FreemarkerResolver implements TemplateResolver {
 
     @Override
     public String resolve(String id, String templateSrc, Map<String, ?> model) {
-        this.strTemplateLoader.putTemplate(id, templateSrc);
-        Template template;
-        try {
-            template = this.configuration.getTemplate(id);
-        } catch (IOException e) {
-            throw new SimplifiedException("Freemarker模板处理失败", e);
-        }
+        return resolve(id, CompiledTemplateCache.UNKNOWN_VERSION, templateSrc, model);
+    }
+
+    @Override
+    public String resolve(String id, long version, String templateSrc, Map<String, ?> model) {
+        Template template = templateCache.get(id, version, templateSrc, src -> compile(id, version, src), null);
         StringWriter writer = new StringWriter();
         try {
             template.process(model, writer);
@@ -61,8 +64,48 @@ public class FreemarkerResolver implements TemplateResolver {
         return sql;
     }
 
+    @Override
+    public boolean isStatic(String template) {
+        for (String mark : DIRECTIVE_MARKS) {
+            if (template.contains(mark)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void evict(String id) {
+        templateCache.invalidate(id);
+        try {
+            configuration.removeTemplateFromCache(id);
+        } catch (IOException e) {
+            logger.warn("移除Freemarker模板缓存失败: {}", id, e);
+        }
+    }
+
+    /**
+     * 编译后的模板缓存, 可用于观察命中率
+     *
+     * @return 模板缓存
+     */
+    public CompiledTemplateCache<Template> getTemplateCache() {
+        return templateCache;
+    }
+
     public void setCharset(String charset) {
         this.charset = charset;
         configuration.setEncoding(Locale.CHINESE, charset);
+        templateCache.clear();
+    }
+
+    private Template compile(String id, long version, String src) {
+        // 同时登记到模板加载器, 供include等指令按名称查找
+        strTemplateLoader.putTemplate(id, src, version == CompiledTemplateCache.UNKNOWN_VERSION ? System.currentTimeMillis() : version);
+        try {
+            return new Template(id, new StringReader(src), configuration);
+        } catch (IOException e) {
+            throw new SimplifiedException("Freemarker模板处理失败", e);
+        }
     }
 }
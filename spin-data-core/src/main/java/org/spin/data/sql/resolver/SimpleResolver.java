@@ -25,4 +25,9 @@ public class SimpleResolver implements TemplateResolver {
         }
         return result.replaceAll("\\$\\{.+}", "");
     }
+
+    @Override
+    public boolean isStatic(String template) {
+        return null != template && !template.contains("${");
+    }
 }
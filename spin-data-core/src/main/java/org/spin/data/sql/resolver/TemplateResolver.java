@@ -20,4 +20,38 @@ public interface TemplateResolver {
      * @return 解析后的文本
      */
     String resolve(String id, String template, Map<String, ?> model);
+
+    /**
+     * 使用指定的数据解析模板，生成解析后的文本
+     * <p>支持缓存编译结果的解析器在版本号不变时直接复用已编译的模板</p>
+     *
+     * @param id       模板id
+     * @param version  模板版本号, 未知时为{@link CompiledTemplateCache#UNKNOWN_VERSION}
+     * @param template 模板对象
+     * @param model    数据
+     * @return 解析后的文本
+     */
+    default String resolve(String id, long version, String template, Map<String, ?> model) {
+        return resolve(id, template, model);
+    }
+
+    /**
+     * 判断模板是否不含任何模板指令, 静态模板的解析结果与数据无关, 可以跳过解析直接使用
+     * <p>无法确定时应返回false</p>
+     *
+     * @param template 模板对象
+     * @return 是否是静态模板
+     */
+    default boolean isStatic(String template) {
+        return false;
+    }
+
+    /**
+     * 移除指定模板的编译结果, 模板文件变化时由装载器调用
+     * <p>文件在同一时间戳内被修改时版本号不变, 需要通过这里使缓存的编译结果失效</p>
+     *
+     * @param id 模板id
+     */
+    default void evict(String id) {
+    }
 }
@@ -16,6 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Sqlite工具类
@@ -111,6 +112,7 @@ public class Sqlite implements AutoCloseable {
             if (null != statementProcessor) {
                 statementProcessor.accept(stmt);
             }
+            stmt.setMaxRows(1);
             try (ResultSet resultSet = stmt.executeQuery()) {
                 List<T> ts = rowMapper.extractData(resultSet, 1);
                 if (CollectionUtils.isEmpty(ts)) {
@@ -136,6 +138,17 @@ public class Sqlite implements AutoCloseable {
         return queryFirst(sql, null, RowMappers.getMapper(resultType));
     }
 
+    /**
+     * 在当前连接上执行操作, 用于需要直接使用连接的场景(如{@link org.spin.data.sql.SQLManager})
+     *
+     * @param work 操作
+     * @param <T>  返回类型
+     * @return 操作结果
+     */
+    public <T> T doWithConnection(Function<Connection, T> work) {
+        return work.apply(getConnection());
+    }
+
     @Override
     public void close() {
         if (!closed) {
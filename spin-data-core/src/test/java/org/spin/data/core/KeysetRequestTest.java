@@ -0,0 +1,72 @@
+package org.spin.data.core;
+
+import org.junit.jupiter.api.Test;
+import org.spin.data.sql.SqlSource;
+import org.spin.data.sql.dbtype.MySQLDatabaseType;
+import org.spin.data.sql.dbtype.OracleDatabaseType;
+import org.spin.data.sql.param.ParameterizedSql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 游标分页测试
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class KeysetRequestTest {
+
+    @Test
+    void testToken() {
+        KeysetRequest request = new KeysetRequest(50, Order.desc("createTime"), Order.desc("id"));
+        Object[] values = {new Timestamp(1635465600123L), 10086L};
+        String token = KeysetToken.encode(request, values);
+        assertArrayEquals(values, KeysetToken.decode(request.after(token)));
+
+        // 解码后的类型与排序键取值一致, 否则按属性类型绑定参数时会出错
+        KeysetRequest numeric = new KeysetRequest(50, Order.asc("a"), Order.asc("b"), Order.asc("c"), Order.asc("d"),
+            Order.asc("e"), Order.asc("f"), Order.asc("g"), Order.asc("h"));
+        Object[] typed = {7, (short) 3, (byte) 1, 0.5D, 1.25F, new BigDecimal("10.10"), BigInteger.TEN, new java.sql.Date(1635465600000L)};
+        Object[] decoded = KeysetToken.decode(numeric.after(KeysetToken.encode(numeric, typed)));
+        assertArrayEquals(typed, decoded);
+        for (int i = 0; i < typed.length; i++) {
+            assertEquals(typed[i].getClass(), decoded[i].getClass());
+        }
+
+        KeysetRequest other = new KeysetRequest(50, Order.asc("createTime"), Order.asc("id")).after(token);
+        assertThrows(IllegalArgumentException.class, () -> KeysetToken.decode(other));
+        assertThrows(IllegalArgumentException.class, () -> KeysetToken.decode(request.after("not-a-token")));
+        assertThrows(IllegalArgumentException.class, () -> new KeysetRequest(10, Order.asc("id; drop table x")).checkedKeys());
+
+        // sql中的排序键是结果列名, 不能带表别名; 实体属性路径可以引用关联属性
+        KeysetRequest dotted = new KeysetRequest(10, Order.asc("t.id"));
+        assertThrows(IllegalArgumentException.class, dotted::checkedKeys);
+        assertEquals(1, dotted.checkedProperties().size());
+        assertThrows(IllegalArgumentException.class, () -> new KeysetRequest(10, Order.asc("t..id")).checkedProperties());
+    }
+
+    @Test
+    void testKeysetSql() {
+        SqlSource origin = new SqlSource("audit.list", "select * from audit_log where type = :type");
+        KeysetRequest sameDirection = new KeysetRequest(50, Order.asc("createTime"), Order.asc("id"));
+        KeysetRequest mixed = new KeysetRequest(50, Order.desc("createTime"), Order.asc("id"));
+
+        ParameterizedSql mysql = new ParameterizedSql(new MySQLDatabaseType().getKeysetSQL(origin, sameDirection.checkedKeys(), true));
+        System.out.println(mysql.getOriginalSql().getSql());
+        assertEquals(5, mysql.getNamedParameterCount());
+
+        ParameterizedSql oracle = new ParameterizedSql(new OracleDatabaseType().getKeysetSQL(origin, mixed.checkedKeys(), true));
+        System.out.println(oracle.getOriginalSql().getSql());
+        assertEquals(6, oracle.getNamedParameterCount());
+
+        ParameterizedSql first = new ParameterizedSql(new MySQLDatabaseType().getKeysetSQL(origin, mixed.checkedKeys(), false));
+        assertEquals(3, first.getNamedParameterCount());
+    }
+}
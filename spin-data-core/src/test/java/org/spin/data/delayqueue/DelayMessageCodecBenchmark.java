@@ -0,0 +1,48 @@
+package org.spin.data.delayqueue;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 延迟消息编解码耗时与体积对比, 不参与单元测试, 手动运行
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class DelayMessageCodecBenchmark {
+    private static final int ROUNDS = 50_000;
+    private static final AtomicReference<String> HANDLED = new AtomicReference<>();
+
+    public static void main(String[] args) {
+        GroupScheduledTask task = (msg, logger) -> HANDLED.set(msg);
+        measure("json", new JsonDelayMessageCodec(), task);
+        measure("binary", new BinaryDelayMessageCodec(), task);
+    }
+
+    private static void measure(String name, DelayMessageCodec codec, GroupScheduledTask task) {
+        byte[] data = codec.encode(newMessage(task));
+        // 预热
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decode(codec.encode(newMessage(task)));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.encode(newMessage(task));
+        }
+        long encode = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decode(data);
+        }
+        long decode = System.nanoTime() - start;
+        System.out.printf("%s: %d bytes/msg, encode %dns/msg, decode %dns/msg%n", name, data.length, encode / ROUNDS, decode / ROUNDS);
+    }
+
+    private static DelayMessage newMessage(GroupScheduledTask task) {
+        DelayMessage message = new DelayMessage(UUID.randomUUID().toString(), "OrderTimeout", 1800_000L, System.currentTimeMillis(),
+            "{\"orderId\":\"202110230001\",\"userId\":10086,\"action\":\"CANCEL_UNPAID\"}");
+        message.setTask(task);
+        return message;
+    }
+}
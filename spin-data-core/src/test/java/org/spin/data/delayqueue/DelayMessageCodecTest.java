@@ -0,0 +1,95 @@
+package org.spin.data.delayqueue;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 延迟消息编解码测试
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class DelayMessageCodecTest {
+    private static final AtomicReference<String> HANDLED = new AtomicReference<>();
+
+    private final DelayMessageCodec binaryCodec = new BinaryDelayMessageCodec();
+    private final DelayMessageCodec jsonCodec = new JsonDelayMessageCodec();
+
+    @Test
+    void testRoundTrip() {
+        DelayMessage message = newMessage("{\"orderId\":\"1024\",\"remark\":\"引号\\\"与换行\\n\"}");
+        DelayMessage decoded = binaryCodec.decode(binaryCodec.encode(message));
+        assertEquals(message.getMessageId(), decoded.getMessageId());
+        assertEquals(message.getTopic(), decoded.getTopic());
+        assertEquals(message.getDelayTimeInMillis(), decoded.getDelayTimeInMillis());
+        assertEquals(message.getTriggerTime(), decoded.getTriggerTime());
+        assertEquals(message.getPayload(), decoded.getPayload());
+        assertNull(decoded.getTask());
+
+        DelayMessage legacy = binaryCodec.decode(jsonCodec.encode(message));
+        assertEquals(message.getPayload(), legacy.getPayload());
+
+        // 滚动升级期间JSON实例需要能读取二进制实例写入的数据
+        DelayMessage upgraded = jsonCodec.decode(binaryCodec.encode(message));
+        assertEquals(message.getPayload(), upgraded.getPayload());
+    }
+
+    @Test
+    void testGroupTask() throws Exception {
+        String prefix = "order-";
+        int times = 3;
+        DelayMessage message = newMessage("1024");
+        message.setTask((msg, logger) -> HANDLED.set(prefix + msg + "-" + times));
+
+        DelayMessage decoded = binaryCodec.decode(binaryCodec.encode(message));
+        decoded.parseHandler().handleMessage(decoded.getPayload(), null);
+        assertEquals("order-1024-3", HANDLED.get());
+
+        DelayMessage withTask = newMessageWithTask(message.getTask());
+        DelayMessage legacy = jsonCodec.decode(jsonCodec.encode(withTask));
+        assertNull(withTask.getHandler());
+        HANDLED.set(null);
+        legacy.parseHandler().handleMessage("2048", null);
+        assertEquals("order-2048-3", HANDLED.get());
+
+        // 捕获参数中不受信任的类不会被加载
+        URL url = new URL("http://localhost/");
+        DelayMessage untrusted = newMessage("1024");
+        untrusted.setTask((msg, logger) -> HANDLED.set(url + msg));
+        assertThrows(RuntimeException.class, () -> binaryCodec.decode(binaryCodec.encode(untrusted)));
+        assertNotNull(new BinaryDelayMessageCodec("java.net").decode(binaryCodec.encode(untrusted)).getTask());
+
+        // 历史JSON数据中JDK序列化的任务同样校验
+        byte[] legacyUntrusted = jsonCodec.encode(untrusted);
+        assertThrows(RuntimeException.class, () -> binaryCodec.decode(legacyUntrusted));
+        assertThrows(RuntimeException.class, () -> jsonCodec.decode(legacyUntrusted));
+        assertNotNull(new JsonDelayMessageCodec("java.net").decode(legacyUntrusted).getTask());
+    }
+
+    @Test
+    void testDefaultCodec() {
+        DelayMessage message = newMessageWithTask((msg, logger) -> HANDLED.set(msg));
+        assertTrue(new DelayQueueProperties().getCodec() instanceof BinaryDelayMessageCodec);
+        assertTrue(binaryCodec.encode(message).length < jsonCodec.encode(newMessageWithTask(message.getTask())).length);
+    }
+
+    private static DelayMessage newMessage(String payload) {
+        return new DelayMessage(UUID.randomUUID().toString(), "OrderTimeout", 1800_000L, System.currentTimeMillis(), payload);
+    }
+
+    private static DelayMessage newMessageWithTask(GroupScheduledTask task) {
+        DelayMessage message = newMessage("1024");
+        message.setTask(task);
+        return message;
+    }
+}
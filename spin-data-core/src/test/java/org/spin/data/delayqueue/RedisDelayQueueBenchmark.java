@@ -0,0 +1,48 @@
+package org.spin.data.delayqueue;
+
+import org.spin.data.redis.LettuceRedisProperties;
+import org.spin.data.redis.RedisClientWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 延迟队列发布吞吐量对比, 需要本地Redis, 不参与单元测试, 手动运行
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class RedisDelayQueueBenchmark {
+    private static final int MESSAGE_CNT = 20_000;
+
+    public static void main(String[] args) {
+        RedisClientWrapper clientWrapper = new RedisClientWrapper(new LettuceRedisProperties());
+        DelayQueueProperties properties = new DelayQueueProperties("BenchmarkDelayQueue", null);
+        try (RedisDelayQueue delayQueue = new RedisDelayQueue(properties, clientWrapper, null)) {
+            List<String> ids = new ArrayList<>(MESSAGE_CNT * 2);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < MESSAGE_CNT; i++) {
+                ids.add(delayQueue.publish("Benchmark", "message-" + i, 3600L));
+            }
+            long single = System.currentTimeMillis() - start;
+
+            List<DelayMessageEntry> messages = new ArrayList<>(MESSAGE_CNT);
+            for (int i = 0; i < MESSAGE_CNT; i++) {
+                messages.add(DelayMessageEntry.of("message-" + i, 3600L));
+            }
+            start = System.currentTimeMillis();
+            ids.addAll(delayQueue.publishAll("Benchmark", messages));
+            long batch = System.currentTimeMillis() - start;
+
+            System.out.printf("publish: %d msg in %dms (%.0f msg/s)%n", MESSAGE_CNT, single, MESSAGE_CNT * 1000.0 / Math.max(single, 1));
+            System.out.printf("publishAll: %d msg in %dms (%.0f msg/s)%n", MESSAGE_CNT, batch, MESSAGE_CNT * 1000.0 / Math.max(batch, 1));
+
+            for (String id : ids) {
+                delayQueue.cancelMessage("Benchmark", id);
+            }
+        } finally {
+            clientWrapper.close();
+        }
+    }
+}
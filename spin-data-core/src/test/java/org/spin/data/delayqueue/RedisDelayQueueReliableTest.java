@@ -0,0 +1,268 @@
+package org.spin.data.delayqueue;
+
+import io.lettuce.core.ScriptOutputType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.spin.data.redis.LettuceRedisProperties;
+import org.spin.data.redis.RedisClientWrapper;
+import org.spin.data.redis.RedisConnectionWrapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 延迟队列可靠投递测试, 需要本地Redis
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisDelayQueueReliableTest {
+    private static final String QUEUE = "ReliableDelayQueueTest";
+    private static final String KEY_PREFIX = "{" + QUEUE + "}:";
+    private static final String TOPIC = "Reliable";
+    private static final String DEAD_LETTER = "DeadLetter";
+
+    private RedisClientWrapper clientWrapper;
+    private RedisConnectionWrapper<String, String> connection;
+    private RedisDelayQueue delayQueue;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(redisAvailable(), "本地Redis不可用, 跳过测试");
+        clientWrapper = new RedisClientWrapper(new LettuceRedisProperties());
+        connection = clientWrapper.connect();
+        clearKeys();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != clientWrapper) {
+            if (null != delayQueue) {
+                delayQueue.close();
+            }
+            clearKeys();
+            connection.close();
+            clientWrapper.close();
+        }
+    }
+
+    @Test
+    void testAck() {
+        Handler handler = new Handler(TOPIC, call -> true);
+        delayQueue = newQueue(p -> p.setVisibilityTimeoutInMs(5_000L), handler);
+
+        String id = delayQueue.publish(TOPIC, "ack", 1L);
+        assertTrue(await(() -> handler.calls.get() == 1, 10_000L));
+        assertTrue(await(() -> !dataExists(id), 5_000L));
+        assertNull(connection.async().zscore(KEY_PREFIX + "Processing", id + TOPIC).toCompletableFuture().join());
+        assertFalse(connection.async().hexists(KEY_PREFIX + "Attempts", id).toCompletableFuture().join());
+    }
+
+    @Test
+    void testNack() {
+        // 前两次处理失败, 按退避时间重试后成功
+        Handler handler = new Handler(TOPIC, call -> call > 2);
+        delayQueue = newQueue(p -> {
+            p.setVisibilityTimeoutInMs(3_000L);
+            p.setMaxDeliveryAttempts(3);
+        }, handler);
+
+        String id = delayQueue.publish(TOPIC, "nack", 1L);
+        assertTrue(await(() -> handler.calls.get() == 3, 15_000L));
+        assertTrue(await(() -> !dataExists(id), 5_000L));
+        assertEquals(3, handler.calls.get());
+    }
+
+    @Test
+    void testVisibilityTimeout() throws InterruptedException {
+        // 第一次处理超过不可见时间仍未确认, 消息被重新投递给其他工作线程
+        CountDownLatch redelivered = new CountDownLatch(1);
+        AtomicBoolean firstSawRedelivery = new AtomicBoolean();
+        CountDownLatch firstReturned = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        DelayMessageHandler handler = new Handler(TOPIC, call -> true) {
+            @Override
+            public void handle(String message) throws Exception {
+                if (calls.incrementAndGet() == 1) {
+                    firstSawRedelivery.set(redelivered.await(10, TimeUnit.SECONDS));
+                    firstReturned.countDown();
+                } else {
+                    redelivered.countDown();
+                }
+            }
+        };
+        delayQueue = newQueue(p -> p.setVisibilityTimeoutInMs(1_000L), handler);
+
+        String id = delayQueue.publish(TOPIC, "timeout", 1L);
+        assertTrue(firstReturned.await(15, TimeUnit.SECONDS));
+        assertTrue(firstSawRedelivery.get());
+        assertTrue(calls.get() >= 2);
+        assertTrue(await(() -> !dataExists(id), 5_000L));
+    }
+
+    @Test
+    void testDeadLetter() {
+        Handler handler = new Handler(TOPIC, call -> false);
+        AtomicReference<String> deadLetter = new AtomicReference<>();
+        Handler deadLetterHandler = new Handler(DEAD_LETTER, call -> true) {
+            @Override
+            public void handle(String message) throws Exception {
+                deadLetter.set(message);
+                super.handle(message);
+            }
+        };
+        delayQueue = newQueue(p -> {
+            p.setVisibilityTimeoutInMs(1_000L);
+            p.setMaxDeliveryAttempts(2);
+        }, handler, deadLetterHandler);
+
+        String id = delayQueue.publish(TOPIC, "dead", 1L);
+        assertTrue(await(() -> "dead".equals(deadLetter.get()), 15_000L));
+        assertEquals(2, handler.calls.get());
+        assertTrue(await(() -> !dataExists(id), 5_000L));
+        assertEquals(0L, zcard("DeadLetters"));
+    }
+
+    @Test
+    void testDeadLetterRetention() {
+        // 没有死信处理器时, 死信在保留时长后被清理
+        Handler handler = new Handler(TOPIC, call -> false);
+        delayQueue = newQueue(p -> {
+            p.setVisibilityTimeoutInMs(1_000L);
+            p.setMaxDeliveryAttempts(1);
+            p.setDeadLetterRetentionInMs(1_000L);
+        }, handler);
+
+        String id = delayQueue.publish(TOPIC, "expired", 1L);
+        assertTrue(await(() -> handler.calls.get() == 1, 10_000L));
+        assertTrue(await(() -> !dataExists(id), 15_000L));
+        assertEquals(1, handler.calls.get());
+        assertEquals(0L, zcard("DeadLetters"));
+        assertEquals(0L, (long) connection.async().llen(KEY_PREFIX + "Topic:" + DEAD_LETTER).toCompletableFuture().join());
+    }
+
+    @Test
+    void testCancelClaimed() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        DelayMessageHandler handler = new Handler(TOPIC, call -> true) {
+            @Override
+            public void handle(String message) throws Exception {
+                calls.incrementAndGet();
+                entered.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                throw new IllegalStateException("fail after cancel");
+            }
+        };
+        delayQueue = newQueue(p -> p.setVisibilityTimeoutInMs(1_000L), handler);
+
+        String id = delayQueue.publish(TOPIC, "cancel", 1L);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        // 已领取的消息删除消息体后视为取消成功, 处理失败也不会再被投递
+        assertTrue(delayQueue.cancelMessage(TOPIC, id));
+        assertFalse(dataExists(id));
+        release.countDown();
+        Thread.sleep(3_000L);
+        assertEquals(1, calls.get());
+        assertFalse(delayQueue.cancelMessage(TOPIC, id));
+    }
+
+    private RedisDelayQueue newQueue(Consumer<DelayQueueProperties> customizer, DelayMessageHandler... handlers) {
+        DelayQueueProperties properties = new DelayQueueProperties(QUEUE, null);
+        properties.setReliable(true);
+        properties.setDeadLetterTopic(DEAD_LETTER);
+        customizer.accept(properties);
+        return new RedisDelayQueue(properties, clientWrapper, Arrays.asList(handlers));
+    }
+
+    private boolean dataExists(String id) {
+        return connection.async().hexists(KEY_PREFIX + "Data", id).toCompletableFuture().join();
+    }
+
+    private long zcard(String key) {
+        return connection.async().zcard(KEY_PREFIX + key).toCompletableFuture().join();
+    }
+
+    private void clearKeys() {
+        List<String> keys = connection.async().keys(KEY_PREFIX + "*").toCompletableFuture().join();
+        if (!keys.isEmpty()) {
+            connection.syncEval("for _, k in ipairs(KEYS) do redis.call('DEL', k) end return 0", ScriptOutputType.INTEGER,
+                keys.toArray(new String[0]));
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition, long timeoutInMillis) {
+        long deadline = System.currentTimeMillis() + timeoutInMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return condition.getAsBoolean();
+    }
+
+    private static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 按调用次数决定成功或失败的处理器
+     */
+    private static class Handler implements DelayMessageHandler {
+        private final String topic;
+        private final IntPredicate succeed;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private Handler(String topic, IntPredicate succeed) {
+            this.topic = topic;
+            this.succeed = succeed;
+        }
+
+        @Override
+        public String getTopic() {
+            return topic;
+        }
+
+        @Override
+        public void handle(String message) throws Exception {
+            if (!succeed.test(calls.incrementAndGet())) {
+                throw new IllegalStateException("Handle failed: " + message);
+            }
+        }
+
+        @Override
+        public void handleException(String message, Exception e) {
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.spin.data.delayqueue;
+
+import io.lettuce.core.SetArgs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.spin.data.redis.LettuceRedisProperties;
+import org.spin.data.redis.RedisClientWrapper;
+import org.spin.data.redis.RedisConnectionWrapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 延迟队列分片与转移租约测试, 需要本地Redis
+ * <p>Created by xuweinan on 2021/10/24</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisDelayQueueShardTest {
+    private static final String QUEUE = "ShardDelayQueueTest";
+    private static final String TOPIC = "Shard";
+    private static final int SHARDS = 4;
+    private static final long LEASE_TIME = 1_500L;
+
+    private RedisClientWrapper clientWrapper;
+    private RedisConnectionWrapper<String, String> connection;
+    private final List<RedisDelayQueue> queues = new ArrayList<>();
+    private final Set<String> received = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(redisAvailable(), "本地Redis不可用, 跳过测试");
+        clientWrapper = new RedisClientWrapper(new LettuceRedisProperties());
+        connection = clientWrapper.connect();
+        clearKeys();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != clientWrapper) {
+            queues.forEach(RedisDelayQueue::close);
+            clearKeys();
+            connection.close();
+            clientWrapper.close();
+        }
+    }
+
+    @Test
+    void testShardRouting() {
+        RedisDelayQueue delayQueue = newQueue();
+        Map<Integer, Integer> perShard = new HashMap<>();
+        List<String> ids = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            String id = delayQueue.publish(TOPIC, "message-" + i, 3600L);
+            ids.add(id);
+            // 消息按ID哈希落在唯一的分片上
+            int shard = Math.floorMod(id.hashCode(), SHARDS);
+            for (int s = 0; s < SHARDS; s++) {
+                assertEquals(s == shard, hexists(s, id));
+            }
+            perShard.merge(shard, 1, Integer::sum);
+        }
+        assertEquals(SHARDS, perShard.size());
+        for (String id : ids) {
+            assertTrue(delayQueue.cancelMessage(TOPIC, id));
+        }
+
+        // 各分片的到期消息都能被转移并消费
+        List<DelayMessageEntry> messages = new ArrayList<>(40);
+        for (int i = 0; i < 40; i++) {
+            messages.add(DelayMessageEntry.of("due-" + i, 1L));
+        }
+        delayQueue.publishAll(TOPIC, messages);
+        assertTrue(await(() -> received.size() == 40, 10_000L));
+    }
+
+    @Test
+    void testLeaseRenew() {
+        newQueue();
+        assertTrue(await(() -> owners().size() == 1 && leaseCnt() == SHARDS, 5_000L));
+        String owner = owners().iterator().next();
+
+        // 超过租约时长后仍由同一个实例持有
+        sleep(LEASE_TIME * 3);
+        assertEquals(Collections.singleton(owner), owners());
+        assertEquals(SHARDS, leaseCnt());
+        for (int s = 0; s < SHARDS; s++) {
+            long ttl = connection.async().pttl(shardPrefix(s) + "TransferLease").toCompletableFuture().join();
+            assertTrue(ttl > 0 && ttl <= LEASE_TIME);
+        }
+    }
+
+    @Test
+    void testRebalance() {
+        RedisDelayQueue first = newQueue();
+        assertTrue(await(() -> leaseCnt() == SHARDS, 5_000L));
+
+        // 新实例加入后分片平均分配
+        RedisDelayQueue second = newQueue();
+        assertTrue(await(() -> {
+            Map<String, Integer> owned = ownedCnt();
+            return owned.size() == 2 && owned.values().stream().allMatch(it -> it == SHARDS / 2);
+        }, 10_000L));
+
+        // 实例退出后剩余实例接管全部分片
+        second.close();
+        queues.remove(second);
+        assertTrue(await(() -> owners().size() == 1 && leaseCnt() == SHARDS, 5_000L));
+        first.publish(TOPIC, "after-leave", 1L);
+        assertTrue(await(() -> received.contains("after-leave"), 5_000L));
+    }
+
+    @Test
+    void testOwnerCrash() {
+        // 模拟已宕机的实例: 持有分片0的租约与心跳, 但不再续期
+        String ghost = "ghost-owner";
+        connection.async().set(shardPrefix(0) + "TransferLease", ghost, SetArgs.Builder.px(LEASE_TIME)).toCompletableFuture().join();
+        connection.async().zadd("{" + QUEUE + "}:TransferMembers", System.currentTimeMillis(), ghost).toCompletableFuture().join();
+
+        RedisDelayQueue delayQueue = newQueue();
+        String id;
+        do {
+            id = delayQueue.publish(TOPIC, "crash", 1L);
+        } while (Math.floorMod(id.hashCode(), SHARDS) != 0 && delayQueue.cancelMessage(TOPIC, id));
+        assertTrue(await(() -> ghost.equals(connection.syncGet(shardPrefix(0) + "TransferLease")), 1_000L));
+
+        // 租约与心跳过期后被存活实例接管, 分片0上的消息得以投递
+        assertTrue(await(() -> leaseCnt() == SHARDS && !owners().contains(ghost), LEASE_TIME * 4));
+        assertTrue(await(() -> received.contains("crash"), 5_000L));
+    }
+
+    private RedisDelayQueue newQueue() {
+        DelayQueueProperties properties = new DelayQueueProperties(QUEUE, null);
+        properties.setShards(SHARDS);
+        properties.setTransferLeaseTimeInMs(LEASE_TIME);
+        RedisDelayQueue delayQueue = new RedisDelayQueue(properties, clientWrapper, Collections.singletonList(new DelayMessageHandler() {
+            @Override
+            public String getTopic() {
+                return TOPIC;
+            }
+
+            @Override
+            public void handle(String message) {
+                received.add(message);
+            }
+
+            @Override
+            public void handleException(String message, Exception e) {
+            }
+        }));
+        queues.add(delayQueue);
+        return delayQueue;
+    }
+
+    private static String shardPrefix(int shard) {
+        return "{" + QUEUE + ":" + shard + "}:";
+    }
+
+    private boolean hexists(int shard, String id) {
+        return connection.async().hexists(shardPrefix(shard) + "Data", id).toCompletableFuture().join();
+    }
+
+    private Map<String, Integer> ownedCnt() {
+        Map<String, Integer> owned = new HashMap<>();
+        for (int s = 0; s < SHARDS; s++) {
+            String owner = connection.syncGet(shardPrefix(s) + "TransferLease");
+            if (null != owner) {
+                owned.merge(owner, 1, Integer::sum);
+            }
+        }
+        return owned;
+    }
+
+    private Set<String> owners() {
+        return new HashSet<>(ownedCnt().keySet());
+    }
+
+    private int leaseCnt() {
+        return ownedCnt().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private void clearKeys() {
+        // 各分片的key不在同一个哈希槽, 逐个删除
+        for (String key : connection.async().keys("{" + QUEUE + "*").toCompletableFuture().join()) {
+            connection.async().del(key).toCompletableFuture().join();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition, long timeoutInMillis) {
+        long deadline = System.currentTimeMillis() + timeoutInMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            sleep(50L);
+        }
+        return condition.getAsBoolean();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
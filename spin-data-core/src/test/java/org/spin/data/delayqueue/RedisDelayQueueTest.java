@@ -0,0 +1,76 @@
+package org.spin.data.delayqueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.spin.core.throwable.SimplifiedException;
+import org.spin.data.redis.LettuceRedisProperties;
+import org.spin.data.redis.RedisClientWrapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 延迟队列批量发布测试, 需要本地Redis
+ * <p>Created by xuweinan on 2021/10/23</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisDelayQueueTest {
+    private static final int MESSAGE_CNT = 500;
+
+    private RedisClientWrapper clientWrapper;
+    private RedisDelayQueue delayQueue;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(redisAvailable(), "本地Redis不可用, 跳过测试");
+        LettuceRedisProperties redisProperties = new LettuceRedisProperties();
+        clientWrapper = new RedisClientWrapper(redisProperties);
+        DelayQueueProperties properties = new DelayQueueProperties("PublishAllDelayQueue", null);
+        delayQueue = new RedisDelayQueue(properties, clientWrapper, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != delayQueue) {
+            delayQueue.close();
+            clientWrapper.close();
+        }
+    }
+
+    @Test
+    void testPublishAll() {
+        List<DelayMessageEntry> messages = new ArrayList<>(MESSAGE_CNT);
+        for (int i = 0; i < MESSAGE_CNT; i++) {
+            messages.add(DelayMessageEntry.of("message-" + i, 3600L));
+        }
+        List<String> ids = delayQueue.publishAll("PublishAll", messages);
+        assertEquals(MESSAGE_CNT, ids.size());
+        for (String id : ids) {
+            assertTrue(delayQueue.cancelMessage("PublishAll", id));
+        }
+
+        // 非法的延迟时间在写入任何消息前被拒绝
+        messages.add(DelayMessageEntry.of("invalid", 0L));
+        assertThrows(SimplifiedException.class, () -> delayQueue.publishAll("PublishAll", messages));
+    }
+
+    private static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
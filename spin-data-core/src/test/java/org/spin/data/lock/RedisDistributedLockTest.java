@@ -0,0 +1,149 @@
+package org.spin.data.lock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.spin.core.concurrent.LockTicket;
+import org.spin.core.concurrent.Uninterruptibles;
+import org.spin.data.redis.LettuceRedisProperties;
+import org.spin.data.redis.RedisClientWrapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Redis分布式锁测试, 需要本地Redis
+ * <p>Created by xuweinan on 2021/10/26</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisDistributedLockTest {
+
+    private RedisClientWrapper clientWrapper;
+    private RedisDistributedLock notifyLock;
+    private RedisDistributedLock pollingLock;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(redisAvailable(), "本地Redis不可用, 跳过测试");
+        clientWrapper = new RedisClientWrapper(new LettuceRedisProperties());
+        notifyLock = new RedisDistributedLock(clientWrapper, true, true, 1500L);
+        pollingLock = new RedisDistributedLock(clientWrapper, false, false, 1500L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != clientWrapper) {
+            notifyLock.close();
+            pollingLock.close();
+            clientWrapper.close();
+        }
+    }
+
+    @Test
+    void testWakeUpLatency() {
+        // 重试间隔2秒, 释放通知唤醒的等待者应远早于下一次轮询拿到锁
+        long notified = handOff(notifyLock, 2000L);
+        assertTrue(notified < 500L, "release notify latency: " + notified + "ms");
+
+        // 没有通知时只能等到下一次轮询
+        long polled = handOff(pollingLock, 200L);
+        assertTrue(polled <= 600L, "polling latency: " + polled + "ms");
+    }
+
+    @Test
+    void testConcurrentWaiters() {
+        // 多个分槽上的等待者同时订阅和退订, 全部能通过释放通知拿到锁
+        int keys = 16;
+        List<LockTicket> holders = new ArrayList<>(keys);
+        List<CompletableFuture<Boolean>> waiters = new ArrayList<>(keys * 2);
+        for (int i = 0; i < keys; i++) {
+            LockTicket holder = pollingLock.lock("waiters" + i, 5000L, 0);
+            assertTrue(holder.isSuccess());
+            holders.add(holder);
+            String key = "waiters" + i;
+            for (int j = 0; j < 2; j++) {
+                waiters.add(CompletableFuture.supplyAsync(() -> {
+                    try (LockTicket ticket = notifyLock.lock(key, 5000L, 2, 3000L)) {
+                        return ticket.isSuccess();
+                    }
+                }));
+            }
+        }
+        Uninterruptibles.sleepUninterruptibly(500L, TimeUnit.MILLISECONDS);
+        long released = System.currentTimeMillis();
+        holders.forEach(LockTicket::close);
+        waiters.forEach(it -> assertTrue(it.join()));
+        assertTrue(System.currentTimeMillis() - released < 3000L);
+    }
+
+    @Test
+    void testReentrant() {
+        try (LockTicket outer = notifyLock.lock("reentrant", 5000L, 0)) {
+            assertTrue(outer.isSuccess());
+            try (LockTicket inner = notifyLock.lock("reentrant", 5000L, 0)) {
+                assertTrue(inner.isSuccess());
+            }
+            assertFalse(pollingLock.tryLock("reentrant").isSuccess());
+        }
+        try (LockTicket ticket = pollingLock.tryLock("reentrant")) {
+            assertTrue(ticket.isSuccess());
+        }
+
+        // 锁过期并被其他客户端获取后, 重入不能成功
+        LockTicket expired = notifyLock.lock("reentrant", 500L, 0);
+        assertTrue(expired.isSuccess());
+        Uninterruptibles.sleepUninterruptibly(800L, TimeUnit.MILLISECONDS);
+        try (LockTicket other = pollingLock.tryLock("reentrant")) {
+            assertTrue(other.isSuccess());
+            assertFalse(notifyLock.lock("reentrant", 500L, 0).isSuccess());
+        }
+        expired.close();
+    }
+
+    @Test
+    void testWatchdog() throws InterruptedException {
+        try (LockTicket ticket = notifyLock.lock("watchdog", RedisDistributedLock.WATCHDOG_EXPIRE, 0)) {
+            assertTrue(ticket.isSuccess());
+            Thread.sleep(4000L);
+            assertFalse(pollingLock.tryLock("watchdog").isSuccess());
+        }
+    }
+
+    private static long handOff(RedisDistributedLock lock, long sleepMillis) {
+        LockTicket holder = lock.lock("handoff", 5000L, 0);
+        assertTrue(holder.isSuccess());
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> {
+            try (LockTicket ticket = lock.lock("handoff", 5000L, 5, sleepMillis)) {
+                assertTrue(ticket.isSuccess());
+                return System.nanoTime();
+            }
+        });
+        try {
+            Thread.sleep(500L);
+        } catch (InterruptedException ignore) {
+        }
+        long released = System.nanoTime();
+        holder.close();
+        return (waiter.join() - released) / 1_000_000L;
+    }
+
+    private static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
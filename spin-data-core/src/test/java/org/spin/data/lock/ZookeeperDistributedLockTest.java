@@ -7,6 +7,8 @@ import org.spin.core.concurrent.LockTicket;
 
 import java.util.concurrent.CountDownLatch;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * TITLE
  * <p>DESCRIPTION</p>
@@ -46,6 +48,8 @@ class ZookeeperDistributedLockTest {
         }
 
         latch.await();
+        assertEquals(2, zkLock.getAcquireLatency().getCount());
+        assertEquals(0, zkLock.getAcquireFailed());
         System.out.println("finish");
     }
 }
@@ -0,0 +1,105 @@
+package org.spin.data.pk.generator;
+
+import org.spin.data.pk.DistributedId;
+import org.spin.data.pk.IdGeneratorConfig;
+import org.spin.data.pk.converter.DistributedIdConverter;
+import org.spin.data.pk.converter.IdConverter;
+import org.spin.data.pk.generator.provider.PropertyMachineIdProvider;
+import org.spin.data.pk.meta.ClockBackwardsPolicyE;
+import org.spin.data.pk.meta.IdMetaFactory;
+import org.spin.data.pk.meta.IdTypeE;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 分布式ID生成耗时对比(加锁实现, CAS, 批量生成), 不参与单元测试, 手动运行
+ * <p>Created by xuweinan on 2021/10/25</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class IdGeneratorBenchmark {
+    private static final int THREADS = 64;
+
+    /**
+     * 秒级ID每秒可生成约100万个, 总量控制在容量以内, 避免测到的是等待下一秒的时间
+     */
+    private static final int ROUNDS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        IdGeneratorConfig config = new IdGeneratorConfig();
+        config.setProviderType(PropertyMachineIdProvider.class);
+        config.setInitParams("machineId=1");
+        config.setIdType(IdTypeE.MAX_PEAK);
+        config.setClockBackwardsPolicy(ClockBackwardsPolicyE.FAIL);
+        LockingIdGenerator locking = new LockingIdGenerator();
+        DistributedIdGenerator generator = new DistributedIdGenerator(config);
+
+        // 预热
+        run(THREADS, ROUNDS, locking::genId);
+        run(THREADS, ROUNDS, generator::genId);
+        long lockingCost = run(THREADS, ROUNDS, locking::genId);
+        long casCost = run(THREADS, ROUNDS, generator::genId);
+        long batchCost = run(THREADS, ROUNDS / 100, () -> generator.genIds(100).length);
+        System.out.printf("locking: %dns/id, cas: %dns/id, genIds(100): %dns/id%n", lockingCost / THREADS / ROUNDS,
+            casCost / THREADS / ROUNDS, batchCost / THREADS / ROUNDS);
+    }
+
+    private static long run(int threads, int rounds, LongSupplier task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        task.getAsLong();
+                    }
+                } catch (InterruptedException ignore) {
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * 加锁实现, 作为对照
+     */
+    private static class LockingIdGenerator {
+        private final Lock lock = new ReentrantLock();
+        private final IdConverter<Long, DistributedId> idConverter = new DistributedIdConverter(IdTypeE.MAX_PEAK);
+        private final long seqMask = IdMetaFactory.getIdMeta(IdTypeE.MAX_PEAK).getSeqBitsMask();
+        private long sequence = 0;
+        private long lastTimestamp = -1;
+
+        long genId() {
+            lock.lock();
+            try {
+                long timestamp = (System.currentTimeMillis() - 1420041600000L) / 1000;
+                if (timestamp == lastTimestamp) {
+                    sequence = (sequence + 1) & seqMask;
+                    if (sequence == 0) {
+                        while (timestamp <= lastTimestamp) {
+                            timestamp = (System.currentTimeMillis() - 1420041600000L) / 1000;
+                        }
+                        lastTimestamp = timestamp;
+                    }
+                } else {
+                    lastTimestamp = timestamp;
+                    sequence = 0;
+                }
+                return idConverter.convert(new DistributedId(1, sequence, timestamp, 0, 0, 0));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -3,9 +3,23 @@ package org.spin.data.pk.generator;
 import org.junit.jupiter.api.Test;
 import org.spin.data.pk.DistributedId;
 import org.spin.data.pk.IdGeneratorConfig;
+import org.spin.data.pk.converter.DistributedIdConverter;
+import org.spin.data.pk.converter.IdConverter;
 import org.spin.data.pk.generator.provider.ExternalMachineIdProvider;
 import org.spin.data.pk.generator.provider.PropertyMachineIdProvider;
+import org.spin.data.pk.meta.ClockBackwardsPolicyE;
+import org.spin.data.pk.meta.IdTypeE;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -47,4 +61,189 @@ public class IdGeneratorTest {
         System.out.println(~-1 << offset);
         assertTrue(true);
     }
+
+    @Test
+    void testConcurrentUnique() throws InterruptedException {
+        DistributedIdGenerator generator = new DistributedIdGenerator(config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.FAIL));
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        run(16, 20_000, () -> {
+            assertTrue(ids.add(generator.genId()));
+            return 1;
+        });
+        long[] batch = generator.genIds(5000);
+        for (int i = 0; i < batch.length; i++) {
+            assertTrue(ids.add(batch[i]));
+            assertTrue(i == 0 || batch[i] > batch[i - 1]);
+        }
+        assertEquals(16 * 20_000 + 5000, ids.size());
+    }
+
+    @Test
+    void testClockBackwards() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        DistributedIdGenerator fail = new MockClockIdGenerator(config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.FAIL), clock::get);
+        fail.genId();
+        clock.addAndGet(-10);
+        assertThrows(IllegalStateException.class, fail::genId);
+
+        clock.addAndGet(10);
+        DistributedIdGenerator borrow = new MockClockIdGenerator(config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.BORROW), clock::get);
+        long last = borrow.genId();
+        clock.addAndGet(-10);
+        for (int i = 0; i < 3000; i++) {
+            long id = borrow.genId();
+            assertTrue(id > last);
+            last = id;
+        }
+        clock.addAndGet(-10_000);
+        assertThrows(IllegalStateException.class, borrow::genId);
+    }
+
+    @Test
+    void testCustomConverter() {
+        long mask = 0x5A5AL;
+        DistributedIdConverter delegate = new DistributedIdConverter(IdTypeE.MIN_GRANULARITY);
+        DistributedIdGenerator generator = new DistributedIdGenerator(config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.FAIL));
+        generator.setIdConverter(new IdConverter<Long, DistributedId>() {
+            @Override
+            public Long convert(DistributedId id) {
+                return delegate.convert(id) ^ mask;
+            }
+
+            @Override
+            public DistributedId convert(Long id) {
+                return delegate.convert(id ^ mask);
+            }
+        });
+
+        // 自定义转换器同时用于生成ID, 生成与解构的结果一致
+        long id = generator.genId();
+        assertEquals(1L, generator.expId(id).getMachine());
+        assertEquals(1L, delegate.convert(id ^ mask).getMachine());
+        for (long batchId : generator.genIds(10)) {
+            assertEquals(1L, generator.expId(batchId).getMachine());
+        }
+    }
+
+    @Test
+    void testGenIds() throws InterruptedException {
+        // 单个时间单位只有1024个序列号, 批量生成会跨越多个时间单位
+        DistributedIdGenerator generator = new DistributedIdGenerator(config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.FAIL));
+        assertEquals(0, generator.genIds(0).length);
+        assertThrows(IllegalArgumentException.class, () -> generator.genIds(-1));
+
+        long[] large = generator.genIds(5000);
+        for (int i = 1; i < large.length; i++) {
+            assertTrue(large[i] > large[i - 1]);
+        }
+        assertTrue(generator.genId() > large[large.length - 1]);
+
+        // 并发的批量生成互不重叠, 每一批内部递增
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        run(8, 200, () -> {
+            long[] batch = generator.genIds(50);
+            for (int i = 0; i < batch.length; i++) {
+                assertTrue(ids.add(batch[i]));
+                assertTrue(i == 0 || batch[i] > batch[i - 1]);
+            }
+            return batch.length;
+        });
+        assertEquals(8 * 200 * 50, ids.size());
+    }
+
+    @Test
+    void testContention() throws InterruptedException {
+        // 时钟固定不动, 所有线程在同一个时间单位内竞争同一个状态, 分配的序列号必须连续且不重复
+        long now = System.currentTimeMillis();
+        DistributedIdGenerator generator = new MockClockIdGenerator(config(IdTypeE.MAX_PEAK, ClockBackwardsPolicyE.FAIL), () -> now);
+        int threads = 32;
+        int rounds = 5_000;
+        Set<Long> seqs = ConcurrentHashMap.newKeySet();
+        AtomicLong time = new AtomicLong(-1L);
+        run(threads, rounds, () -> {
+            long[] batch = ThreadLocalRandom.current().nextBoolean() ? new long[]{generator.genId()} : generator.genIds(7);
+            for (long id : batch) {
+                DistributedId exp = generator.expId(id);
+                assertTrue(seqs.add(exp.getSeq()));
+                time.compareAndSet(-1L, exp.getTime());
+                assertEquals(time.get(), exp.getTime());
+            }
+            return batch.length;
+        });
+        for (long i = 0; i < seqs.size(); i++) {
+            assertTrue(seqs.contains(i));
+        }
+        assertTrue(seqs.size() >= threads * rounds);
+    }
+
+    @Test
+    void testClockBackwardsWait() {
+        AtomicLong backwards = new AtomicLong();
+        IdGeneratorConfig config = config(IdTypeE.MIN_GRANULARITY, ClockBackwardsPolicyE.WAIT);
+        config.setMaxClockBackwardsInMs(1_000L);
+        DistributedIdGenerator generator = new MockClockIdGenerator(config, () -> System.currentTimeMillis() - backwards.get());
+        long last = generator.genId();
+
+        // 回拨幅度在允许范围内时阻塞到时钟追上, 之后继续生成递增的ID
+        backwards.set(200L);
+        long start = System.currentTimeMillis();
+        long id = generator.genId();
+        assertTrue(System.currentTimeMillis() - start >= 150L);
+        assertTrue(id > last);
+        assertTrue(generator.expId(id).getTime() >= generator.expId(last).getTime());
+
+        backwards.set(5_000L);
+        assertThrows(IllegalStateException.class, generator::genId);
+    }
+
+    private static long run(int threads, int rounds, LongSupplier task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        task.getAsLong();
+                    }
+                } catch (InterruptedException ignore) {
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        if (null != error.get()) {
+            throw new AssertionError(error.get());
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private static IdGeneratorConfig config(IdTypeE idType, ClockBackwardsPolicyE policy) {
+        IdGeneratorConfig idGeneratorConfig = new IdGeneratorConfig();
+        idGeneratorConfig.setProviderType(PropertyMachineIdProvider.class);
+        idGeneratorConfig.setInitParams("machineId=1");
+        idGeneratorConfig.setIdType(idType);
+        idGeneratorConfig.setClockBackwardsPolicy(policy);
+        return idGeneratorConfig;
+    }
+
+    private static class MockClockIdGenerator extends DistributedIdGenerator {
+        private final LongSupplier clock;
+
+        MockClockIdGenerator(IdGeneratorConfig idGeneratorConfig, LongSupplier clock) {
+            super(idGeneratorConfig);
+            this.clock = clock;
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return null == clock ? System.currentTimeMillis() : clock.getAsLong();
+        }
+    }
 }
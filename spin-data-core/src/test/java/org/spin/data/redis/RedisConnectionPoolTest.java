@@ -0,0 +1,101 @@
+package org.spin.data.redis;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.codec.StringCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.spin.core.throwable.SimplifiedException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 异步命令、流水线与独占连接池测试, 需要本地Redis
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisConnectionPoolTest {
+    private static final int COMMANDS = 10_000;
+
+    private RedisClientWrapper clientWrapper;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(redisAvailable(), "本地Redis不可用, 跳过测试");
+        clientWrapper = new RedisClientWrapper(new LettuceRedisProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != clientWrapper) {
+            clientWrapper.close();
+        }
+    }
+
+    @Test
+    void testPipeline() {
+        try (RedisConnectionWrapper<String, String> connection = clientWrapper.connect()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < COMMANDS; i++) {
+                connection.syncSet("pipeline:" + i, String.valueOf(i));
+            }
+            System.out.println("sync: " + (System.nanoTime() - start) / 1_000_000L + "ms");
+
+            start = System.nanoTime();
+            List<CompletionStage<String>> futures = new ArrayList<>(COMMANDS);
+            for (int i = 0; i < COMMANDS; i++) {
+                futures.add(connection.asyncSet("pipeline:" + i, String.valueOf(i)));
+            }
+            CompletableFuture.allOf(futures.stream().map(CompletionStage::toCompletableFuture).toArray(CompletableFuture[]::new)).join();
+            System.out.println("async: " + (System.nanoTime() - start) / 1_000_000L + "ms");
+        }
+
+        try (RedisConnectionPool<String, String> pool = clientWrapper.connectionPool(StringCodec.UTF8, 2)) {
+            long start = System.nanoTime();
+            List<RedisFuture<String>> futures = pool.execute(connection -> connection.pipelined(commands -> {
+                List<RedisFuture<String>> res = new ArrayList<>(COMMANDS);
+                for (int i = 0; i < COMMANDS; i++) {
+                    res.add(commands.get("pipeline:" + i));
+                }
+                return res;
+            }));
+            for (int i = 0; i < COMMANDS; i++) {
+                assertEquals(String.valueOf(i), futures.get(i).toCompletableFuture().join());
+            }
+            System.out.println("pipelined: " + (System.nanoTime() - start) / 1_000_000L + "ms");
+
+            assertNull(pool.execute(connection -> connection.syncBlpop(1L, "pipeline:empty")));
+            assertEquals(1, pool.getIdle());
+            assertEquals(0, pool.getActive());
+
+            // 重复归还不会让连接池超过上限, 非独占连接不能开启流水线
+            RedisConnectionWrapper<String, String> borrowed = pool.borrow();
+            pool.release(borrowed);
+            assertThrows(SimplifiedException.class, () -> pool.release(borrowed));
+            assertEquals(0, pool.getActive());
+            assertThrows(IllegalStateException.class, () -> borrowed.pipelined(commands -> null));
+        }
+    }
+
+    private static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.spin.data.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lua脚本注册测试
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class RedisScriptTest {
+
+    @Test
+    void testRegister() {
+        RedisScript script = RedisScript.of("test.return", "return 1");
+        // 与SCRIPT LOAD "return 1"返回的摘要一致
+        assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", script.getSha());
+        assertSame(script, RedisScript.of("test.another", "return 1"));
+        assertTrue(RedisScript.registered().contains(script));
+
+        long start = System.nanoTime();
+        script.record(start, true);
+        script.record(start, false);
+        assertEquals(2, script.getCalls());
+        assertEquals(1, script.getErrors());
+
+        String src = "redis.call('HSET', KEYS[1] .. 'Data', ARGV[1], ARGV[3])\n" +
+            "local now = redis.call('TIME')\n" +
+            "local millis = now[1] * 1000 + math.ceil(now[2] / 1000)\n" +
+            "local cnt = redis.call('ZADD', KEYS[1] .. 'PriorityQueue', millis + ARGV[4], ARGV[1] .. ARGV[2])\n" +
+            "redis.call('PUBLISH', KEYS[1] .. 'TransferNotifier', 'WAKE UP')\n" +
+            "return cnt";
+        System.out.printf("EVAL: %d bytes, EVALSHA: %d bytes%n", src.getBytes(StandardCharsets.UTF_8).length,
+            RedisScript.of("test.push", src).getSha().length());
+        System.out.println(script);
+    }
+}
@@ -0,0 +1,167 @@
+package org.spin.data.rs;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 实体转换器测试, 使用内存中的ResultSet
+ * <p>Created by xuweinan on 2021/10/28</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class EntityRowMapperTest {
+    private static final String[] COLUMNS = {"id", "name", "age", "dept.name", "dept.leader.name", "unknown", "dept.unknown.name"};
+    private static final String[] VALUES = {"id", "user", "age", "dept", "leader", "unknown", "unknown"};
+
+    @Test
+    void testNested() throws SQLException {
+        EntityRowMapper<User> mapper = new EntityRowMapper<>(User.class);
+        List<User> users = mapper.extractData(resultSet(3));
+        assertEquals(3, users.size());
+        User user = users.get(1);
+        assertEquals(Long.valueOf(1L), user.getId());
+        assertEquals("user-1", user.getName());
+        assertEquals(21, user.getAge());
+        assertEquals("dept-1", user.getDept().getName());
+        assertEquals("leader-1", user.getDept().getLeader().getName());
+        assertEquals(0, users.get(0).getAge());
+        assertNull(users.get(0).getDept().getName());
+    }
+
+    @Test
+    void testLimit() throws SQLException {
+        int[] fetched = {0};
+        List<User> users = new EntityRowMapper<>(User.class).extractData(resultSet(10, fetched), 1);
+        assertEquals(1, users.size());
+        assertEquals(1, fetched[0]);
+    }
+
+    @Test
+    void testThroughput() throws SQLException {
+        EntityRowMapper<User> mapper = new EntityRowMapper<>(User.class);
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            List<User> users = mapper.extractData(resultSet(100_000));
+            System.out.printf("mapped %d rows in %dms%n", users.size(), (System.nanoTime() - start) / 1_000_000L);
+        }
+    }
+
+    /**
+     * 第0行的age与dept.name为null, 其余列按行号生成
+     */
+    private static ResultSet resultSet(int rows) {
+        return resultSet(rows, new int[1]);
+    }
+
+    private static ResultSet resultSet(int rows, int[] fetched) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(EntityRowMapperTest.class.getClassLoader(),
+            new Class[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getColumnCount":
+                        return COLUMNS.length;
+                    case "getColumnLabel":
+                    case "getColumnName":
+                        return COLUMNS[(Integer) args[0] - 1];
+                    default:
+                        return null;
+                }
+            });
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(EntityRowMapperTest.class.getClassLoader(), new Class[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMetaData":
+                    return metaData;
+                case "getFetchSize":
+                    return 0;
+                case "next":
+                    fetched[0]++;
+                    return ++row[0] < rows;
+                case "wasNull":
+                    return wasNull[0];
+                case "getLong":
+                    wasNull[0] = false;
+                    return (long) row[0];
+                case "getInt":
+                    wasNull[0] = row[0] == 0;
+                    return wasNull[0] ? 0 : 20 + row[0];
+                case "getString":
+                case "getObject":
+                    int column = (Integer) args[0] - 1;
+                    wasNull[0] = row[0] == 0 && column == 3;
+                    return wasNull[0] ? null : VALUES[column] + "-" + row[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+    public static class User {
+        private Long id;
+        private String name;
+        private int age;
+        private Dept dept;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public Dept getDept() {
+            return dept;
+        }
+
+        public void setDept(Dept dept) {
+            this.dept = dept;
+        }
+    }
+
+    public static class Dept {
+        private String name;
+        private User leader;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public User getLeader() {
+            return leader;
+        }
+
+        public void setLeader(User leader) {
+            this.leader = leader;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.spin.data.sql;
+
+import org.spin.data.rs.MapRowMapper;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+import org.spin.data.util.Sqlite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分段批量执行耗时对比(jdbc batch与多行insert), 不参与单元测试, 手动运行, 需要SQLite驱动
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+public class BatchExecuteBenchmark {
+    private static final int ROWS = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        Path root = Files.createTempDirectory("sqlmapper");
+        Path md = root.resolve("bench.md");
+        Files.write(md, "insert\n===\ninsert into bench (id, name, score) values (:id, :name, :score)\n".getBytes(StandardCharsets.UTF_8));
+        try (SQLManager sqlManager = new SQLManager(FileSystemMdLoader.class, root.toString(), new SimpleResolver())) {
+            List<Map<String, ?>> params = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                Map<String, Object> p = new HashMap<>();
+                p.put("id", i);
+                p.put("name", "name-" + i);
+                p.put("score", i * 0.5D);
+                params.add(p);
+            }
+
+            bench(sqlManager, params, "jdbc batch", new BatchOptions());
+            bench(sqlManager, params, "multi-row insert", new BatchOptions().rewriteInsert(true));
+            bench(sqlManager, params, "multi-row insert, commit per chunk", new BatchOptions().rewriteInsert(true).chunkSize(1_000)
+                .commitPerChunk(true));
+        } finally {
+            Files.deleteIfExists(md);
+            Files.deleteIfExists(root);
+        }
+    }
+
+    private static void bench(SQLManager sqlManager, List<Map<String, ?>> params, String name, BatchOptions options) {
+        try (Sqlite sqlite = Sqlite.inMemoryMode()) {
+            sqlite.execute("create table bench (id integer primary key, name text, score real)");
+            long start = System.nanoTime();
+            sqlite.doWithConnection(connection -> {
+                try {
+                    connection.setAutoCommit(false);
+                    int[] res = sqlManager.executeBatch(connection, "bench.insert", params, options);
+                    connection.commit();
+                    return res;
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            long elapsed = (System.nanoTime() - start) / 1_000_000L;
+            Map<String, Object> cnt = sqlite.queryFirst("select count(1) as cnt from bench", new MapRowMapper());
+            System.out.printf("%s: %d rows in %dms%n", name, ((Number) cnt.get("cnt")).intValue(), elapsed);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.spin.data.sql;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.data.rs.MapRowMapper;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+import org.spin.data.util.Sqlite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 分段批量执行测试, 执行结果校验需要SQLite驱动
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class BatchExecuteTest {
+    private static final int ROWS = 2_500;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testRewritable() {
+        String sql = "insert into t (a, b) values (?, ?)";
+        assertEquals(sql.lastIndexOf('('), BatchExecutor.valuesTupleStart(sql, 2));
+        sql = "INSERT INTO t(a, b, c) VALUES(?, 'x)', ?);";
+        assertEquals(sql.indexOf("(?"), BatchExecutor.valuesTupleStart(sql, 2));
+        assertEquals(-1, BatchExecutor.valuesTupleStart("insert into t (a) values (?) on duplicate key update a = ?", 2));
+        assertEquals(-1, BatchExecutor.valuesTupleStart("insert into t (a) select a from s where b = ?", 1));
+        assertEquals(-1, BatchExecutor.valuesTupleStart("update t set a = ?", 1));
+    }
+
+    @Test
+    void testSqliteBatch() throws IOException {
+        assumeTrue(driverAvailable(), "SQLite驱动不可用, 跳过测试");
+        Files.write(root.resolve("batch.md"), "insert\n===\ninsert into batch (id, name, score) values (:id, :name, :score)\n"
+            .getBytes(StandardCharsets.UTF_8));
+        SQLManager sqlManager = new SQLManager(FileSystemMdLoader.class, root.toString(), new SimpleResolver());
+
+        List<Map<String, ?>> params = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Map<String, Object> p = new HashMap<>();
+            p.put("id", i);
+            p.put("name", "name-" + i);
+            p.put("score", i * 0.5D);
+            params.add(p);
+        }
+
+        execute(sqlManager, params, new BatchOptions());
+        execute(sqlManager, params, new BatchOptions().rewriteInsert(true).chunkSize(1_000));
+        AtomicInteger progress = new AtomicInteger();
+        execute(sqlManager, params, new BatchOptions().rewriteInsert(true).chunkSize(1_000).commitPerChunk(true)
+            .onProgress((finished, total) -> progress.set(finished)));
+        assertEquals(ROWS, progress.get());
+        sqlManager.close();
+    }
+
+    private static void execute(SQLManager sqlManager, List<Map<String, ?>> params, BatchOptions options) {
+        try (Sqlite sqlite = Sqlite.inMemoryMode()) {
+            sqlite.execute("create table batch (id integer primary key, name text, score real)");
+            sqlite.doWithConnection(connection -> {
+                try {
+                    connection.setAutoCommit(false);
+                    int[] res = sqlManager.executeBatch(connection, "batch.insert", params, options);
+                    connection.commit();
+                    return res;
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            // 最后一段不满一个分段, 同样按行写入
+            Map<String, Object> stat = sqlite.queryFirst("select count(1) as cnt, sum(score) as total from batch where name = 'name-' || id",
+                new MapRowMapper());
+            assertEquals(ROWS, ((Number) stat.get("cnt")).intValue());
+            assertEquals(ROWS * (ROWS - 1) / 4.0D, ((Number) stat.get("total")).doubleValue());
+        }
+    }
+
+    private static boolean driverAvailable() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.spin.data.sql;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.data.core.Page;
+import org.spin.data.core.PageRequest;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+import org.spin.data.util.Sqlite;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 分页查询总数优化测试, 需要SQLite驱动
+ * <p>Created by xuweinan on 2021/10/30</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class ExecutePageTest {
+    private static final int ROWS = 25;
+    private static final String LIST = "page.list";
+
+    @TempDir
+    Path root;
+
+    private Sqlite sqlite;
+    private SQLManager sqlManager;
+    private String url;
+    private final AtomicInteger counts = new AtomicInteger();
+    private final List<Thread> countThreads = new CopyOnWriteArrayList<>();
+    private final List<Connection> countConnections = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeTrue(driverAvailable(), "SQLite驱动不可用, 跳过测试");
+        Files.write(root.resolve("page.md"), "list\n===\nselect id from item where id >= :min order by id\n".getBytes(StandardCharsets.UTF_8));
+        sqlManager = new SQLManager(FileSystemMdLoader.class, root.toString(), new SimpleResolver());
+        String dbFile = root.resolve("page.db").toString();
+        url = "jdbc:sqlite:" + dbFile;
+        sqlite = Sqlite.inFileMode(dbFile);
+        sqlite.execute("create table item (id integer primary key)");
+        insert(0, ROWS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != sqlite) {
+            sqlite.close();
+            sqlManager.close();
+        }
+    }
+
+    @Test
+    void testSkipCount() {
+        // 不满一页时直接推算总数
+        assertPage(3, 5, ROWS, 0);
+        assertPage(1, ROWS, ROWS, 0, 50);
+        assertPage(1, 0, 0, 0, 10, ROWS);
+
+        // 满页或越过末页的空页仍需要count
+        assertPage(1, 10, ROWS, 1);
+        assertPage(5, 0, ROWS, 2);
+    }
+
+    @Test
+    void testParallelCount() {
+        sqlManager.setCountDataSource(this::countDataSource);
+        assertPage(1, 10, ROWS, 0);
+        assertEquals(1, countThreads.size());
+        assertNotEquals(Thread.currentThread(), countThreads.get(0));
+        assertTrue(countConnections.stream().allMatch(this::closed));
+
+        // 不满一页时放弃并行count的结果
+        assertPage(3, 5, ROWS, 0);
+        assertEquals(0, counts.get());
+    }
+
+    @Test
+    void testCountCache() throws InterruptedException {
+        sqlManager.setCountCacheTtl(2_000L);
+        assertPage(1, 10, ROWS, 1);
+        assertPage(2, 10, ROWS, 1);
+
+        // 缓存期内复用旧的总数, 参数不同时单独计数
+        insert(ROWS, 10);
+        assertPage(1, 10, ROWS, 1);
+        assertPage(1, 10, ROWS + 10 - 5, 2, 10, 5);
+
+        // 过期后重新count
+        Thread.sleep(2_100L);
+        assertPage(1, 10, ROWS + 10, 3);
+
+        sqlManager.setCountCacheTtl(0L);
+        assertPage(1, 10, ROWS + 10, 4);
+        assertPage(1, 10, ROWS + 10, 5);
+    }
+
+    private void assertPage(int current, int records, long total, int counted) {
+        assertPage(current, records, total, counted, 10, 0);
+    }
+
+    private void assertPage(int current, int records, long total, int counted, int size) {
+        assertPage(current, records, total, counted, size, 0);
+    }
+
+    private void assertPage(int current, int records, long total, int counted, int size, int min) {
+        Map<String, ?> params = Collections.singletonMap("min", min);
+        Page<Map<String, Object>> page = sqlite.doWithConnection(connection ->
+            sqlManager.listAsPageMap(track(connection), LIST, params, new PageRequest(current, size)));
+        assertEquals(records, page.getRecords().size());
+        assertEquals(total, page.getTotal());
+        assertEquals(counted, counts.get());
+    }
+
+    private void insert(int from, int rows) {
+        for (int i = from; i < from + rows; i++) {
+            sqlite.update("insert into item (id) values (" + i + ")");
+        }
+    }
+
+    /**
+     * 记录当前连接上执行的count查询
+     */
+    private Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if ("prepareStatement".equals(method.getName()) && ((String) args[0]).startsWith("SELECT COUNT(1)")) {
+                counts.incrementAndGet();
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+    private DataSource countDataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if (!"getConnection".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            countThreads.add(Thread.currentThread());
+            Connection connection = DriverManager.getConnection(url);
+            countConnections.add(connection);
+            return connection;
+        });
+    }
+
+    private boolean closed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean driverAvailable() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
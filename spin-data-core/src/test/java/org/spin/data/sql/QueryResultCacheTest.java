@@ -0,0 +1,56 @@
+package org.spin.data.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 查询结果缓存测试
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class QueryResultCacheTest {
+
+    @Test
+    void testInvalidation() {
+        QueryResultCache cache = new QueryResultCache(1000, 0);
+        String sql = "select * from region r join product p on r.id = p.region_id where r.code = ? /* @tables region, `base`.product */";
+        String[] tables = cache.declaredTables("region.list", sql);
+        assertArrayEquals(new String[]{"region", "product"}, tables);
+        assertNull(cache.declaredTables("region.raw", "select * from region"));
+        assertNull(cache.declaredTables("region.line", "select * from region -- @tables region"));
+
+        Map<String, Object> params = Collections.singletonMap("codes", new String[]{"a", "b"});
+        List<Object> key = cache.key("region.list", Map.class, params);
+        assertEquals(key, cache.key("region.list", Map.class, Collections.singletonMap("codes", Arrays.asList("a", "b"))));
+
+        cache.put(key, tables, cache.snapshot(tables), Arrays.asList(1, 2, 3));
+        assertEquals(Arrays.asList(1, 2, 3), cache.get(key));
+
+        cache.invalidateWritten("update `BASE`.Product set name = ? where id = ?");
+        assertNull(cache.get(key));
+
+        // 查询期间发生写入, 结果不会被缓存
+        long[] snapshot = cache.snapshot(tables);
+        cache.invalidateWritten("delete from region where id = ?");
+        cache.put(key, tables, snapshot, Collections.singletonList(1));
+        assertNull(cache.get(key));
+
+        cache.put(key, tables, cache.snapshot(tables), Collections.singletonList(1));
+        cache.invalidateWritten("insert into other_table (id) values (?)");
+        assertNotNull(cache.get(key));
+        cache.invalidateWritten("call refresh_all()");
+        assertNull(cache.get(key));
+        System.out.println(cache);
+    }
+}
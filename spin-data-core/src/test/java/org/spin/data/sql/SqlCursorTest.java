@@ -0,0 +1,169 @@
+package org.spin.data.sql;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.data.rs.RowMapper;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+import org.spin.data.util.Sqlite;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 游标查询测试, 需要SQLite驱动
+ * <p>Created by xuweinan on 2021/10/27</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class SqlCursorTest {
+    private static final int ROWS = 100;
+    private static final Map<String, ?> NO_PARAMS = Collections.emptyMap();
+
+    @TempDir
+    Path root;
+
+    private Sqlite sqlite;
+    private SQLManager sqlManager;
+    private final List<Statement> statements = new ArrayList<>();
+    private final AtomicInteger mapped = new AtomicInteger();
+    private final RowMapper<Integer> mapper = (columnVisitor, rowIdx) -> {
+        mapped.incrementAndGet();
+        return ((Number) columnVisitor.getColumnValue(1)).intValue();
+    };
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeTrue(driverAvailable(), "SQLite驱动不可用, 跳过测试");
+        Files.write(root.resolve("cursor.md"), "list\n===\nselect id from item order by id\n".getBytes(StandardCharsets.UTF_8));
+        sqlManager = new SQLManager(FileSystemMdLoader.class, root.toString(), new SimpleResolver());
+        sqlite = Sqlite.inMemoryMode();
+        sqlite.execute("create table item (id integer primary key)");
+        for (int i = 0; i < ROWS; i++) {
+            sqlite.update("insert into item (id) values (" + i + ")");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != sqlite) {
+            sqlite.close();
+            sqlManager.close();
+        }
+    }
+
+    @Test
+    void testStreamLazy() {
+        sqlite.doWithConnection(connection -> {
+            Connection tracked = track(connection);
+            try (Stream<Integer> stream = sqlManager.stream(tracked, "cursor.list", mapper, NO_PARAMS, 10)) {
+                assertEquals(0, mapped.get());
+                assertEquals(Integer.valueOf(0), stream.findFirst().orElse(null));
+                assertEquals(1, mapped.get());
+                // 提前终止时Statement直到Stream关闭才释放
+                assertFalse(statementsClosed());
+            }
+            assertTrue(statementsClosed());
+
+            mapped.set(0);
+            try (Stream<Integer> stream = sqlManager.stream(tracked, "cursor.list", mapper, NO_PARAMS, 10)) {
+                assertEquals(5, stream.limit(5).collect(Collectors.toList()).size());
+                assertEquals(5, mapped.get());
+            }
+            assertTrue(statementsClosed());
+
+            // 读取完毕时自动释放
+            try (Stream<Integer> stream = sqlManager.stream(tracked, "cursor.list", mapper, NO_PARAMS, 0)) {
+                assertEquals(ROWS, stream.count());
+                assertTrue(statementsClosed());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void testForEach() {
+        sqlite.doWithConnection(connection -> {
+            Connection tracked = track(connection);
+            List<Integer> rows = new ArrayList<>(ROWS);
+            assertEquals(ROWS, sqlManager.forEach(tracked, "cursor.list", mapper, NO_PARAMS, 10, (row, rowIdx) -> {
+                assertEquals(rows.size(), rowIdx);
+                rows.add(row);
+            }));
+            assertEquals(ROWS, rows.size());
+            assertEquals(ROWS - 1, rows.get(ROWS - 1).intValue());
+            assertTrue(statementsClosed());
+
+            // 回调异常时同样释放Statement
+            assertThrows(IllegalStateException.class, () -> sqlManager.forEach(tracked, "cursor.list", mapper, NO_PARAMS, 10,
+                (row, rowIdx) -> {
+                    throw new IllegalStateException("stop");
+                }));
+            assertTrue(statementsClosed());
+            return null;
+        });
+    }
+
+    /**
+     * 记录连接上创建的Statement
+     */
+    private Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            try {
+                Object result = method.invoke(connection, args);
+                if (result instanceof Statement) {
+                    statements.add((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+    private boolean statementsClosed() {
+        assertFalse(statements.isEmpty());
+        for (Statement statement : statements) {
+            try {
+                if (!statement.isClosed()) {
+                    return false;
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return true;
+    }
+
+    private static boolean driverAvailable() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.spin.data.sql;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+import org.spin.data.sql.resolver.TemplateResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 静态SQL快速路径测试
+ * <p>Created by xuweinan on 2021/10/28</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class StaticSqlTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void testStaticTemplate() throws IOException {
+        File md = new File(root, "user.md");
+        Files.write(md.toPath(), ("findById\n===\nselect * from user where id = :id\n\n"
+            + "findByName\n===\nselect * from user where name = '${name}'\n").getBytes(StandardCharsets.UTF_8));
+
+        SQLLoader loader = new FileSystemMdLoader();
+        loader.setRootUri(root.getAbsolutePath());
+        loader.setTemplateResolver(new SimpleResolver());
+
+        SqlSource first = loader.getSQL("user.findById", Collections.singletonMap("id", 1));
+        SqlSource second = loader.getSQL("user.findById", Collections.singletonMap("id", 2));
+        assertTrue(first.isStaticSql());
+        assertSame(first, second);
+        assertEquals("select * from user where id = :id", first.getSql());
+
+        SqlSource dynamic = loader.getSQL("user.findByName", Collections.singletonMap("name", "spin"));
+        assertFalse(dynamic.isStaticSql());
+        assertEquals("select * from user where name = 'spin'", dynamic.getSql());
+
+        assertTrue(md.setLastModified(md.lastModified() + 2000L));
+        SqlSource reloaded = loader.getSQL("user.findById", Collections.singletonMap("id", 1));
+        assertTrue(reloaded.isStaticSql());
+        assertNotSame(first, reloaded);
+    }
+
+    @Test
+    void testWatchChanges() throws IOException, InterruptedException {
+        File md = new File(root, "order.md");
+        Files.write(md.toPath(), "findById\n===\nselect * from orders where id = :id\n".getBytes(StandardCharsets.UTF_8));
+
+        FileSystemMdLoader loader = new FileSystemMdLoader();
+        loader.setRootUri(root.getAbsolutePath());
+        loader.setTemplateResolver(new SimpleResolver());
+        loader.setWatchChanges(true);
+        try {
+            SqlSource first = loader.getSQL("order.findById", Collections.emptyMap());
+            assertFalse(loader.isModified("order.findById"));
+
+            Files.write(md.toPath(), "findById\n===\nselect id from orders where id = :id\n".getBytes(StandardCharsets.UTF_8));
+            String sql = first.getSql();
+            for (int i = 0; i < 100 && sql.equals(first.getSql()); i++) {
+                Thread.sleep(50L);
+                sql = loader.getSQL("order.findById", Collections.emptyMap()).getSql();
+            }
+            assertEquals("select id from orders where id = :id", sql);
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    void testWatchChangesSameTimestamp() throws IOException, InterruptedException {
+        File md = new File(root, "order.md");
+        Files.write(md.toPath(), "findByName\n===\nselect * from orders where name = '${name}'\n".getBytes(StandardCharsets.UTF_8));
+
+        // 只按版本号缓存编译结果的解析器, 版本号不变时依赖装载器的通知失效
+        Map<String, String> compiled = new ConcurrentHashMap<>();
+        SimpleResolver simple = new SimpleResolver();
+        TemplateResolver resolver = new TemplateResolver() {
+            @Override
+            public String resolve(String id, String template, Map<String, ?> model) {
+                return simple.resolve(id, template, model);
+            }
+
+            @Override
+            public String resolve(String id, long version, String template, Map<String, ?> model) {
+                return simple.resolve(id, compiled.computeIfAbsent(id + "@" + version, k -> template), model);
+            }
+
+            @Override
+            public void evict(String id) {
+                compiled.keySet().removeIf(k -> k.startsWith(id + "@"));
+            }
+        };
+
+        FileSystemMdLoader loader = new FileSystemMdLoader();
+        loader.setRootUri(root.getAbsolutePath());
+        loader.setTemplateResolver(resolver);
+        loader.setWatchChanges(true);
+        Map<String, String> model = Collections.singletonMap("name", "spin");
+        try {
+            String first = loader.getSQL("order.findByName", model).getSql();
+            long lastModified = md.lastModified();
+            Files.write(md.toPath(), "findByName\n===\nselect id from orders where name = '${name}'\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(md.setLastModified(lastModified));
+            String sql = first;
+            for (int i = 0; i < 100 && sql.equals(first); i++) {
+                Thread.sleep(50L);
+                sql = loader.getSQL("order.findByName", model).getSql();
+            }
+            assertEquals("select id from orders where name = 'spin'", sql);
+        } finally {
+            loader.close();
+        }
+    }
+}
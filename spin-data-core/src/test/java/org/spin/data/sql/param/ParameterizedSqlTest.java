@@ -1,8 +1,16 @@
 package org.spin.data.sql.param;
 
 import org.junit.jupiter.api.Test;
+import org.spin.data.core.DatabaseType;
+import org.spin.data.core.PageRequest;
 import org.spin.data.sql.SqlSource;
+import org.spin.data.sql.dbtype.MySQLDatabaseType;
+import org.spin.data.sql.dbtype.OracleDatabaseType;
+import org.spin.data.sql.dbtype.PostgreSQLDatabaseType;
+import org.spin.data.sql.dbtype.SQLServerDatabaseType;
+import org.spin.data.sql.dbtype.SQLiteDatabaseType;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ParameterizedSqlTest {
@@ -19,4 +27,21 @@ class ParameterizedSqlTest {
         System.out.println(parameterizedSql.getActualSql().getSql());
         assertTrue(true);
     }
+
+    @Test
+    public void testPagedSqlStable() {
+        SqlSource origin = new SqlSource("test", "select * from sys_user u where u.name = :name");
+        DatabaseType[] dbTypes = {new MySQLDatabaseType(), new PostgreSQLDatabaseType(), new SQLiteDatabaseType(), new OracleDatabaseType(), new SQLServerDatabaseType()};
+        for (DatabaseType dbType : dbTypes) {
+            PageRequest first = new PageRequest(1, 20);
+            PageRequest tenth = new PageRequest(10, 20);
+            ParameterizedSql paged = new ParameterizedSql(dbType.getPagedSQL(origin, first));
+            System.out.println(paged.getActualSql().getSql());
+            assertEquals(paged.getActualSql().getSql(), new ParameterizedSql(dbType.getPagedSQL(origin, tenth)).getActualSql().getSql());
+            assertEquals(3, paged.getNamedParameterCount());
+            for (SqlParameter parameter : paged.getNamedParameters()) {
+                assertTrue("name".equals(parameter.getParameterName()) || dbType.getPageParameters(tenth).containsKey(parameter.getParameterName()));
+            }
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package org.spin.data.sql.resolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 编译模板缓存测试
+ * <p>Created by xuweinan on 2021/10/28</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class CompiledTemplateCacheTest {
+
+    @Test
+    void testRecompileOnVersionChange() {
+        CompiledTemplateCache<String> cache = new CompiledTemplateCache<>();
+        AtomicInteger compiled = new AtomicInteger();
+        List<String> evicted = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("user.list", 1L, "select 1", src -> src + "#" + compiled.incrementAndGet(), (src, t) -> evicted.add(t));
+        }
+        assertEquals(1, compiled.get());
+
+        String res = cache.get("user.list", 2L, "select 2", src -> src + "#" + compiled.incrementAndGet(), (src, t) -> evicted.add(t));
+        assertEquals("select 2#2", res);
+        assertEquals("select 1#1", evicted.get(0));
+
+        cache.get("user.find", CompiledTemplateCache.UNKNOWN_VERSION, "select 3", src -> src + "#" + compiled.incrementAndGet(), null);
+        cache.get("user.find", CompiledTemplateCache.UNKNOWN_VERSION, new String("select 3"), src -> src + "#" + compiled.incrementAndGet(), null);
+        cache.get("user.find", CompiledTemplateCache.UNKNOWN_VERSION, "select 4", src -> src + "#" + compiled.incrementAndGet(), null);
+        assertEquals(4, compiled.get());
+
+        // 版本号不变但源码已修改(文件时间戳精度不足或被保留)
+        res = cache.get("user.list", 2L, "select 5", src -> src + "#" + compiled.incrementAndGet(), null);
+        assertEquals("select 5#5", res);
+        System.out.println(cache);
+        assertEquals(100, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+}
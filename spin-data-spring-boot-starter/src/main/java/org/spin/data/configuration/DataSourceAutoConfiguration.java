@@ -17,7 +17,9 @@ import org.spin.data.extend.RepositoryContext;
 import org.spin.data.filter.OpenSessionInViewFilter;
 import org.spin.data.property.SpinDataProperties;
 import org.spin.data.query.QueryParamParser;
+import org.spin.data.sql.QueryResultCache;
 import org.spin.data.sql.SQLManager;
+import org.spin.data.sql.loader.FileSystemSQLLoader;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -136,7 +138,19 @@ public class DataSourceAutoConfiguration {
     @Bean
     @ConditionalOnBean({DbInit.class})
     public SQLManager sqlManager(DbInit dbInit, TransactionModel model) {
-        return new SQLManager(dataProperties.getSqlLoader(), dataProperties.getSqlUri(), dataProperties.getResolverObj());
+        SQLManager sqlManager = new SQLManager(dataProperties.getSqlLoader(), dataProperties.getSqlUri(), dataProperties.getResolverObj());
+        sqlManager.setFetchSize(dataProperties.getFetchSize());
+        sqlManager.setCountCacheTtl(dataProperties.getCountCacheTtl());
+        if (dataProperties.isParallelCount()) {
+            sqlManager.setCountDataSource(() -> DataSourceContext.getDataSource(DataSourceContext.getCurrentDataSourceName()));
+        }
+        if (dataProperties.getResultCacheRows() > 0) {
+            sqlManager.setResultCache(new QueryResultCache(dataProperties.getResultCacheRows(), dataProperties.getResultCacheTtl()));
+        }
+        if (sqlManager.getSqlLoader() instanceof FileSystemSQLLoader) {
+            ((FileSystemSQLLoader) sqlManager.getSqlLoader()).setWatchChanges(dataProperties.isSqlWatch());
+        }
+        return sqlManager;
     }
 
     @Bean
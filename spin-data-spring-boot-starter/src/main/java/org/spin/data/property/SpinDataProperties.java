@@ -30,6 +30,18 @@ public class SpinDataProperties {
 
     private String sqlUri;
 
+    private int fetchSize = 1000;
+
+    private boolean parallelCount = false;
+
+    private long countCacheTtl = 0L;
+
+    private long resultCacheRows = 0L;
+
+    private long resultCacheTtl = 0L;
+
+    private boolean sqlWatch = true;
+
     @PostConstruct
     public void init() throws IllegalAccessException, InstantiationException {
         if (null != namingStrategy) {
@@ -95,4 +107,52 @@ public class SpinDataProperties {
     public void setSqlUri(String sqlUri) {
         this.sqlUri = sqlUri;
     }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public boolean isParallelCount() {
+        return parallelCount;
+    }
+
+    public void setParallelCount(boolean parallelCount) {
+        this.parallelCount = parallelCount;
+    }
+
+    public long getCountCacheTtl() {
+        return countCacheTtl;
+    }
+
+    public void setCountCacheTtl(long countCacheTtl) {
+        this.countCacheTtl = countCacheTtl;
+    }
+
+    public long getResultCacheRows() {
+        return resultCacheRows;
+    }
+
+    public void setResultCacheRows(long resultCacheRows) {
+        this.resultCacheRows = resultCacheRows;
+    }
+
+    public long getResultCacheTtl() {
+        return resultCacheTtl;
+    }
+
+    public void setResultCacheTtl(long resultCacheTtl) {
+        this.resultCacheTtl = resultCacheTtl;
+    }
+
+    public boolean isSqlWatch() {
+        return sqlWatch;
+    }
+
+    public void setSqlWatch(boolean sqlWatch) {
+        this.sqlWatch = sqlWatch;
+    }
 }
@@ -28,6 +28,9 @@ import org.spin.data.pk.generator.IdGenerator;
 import org.spin.data.query.CriteriaBuilder;
 import org.spin.data.query.QueryParam;
 import org.spin.data.query.QueryParamParser;
+import org.spin.data.rs.RowCallback;
+import org.spin.data.sql.BatchOptions;
+import org.spin.data.sql.JdbcUtils;
 import org.spin.data.sql.SQLManager;
 import org.spin.data.throwable.SQLError;
 import org.spin.data.throwable.SQLException;
@@ -35,8 +38,10 @@ import org.spin.data.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.OptimisticLockingFailureException;
 
+import javax.sql.DataSource;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.time.LocalDateTime;
@@ -48,6 +53,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -841,15 +847,79 @@ public class ARepository<T extends IEntity<PK, T>, PK extends Serializable> {
         }
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> list = ct.list();
-        ct.setFirstResult(0);
-        ct.setMaxResults(MAX_RECORDS);
-        List<CriteriaImpl.OrderEntry> orderEntries = BeanUtils.getFieldValue(ct, ORDER_ENTRIES);
-        orderEntries.clear();
-        Long total = (Long) ct.setProjection(Projections.rowCount()).uniqueResult();
+        Long total = countIfNecessary(ct, cb.getPageRequest(), list.size());
         List<T> res = BeanUtils.wrapperMapToBeanList(this.entityClazz, list);
         return new Page<>(res, cb.getPageRequest() == null ? 1L : cb.getPageRequest().getCurrent(), total, cb.getPageRequest() == null ? total.intValue() : cb.getPageRequest().getSize());
     }
 
+    /**
+     * 根据条件进行游标(keyset)分页查询
+     * <p>按排序键定位下一页, 翻页深度不影响查询耗时. 查询的排序完全由排序键决定, 查询条件中不能再指定排序, 排序键必须包含在查询字段内.
+     * 不查询总数, 返回结果的total为-1, 通过{@link Page#getNext()}获取下一页的游标</p>
+     *
+     * @param criteriaBuilder 查询参数
+     * @param keysetRequest   游标分页参数
+     * @return 查询结果
+     */
+    public Page<T> keysetPage(CriteriaBuilder<T> criteriaBuilder, KeysetRequest keysetRequest) {
+        Assert.notNull(criteriaBuilder, "CriteriaBuilder need a non-null value");
+        Assert.notNull(keysetRequest, "KeysetRequest need a non-null value");
+        // 游标条件与排序只追加在副本上, 调用方的查询条件可以重复使用
+        CriteriaBuilder<T> cb = criteriaBuilder.copy();
+        if (!entityClazz.equals(cb.getEnCls())) {
+            cb.setEnCls(entityClazz);
+        }
+        List<Order> keys = keysetRequest.checkedProperties();
+        Object[] after = KeysetToken.decode(keysetRequest);
+        if (null != after) {
+            Criterion[] seeks = new Criterion[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                Criterion[] conjunction = new Criterion[i + 1];
+                for (int j = 0; j < i; j++) {
+                    conjunction[j] = Restrictions.eq(keys.get(j).getProperty(), after[j]);
+                }
+                conjunction[i] = KeysetRequest.isDescending(keys.get(i)) ? Restrictions.lt(keys.get(i).getProperty(), after[i])
+                    : Restrictions.gt(keys.get(i).getProperty(), after[i]);
+                seeks[i] = Restrictions.and(conjunction);
+            }
+            cb.or(seeks);
+        }
+
+        int size = keysetRequest.getSize();
+        Session sess = DataSourceContext.getSession();
+        Criteria ct = cb.buildDeCriteria(true).getExecutableCriteria(sess);
+        // 其他排序会使游标条件与实际的排序不一致, 导致翻页时跳过或重复数据
+        List<CriteriaImpl.OrderEntry> orderEntries = BeanUtils.getFieldValue(ct, ORDER_ENTRIES);
+        if (!orderEntries.isEmpty()) {
+            throw new IllegalArgumentException("游标分页的排序由排序键决定, 查询条件中不能指定排序: " + orderEntries);
+        }
+        for (Order key : keys) {
+            ct.addOrder(KeysetRequest.isDescending(key) ? org.hibernate.criterion.Order.desc(key.getProperty())
+                : org.hibernate.criterion.Order.asc(key.getProperty()));
+        }
+        ct.setCacheable(false);
+        ct.setResultTransformer(CriteriaSpecification.ALIAS_TO_ENTITY_MAP);
+        // 多取一行判断是否还有下一页
+        ct.setMaxResults(size + 1);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> list = ct.list();
+
+        String next = null;
+        if (list.size() > size) {
+            Map<String, Object> last = list.get(size - 1);
+            Object[] values = new Object[keys.size()];
+            for (int i = 0; i < values.length; i++) {
+                String alias = cb.getAliasMap().getOrDefault(keys.get(i).getProperty(), keys.get(i).getProperty());
+                values[i] = Assert.notNull(last.get(alias), "游标分页的排序键必须包含在查询字段中, 并且不能为null: " + alias);
+            }
+            next = KeysetToken.encode(keysetRequest, values);
+            list = list.subList(0, size);
+        }
+        Page<T> page = new Page<>(BeanUtils.wrapperMapToBeanList(this.entityClazz, list), 1L, -1L, size);
+        page.setNext(next);
+        return page;
+    }
+
     /**
      * 根据条件查询DTO列表
      *
@@ -993,6 +1063,39 @@ public class ARepository<T extends IEntity<PK, T>, PK extends Serializable> {
         return doReturningWork(connection -> sqlManager.list(connection, sqlId, entityClazz, paramMap));
     }
 
+    /**
+     * 以游标方式查询, 返回的Stream使用从当前数据源获取的独立jdbc连接逐行读取
+     * <p>连接的生命周期与Stream绑定, 关闭Stream时释放, 必须通过try-with-resources关闭.
+     * 独立连接不参与当前Session的事务, 读取不到当前事务中未提交的修改</p>
+     *
+     * @param sqlId    sqlId
+     * @param paramMap 命名参数
+     * @return 查询结果
+     */
+    public Stream<T> streamBySql(String sqlId, Map<String, ?> paramMap) {
+        DataSource dataSource = Assert.notNull(DataSourceContext.getDataSource(DataSourceContext.getCurrentDataSourceName()), "当前数据源不存在");
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            Connection conn = connection;
+            return sqlManager.stream(connection, sqlId, entityClazz, paramMap).onClose(() -> JdbcUtils.closeConnection(conn));
+        } catch (java.sql.SQLException e) {
+            JdbcUtils.closeConnection(connection);
+            throw new SimplifiedException("获取数据库连接失败", e);
+        } catch (RuntimeException e) {
+            JdbcUtils.closeConnection(connection);
+            throw e;
+        }
+    }
+
+    public int forEachBySql(String sqlId, Map<String, ?> paramMap, RowCallback<? super T> callback) {
+        return doReturningWork(connection -> sqlManager.forEach(connection, sqlId, entityClazz, paramMap, callback));
+    }
+
+    public int forEachMapBySql(String sqlId, Map<String, ?> paramMap, RowCallback<? super Map<String, Object>> callback) {
+        return doReturningWork(connection -> sqlManager.forEachAsMap(connection, sqlId, paramMap, callback));
+    }
+
     public List<Map<String, Object>> listMapBySql(String sqlId, Object... mapParams) {
         return doReturningWork(connection -> sqlManager.listAsMap(connection, sqlId, mapParams));
     }
@@ -1009,6 +1112,14 @@ public class ARepository<T extends IEntity<PK, T>, PK extends Serializable> {
         return doReturningWork(connection -> sqlManager.listAsPageMap(connection, sqlId, paramMap, pageRequest));
     }
 
+    public Page<T> keysetPageBySql(String sqlId, Map<String, ?> paramMap, KeysetRequest keysetRequest) {
+        return doReturningWork(connection -> sqlManager.listAsKeysetPage(connection, sqlId, entityClazz, paramMap, keysetRequest));
+    }
+
+    public Page<Map<String, Object>> keysetPageMapBySql(String sqlId, Map<String, ?> paramMap, KeysetRequest keysetRequest) {
+        return doReturningWork(connection -> sqlManager.listAsKeysetPageMap(connection, sqlId, paramMap, keysetRequest));
+    }
+
     public Long count(String sqlId, Map<String, ?> paramMap) {
         return doReturningWork(connection -> sqlManager.count(connection, sqlId, paramMap));
     }
@@ -1020,6 +1131,10 @@ public class ARepository<T extends IEntity<PK, T>, PK extends Serializable> {
     public int[] executeBatch(String sqlId, List<Map<String, ?>> paramMaps) {
         return doReturningWork(connection -> sqlManager.executeBatch(connection, sqlId, paramMaps));
     }
+
+    public int[] executeBatch(String sqlId, List<Map<String, ?>> paramMaps, BatchOptions options) {
+        return doReturningWork(connection -> sqlManager.executeBatch(connection, sqlId, paramMaps, options));
+    }
     /* ---END---***********************委托SQLManager执行SQL语句******************************* */
 
     /**
@@ -1268,16 +1383,33 @@ public class ARepository<T extends IEntity<PK, T>, PK extends Serializable> {
 
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> list = ct.list();
-
-        ct.setFirstResult(0);
-        ct.setMaxResults(MAX_RECORDS);
-        List<CriteriaImpl.OrderEntry> orderEntries = BeanUtils.getFieldValue(ct, ORDER_ENTRIES);
-        orderEntries.clear();
-        Long total = (Long) ct.setProjection(Projections.rowCount()).uniqueResult();
+        Long total = countIfNecessary(ct, cb.getPageRequest(), list.size());
         // 关联对象，填充映射对象
         if (wrap) {
             list = list.stream().map(BeanUtils::wrapperFlatMap).collect(Collectors.toList());
         }
         return new Page<>(list, null == cb.getPageRequest() ? 1L : cb.getPageRequest().getCurrent(), total, null == cb.getPageRequest() ? total.intValue() : cb.getPageRequest().getSize());
     }
+
+    /**
+     * 查询分页总数, 当前页不满一页时直接推算总数, 不再执行count查询
+     *
+     * @param ct          已查询过数据的Criteria
+     * @param pageRequest 分页参数
+     * @param fetched     当前页的记录数
+     * @return 总数
+     */
+    private Long countIfNecessary(Criteria ct, PageRequest pageRequest, int fetched) {
+        if (null == pageRequest) {
+            return (long) fetched;
+        }
+        if (fetched < pageRequest.getSize() && (fetched > 0 || pageRequest.getOffset() == 0)) {
+            return (long) pageRequest.getOffset() + fetched;
+        }
+        ct.setFirstResult(0);
+        ct.setMaxResults(MAX_RECORDS);
+        List<CriteriaImpl.OrderEntry> orderEntries = BeanUtils.getFieldValue(ct, ORDER_ENTRIES);
+        orderEntries.clear();
+        return (Long) ct.setProjection(Projections.rowCount()).uniqueResult();
+    }
 }
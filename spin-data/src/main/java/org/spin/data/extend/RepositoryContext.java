@@ -30,6 +30,7 @@ import org.spin.data.pk.generator.IdGenerator;
 import org.spin.data.query.CriteriaBuilder;
 import org.spin.data.query.QueryParam;
 import org.spin.data.query.QueryParamParser;
+import org.spin.data.sql.BatchOptions;
 import org.spin.data.sql.SQLManager;
 import org.spin.data.throwable.SQLError;
 import org.spin.data.throwable.SQLException;
@@ -1100,6 +1101,10 @@ public class RepositoryContext {
     public int[] executeBatch(String sqlId, List<Map<String, ?>> paramMaps) {
         return doReturningWork(connection -> sqlManager.executeBatch(connection, sqlId, paramMaps));
     }
+
+    public int[] executeBatch(String sqlId, List<Map<String, ?>> paramMaps, BatchOptions options) {
+        return doReturningWork(connection -> sqlManager.executeBatch(connection, sqlId, paramMaps, options));
+    }
     /* ---END---***********************委托SQLManager执行SQL语句******************************* */
 
 
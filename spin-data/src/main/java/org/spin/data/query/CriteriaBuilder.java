@@ -10,6 +10,7 @@ import org.spin.core.util.BeanUtils;
 import org.spin.core.util.CollectionUtils;
 import org.spin.core.util.LambdaUtils;
 import org.spin.core.util.ReflectionUtils;
+import org.spin.core.util.SerializeUtils;
 import org.spin.core.util.StringUtils;
 import org.spin.data.core.IEntity;
 import org.spin.data.core.PageRequest;
@@ -699,6 +700,24 @@ public class CriteriaBuilder<T extends IEntity<?, T>> {
         return deCriteria;
     }
 
+    /**
+     * 复制查询条件, 对副本追加条件或排序不影响当前对象
+     * <p>离线查询条件通过java序列化深拷贝, 条件中的参数值必须可以序列化</p>
+     *
+     * @return 查询条件的副本
+     */
+    public CriteriaBuilder<T> copy() {
+        CriteriaBuilder<T> instance = new CriteriaBuilder<>();
+        instance.enCls = enCls;
+        instance.deCriteria = SerializeUtils.deserialize(SerializeUtils.serialize(deCriteria));
+        instance.fields = new HashSet<>(fields);
+        instance.aliasMap = new HashMap<>(aliasMap);
+        instance.pageRequest = pageRequest;
+        instance.projected = projected;
+        instance.condJoins.addAll(condJoins);
+        return instance;
+    }
+
     public Class<T> getEnCls() {
         return enCls;
     }
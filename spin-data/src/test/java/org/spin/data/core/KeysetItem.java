@@ -0,0 +1,40 @@
+package org.spin.data.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * 游标分页测试实体
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+@Entity
+@Table(name = "keyset_item")
+public class KeysetItem extends AbstractEntity<KeysetItem> {
+    private static final long serialVersionUID = 3806405526727931251L;
+
+    @Column
+    private Integer grade;
+
+    @Column
+    private Double score;
+
+    public Integer getGrade() {
+        return grade;
+    }
+
+    public void setGrade(Integer grade) {
+        this.grade = grade;
+    }
+
+    public Double getScore() {
+        return score;
+    }
+
+    public void setScore(Double score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,100 @@
+package org.spin.data.core;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+import org.junit.jupiter.api.Test;
+import org.spin.data.query.CriteriaBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 实体查询的游标分页测试, 需要H2驱动
+ * <p>Created by xuweinan on 2021/10/29</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class KeysetPageTest {
+    private static final String DATA_SOURCE = "keyset";
+    private static final int ROWS = 30;
+
+    @Test
+    void testIntegerAndDoubleKeys() {
+        assumeTrue(driverAvailable(), "H2驱动不可用, 跳过测试");
+        SessionFactory sessionFactory = new Configuration()
+            .addAnnotatedClass(KeysetItem.class)
+            .setProperty(AvailableSettings.DRIVER, "org.h2.Driver")
+            .setProperty(AvailableSettings.URL, "jdbc:h2:mem:keyset_page;DB_CLOSE_DELAY=-1")
+            .setProperty(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+            .buildSessionFactory();
+        DataSourceContext.registSessionFactory(DATA_SOURCE, sessionFactory);
+        DataSourceContext.setPrimaryDataSourceName(DATA_SOURCE);
+        Session session = DataSourceContext.openSession(true);
+        try {
+            List<KeysetItem> items = new ArrayList<>(ROWS);
+            Transaction tran = session.beginTransaction();
+            for (long i = 1; i <= ROWS; i++) {
+                KeysetItem item = new KeysetItem();
+                item.id(i);
+                item.setGrade((int) (i % 4));
+                item.setScore((i % 3) * 0.5D);
+                item.setCreateTime(LocalDateTime.now());
+                item.setUpdateTime(LocalDateTime.now());
+                session.save(item);
+                items.add(item);
+            }
+            tran.commit();
+            session.clear();
+
+            // 排序键存在重复值, 翻页时依赖后面的键定位
+            List<Long> expected = items.stream()
+                .sorted(Comparator.comparing(KeysetItem::getGrade).thenComparing(KeysetItem::getScore, Comparator.reverseOrder())
+                    .thenComparing(it -> it.id()))
+                .map(KeysetItem::id)
+                .collect(Collectors.toList());
+
+            ARepository<KeysetItem, Long> repository = new ARepository<>(KeysetItem.class);
+            KeysetRequest request = new KeysetRequest(7, Order.asc("grade"), Order.desc("score"), Order.asc("id"));
+            CriteriaBuilder<KeysetItem> cb = CriteriaBuilder.forClass(KeysetItem.class);
+            List<Long> ids = new ArrayList<>(ROWS);
+            int pages = 0;
+            String next = null;
+            do {
+                Page<KeysetItem> page = repository.keysetPage(cb, request.after(next));
+                page.getRecords().forEach(it -> ids.add(it.id()));
+                next = page.getNext();
+                ++pages;
+            } while (null != next);
+            assertEquals(expected, ids);
+            assertEquals(5, pages);
+
+            CriteriaBuilder<KeysetItem> ordered = CriteriaBuilder.forClass(KeysetItem.class).orderBy(org.hibernate.criterion.Order.desc("id"));
+            assertThrows(IllegalArgumentException.class, () -> repository.keysetPage(ordered, request.after(null)));
+        } finally {
+            DataSourceContext.closeAllManualSession();
+            sessionFactory.close();
+        }
+    }
+
+    private static boolean driverAvailable() {
+        try {
+            Class.forName("org.h2.Driver");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.spin.data.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spin.data.sql.SQLManager;
+import org.spin.data.sql.loader.FileSystemMdLoader;
+import org.spin.data.sql.resolver.SimpleResolver;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 实体仓库的游标查询测试, 需要H2驱动
+ * <p>Created by xuweinan on 2021/10/27</p>
+ *
+ * @author xuweinan
+ * @version 1.0
+ */
+class StreamBySqlTest {
+    private static final String DATA_SOURCE = "stream";
+    private static final String URL = "jdbc:h2:mem:stream_by_sql;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 20;
+    private static final Map<String, ?> NO_PARAMS = Collections.emptyMap();
+
+    @TempDir
+    Path root;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Statement> statements = new ArrayList<>();
+
+    @Test
+    void testStreamBySql() throws IOException, SQLException {
+        assumeTrue(driverAvailable(), "H2驱动不可用, 跳过测试");
+        try (Connection connection = DriverManager.getConnection(URL); Statement statement = connection.createStatement()) {
+            statement.execute("create table keyset_item (id bigint primary key, grade int, score double)");
+            for (int i = 1; i <= ROWS; i++) {
+                statement.execute("insert into keyset_item (id, grade, score) values (" + i + ", " + i + ", 0.5)");
+            }
+        }
+        Files.write(root.resolve("item.md"), "list\n===\nselect id, grade, score from keyset_item order by id\n"
+            .getBytes(StandardCharsets.UTF_8));
+        DataSourceContext.registDataSource(DATA_SOURCE, dataSource());
+        DataSourceContext.setPrimaryDataSourceName(DATA_SOURCE);
+        ARepository<KeysetItem, Long> repository = new ARepository<>(KeysetItem.class);
+        try (SQLManager sqlManager = new SQLManager(FileSystemMdLoader.class, root.toString(), new SimpleResolver())) {
+            repository.setSqlManager(sqlManager);
+            connections.clear();
+
+            // 提前终止时连接保持到Stream关闭
+            try (Stream<KeysetItem> stream = repository.streamBySql("item.list", NO_PARAMS)) {
+                List<Integer> grades = stream.limit(3).map(KeysetItem::getGrade).collect(Collectors.toList());
+                assertEquals(3, grades.size());
+                assertEquals(Integer.valueOf(1), grades.get(0));
+                assertFalse(allClosed());
+            }
+            assertEquals(1, connections.size());
+            assertTrue(allClosed());
+
+            try (Stream<KeysetItem> stream = repository.streamBySql("item.list", NO_PARAMS)) {
+                assertEquals(ROWS, stream.count());
+            }
+            assertEquals(2, connections.size());
+            assertTrue(allClosed());
+        } finally {
+            try (Connection connection = DriverManager.getConnection(URL); Statement statement = connection.createStatement()) {
+                statement.execute("drop table keyset_item");
+            }
+        }
+    }
+
+    /**
+     * 记录借出的连接及其上创建的Statement
+     */
+    private DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if (!"getConnection".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            Connection connection = DriverManager.getConnection(URL);
+            connections.add(connection);
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (p, m, a) -> {
+                try {
+                    Object result = m.invoke(connection, a);
+                    if (result instanceof Statement) {
+                        statements.add((Statement) result);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+        });
+    }
+
+    private boolean allClosed() throws SQLException {
+        for (Connection connection : connections) {
+            if (!connection.isClosed()) {
+                return false;
+            }
+        }
+        for (Statement statement : statements) {
+            if (!statement.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean driverAvailable() {
+        try {
+            Class.forName("org.h2.Driver");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -375,10 +375,13 @@ public class LinqImpl<R> extends LinImpl<Linq<R, LinqImpl<R>>, CriteriaQuery<?>>
             query.setFirstResult((int) offset);
             query.setMaxResults(pageable.getPageSize());
 
-            Long total = org.spin.jpa.R.count(criteria);
-            List<R> content = Collections.emptyList();
-            if (total > pageable.getOffset()) {
-                content = transform(query, 0);
+            // 先查数据, 不满一页时直接推算总数, 省去count查询
+            List<R> content = transform(query, 0);
+            long total;
+            if (content.size() < pageable.getPageSize() && (!content.isEmpty() || offset == 0)) {
+                total = offset + content.size();
+            } else {
+                total = org.spin.jpa.R.count(criteria);
             }
 
             return new PageImpl<>(content, pageable, total);